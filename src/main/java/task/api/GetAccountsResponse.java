@@ -0,0 +1,56 @@
+package task.api;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Represents response for get accounts operation: a page of accounts and the key of the next page.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GetAccountsResponse {
+
+    private final List<GetAccountResponse> accounts;
+    private final Long next;
+
+    @JsonCreator
+    public GetAccountsResponse(@JsonProperty("accounts") List<GetAccountResponse> accounts,
+                               @JsonProperty("next") @Nullable Long next) {
+        this.accounts = accounts;
+        this.next = next;
+    }
+
+    public List<GetAccountResponse> getAccounts() {
+        return accounts;
+    }
+
+    /**
+     * Return value of {@code after} parameter of the next page request.
+     *
+     * @return id of the last account of the page, {@code null} if it is the last page
+     */
+    @Nullable
+    public Long getNext() {
+        return next;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GetAccountsResponse that = (GetAccountsResponse) o;
+        return Objects.equals(accounts, that.accounts) &&
+                Objects.equals(next, that.next);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(accounts, next);
+    }
+}
@@ -0,0 +1,57 @@
+package task.api;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * Represents response for get balance as of time operation.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class GetBalanceResponse {
+
+    private final long accountId;
+    private final long at;
+    private final BigDecimal amount;
+
+    @JsonCreator
+    public GetBalanceResponse(@JsonProperty("accountId") long accountId, @JsonProperty("at") long at,
+                              @JsonProperty("amount") BigDecimal amount) {
+        this.accountId = accountId;
+        this.at = at;
+        this.amount = amount;
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * @return time in milliseconds since epoch
+     */
+    public long getAt() {
+        return at;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GetBalanceResponse that = (GetBalanceResponse) o;
+        return accountId == that.accountId &&
+                at == that.at &&
+                Objects.equals(amount, that.amount);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(accountId, at, amount);
+    }
+}
@@ -0,0 +1,87 @@
+package task.api;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * Represents a balance change in response for get transfers operation.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GetTransferResponse {
+
+    private final Long counterpartyId;
+    private final BigDecimal amount;
+    private final BigDecimal balance;
+    private final long createdAt;
+
+    @JsonCreator
+    public GetTransferResponse(@JsonProperty("counterpartyId") @Nullable Long counterpartyId,
+                               @JsonProperty("amount") BigDecimal amount,
+                               @JsonProperty("balance") BigDecimal balance,
+                               @JsonProperty("createdAt") long createdAt) {
+        this.counterpartyId = counterpartyId;
+        this.amount = amount;
+        this.balance = balance;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Return the other account of the transfer.
+     *
+     * @return account id, {@code null} for the opening balance and legs of cross-shard transfers
+     */
+    @Nullable
+    public Long getCounterpartyId() {
+        return counterpartyId;
+    }
+
+    /**
+     * Return signed change of the balance.
+     *
+     * @return negative for outgoing transfers, positive for incoming ones
+     */
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    /**
+     * Return balance right after the change.
+     *
+     * @return balance
+     */
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    /**
+     * Return time of the change.
+     *
+     * @return time in milliseconds since epoch
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GetTransferResponse that = (GetTransferResponse) o;
+        return createdAt == that.createdAt &&
+                Objects.equals(counterpartyId, that.counterpartyId) &&
+                Objects.equals(amount, that.amount) &&
+                Objects.equals(balance, that.balance);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(counterpartyId, amount, balance, createdAt);
+    }
+}
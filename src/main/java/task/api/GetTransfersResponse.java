@@ -0,0 +1,57 @@
+package task.api;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Represents response for get transfers operation: a page of balance changes of an account and the cursor of the next
+ * page.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GetTransfersResponse {
+
+    private final List<GetTransferResponse> transfers;
+    private final String next;
+
+    @JsonCreator
+    public GetTransfersResponse(@JsonProperty("transfers") List<GetTransferResponse> transfers,
+                                @JsonProperty("next") @Nullable String next) {
+        this.transfers = transfers;
+        this.next = next;
+    }
+
+    public List<GetTransferResponse> getTransfers() {
+        return transfers;
+    }
+
+    /**
+     * Return value of {@code cursor} parameter of the next page request.
+     *
+     * @return cursor of the last change of the page, {@code null} if it is the last page
+     */
+    @Nullable
+    public String getNext() {
+        return next;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GetTransfersResponse that = (GetTransfersResponse) o;
+        return Objects.equals(transfers, that.transfers) &&
+                Objects.equals(next, that.next);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(transfers, next);
+    }
+}
@@ -0,0 +1,233 @@
+package task.binary;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import task.exception.BinaryProtocolException;
+import task.model.Account;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Client of {@link BinaryServer}. Requests are pipelined over one connection: any number of threads may send
+ * requests without waiting for the previous responses, which are matched by request id as they come back.
+ * <p>
+ * Server errors complete the returned futures with {@link BinaryProtocolException}.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@ThreadSafe
+public class BinaryClient implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(BinaryClient.class);
+
+    private static final int REQUEST_BUFFER_SIZE = 256;
+
+    private final SocketChannel channel;
+    private final Lock writeLock = new ReentrantLock();
+    private final AtomicLong requestIds = new AtomicLong();
+    private final Map<Long, PendingRequest<?>> pendingRequests = new ConcurrentHashMap<>();
+    private final Thread readerThread;
+    private volatile boolean closed;
+
+    private BinaryClient(SocketChannel channel) {
+        this.channel = channel;
+        this.readerThread = new Thread(this::readResponses, "binary-client-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Connect to the server.
+     *
+     * @param host server host
+     * @param port server port
+     * @return connected client
+     * @throws IOException if connection fails
+     */
+    public static BinaryClient connect(String host, int port) throws IOException {
+        final SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+        return new BinaryClient(channel);
+    }
+
+    /**
+     * Create new account.
+     *
+     * @param amount initial amount
+     * @return id of created account
+     */
+    public CompletableFuture<Long> create(BigDecimal amount) {
+        return send(BinaryProtocol.OP_CREATE, buffer -> BinaryProtocol.putDecimal(buffer, amount), ByteBuffer::getLong);
+    }
+
+    /**
+     * Get account by id.
+     *
+     * @param accountId account id
+     * @return account
+     */
+    public CompletableFuture<Account> getAccount(long accountId) {
+        return send(BinaryProtocol.OP_GET, buffer -> buffer.putLong(accountId),
+                buffer -> new Account().setId(buffer.getLong()).setAmount(BinaryProtocol.getDecimal(buffer)));
+    }
+
+    /**
+     * Transfer given {@code amount} from one account to another.
+     *
+     * @param fromAccountId from account id
+     * @param toAccountId   to account id
+     * @param amount        amount to transfer
+     * @return completed future once the transfer is done
+     */
+    public CompletableFuture<Void> transfer(long fromAccountId, long toAccountId, BigDecimal amount) {
+        return send(BinaryProtocol.OP_TRANSFER, buffer -> {
+            buffer.putLong(fromAccountId).putLong(toAccountId);
+            BinaryProtocol.putDecimal(buffer, amount);
+        }, buffer -> null);
+    }
+
+    private <T> CompletableFuture<T> send(byte opcode, PayloadWriter payloadWriter, Function<ByteBuffer, T> decoder) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final long requestId = requestIds.incrementAndGet();
+        final ByteBuffer request = ByteBuffer.allocate(REQUEST_BUFFER_SIZE);
+        try {
+            request.putInt(0).put(opcode).putLong(requestId);
+            payloadWriter.write(request);
+            request.putInt(0, request.position() - 4);
+            request.flip();
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        // registered before the write: the response may come back before the write returns
+        pendingRequests.put(requestId, new PendingRequest<>(future, decoder));
+        writeLock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Client is closed");
+            }
+            while (request.hasRemaining()) {
+                channel.write(request);
+            }
+        } catch (IOException e) {
+            pendingRequests.remove(requestId);
+            future.completeExceptionally(e);
+        } finally {
+            writeLock.unlock();
+        }
+        return future;
+    }
+
+    private void readResponses() {
+        final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        try {
+            while (true) {
+                lengthBuffer.clear();
+                readFully(lengthBuffer);
+                final int length = lengthBuffer.getInt(0);
+                if (length < BinaryProtocol.HEADER_LENGTH || length > BinaryProtocol.MAX_FRAME_LENGTH) {
+                    throw new IOException("Invalid frame length: " + length);
+                }
+                final ByteBuffer frame = ByteBuffer.allocate(length);
+                readFully(frame);
+                frame.flip();
+                complete(frame);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!closed) {
+                log.warn("Binary connection has been lost [error message: {}]", e.getMessage());
+            }
+            failPendingRequests(e);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Connection has been closed by the server");
+            }
+        }
+    }
+
+    private void complete(ByteBuffer frame) {
+        final byte status = frame.get();
+        final long requestId = frame.getLong();
+        final PendingRequest<?> pendingRequest = pendingRequests.remove(requestId);
+        if (pendingRequest == null) {
+            log.warn("Unexpected response [requestId: {}]", requestId);
+            return;
+        }
+        if (status == BinaryProtocol.STATUS_OK) {
+            pendingRequest.complete(frame);
+        } else {
+            pendingRequest.future.completeExceptionally(
+                    new BinaryProtocolException(status, BinaryProtocol.getString(frame)));
+        }
+    }
+
+    private void failPendingRequests(Exception cause) {
+        for (Long requestId : pendingRequests.keySet()) {
+            final PendingRequest<?> pendingRequest = pendingRequests.remove(requestId);
+            if (pendingRequest != null) {
+                pendingRequest.future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * Close the connection, pending requests are completed exceptionally.
+     */
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            closed = true;
+            channel.close();
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            readerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    private interface PayloadWriter {
+        void write(ByteBuffer buffer);
+    }
+
+    private static class PendingRequest<T> {
+
+        private final CompletableFuture<T> future;
+        private final Function<ByteBuffer, T> decoder;
+
+        PendingRequest(CompletableFuture<T> future, Function<ByteBuffer, T> decoder) {
+            this.future = future;
+            this.decoder = decoder;
+        }
+
+        void complete(ByteBuffer frame) {
+            try {
+                future.complete(decoder.apply(frame));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
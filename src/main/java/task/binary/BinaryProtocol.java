@@ -0,0 +1,124 @@
+package task.binary;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact binary protocol of {@link BinaryServer}. Every frame is prefixed by its length, so frames can be pipelined
+ * over one connection, and carries request id, so responses may come back in any order.
+ * <p>
+ * All numbers are big-endian. Request frame:
+ * <pre>
+ * int length | byte opcode | long requestId | payload
+ * CREATE:   decimal amount
+ * GET:      long accountId
+ * TRANSFER: long fromAccountId | long toAccountId | decimal amount
+ * </pre>
+ * Response frame:
+ * <pre>
+ * int length | byte status | long requestId | payload
+ * OK to CREATE:   long accountId
+ * OK to GET:      long accountId | decimal amount
+ * OK to TRANSFER: empty
+ * error:          string message
+ * </pre>
+ * {@code length} counts all bytes after itself. {@code decimal} is {@code int scale | short n | n bytes of unscaled
+ * value in two's-complement}, {@code n = -1} stands for {@code null}. {@code string} is {@code short n | n bytes of
+ * UTF-8}.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public final class BinaryProtocol {
+
+    public static final byte OP_CREATE = 1;
+    public static final byte OP_GET = 2;
+    public static final byte OP_TRANSFER = 3;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_BAD_REQUEST = 1;
+    public static final byte STATUS_NOT_FOUND = 2;
+    public static final byte STATUS_LIMIT_EXCEEDED = 3;
+    public static final byte STATUS_OVERLOADED = 4;
+    public static final byte STATUS_INTERNAL_ERROR = 5;
+
+    /**
+     * Max frame length excluding the length prefix.
+     */
+    public static final int MAX_FRAME_LENGTH = 4096;
+
+    /**
+     * Length of the opcode (status) and request id.
+     */
+    static final int HEADER_LENGTH = 1 + 8;
+
+    static final int MAX_STRING_LENGTH = 1024;
+
+    private BinaryProtocol() {
+    }
+
+    static void putDecimal(ByteBuffer buffer, @Nullable BigDecimal value) {
+        if (value == null) {
+            buffer.putInt(0);
+            buffer.putShort((short) -1);
+            return;
+        }
+        final byte[] unscaled = value.unscaledValue().toByteArray();
+        buffer.putInt(value.scale());
+        buffer.putShort((short) unscaled.length);
+        buffer.put(unscaled);
+    }
+
+    @Nullable
+    static BigDecimal getDecimal(ByteBuffer buffer) {
+        final int scale = buffer.getInt();
+        final short length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        if (length == 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid decimal length: " + length);
+        }
+        final byte[] unscaled = new byte[length];
+        buffer.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    /**
+     * Encode the string to UTF-8, truncated to {@value #MAX_STRING_LENGTH} bytes on a character boundary.
+     */
+    static byte[] encodeString(@Nullable String value) {
+        final byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= MAX_STRING_LENGTH) {
+            return bytes;
+        }
+        int length = MAX_STRING_LENGTH;
+        // the first dropped byte must not continue a multi-byte character kept in the string
+        while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    static void putString(ByteBuffer buffer, byte[] encoded) {
+        buffer.putShort((short) encoded.length);
+        buffer.put(encoded);
+    }
+
+    static void putString(ByteBuffer buffer, @Nullable String value) {
+        putString(buffer, encodeString(value));
+    }
+
+    static String getString(ByteBuffer buffer) {
+        final short length = buffer.getShort();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid string length: " + length);
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
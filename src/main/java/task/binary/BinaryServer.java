@@ -0,0 +1,363 @@
+package task.binary;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import task.exception.LimitExceededException;
+import task.exception.NoSuchAccountException;
+import task.model.Account;
+import task.model.TransferResult;
+import task.service.AccountService;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * NIO server of {@link BinaryProtocol} which calls the same {@link AccountService} as the REST API.
+ * <p>
+ * One selector thread accepts connections, decodes request frames and writes response frames. Requests are executed
+ * by the given executor, so requests pipelined over one connection run concurrently and their responses are sent as
+ * soon as they are ready, in any order. If the executor rejects a request it is answered with
+ * {@link BinaryProtocol#STATUS_OVERLOADED} right away.
+ * <p>
+ * A connection stops being read while it has {@code maxPendingResponses} requests in progress or responses not yet
+ * written, so a client which pipelines requests faster than it reads responses is slowed down by TCP flow control
+ * instead of growing the response queue.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@ThreadSafe
+public class BinaryServer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(BinaryServer.class);
+
+    private static final int RESPONSE_BUFFER_SIZE = 256;
+    private static final int DEFAULT_MAX_PENDING_RESPONSES = 1024;
+
+    private final AccountService accountService;
+    private final Executor executor;
+    private final int maxPendingResponses;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Queue<Connection> connectionsToFlush = new ConcurrentLinkedQueue<>();
+    private final Thread selectorThread;
+    private volatile boolean running = true;
+
+    /**
+     * Bind the server to the given {@code port} and start serving.
+     *
+     * @param accountService account service
+     * @param executor       executor of requests, it is closed with the server if it is {@link AutoCloseable}
+     * @param port           port to listen to, 0 - any free port
+     * @throws IOException if the port can't be bound
+     */
+    public BinaryServer(AccountService accountService, Executor executor, int port) throws IOException {
+        this(accountService, executor, port, DEFAULT_MAX_PENDING_RESPONSES);
+    }
+
+    /**
+     * Bind the server to the given {@code port} and start serving.
+     *
+     * @param accountService      account service
+     * @param executor            executor of requests, it is closed with the server if it is {@link AutoCloseable}
+     * @param port                port to listen to, 0 - any free port
+     * @param maxPendingResponses max requests in progress and unwritten responses per connection before reading of
+     *                            the connection is paused
+     * @throws IOException if the port can't be bound
+     */
+    public BinaryServer(AccountService accountService, Executor executor, int port, int maxPendingResponses)
+            throws IOException {
+        if (maxPendingResponses <= 0) {
+            throw new IllegalArgumentException("Unsupported max pending responses: " + maxPendingResponses);
+        }
+        this.accountService = accountService;
+        this.executor = executor;
+        this.maxPendingResponses = maxPendingResponses;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        this.selectorThread = new Thread(this::select, "binary-server-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        log.info("Binary server has been started [port: {}]", getPort());
+    }
+
+    /**
+     * Return the port the server listens to.
+     *
+     * @return port
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    private void select() {
+        while (running) {
+            try {
+                selector.select();
+                Connection connection;
+                while ((connection = connectionsToFlush.poll()) != null) {
+                    connection.flush();
+                }
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (running) {
+                    log.error("Selector loop has failed [error message: {}]", e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                final SocketChannel channel = serverChannel.accept();
+                if (channel != null) {
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    final SelectionKey channelKey = channel.register(selector, SelectionKey.OP_READ);
+                    channelKey.attach(new Connection(channel, channelKey));
+                }
+                return;
+            }
+            final Connection connection = (Connection) key.attachment();
+            if (key.isReadable()) {
+                connection.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Closing binary connection [error message: {}]", e.getMessage());
+            closeQuietly(key);
+        }
+    }
+
+    private void dispatch(Connection connection, ByteBuffer frame) {
+        final byte opcode = frame.get();
+        final long requestId = frame.getLong();
+        try {
+            executor.execute(() -> connection.send(execute(opcode, requestId, frame)));
+        } catch (RejectedExecutionException e) {
+            connection.send(error(BinaryProtocol.STATUS_OVERLOADED, requestId, "Too many requests in progress"));
+        }
+    }
+
+    private ByteBuffer execute(byte opcode, long requestId, ByteBuffer frame) {
+        try {
+            switch (opcode) {
+                case BinaryProtocol.OP_CREATE: {
+                    final Account account = accountService.create(BinaryProtocol.getDecimal(frame));
+                    return ok(requestId).putLong(account.getId());
+                }
+                case BinaryProtocol.OP_GET: {
+                    final Account account = accountService.getAccount(frame.getLong());
+                    final ByteBuffer response = ok(requestId).putLong(account.getId());
+                    BinaryProtocol.putDecimal(response, account.getAmount());
+                    return response;
+                }
+                case BinaryProtocol.OP_TRANSFER: {
+                    final long fromAccountId = frame.getLong();
+                    final long toAccountId = frame.getLong();
+                    final BigDecimal amount = BinaryProtocol.getDecimal(frame);
+                    final TransferResult result = accountService.tryTransfer(fromAccountId, toAccountId, amount);
+                    switch (result.getStatus()) {
+                        case TRANSFERRED:
+                            return ok(requestId);
+                        case LIMIT_EXCEEDED:
+                            return error(BinaryProtocol.STATUS_LIMIT_EXCEEDED, requestId,
+                                    result.getRejection().getMessage());
+                        default:
+                            return error(BinaryProtocol.STATUS_NOT_FOUND, requestId,
+                                    result.getRejection().getMessage());
+                    }
+                }
+                default:
+                    return error(BinaryProtocol.STATUS_BAD_REQUEST, requestId, "Unknown opcode: " + opcode);
+            }
+        } catch (NoSuchAccountException e) {
+            return error(BinaryProtocol.STATUS_NOT_FOUND, requestId, e.getMessage());
+        } catch (LimitExceededException e) {
+            return error(BinaryProtocol.STATUS_LIMIT_EXCEEDED, requestId, e.getMessage());
+        } catch (IllegalArgumentException | NullPointerException | BufferUnderflowException e) {
+            return error(BinaryProtocol.STATUS_BAD_REQUEST, requestId, e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Failed to execute binary request [opcode: {}, error message: {}]", opcode, e.getMessage(), e);
+            return error(BinaryProtocol.STATUS_INTERNAL_ERROR, requestId, e.getMessage());
+        }
+    }
+
+    private static ByteBuffer ok(long requestId) {
+        final ByteBuffer response = ByteBuffer.allocate(RESPONSE_BUFFER_SIZE);
+        response.putInt(0).put(BinaryProtocol.STATUS_OK).putLong(requestId);
+        return response;
+    }
+
+    private static ByteBuffer error(byte status, long requestId, String message) {
+        final byte[] encoded = BinaryProtocol.encodeString(message);
+        final ByteBuffer response = ByteBuffer.allocate(4 + BinaryProtocol.HEADER_LENGTH + 2 + encoded.length);
+        response.putInt(0).put(status).putLong(requestId);
+        BinaryProtocol.putString(response, encoded);
+        return response;
+    }
+
+    private void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            log.debug("Failed to close channel [error message: {}]", e.getMessage());
+        }
+    }
+
+    /**
+     * Stop accepting requests, close all connections and the executor.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            closeQuietly(key);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.debug("Failed to close selector [error message: {}]", e.getMessage());
+        }
+        if (executor instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) executor).close();
+            } catch (Exception e) {
+                log.error("Failed to close executor [error message: {}]", e.getMessage());
+            }
+        }
+        log.info("Binary server has been stopped");
+    }
+
+    /**
+     * State of one client connection. Reads happen on the selector thread only, responses are queued by executor
+     * threads and written by the selector thread. Pending responses are counted and reading is paused and resumed by
+     * the selector thread only.
+     */
+    private class Connection {
+
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(4 + BinaryProtocol.MAX_FRAME_LENGTH);
+        private final Queue<ByteBuffer> responses = new ConcurrentLinkedQueue<>();
+        private int pendingResponses;
+        private boolean readingPaused;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void read() throws IOException {
+            if (channel.read(readBuffer) < 0) {
+                closeQuietly(key);
+                return;
+            }
+            dispatchFrames();
+        }
+
+        private void dispatchFrames() throws IOException {
+            readBuffer.flip();
+            while (!readingPaused && readBuffer.remaining() >= 4) {
+                final int length = readBuffer.getInt(readBuffer.position());
+                if (length < BinaryProtocol.HEADER_LENGTH || length > BinaryProtocol.MAX_FRAME_LENGTH) {
+                    throw new IOException("Invalid frame length: " + length);
+                }
+                if (readBuffer.remaining() < 4 + length) {
+                    break;
+                }
+                // the frame is copied: the read buffer is reused while the request is executed
+                final byte[] frame = new byte[length];
+                readBuffer.position(readBuffer.position() + 4);
+                readBuffer.get(frame);
+                pendingResponses++;
+                dispatch(this, ByteBuffer.wrap(frame));
+                if (pendingResponses >= maxPendingResponses) {
+                    // frames left in the read buffer are dispatched when reading is resumed
+                    readingPaused = true;
+                    updateInterestOps();
+                }
+            }
+            readBuffer.compact();
+        }
+
+        void send(ByteBuffer response) {
+            response.putInt(0, response.position() - 4);
+            response.flip();
+            responses.add(response);
+            connectionsToFlush.add(this);
+            selector.wakeup();
+        }
+
+        /**
+         * Write queued responses, must be called by the selector thread.
+         */
+        void flush() {
+            if (!key.isValid()) {
+                responses.clear();
+                return;
+            }
+            try {
+                ByteBuffer response;
+                while ((response = responses.peek()) != null) {
+                    channel.write(response);
+                    if (response.hasRemaining()) {
+                        // the socket buffer is full, continue when it becomes writable
+                        break;
+                    }
+                    responses.poll();
+                    pendingResponses--;
+                }
+                if (readingPaused && pendingResponses <= maxPendingResponses / 2) {
+                    readingPaused = false;
+                    dispatchFrames();
+                }
+                updateInterestOps();
+            } catch (IOException e) {
+                log.warn("Closing binary connection [error message: {}]", e.getMessage());
+                closeQuietly(key);
+            }
+        }
+
+        private void updateInterestOps() {
+            if (key.isValid()) {
+                key.interestOps((readingPaused ? 0 : SelectionKey.OP_READ)
+                        | (responses.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package task.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Background writer fed by {@link MpscRingBuffer}: elements offered from any threads are handed over to the sink in
+ * batches of up to {@code batchSize} elements by the only writer thread, so slow output (formatting, appenders,
+ * database inserts) never blocks producers. When the buffer is empty the writer parks until a producer signals the
+ * next element, so an idle writer costs nothing.
+ * <p>
+ * An offered element is either refused or written, never lost, see {@link RingBufferConsumer}.
+ *
+ * @param <E> type of elements
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@ThreadSafe
+public class BatchingWriter<E> extends RingBufferConsumer<E> {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchingWriter.class);
+
+    private final int batchSize;
+    private final Consumer<? super List<E>> sink;
+    // accessed by the writer thread only
+    private final List<E> batch;
+
+    /**
+     * @param name      writer thread name
+     * @param capacity  ring buffer capacity, must be a power of two
+     * @param batchSize max number of elements passed to the sink at once
+     * @param sink      consumer of batches, it is called by the writer thread only and the batch is reused after
+     *                  the call
+     */
+    public BatchingWriter(String name, int capacity, int batchSize, Consumer<? super List<E>> sink) {
+        super(name, capacity, 0, 0, 0);
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size is not positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        this.sink = sink;
+        this.batch = new ArrayList<>(batchSize);
+        start();
+    }
+
+    /**
+     * Offer the element without waiting.
+     *
+     * @param element element
+     * @return {@code false} if the buffer is full or the writer is closed
+     */
+    public boolean offer(E element) {
+        return offer(element, false);
+    }
+
+    /**
+     * Offer the element, waiting for free space if the buffer is full.
+     *
+     * @param element element
+     * @return {@code false} if the writer is closed
+     */
+    public boolean put(E element) {
+        return offer(element, true);
+    }
+
+    @Override
+    protected boolean consume() {
+        E element;
+        while (batch.size() < batchSize && (element = poll()) != null) {
+            batch.add(element);
+        }
+        if (batch.isEmpty()) {
+            return false;
+        }
+        try {
+            sink.accept(batch);
+        } catch (RuntimeException e) {
+            // the sink is expected to handle its own failures, but it must not kill the writer anyway
+            log.error("Failed to write batch [writer: {}, count: {}, error message: {}]", getWorker().getName(),
+                    batch.size(), e.getMessage(), e);
+        }
+        batch.clear();
+        return true;
+    }
+}
@@ -0,0 +1,111 @@
+package task.concurrent;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free multi-producer single-consumer queue over a preallocated array.
+ * <p>
+ * Every slot carries a sequence number telling whose turn it is: a producer may fill slot {@code i} at position
+ * {@code p} once its sequence is {@code p}, the consumer may take it once its sequence is {@code p + 1}. Producers
+ * claim positions with a single CAS on the tail, the consumer doesn't need any atomic read-modify-write at all.
+ * No memory is allocated after construction.
+ * <p>
+ * {@link #offer(Object)} may be called by any thread, {@link #poll()} and {@link #isEmpty()} - by the consumer thread
+ * only.
+ *
+ * @param <E> element type
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@ThreadSafe
+public class MpscRingBuffer<E> {
+
+    private final int mask;
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    /**
+     * @param capacity max number of elements, must be a power of two
+     */
+    public MpscRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity is not a positive power of two: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.elements = new Object[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; ++i) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Insert the element if there is free space.
+     *
+     * @param element element
+     * @return {@code true} if the element has been inserted, {@code false} if the buffer is full
+     */
+    public boolean offer(E element) {
+        Objects.requireNonNull(element, "element is null");
+        while (true) {
+            final long position = tail.get();
+            final int index = (int) (position & mask);
+            final long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements[index] = element;
+                    // volatile write publishes the element and orders it before the consumer wake-up check
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                // the slot still holds the element of the previous lap
+                return false;
+            }
+            // otherwise another producer has claimed the position, retry with the new tail
+        }
+    }
+
+    /**
+     * Take the oldest element. Must be called by the consumer thread only.
+     *
+     * @return element or {@code null} if the buffer is empty
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        final int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        final E element = (E) elements[index];
+        elements[index] = null;
+        // the slot becomes available to the producer of the next lap
+        sequences.lazySet(index, head + elements.length);
+        ++head;
+        return element;
+    }
+
+    /**
+     * Check whether there is no published element. Must be called by the consumer thread only.
+     *
+     * @return {@code true} if the buffer is empty
+     */
+    public boolean isEmpty() {
+        return sequences.get((int) (head & mask)) != head + 1;
+    }
+
+    /**
+     * Return max number of elements.
+     *
+     * @return capacity
+     */
+    public int capacity() {
+        return elements.length;
+    }
+}
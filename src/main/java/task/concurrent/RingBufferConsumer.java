@@ -0,0 +1,165 @@
+package task.concurrent;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Base of single-threaded consumers fed by {@link MpscRingBuffer}: elements offered from any threads are consumed in
+ * offer order by the only worker thread. When the buffer is empty the worker spins for {@code idleSpins} rounds, then
+ * yields the processor for {@code idleYields} rounds (spinning alone would starve producers when there are fewer
+ * cores than threads) and finally parks until a producer signals the next element. Producers waiting for free space
+ * park for a short time.
+ * <p>
+ * An offered element is either refused or consumed, never both: a producer checks the consumer is running before the
+ * element is offered, and on {@link #close()} the worker doesn't stop until producers which have passed the check
+ * finish offering their elements and the buffer is drained.
+ * <p>
+ * A subclass must call {@link #start()} at the end of its constructor, so the worker never sees it half-constructed.
+ *
+ * @param <E> type of elements
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@ThreadSafe
+public abstract class RingBufferConsumer<E> implements AutoCloseable {
+
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final MpscRingBuffer<E> ringBuffer;
+    private final int idleSpins;
+    private final int idleYields;
+    private final long idleParkNanos;
+    private final Thread worker;
+    // producers between the running check and the end of the offer
+    private final LongAdder producers = new LongAdder();
+    private volatile boolean sleeping;
+    private volatile boolean running = true;
+
+    /**
+     * @param name          worker thread name
+     * @param capacity      ring buffer capacity, must be a power of two
+     * @param idleSpins     number of rounds the idle worker busy spins
+     * @param idleYields    number of rounds the idle worker yields the processor after spinning
+     * @param idleParkNanos max time the idle worker parks for at once, 0 - till a producer signals the next element
+     */
+    protected RingBufferConsumer(String name, int capacity, int idleSpins, int idleYields, long idleParkNanos) {
+        this.ringBuffer = new MpscRingBuffer<>(capacity);
+        this.idleSpins = idleSpins;
+        this.idleYields = idleYields;
+        this.idleParkNanos = idleParkNanos;
+        this.worker = new Thread(this::work, name);
+        worker.setDaemon(true);
+    }
+
+    /**
+     * Start the worker thread.
+     */
+    protected final void start() {
+        worker.start();
+    }
+
+    /**
+     * Return the worker thread.
+     *
+     * @return worker thread
+     */
+    public Thread getWorker() {
+        return worker;
+    }
+
+    /**
+     * Offer the element to the ring buffer.
+     *
+     * @param element element
+     * @param wait    whether to wait for free space if the buffer is full
+     * @return {@code false} if the consumer is closed or the buffer is full and {@code wait} is {@code false}
+     */
+    protected final boolean offer(E element, boolean wait) {
+        producers.increment();
+        try {
+            if (!running) {
+                return false;
+            }
+            while (!ringBuffer.offer(element)) {
+                if (!wait || !running) {
+                    // the element hasn't been offered, so it is safe to refuse it
+                    return false;
+                }
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+            }
+        } finally {
+            producers.decrement();
+        }
+        if (sleeping) {
+            LockSupport.unpark(worker);
+        }
+        return true;
+    }
+
+    /**
+     * Take the next element from the ring buffer, it must be called by the worker thread only.
+     *
+     * @return the next element or {@code null} if the buffer is empty
+     */
+    @Nullable
+    protected final E poll() {
+        return ringBuffer.poll();
+    }
+
+    /**
+     * Consume elements available in the ring buffer (see {@link #poll()}). It is called by the worker thread only and
+     * must not throw.
+     *
+     * @return whether any element has been consumed
+     */
+    protected abstract boolean consume();
+
+    private void work() {
+        int idleCount = 0;
+        while (true) {
+            if (consume()) {
+                idleCount = 0;
+            } else if (!running) {
+                // the counter is read before the buffer, so an element offered by a producer that saw the consumer
+                // running is either counted or already visible in the buffer
+                if (producers.sum() == 0 && ringBuffer.isEmpty()) {
+                    return;
+                }
+                Thread.yield();
+            } else if (idleCount < idleSpins + idleYields) {
+                // busy spin first: the lowest latency when the next element is about to arrive
+                if (++idleCount > idleSpins) {
+                    Thread.yield();
+                }
+            } else {
+                sleeping = true;
+                // re-check after announcing the sleep, so an element offered concurrently is not missed
+                if (ringBuffer.isEmpty() && running) {
+                    if (idleParkNanos > 0) {
+                        LockSupport.parkNanos(this, idleParkNanos);
+                    } else {
+                        LockSupport.park(this);
+                    }
+                }
+                sleeping = false;
+            }
+        }
+    }
+
+    /**
+     * Stop accepting new elements and wait for the worker to consume already offered ones.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package task.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded executor fed by {@link MpscRingBuffer}: tasks submitted from any threads are executed one by one in
+ * submission order by the only worker thread. When the buffer is empty the worker spins for a while, then yields the
+ * processor and finally parks for a short time until the next task arrives. Producers wait while the buffer is full.
+ * <p>
+ * A submitted task is either rejected or executed, never both, see {@link RingBufferConsumer}.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@ThreadSafe
+public class RingBufferExecutor extends RingBufferConsumer<Runnable> implements Executor {
+
+    private static final Logger log = LoggerFactory.getLogger(RingBufferExecutor.class);
+
+    private static final int IDLE_SPINS = 100;
+    private static final int IDLE_YIELDS = 100;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * @param name     worker thread name
+     * @param capacity ring buffer capacity, must be a power of two
+     */
+    public RingBufferExecutor(String name, int capacity) {
+        super(name, capacity, IDLE_SPINS, IDLE_YIELDS, IDLE_PARK_NANOS);
+        start();
+    }
+
+    /**
+     * Submit the task to the ring buffer, waiting for free space if it is full.
+     *
+     * @param task task
+     * @throws RejectedExecutionException if the executor is closed
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (!offer(task, true)) {
+            throw new RejectedExecutionException("Executor is closed: " + getWorker().getName());
+        }
+    }
+
+    @Override
+    protected boolean consume() {
+        final Runnable task = poll();
+        if (task == null) {
+            return false;
+        }
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            log.error("Task has failed [worker: {}, error message: {}]", getWorker().getName(), e.getMessage(), e);
+        }
+        return true;
+    }
+}
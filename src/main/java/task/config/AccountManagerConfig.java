@@ -1,21 +1,40 @@
 package task.config;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import task.dao.AccountDao;
+import task.dao.IdempotencyKeyDao;
+import task.dao.JournalDao;
+import task.manager.AccountAggregates;
 import task.manager.AccountManager;
+import task.manager.TransferStageTimers;
 
 /**
  * @author Anton Kotov (kotov-anton@yandex.ru)
  */
 @Configuration
 public class AccountManagerConfig {
+    @Value("${account.journal.enabled:true}")
+    private boolean journalEnabled;
+
     @Autowired
     private AccountDao accountDao;
+    @Autowired
+    private IdempotencyKeyDao idempotencyKeyDao;
+    @Autowired
+    private JournalDao journalDao;
+    @Autowired
+    private ObjectProvider<TransferStageTimers> transferStageTimers;
+    @Autowired
+    private ObjectProvider<AccountAggregates> accountAggregates;
 
     @Bean
     public AccountManager accountManager() {
-        return new AccountManager(accountDao);
+        return new AccountManager(accountDao, idempotencyKeyDao,
+                transferStageTimers.getIfAvailable(TransferStageTimers::disabled),
+                accountAggregates.getIfAvailable(AccountAggregates::disabled), journalEnabled ? journalDao : null);
     }
 }
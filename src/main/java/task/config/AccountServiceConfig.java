@@ -1,16 +1,24 @@
 package task.config;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import task.dao.AccountDao;
+import task.dao.TransferIntentDao;
 import task.manager.AccountManager;
+import task.manager.TransferStageTimers;
 import task.service.AccountService;
 import task.service.AccountServiceImpl;
+import task.service.AuditPipeline;
 import task.service.GuavaCacheOrderedLocksProvider;
 import task.service.LocksArrayOrderedLocksProvider;
 import task.service.OrderedLocksProvider;
+import task.service.PartitionedAccountService;
+import task.service.ServiceEventLog;
 
 /**
  * @author Anton Kotov (kotov-anton@yandex.ru)
@@ -18,17 +26,64 @@ import task.service.OrderedLocksProvider;
 @Configuration
 public class AccountServiceConfig {
 
+    /**
+     * Implementation of {@link AccountService}.
+     */
+    public enum Engine {
+        /**
+         * {@link AccountServiceImpl}: transfers are executed by calling threads guarded by account locks.
+         */
+        LOCKING,
+        /**
+         * {@link PartitionedAccountService}: transfers are executed by single-threaded partition workers.
+         */
+        PARTITIONED
+    }
+
+    @Value("${account.service.engine:LOCKING}")
+    private Engine engine;
+    @Value("${account.service.partitioned.partitions:0}")
+    private int partitions;
+    @Value("${account.service.partitioned.ringBufferSize:1024}")
+    private int ringBufferSize;
+    @Value("${account.service.partitioned.recoveryIntervalSeconds:10}")
+    private long recoveryIntervalSeconds;
     @Value("${account.service.useGuavaCacheOrderedLocksProvider:false}")
     private boolean useGuavaCacheOrderedLocksProvider;
+    @Value("${account.service.lockingMode:JVM}")
+    private AccountServiceImpl.LockingMode lockingMode;
 
     @Autowired
     private AccountDao accountDao;
     @Autowired
     private AccountManager accountManager;
+    @Autowired
+    private TransferIntentDao transferIntentDao;
+    @Autowired
+    private PlatformTransactionManager txManager;
+    @Autowired
+    private ObjectProvider<ServiceEventLog> serviceEventLog;
+    @Autowired
+    private ObjectProvider<TransferStageTimers> transferStageTimers;
+    @Autowired
+    private ObjectProvider<AuditPipeline> auditPipeline;
 
     @Bean
     public AccountService accountService() {
-        return new AccountServiceImpl(accountManager, accountDao, orderedLocksProvider());
+        if (engine == Engine.PARTITIONED) {
+            // a partition per core by default: workers never block on each other
+            final int nPartitions = partitions > 0 ? partitions : Runtime.getRuntime().availableProcessors();
+            return new PartitionedAccountService(accountManager, accountDao, transferIntentDao,
+                    new TransactionTemplate(txManager), nPartitions, ringBufferSize,
+                    serviceEventLog.getIfAvailable(ServiceEventLog::failuresOnly),
+                    auditPipeline.getIfAvailable(AuditPipeline::disabled), recoveryIntervalSeconds);
+        }
+        // without EventLogConfig, MetricsConfig and AuditConfig (e.g. in benchmarks) only failures are logged, nothing
+        // is timed or audited
+        return new AccountServiceImpl(accountManager, accountDao, orderedLocksProvider(), lockingMode,
+                serviceEventLog.getIfAvailable(ServiceEventLog::failuresOnly),
+                transferStageTimers.getIfAvailable(TransferStageTimers::disabled),
+                auditPipeline.getIfAvailable(AuditPipeline::disabled));
     }
 
     @Bean
@@ -0,0 +1,56 @@
+package task.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import task.manager.AccountAggregates;
+import task.manager.AccountManager;
+import task.rest.AccountAggregatesEndpoint;
+import task.service.AccountShard;
+import task.service.AccountShards;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Configuration
+public class AggregatesConfig {
+
+    @Value("${account.aggregates.bucketBounds:1,100,10000,1000000}")
+    private BigDecimal[] bucketBounds;
+
+    @Autowired
+    private ObjectProvider<AccountShards> accountShards;
+
+    @Bean
+    public AccountAggregates accountAggregates(MeterRegistry registry) {
+        return new AccountAggregates(Arrays.asList(bucketBounds), registry);
+    }
+
+    @Bean
+    public AccountAggregatesEndpoint accountAggregatesEndpoint(AccountAggregates accountAggregates,
+                                                               AccountManager accountManager) {
+        final List<AccountManager> accountManagers;
+        final AccountShards shards = accountShards.getIfAvailable();
+        if (shards == null) {
+            accountManagers = Collections.singletonList(accountManager);
+        } else {
+            accountManagers = new ArrayList<>();
+            for (AccountShard shard : shards.getShards()) {
+                accountManagers.add(shard.getAccountManager());
+            }
+        }
+        final AccountAggregatesEndpoint endpoint = new AccountAggregatesEndpoint(accountAggregates, accountManagers);
+        // existing accounts (initial data, file database) are counted once on start, before any request is served
+        accountAggregates.reset(endpoint.scan());
+        return endpoint;
+    }
+}
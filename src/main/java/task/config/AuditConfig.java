@@ -0,0 +1,39 @@
+package task.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import task.dao.AuditDao;
+import task.service.AuditEventPurger;
+import task.service.AuditPipeline;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Configuration
+@ConditionalOnProperty(name = "account.audit.enabled", havingValue = "true", matchIfMissing = true)
+public class AuditConfig {
+
+    @Value("${account.audit.capacity:8192}")
+    private int capacity;
+    @Value("${account.audit.batchSize:256}")
+    private int batchSize;
+    @Value("${account.audit.durable:false}")
+    private boolean durable;
+    @Value("${account.audit.retentionDays:90}")
+    private long retentionDays;
+    @Value("${account.audit.purgeIntervalSeconds:3600}")
+    private long purgeIntervalSeconds;
+
+    @Bean
+    public AuditPipeline auditPipeline(AuditDao auditDao, MeterRegistry registry) {
+        return new AuditPipeline(auditDao, capacity, batchSize, durable, registry);
+    }
+
+    @Bean
+    public AuditEventPurger auditEventPurger(AuditDao auditDao) {
+        return new AuditEventPurger(auditDao, retentionDays, purgeIntervalSeconds);
+    }
+}
@@ -0,0 +1,38 @@
+package task.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import task.binary.BinaryServer;
+import task.service.AccountService;
+import task.service.BoundedExecutor;
+
+import java.io.IOException;
+
+/**
+ * Starts {@link BinaryServer} on a separate port alongside the REST API.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Configuration
+@ConditionalOnProperty(name = "account.binary.enabled", havingValue = "true")
+public class BinaryServerConfig {
+
+    @Value("${account.binary.port:8090}")
+    private int port;
+    @Value("${account.binary.threads:16}")
+    private int threads;
+    @Value("${account.binary.queueCapacity:1000}")
+    private int queueCapacity;
+    @Value("${account.binary.maxPendingResponses:1024}")
+    private int maxPendingResponses;
+
+    @Bean
+    public BinaryServer binaryServer(AccountService accountService, MeterRegistry registry) throws IOException {
+        // the executor is owned and closed by the server, it is not exposed as a bean
+        return new BinaryServer(accountService,
+                new BoundedExecutor("binary", threads, queueCapacity, registry), port, maxPendingResponses);
+    }
+}
@@ -1,10 +1,23 @@
 package task.config;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.mybatis.spring.SqlSessionFactoryBean;
 import org.mybatis.spring.annotation.MapperScan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
@@ -12,8 +25,15 @@ import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 import org.springframework.transaction.annotation.TransactionManagementConfigurer;
+import task.jfr.StatementEventInterceptor;
 
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
 
 /**
  * @author Anton Kotov (kotov-anton@yandex.ru)
@@ -21,26 +41,257 @@ import javax.sql.DataSource;
 @Configuration
 @EnableTransactionManagement
 @MapperScan("task.dao")
-public class DataSourceConfig implements TransactionManagementConfigurer {
+public class DataSourceConfig implements TransactionManagementConfigurer, SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(DataSourceConfig.class);
+
+    /**
+     * Where the database is stored.
+     */
+    public enum Mode {
+        /**
+         * Throwaway in-memory database, all the data is lost on restart.
+         */
+        MEMORY,
+        /**
+         * Persistent database, see {@link HsqlFileDatabase}.
+         */
+        FILE
+    }
+
+    /**
+     * Rows of a result kept in memory, larger results (e.g. account export) are spilled to a temporary file instead of
+     * being materialized in the heap. It is set in every mode: an in-memory database spills to the temporary
+     * directory, so a large export can't exhaust the heap either.
+     */
+    private static final int RESULT_MEMORY_ROWS = 10000;
+
+    @Value("${account.datasource.mode:MEMORY}")
+    private Mode mode;
+    @Value("${account.datasource.file.path:data/accounts}")
+    private String filePath;
+    @Value("${account.datasource.file.durability:SYNC}")
+    private HsqlFileDatabase.Durability durability;
+    @Value("${account.datasource.file.writeDelayMillis:100}")
+    private int writeDelayMillis;
+    @Value("${account.datasource.file.logSizeMb:50}")
+    private int logSizeMb;
+    @Value("${account.datasource.file.checkpointIntervalSeconds:300}")
+    private long checkpointIntervalSeconds;
+
+    @Value("${account.datasource.pool.enabled:false}")
+    private boolean poolEnabled;
+    @Value("${account.datasource.pool.maximumPoolSize:10}")
+    private int maximumPoolSize;
+    @Value("${account.datasource.pool.minimumIdle:10}")
+    private int minimumIdle;
+    @Value("${account.datasource.pool.connectionTimeoutMillis:30000}")
+    private long connectionTimeoutMillis;
+    @Value("${account.datasource.pool.idleTimeoutMillis:600000}")
+    private long idleTimeoutMillis;
+    @Value("${account.datasource.pool.maxLifetimeMillis:1800000}")
+    private long maxLifetimeMillis;
+    @Value("${account.datasource.pool.leakDetectionThresholdMillis:0}")
+    private long leakDetectionThresholdMillis;
+
+    @Value("${account.datasource.mybatis.executorType:SIMPLE}")
+    private ExecutorType executorType;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    // pools created before all singletons are instantiated, their metrics are bound afterwards
+    private final List<HikariDataSource> earlyPools = new ArrayList<>();
+    private boolean singletonsInstantiated;
 
     @Bean
     public DataSource dataSource() {
+        if (poolEnabled) {
+            return pooledDataSource();
+        }
+        if (mode == Mode.FILE) {
+            return fileDatabase().getDataSource();
+        }
         // no need shutdown, EmbeddedDatabaseFactoryBean will take care of this
         EmbeddedDatabaseBuilder builder = new EmbeddedDatabaseBuilder();
         EmbeddedDatabase db = builder
                 .setType(EmbeddedDatabaseType.HSQL)
                 .generateUniqueName(true)
-                .setSeparator("/")
-                .addScript("db/sql/create-db.sql")
-                .addScript("db/sql/insert-data.sql")
                 .build();
+        configure(db);
+        SchemaMigrations.ACCOUNTS.apply(db);
         return db;
     }
 
+    private DataSource pooledDataSource() {
+        if (mode == Mode.FILE) {
+            // the database is shut down by HsqlFileDatabase after the pool is closed
+            return createPool("account-pool", fileDatabase().getUrl());
+        }
+        return createMemoryPool("account-pool", SchemaMigrations.ACCOUNTS);
+    }
+
+    @Bean
+    @Lazy // created in FILE mode only
+    public HsqlFileDatabase fileDatabase() {
+        return createFileDatabase("", SchemaMigrations.ACCOUNTS);
+    }
+
+    /**
+     * Return configured database mode.
+     *
+     * @return database mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Create connection pool over given {@code url} with configured pool settings. The caller is responsible for
+     * closing the pool.
+     *
+     * @param poolName pool name, it is used as {@code pool} tag of the pool metrics
+     * @param url      database url
+     * @return connection pool
+     */
+    public HikariDataSource createPool(String poolName, String url) {
+        return register(new HikariDataSource(poolConfig(poolName, url)));
+    }
+
+    private HikariConfig poolConfig(String poolName, String url) {
+        final HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setJdbcUrl(url);
+        config.setUsername("SA");
+        config.setPassword("");
+        config.setMaximumPoolSize(maximumPoolSize);
+        config.setMinimumIdle(minimumIdle);
+        config.setConnectionTimeout(connectionTimeoutMillis);
+        config.setIdleTimeout(idleTimeoutMillis);
+        config.setMaxLifetime(maxLifetimeMillis);
+        config.setLeakDetectionThreshold(leakDetectionThresholdMillis);
+        return config;
+    }
+
+    private HikariDataSource register(HikariDataSource dataSource) {
+        synchronized (earlyPools) {
+            if (singletonsInstantiated) {
+                bindMetrics(dataSource);
+            } else {
+                earlyPools.add(dataSource);
+            }
+        }
+        return dataSource;
+    }
+
+    /**
+     * The data source is created early for {@link TransactionManagementConfigurer}: the meter registry must not be
+     * created at that moment, otherwise it misses meter filters (e.g. percentile histograms) applied by bean post
+     * processors.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        synchronized (earlyPools) {
+            singletonsInstantiated = true;
+            earlyPools.forEach(this::bindMetrics);
+            earlyPools.clear();
+        }
+    }
+
+    private void bindMetrics(HikariDataSource dataSource) {
+        if (dataSource.getMetricsTrackerFactory() != null) {
+            return; // the bean has been already bound by spring boot
+        }
+        // exports pool usage, pending threads and connection acquire (wait) time as hikaricp.* metrics
+        meterRegistry.ifAvailable(registry ->
+                dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+    }
+
+    /**
+     * Create new in-memory database with given schema and return connection pool over it. The database is dropped
+     * once the pool is closed.
+     *
+     * @param poolName   pool name
+     * @param migrations schema of the database
+     * @return connection pool
+     */
+    public HikariDataSource createMemoryPool(String poolName, SchemaMigrations migrations) {
+        final HikariDataSource dataSource = register(
+                new MemoryPool(poolConfig(poolName, "jdbc:hsqldb:mem:" + UUID.randomUUID())));
+        configure(dataSource);
+        migrations.apply(dataSource);
+        return dataSource;
+    }
+
+    /**
+     * Create or open file database at configured path plus {@code pathSuffix} with configured durability settings.
+     * The caller is responsible for closing the database.
+     *
+     * @param pathSuffix suffix appended to the configured path
+     * @param migrations schema of the database, missing migrations are applied to an existing database
+     * @return file database
+     */
+    public HsqlFileDatabase createFileDatabase(String pathSuffix, SchemaMigrations migrations) {
+        return new HsqlFileDatabase(filePath + pathSuffix, durability, writeDelayMillis, logSizeMb,
+                checkpointIntervalSeconds, migrations);
+    }
+
+    /**
+     * Apply the database settings which don't depend on the mode, they are persisted by a file database.
+     * <p>
+     * The database runs in the two-phase locking mode, where a statement locks whole tables until the end of the
+     * transaction: {@code SELECT ... FOR UPDATE} of one account blocks transfers of every other account, so the
+     * {@code DATABASE} locking mode serializes transfers. It is set explicitly, since the MVCC mode, which would lock
+     * rows only, doesn't keep rows selected for update from being read and overwritten by concurrent transactions:
+     * the row-locking transfer loses updates in it.
+     *
+     * @param dataSource data source of the database
+     */
+    static void configure(DataSource dataSource) {
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("SET DATABASE TRANSACTION CONTROL LOCKS");
+        jdbcTemplate.execute("SET DATABASE DEFAULT RESULT MEMORY ROWS " + RESULT_MEMORY_ROWS);
+    }
+
+    /**
+     * Pool over an in-memory database which is shut down together with the pool. The database url must not have
+     * {@code shutdown=true}: the database would be dropped as soon as the pool closes its last connection, e.g. when
+     * idle connections are evicted.
+     */
+    private static final class MemoryPool extends HikariDataSource {
+
+        MemoryPool(HikariConfig config) {
+            super(config);
+        }
+
+        @Override
+        public void close() {
+            if (isClosed()) {
+                return;
+            }
+            try (Connection connection = getConnection(); Statement statement = connection.createStatement()) {
+                statement.execute("SHUTDOWN");
+            } catch (SQLException e) {
+                log.error("Failed to shutdown database [url: {}, error message: {}]", getJdbcUrl(), e.getMessage());
+            }
+            super.close();
+        }
+    }
+
     @Bean
     public SqlSessionFactory sqlSessionFactory() throws Exception {
+        if (executorType == ExecutorType.BATCH) {
+            // batch executor doesn't return number of updated rows that AccountManager relies on
+            throw new IllegalArgumentException("Unsupported mybatis executor type: " + executorType);
+        }
+        // REUSE executor keeps prepared statements open and reuses them within a session (i.e. a transaction)
+        final org.apache.ibatis.session.Configuration configuration = new org.apache.ibatis.session.Configuration();
+        configuration.setDefaultExecutorType(executorType);
+        configuration.addInterceptor(new StatementEventInterceptor());
+
         SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
         factoryBean.setDataSource(dataSource());
+        factoryBean.setConfiguration(configuration);
         return factoryBean.getObject();
     }
 
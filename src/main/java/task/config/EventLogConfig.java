@@ -0,0 +1,48 @@
+package task.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import task.service.ServiceEventLog;
+import task.service.ServiceEventLog.Operation;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Configuration
+public class EventLogConfig {
+
+    @Value("${account.events.capacity:8192}")
+    private int capacity;
+    @Value("${account.events.sampling.create:1.0}")
+    private double createSamplingRate;
+    @Value("${account.events.sampling.get:1.0}")
+    private double getSamplingRate;
+    @Value("${account.events.sampling.getPage:1.0}")
+    private double getPageSamplingRate;
+    @Value("${account.events.sampling.export:1.0}")
+    private double exportSamplingRate;
+    @Value("${account.events.sampling.transfer:0.01}")
+    private double transferSamplingRate;
+    @Value("${account.events.sampling.getHistory:1.0}")
+    private double getHistorySamplingRate;
+    @Value("${account.events.sampling.getBalanceAt:1.0}")
+    private double getBalanceAtSamplingRate;
+
+    @Bean
+    public ServiceEventLog serviceEventLog(MeterRegistry registry) {
+        final Map<Operation, Double> samplingRates = new EnumMap<>(Operation.class);
+        samplingRates.put(Operation.CREATE, createSamplingRate);
+        samplingRates.put(Operation.GET, getSamplingRate);
+        samplingRates.put(Operation.GET_PAGE, getPageSamplingRate);
+        samplingRates.put(Operation.EXPORT, exportSamplingRate);
+        samplingRates.put(Operation.TRANSFER, transferSamplingRate);
+        samplingRates.put(Operation.GET_HISTORY, getHistorySamplingRate);
+        samplingRates.put(Operation.GET_BALANCE_AT, getBalanceAtSamplingRate);
+        return new ServiceEventLog(capacity, samplingRates, registry);
+    }
+}
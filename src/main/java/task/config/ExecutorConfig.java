@@ -0,0 +1,57 @@
+package task.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import task.service.AccountService;
+import task.service.AsyncAccountService;
+import task.service.AsyncAccountServiceImpl;
+import task.service.BoundedExecutor;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Configuration
+public class ExecutorConfig {
+
+    @Value("${account.transfer.async.threads:16}")
+    private int transferThreads;
+    @Value("${account.transfer.async.queueCapacity:1000}")
+    private int transferQueueCapacity;
+
+    @Value("${account.service.async.readThreads:8}")
+    private int readThreads;
+    @Value("${account.service.async.readQueueCapacity:10000}")
+    private int readQueueCapacity;
+    @Value("${account.service.async.writeThreads:16}")
+    private int writeThreads;
+    @Value("${account.service.async.writeQueueCapacity:10000}")
+    private int writeQueueCapacity;
+    @Value("${account.service.async.virtual.maxOperations:10000}")
+    private int virtualMaxOperations;
+
+    @Bean
+    public BoundedExecutor transferExecutor(MeterRegistry registry) {
+        return new BoundedExecutor("transfer", transferThreads, transferQueueCapacity, registry);
+    }
+
+    @Autowired
+    private ThreadingConfig threadingConfig;
+
+    @Bean
+    public AsyncAccountService asyncAccountService(AccountService accountService, MeterRegistry registry) {
+        // the executors are owned and closed by the service, they are not exposed as beans
+        final BoundedExecutor virtualThreadsExecutor =
+                threadingConfig.newVirtualThreadExecutor("account", virtualMaxOperations, registry);
+        if (virtualThreadsExecutor != null) {
+            // pending operations park cheaply on locks and connection pool instead of waiting in a queue, their
+            // number is still bounded, so overload is rejected rather than growing memory
+            return new AsyncAccountServiceImpl(accountService, virtualThreadsExecutor, virtualThreadsExecutor);
+        }
+        return new AsyncAccountServiceImpl(accountService,
+                new BoundedExecutor("account-read", readThreads, readQueueCapacity, registry),
+                new BoundedExecutor("account-write", writeThreads, writeQueueCapacity, registry));
+    }
+}
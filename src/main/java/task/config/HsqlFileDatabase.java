@@ -0,0 +1,126 @@
+package task.config;
+
+import org.hsqldb.jdbc.JDBCDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+
+import javax.sql.DataSource;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent HSQL database stored in files under given {@code path}. All tables are created as CACHED, so only a part
+ * of rows is kept in memory, the rest is read from the {@code .data} file on demand.
+ * <p>
+ * Every commit is appended to the {@code .log} file. The log is synced to disk either on every commit
+ * ({@link Durability#SYNC}) or at most every {@code writeDelayMillis} ({@link Durability#BOUNDED_DELAY}), in the latter
+ * case a crash may lose commits made within that window. The log is merged into the data file by a checkpoint when it
+ * grows beyond {@code logSizeMb} megabytes and every {@code checkpointIntervalSeconds}, which bounds the restart time.
+ * <p>
+ * The schema is migrated every time the database is opened, see {@link SchemaMigrations}.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class HsqlFileDatabase implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(HsqlFileDatabase.class);
+
+    /**
+     * Defines when committed transactions are synced to disk.
+     */
+    public enum Durability {
+        /**
+         * The log is synced on every commit: no committed transaction is lost on crash.
+         */
+        SYNC,
+        /**
+         * The log is synced with a bounded delay: much faster commits at the cost of the last few milliseconds of
+         * committed transactions on crash.
+         */
+        BOUNDED_DELAY
+    }
+
+    private final String url;
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final ScheduledExecutorService checkpointScheduler;
+
+    public HsqlFileDatabase(String path, Durability durability, int writeDelayMillis, int logSizeMb,
+                            long checkpointIntervalSeconds, SchemaMigrations migrations) {
+        this.url = "jdbc:hsqldb:file:" + path;
+        this.dataSource = new SimpleDriverDataSource(new JDBCDriver(), url, "SA", "");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+
+        jdbcTemplate.execute("SET DATABASE DEFAULT TABLE TYPE CACHED");
+        jdbcTemplate.execute(durability == Durability.SYNC
+                ? "SET FILES WRITE DELAY FALSE"
+                : "SET FILES WRITE DELAY " + writeDelayMillis + " MILLIS");
+        jdbcTemplate.execute("SET FILES LOG SIZE " + logSizeMb);
+        DataSourceConfig.configure(dataSource);
+
+        migrations.apply(dataSource);
+        log.info("Database has been opened [url: {}, durability: {}, writeDelayMillis: {}, logSizeMb: {}, " +
+                        "checkpointIntervalSeconds: {}]",
+                url, durability, writeDelayMillis, logSizeMb, checkpointIntervalSeconds);
+
+        if (checkpointIntervalSeconds > 0) {
+            checkpointScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "hsql-checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            });
+            checkpointScheduler.scheduleWithFixedDelay(this::checkpoint,
+                    checkpointIntervalSeconds, checkpointIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            checkpointScheduler = null;
+        }
+    }
+
+    /**
+     * Return JDBC url of the database.
+     *
+     * @return JDBC url
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Return non-pooled data source of the database.
+     *
+     * @return data source
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Merge the log into the data file. Transactions are blocked while checkpoint is in progress.
+     */
+    public void checkpoint() {
+        try {
+            final long start = System.nanoTime();
+            jdbcTemplate.execute("CHECKPOINT");
+            log.info("Checkpoint has been completed [url: {}, time ms: {}]",
+                    url, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (RuntimeException e) {
+            log.error("Failed to checkpoint database [url: {}, error message: {}]", url, e.getMessage());
+        }
+    }
+
+    /**
+     * Stop periodic checkpoints and shutdown the database with the final checkpoint, so the next start doesn't need
+     * to replay the log.
+     */
+    @Override
+    public void close() {
+        if (checkpointScheduler != null) {
+            checkpointScheduler.shutdownNow();
+        }
+        jdbcTemplate.execute("SHUTDOWN");
+        log.info("Database has been shut down [url: {}]", url);
+    }
+}
@@ -0,0 +1,40 @@
+package task.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import task.manager.AccountManager;
+import task.service.IdempotencyKeyPurger;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Configuration
+public class IdempotencyConfig {
+
+    @Value("${account.idempotency.ttlSeconds:86400}")
+    private long ttlSeconds;
+    @Value("${account.idempotency.maxKeys:1000000}")
+    private long maxKeys;
+    @Value("${account.idempotency.purgeIntervalSeconds:60}")
+    private long purgeIntervalSeconds;
+
+    @Bean
+    public IdempotencyKeyPurger idempotencyKeyPurger(AccountManager accountManager) {
+        return createPurger(Collections.singletonList(accountManager));
+    }
+
+    /**
+     * Create purger of the stores of given account managers with configured settings. The caller is responsible for
+     * closing the purger.
+     *
+     * @param accountManagers account managers of the stores
+     * @return purger
+     */
+    public IdempotencyKeyPurger createPurger(List<AccountManager> accountManagers) {
+        return new IdempotencyKeyPurger(accountManagers, ttlSeconds, maxKeys, purgeIntervalSeconds);
+    }
+}
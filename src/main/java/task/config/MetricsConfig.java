@@ -2,9 +2,13 @@ package task.config;
 
 import io.micrometer.core.aop.TimedAspect;
 import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jersey.ResourceConfigCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import task.manager.TransferStageTimers;
+import task.rest.ResourceUsageListener;
 
 /**
  * @author Anton Kotov (kotov-anton@yandex.ru)
@@ -13,9 +17,23 @@ import org.springframework.context.annotation.EnableAspectJAutoProxy;
 @EnableAspectJAutoProxy
 public class MetricsConfig {
 
+    @Value("${account.metrics.transferStages.enabled:true}")
+    private boolean transferStagesEnabled;
+    @Value("${account.metrics.requestUsage.samplingRate:0.1}")
+    private double requestUsageSamplingRate;
+
     @Bean
     public TimedAspect timedAspect(MeterRegistry registry) {
         return new TimedAspect(registry);
     }
 
+    @Bean
+    public TransferStageTimers transferStageTimers(MeterRegistry registry) {
+        return transferStagesEnabled ? new TransferStageTimers(registry) : TransferStageTimers.disabled();
+    }
+
+    @Bean
+    public ResourceConfigCustomizer resourceUsageCustomizer(MeterRegistry registry) {
+        return config -> config.register(new ResourceUsageListener(registry, requestUsageSamplingRate));
+    }
 }
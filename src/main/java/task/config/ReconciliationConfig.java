@@ -0,0 +1,65 @@
+package task.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import task.manager.AccountManager;
+import task.rest.ReconciliationEndpoint;
+import task.service.AccountShard;
+import task.service.AccountShards;
+import task.service.BalanceReconciler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Configuration
+@ConditionalOnProperty(name = "account.journal.enabled", havingValue = "true", matchIfMissing = true)
+public class ReconciliationConfig {
+
+    @Value("${account.reconciliation.parallelism:2}")
+    private int parallelism;
+    @Value("${account.reconciliation.chunkSize:10000}")
+    private int chunkSize;
+    @Value("${account.reconciliation.accountsPerSecond:10000}")
+    private double accountsPerSecond;
+    @Value("${account.reconciliation.maxReported:100}")
+    private int maxReported;
+    @Value("${account.reconciliation.intervalSeconds:86400}")
+    private long intervalSeconds;
+    @Value("${account.reconciliation.checkpoints:true}")
+    private boolean checkpoints;
+    @Value("${account.reconciliation.archiveAfterDays:0}")
+    private long archiveAfterDays;
+
+    @Autowired
+    private ObjectProvider<AccountShards> accountShards;
+
+    @Bean
+    public BalanceReconciler balanceReconciler(AccountManager accountManager) {
+        final List<AccountManager> accountManagers;
+        final AccountShards shards = accountShards.getIfAvailable();
+        if (shards == null) {
+            accountManagers = Collections.singletonList(accountManager);
+        } else {
+            accountManagers = new ArrayList<>();
+            for (AccountShard shard : shards.getShards()) {
+                accountManagers.add(shard.getAccountManager());
+            }
+        }
+        return new BalanceReconciler(accountManagers, parallelism, chunkSize, accountsPerSecond, maxReported,
+                intervalSeconds, checkpoints, TimeUnit.DAYS.toMillis(archiveAfterDays));
+    }
+
+    @Bean
+    public ReconciliationEndpoint reconciliationEndpoint(BalanceReconciler balanceReconciler) {
+        return new ReconciliationEndpoint(balanceReconciler);
+    }
+}
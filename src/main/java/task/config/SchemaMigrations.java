@@ -0,0 +1,166 @@
+package task.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.annotation.concurrent.Immutable;
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Versioned schema of a database. Every migration is a script applied at most once: applied versions are recorded in
+ * the {@code SCHEMA_VERSION} table, so a database opened by a newer release gets only the migrations it misses, e.g.
+ * tables and columns added since the database was created.
+ * <p>
+ * Databases created before versions were recorded have no {@code SCHEMA_VERSION} table, so every migration also has
+ * a guard which detects that its objects already exist. A migration whose guard holds is recorded without running
+ * the script.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Immutable
+public final class SchemaMigrations {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaMigrations.class);
+
+    private static final Migration ACCOUNT = new Migration(1, "db/sql/create-db.sql", tableExists("ACCOUNT"));
+    private static final Migration INTENT_LOG =
+            new Migration(2, "db/sql/create-intent-log.sql", tableExists("TRANSFER_INTENT"));
+    private static final Migration IDEMPOTENCY =
+            new Migration(3, "db/sql/create-idempotency.sql", tableExists("IDEMPOTENCY_KEY"));
+    private static final Migration JOURNAL =
+            new Migration(4, "db/sql/create-journal.sql", tableExists("JOURNAL_ENTRY"));
+    private static final Migration JOURNAL_HISTORY =
+            new Migration(5, "db/sql/alter-journal-history.sql", columnExists("JOURNAL_ENTRY", "BALANCE"));
+    private static final Migration IDEMPOTENCY_OUTCOME =
+            new Migration(6, "db/sql/alter-idempotency-outcome.sql", columnExists("IDEMPOTENCY_KEY", "STATE"));
+    private static final Migration AUDIT = new Migration(7, "db/sql/create-audit.sql", tableExists("AUDIT_EVENT"));
+    private static final Migration JOURNAL_CHECKPOINT =
+            new Migration(8, "db/sql/create-journal-checkpoint.sql", tableExists("JOURNAL_CHECKPOINT"));
+    // initial data is inserted into a new database only
+    private static final Migration DATA = new Migration(9, "db/sql/insert-data.sql", hasRows("ACCOUNT"));
+    private static final Migration AUDIT_RETENTION =
+            new Migration(10, "db/sql/create-audit-retention.sql", indexExists("AUDIT_EVENT_CREATED_AT_IDX"));
+
+    /**
+     * Schema of the accounts database.
+     */
+    public static final SchemaMigrations ACCOUNTS = new SchemaMigrations(ACCOUNT, INTENT_LOG, IDEMPOTENCY, JOURNAL,
+            JOURNAL_HISTORY, IDEMPOTENCY_OUTCOME, AUDIT, JOURNAL_CHECKPOINT, DATA, AUDIT_RETENTION);
+
+    /**
+     * Schema of a shard: audit events are kept by the accounts database and shards start empty.
+     */
+    public static final SchemaMigrations SHARD = new SchemaMigrations(ACCOUNT, INTENT_LOG, IDEMPOTENCY, JOURNAL,
+            JOURNAL_HISTORY, IDEMPOTENCY_OUTCOME, JOURNAL_CHECKPOINT);
+
+    private final List<Migration> migrations;
+
+    /**
+     * @param migrations migrations in the order they are applied
+     */
+    public SchemaMigrations(Migration... migrations) {
+        this.migrations = Collections.unmodifiableList(Arrays.asList(migrations));
+    }
+
+    /**
+     * Apply the migrations which haven't been applied to the database yet. It must not be called concurrently for the
+     * same database.
+     *
+     * @param dataSource data source of the database
+     */
+    public void apply(DataSource dataSource) {
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS SCHEMA_VERSION (" +
+                "VERSION INTEGER NOT NULL, " +
+                "SCRIPT VARCHAR(256) NOT NULL, " +
+                "EXECUTED BOOLEAN NOT NULL, " +
+                "APPLIED_AT BIGINT NOT NULL, " +
+                "CONSTRAINT SCHEMA_VERSION_PK PRIMARY KEY (VERSION))");
+        final Set<Integer> applied =
+                new HashSet<>(jdbcTemplate.queryForList("SELECT VERSION FROM SCHEMA_VERSION", Integer.class));
+        for (Migration migration : migrations) {
+            if (applied.contains(migration.getVersion())) {
+                continue;
+            }
+            // the guard recognizes objects created before versions were recorded
+            final boolean executed = !migration.guard.test(jdbcTemplate);
+            if (executed) {
+                log.info("Applying schema migration [version: {}, script: {}]",
+                        migration.getVersion(), migration.getScript());
+                final ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+                populator.setSeparator("/");
+                populator.addScript(new ClassPathResource(migration.getScript()));
+                populator.execute(dataSource);
+            }
+            jdbcTemplate.update(
+                    "INSERT INTO SCHEMA_VERSION (VERSION, SCRIPT, EXECUTED, APPLIED_AT) VALUES (?, ?, ?, ?)",
+                    migration.getVersion(), migration.getScript(), executed, System.currentTimeMillis());
+        }
+    }
+
+    private static Predicate<JdbcTemplate> tableExists(String table) {
+        return jdbcTemplate -> count(jdbcTemplate,
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_NAME = ?",
+                table) > 0;
+    }
+
+    private static Predicate<JdbcTemplate> columnExists(String table, String column) {
+        return jdbcTemplate -> count(jdbcTemplate,
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_NAME = ? " +
+                        "AND COLUMN_NAME = ?", table, column) > 0;
+    }
+
+    private static Predicate<JdbcTemplate> indexExists(String index) {
+        return jdbcTemplate -> count(jdbcTemplate,
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.SYSTEM_INDEXINFO WHERE TABLE_SCHEM = 'PUBLIC' " +
+                        "AND INDEX_NAME = ?", index) > 0;
+    }
+
+    private static Predicate<JdbcTemplate> hasRows(String table) {
+        return jdbcTemplate -> count(jdbcTemplate, "SELECT COUNT(*) FROM " + table) > 0;
+    }
+
+    private static int count(JdbcTemplate jdbcTemplate, String sql, Object... args) {
+        final Integer count = jdbcTemplate.queryForObject(sql, Integer.class, args);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Script which moves the schema to the next version.
+     */
+    @Immutable
+    public static final class Migration {
+
+        private final int version;
+        private final String script;
+        private final Predicate<JdbcTemplate> guard;
+
+        /**
+         * @param version version of the schema after the script, unique within a schema
+         * @param script  classpath location of the script
+         * @param guard   condition which holds if the objects created by the script already exist
+         */
+        public Migration(int version, String script, Predicate<JdbcTemplate> guard) {
+            this.version = version;
+            this.script = script;
+            this.guard = guard;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public String getScript() {
+            return script;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package task.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.TransactionTemplate;
+import task.dao.AccountDao;
+import task.dao.IdempotencyKeyDao;
+import task.dao.JournalDao;
+import task.dao.TransferIntentDao;
+import task.jfr.StatementEventInterceptor;
+import task.manager.AccountAggregates;
+import task.manager.AccountManager;
+import task.manager.TransferStageTimers;
+import task.service.AccountService;
+import task.service.AccountServiceImpl;
+import task.service.AccountShard;
+import task.service.AccountShards;
+import task.service.AuditPipeline;
+import task.service.IdempotencyKeyPurger;
+import task.service.OrderedLocksProvider;
+import task.service.ServiceEventLog;
+import task.service.ShardedAccountService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the single database behind {@link AccountService} with {@link AccountShards}. Every shard is a separate
+ * pooled database (in-memory or file depending on {@code account.datasource.mode}) with its own mappers and
+ * transaction manager.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Configuration
+@ConditionalOnProperty(name = "account.sharding.enabled", havingValue = "true")
+public class ShardingConfig {
+
+    @Value("${account.sharding.shards:4}")
+    private int shards;
+    @Value("${account.sharding.recoveryIntervalSeconds:10}")
+    private long recoveryIntervalSeconds;
+    @Value("${account.service.lockingMode:JVM}")
+    private AccountServiceImpl.LockingMode lockingMode;
+    @Value("${account.journal.enabled:true}")
+    private boolean journalEnabled;
+
+    @Autowired
+    private DataSourceConfig dataSourceConfig;
+    @Autowired
+    private IdempotencyConfig idempotencyConfig;
+    @Autowired
+    private ObjectProvider<AccountAggregates> accountAggregates;
+    @Autowired
+    private ObjectProvider<ServiceEventLog> serviceEventLog;
+    @Autowired
+    private ObjectProvider<AuditPipeline> auditPipeline;
+
+    @Bean
+    @Primary
+    public AccountService shardedAccountService(OrderedLocksProvider orderedLocksProvider) throws Exception {
+        if (lockingMode != AccountServiceImpl.LockingMode.JVM) {
+            // cross-shard transfers rely on in-process locks to complete intents exactly once
+            throw new IllegalArgumentException("Unsupported locking mode for sharded storage: " + lockingMode);
+        }
+        // audit events of all the shards are kept by the accounts database
+        return new ShardedAccountService(accountShards(), orderedLocksProvider, recoveryIntervalSeconds,
+                serviceEventLog.getIfAvailable(ServiceEventLog::failuresOnly),
+                auditPipeline.getIfAvailable(AuditPipeline::disabled));
+    }
+
+    @Bean
+    public IdempotencyKeyPurger shardIdempotencyKeyPurger() throws Exception {
+        final List<AccountManager> accountManagers = new ArrayList<>();
+        for (AccountShard shard : accountShards().getShards()) {
+            accountManagers.add(shard.getAccountManager());
+        }
+        return idempotencyConfig.createPurger(accountManagers);
+    }
+
+    @Bean
+    public AccountShards accountShards() throws Exception {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("Number of shards is not positive: " + shards);
+        }
+        final List<AccountShard> shardList = new ArrayList<>(shards);
+        final List<AutoCloseable> resources = new ArrayList<>();
+        for (int i = 0; i < shards; ++i) {
+            final String poolName = "account-shard-" + i;
+            final HikariDataSource dataSource;
+            if (dataSourceConfig.getMode() == DataSourceConfig.Mode.FILE) {
+                final HsqlFileDatabase database =
+                        dataSourceConfig.createFileDatabase("-shard-" + i, SchemaMigrations.SHARD);
+                resources.add(database);
+                dataSource = dataSourceConfig.createPool(poolName, database.getUrl());
+            } else {
+                dataSource = dataSourceConfig.createMemoryPool(poolName, SchemaMigrations.SHARD);
+            }
+            // resources are closed in reverse order: the pool before its database
+            resources.add(dataSource);
+            shardList.add(createShard(i, dataSource));
+        }
+        return new AccountShards(shardList, resources);
+    }
+
+    private AccountShard createShard(int index, HikariDataSource dataSource) throws Exception {
+        final org.apache.ibatis.session.Configuration configuration = new org.apache.ibatis.session.Configuration();
+        configuration.addMapper(AccountDao.class);
+        configuration.addMapper(TransferIntentDao.class);
+        configuration.addMapper(IdempotencyKeyDao.class);
+        configuration.addMapper(JournalDao.class);
+        configuration.addInterceptor(new StatementEventInterceptor());
+
+        final SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setConfiguration(configuration);
+        final SqlSessionFactory sqlSessionFactory = factoryBean.getObject();
+
+        // the template binds sessions to transactions of the shard transaction manager
+        final SqlSessionTemplate sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory);
+        final AccountDao accountDao = sqlSessionTemplate.getMapper(AccountDao.class);
+        final TransferIntentDao transferIntentDao = sqlSessionTemplate.getMapper(TransferIntentDao.class);
+        final IdempotencyKeyDao idempotencyKeyDao = sqlSessionTemplate.getMapper(IdempotencyKeyDao.class);
+        final JournalDao journalDao = sqlSessionTemplate.getMapper(JournalDao.class);
+        final DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        final TransactionTemplate transactions = new TransactionTemplate(transactionManager);
+
+        // all the shards share the aggregates, so they cover every account
+        final AccountManager target = new AccountManager(accountDao, idempotencyKeyDao,
+                TransferStageTimers.disabled(), accountAggregates.getIfAvailable(AccountAggregates::disabled),
+                journalEnabled ? journalDao : null);
+        // the manager is not a bean, so its @Transactional methods are bound to the shard transaction manager here
+        final ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(new TransactionInterceptor(transactionManager,
+                new AnnotationTransactionAttributeSource()));
+        final AccountManager accountManager = (AccountManager) proxyFactory.getProxy();
+        return new AccountShard(index, accountDao, transferIntentDao, accountManager, transactions);
+    }
+}
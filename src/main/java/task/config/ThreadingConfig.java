@@ -0,0 +1,107 @@
+package task.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import task.service.BoundedExecutor;
+import task.service.VirtualThreads;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Selects threads which serve requests and asynchronous operations. In {@link Mode#VIRTUAL} mode every HTTP request
+ * (and so {@code AccountService} call made by it) runs on its own virtual thread instead of a thread of the fixed
+ * Tomcat pool, so waiting for account locks or JDBC doesn't cap the number of in-flight requests. Requests above
+ * {@code account.threads.virtual.maxRequests} are still rejected, i.e. their connections are closed, so overload
+ * doesn't turn into unbounded memory. On JDKs without virtual threads the mode falls back to {@link Mode#PLATFORM}.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Configuration
+public class ThreadingConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ThreadingConfig.class);
+
+    /**
+     * Kind of threads.
+     */
+    public enum Mode {
+        /**
+         * Fixed pools of platform threads.
+         */
+        PLATFORM,
+        /**
+         * Virtual thread per task, requires JDK 21+.
+         */
+        VIRTUAL
+    }
+
+    @Value("${account.threads.mode:PLATFORM}")
+    private Mode configuredMode;
+    @Value("${account.threads.virtual.maxRequests:10000}")
+    private int maxRequests;
+
+    private Mode mode;
+    private BoundedExecutor requestExecutor;
+
+    @PostConstruct
+    public void init() {
+        if (configuredMode == Mode.VIRTUAL && !VirtualThreads.isSupported()) {
+            log.warn("Virtual threads are not supported by this JDK, platform threads are used [java version: {}]",
+                    System.getProperty("java.version"));
+            mode = Mode.PLATFORM;
+        } else {
+            mode = configuredMode;
+        }
+    }
+
+    /**
+     * Return effective mode: configured one or {@link Mode#PLATFORM} if virtual threads are not supported.
+     *
+     * @return threads mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Create executor which runs every task on new virtual thread and accepts at most {@code maxTasks} tasks at a
+     * time, the caller is responsible for closing it.
+     *
+     * @param name     executor name
+     * @param maxTasks max number of accepted and not yet completed tasks
+     * @param registry meter registry
+     * @return executor or {@code null} in {@link Mode#PLATFORM} mode
+     */
+    @Nullable
+    public BoundedExecutor newVirtualThreadExecutor(String name, int maxTasks, MeterRegistry registry) {
+        return mode == Mode.VIRTUAL ? BoundedExecutor.virtual(name, maxTasks, registry) : null;
+    }
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> threadsModeTomcatCustomizer(
+            MeterRegistry registry) {
+        return factory -> {
+            requestExecutor = newVirtualThreadExecutor("http", maxRequests, registry);
+            if (requestExecutor != null) {
+                factory.addConnectorCustomizers(connector ->
+                        connector.getProtocolHandler().setExecutor(requestExecutor));
+                log.info("HTTP requests are served by virtual threads [max requests: {}]", maxRequests);
+            }
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (requestExecutor != null) {
+            requestExecutor.close();
+        }
+    }
+}
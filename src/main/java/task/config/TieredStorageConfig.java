@@ -0,0 +1,37 @@
+package task.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import task.dao.AccountDao;
+import task.dao.TieredAccountDao;
+import task.service.AccountServiceImpl;
+
+/**
+ * Puts {@link TieredAccountDao} in front of the mybatis generated {@link AccountDao}.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Configuration
+@ConditionalOnProperty(name = "account.storage.tiered.enabled", havingValue = "true")
+public class TieredStorageConfig {
+
+    @Value("${account.storage.tiered.hotTierSize:10000}")
+    private long hotTierSize;
+    @Value("${account.service.lockingMode:JVM}")
+    private AccountServiceImpl.LockingMode lockingMode;
+
+    @Bean
+    @Primary
+    public AccountDao tieredAccountDao(@Qualifier("accountDao") AccountDao accountDao, MeterRegistry registry) {
+        if (lockingMode != AccountServiceImpl.LockingMode.JVM) {
+            // the hot tier would serve balances read outside of the row locks and changed by other instances
+            throw new IllegalArgumentException("Unsupported locking mode for tiered storage: " + lockingMode);
+        }
+        return new TieredAccountDao(accountDao, hotTierSize, registry);
+    }
+}
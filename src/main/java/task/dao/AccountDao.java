@@ -2,14 +2,19 @@ package task.dao;
 
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Result;
+import org.apache.ibatis.annotations.ResultMap;
 import org.apache.ibatis.annotations.Results;
 import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.SelectKey;
 import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.cursor.Cursor;
 import task.model.Account;
 
+import java.util.List;
+
 /**
  * This DAO provides key methods for saving and retrieving accounts.
  * The implementation is generated by mybatis framework.
@@ -25,7 +30,7 @@ public interface AccountDao {
      * @param accountId account id
      * @return {@link Account} if account with provided {@code accountId} exists, {@code null} - otherwise.
      */
-    @Results({
+    @Results(id = "account", value = {
             @Result(property = "id", column = "id"),
             @Result(property = "amount", column = "amount"),
 
@@ -33,6 +38,63 @@ public interface AccountDao {
     @Select("select id, amount from account where id = #{accountId}")
     Account select(@Param("accountId") long accountId);
 
+    /**
+     * Select account by id and lock its row until the end of the current transaction, so concurrent transactions
+     * (possibly of other service instances) modifying the same account wait for it. HSQLDB runs in the two-phase
+     * locking mode (see {@link task.config.DataSourceConfig}), so the whole table is locked: transactions modifying
+     * any other account wait as well.
+     *
+     * @param accountId account id
+     * @return {@link Account} if account with provided {@code accountId} exists, {@code null} - otherwise.
+     */
+    @Select("select id, amount from account where id = #{accountId} for update")
+    @ResultMap("account")
+    Account selectForUpdate(@Param("accountId") long accountId);
+
+    /**
+     * Select page of accounts with ids greater than {@code afterAccountId} ordered by id (keyset pagination): the
+     * cost of a page doesn't depend on how far it is from the beginning.
+     *
+     * @param afterAccountId id of the last account of the previous page, 0 - for the first page
+     * @param limit          max number of accounts to return
+     * @return accounts ordered by id
+     */
+    @Select("select id, amount from account where id > #{afterAccountId} order by id fetch first #{limit} rows only")
+    @ResultMap("account")
+    List<Account> selectPage(@Param("afterAccountId") long afterAccountId, @Param("limit") int limit);
+
+    /**
+     * Select all accounts ordered by id. Rows are fetched lazily while the cursor is iterated, so it must be consumed
+     * within a transaction.
+     *
+     * @return cursor over all accounts
+     */
+    @Select("select id, amount from account order by id")
+    @ResultMap("account")
+    @Options(fetchSize = 1000)
+    Cursor<Account> selectAll();
+
+    /**
+     * Select accounts with ids in range [{@code fromAccountId}, {@code toAccountId}) ordered by id. Rows are fetched
+     * lazily while the cursor is iterated, so it must be consumed within a transaction.
+     *
+     * @param fromAccountId inclusive lower bound of account ids
+     * @param toAccountId   exclusive upper bound of account ids
+     * @return cursor over accounts of the range
+     */
+    @Select("select id, amount from account where id >= #{fromAccountId} and id < #{toAccountId} order by id")
+    @ResultMap("account")
+    @Options(fetchSize = 1000)
+    Cursor<Account> selectRange(@Param("fromAccountId") long fromAccountId, @Param("toAccountId") long toAccountId);
+
+    /**
+     * Return the greatest account id.
+     *
+     * @return max account id or {@code null} if there are no accounts
+     */
+    @Select("select max(id) from account")
+    Long selectMaxId();
+
     /**
      * Create new account with given amount. The method sets new generated account id to the {@code account} object.
      *
@@ -43,6 +105,22 @@ public interface AccountDao {
     @Insert("insert into account (id, amount) values (#{account.id}, #{account.amount})")
     void insert(@Param("account") Account account);
 
+    /**
+     * Return next value of account id sequence.
+     *
+     * @return next account id
+     */
+    @Select("select account_id_seq.nextval from dual")
+    long nextId();
+
+    /**
+     * Create new account with given amount and id that is already set to the {@code account} object.
+     *
+     * @param account account
+     */
+    @Insert("insert into account (id, amount) values (#{account.id}, #{account.amount})")
+    void insertWithId(@Param("account") Account account);
+
     /**
      * Update existing account with new amount value.
      *
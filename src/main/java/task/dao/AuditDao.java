@@ -0,0 +1,55 @@
+package task.dao;
+
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import task.model.AuditEvent;
+
+import java.util.List;
+
+/**
+ * This DAO provides access to the audit log of account operations.
+ * The implementation is generated by mybatis framework.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Mapper
+public interface AuditDao {
+
+    /**
+     * Insert events by one multi-row statement.
+     *
+     * @param events non-empty list of events
+     * @return number of inserted rows
+     */
+    @Insert({"<script>",
+            "insert into audit_event (type, from_account_id, to_account_id, amount, reason, created_at) values ",
+            "<foreach collection='events' item='event' separator=','>",
+            "(#{event.type}, #{event.fromAccountId}, #{event.toAccountId}, #{event.amount,jdbcType=NUMERIC}, ",
+            "#{event.reason,jdbcType=VARCHAR}, #{event.createdAt})",
+            "</foreach>",
+            "</script>"})
+    int insert(@Param("events") List<AuditEvent> events);
+
+    /**
+     * Count events of given type.
+     *
+     * @param type type of events
+     * @return number of events
+     */
+    @Select("select count(*) from audit_event where type = #{type}")
+    long count(@Param("type") AuditEvent.Type type);
+
+    /**
+     * Delete up to {@code limit} events created before given time.
+     *
+     * @param createdBefore time in milliseconds since epoch
+     * @param limit         max number of events to delete
+     * @return number of deleted events
+     */
+    @Delete("delete from audit_event where id in " +
+            "(select id from audit_event where created_at < #{createdBefore} limit #{limit})")
+    int deleteCreatedBefore(@Param("createdBefore") long createdBefore, @Param("limit") int limit);
+}
@@ -0,0 +1,99 @@
+package task.dao;
+
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Result;
+import org.apache.ibatis.annotations.Results;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import task.model.IdempotencyKey;
+
+/**
+ * This DAO provides access to the store of transfer idempotency keys.
+ * The implementation is generated by mybatis framework.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Mapper
+public interface IdempotencyKeyDao {
+
+    /**
+     * Select key by id.
+     *
+     * @param id key
+     * @return {@link IdempotencyKey} if the key exists, {@code null} - otherwise.
+     */
+    @Results(id = "idempotencyKey", value = {
+            @Result(property = "id", column = "id"),
+            @Result(property = "fromAccountId", column = "from_account_id"),
+            @Result(property = "toAccountId", column = "to_account_id"),
+            @Result(property = "amount", column = "amount"),
+            @Result(property = "createdAt", column = "created_at"),
+            @Result(property = "state", column = "state"),
+            @Result(property = "rejectedAccountId", column = "rejected_account_id"),
+            @Result(property = "balance", column = "balance"),
+    })
+    @Select("select id, from_account_id, to_account_id, amount, created_at, state, rejected_account_id, balance " +
+            "from idempotency_key where id = #{id}")
+    IdempotencyKey select(@Param("id") String id);
+
+    /**
+     * Insert new key, it fails with {@link org.springframework.dao.DuplicateKeyException} if the key already exists.
+     *
+     * @param key key
+     */
+    @Insert("insert into idempotency_key " +
+            "(id, from_account_id, to_account_id, amount, created_at, state, rejected_account_id, balance) " +
+            "values (#{key.id}, #{key.fromAccountId}, #{key.toAccountId}, #{key.amount}, #{key.createdAt}, " +
+            "#{key.state}, #{key.rejectedAccountId,jdbcType=NUMERIC}, #{key.balance,jdbcType=NUMERIC})")
+    void insert(@Param("key") IdempotencyKey key);
+
+    /**
+     * Update the outcome of the transfer recorded by the key.
+     *
+     * @param key key with the outcome
+     * @return number of updated rows: 1 when the key exists, 0 otherwise
+     */
+    @Update("update idempotency_key set state = #{key.state}, " +
+            "rejected_account_id = #{key.rejectedAccountId,jdbcType=NUMERIC}, " +
+            "balance = #{key.balance,jdbcType=NUMERIC} where id = #{key.id}")
+    int updateState(@Param("key") IdempotencyKey key);
+
+    /**
+     * Delete key.
+     *
+     * @param id key
+     * @return number of deleted rows: 1 when the key exists, 0 otherwise
+     */
+    @Delete("delete from idempotency_key where id = #{id}")
+    int delete(@Param("id") String id);
+
+    /**
+     * Return number of stored keys.
+     *
+     * @return number of keys
+     */
+    @Select("select count(*) from idempotency_key")
+    long count();
+
+    /**
+     * Delete keys created before given time.
+     *
+     * @param createdBefore time in milliseconds since epoch
+     * @return number of deleted keys
+     */
+    @Delete("delete from idempotency_key where created_at < #{createdBefore}")
+    int deleteCreatedBefore(@Param("createdBefore") long createdBefore);
+
+    /**
+     * Delete {@code limit} oldest keys.
+     *
+     * @param limit number of keys to delete
+     * @return number of deleted keys
+     */
+    @Delete("delete from idempotency_key where id in " +
+            "(select id from idempotency_key order by created_at limit #{limit})")
+    int deleteOldest(@Param("limit") long limit);
+}
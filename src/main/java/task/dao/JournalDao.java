@@ -0,0 +1,212 @@
+package task.dao;
+
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Result;
+import org.apache.ibatis.annotations.Results;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.cursor.Cursor;
+import task.model.AccountBalance;
+import task.model.JournalEntry;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * This DAO provides access to the journal of balance changes: every committed change of an account balance (opening
+ * balance, either side of a transfer, a withdrawal or a deposit) is recorded as a signed entry in the same
+ * transaction, so the balance of an account is always equal to the sum of its entries. Every entry also keeps the
+ * balance right after the change, so the entries make up the account history.
+ * <p>
+ * Sums of entries are kept by per-account checkpoints, so balances are recomputed from the entries which follow the
+ * checkpoints only and older entries can be moved to the archive.
+ * The implementation is generated by mybatis framework.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Mapper
+public interface JournalDao {
+
+    /**
+     * Insert single entry which is not a leg of a transfer.
+     *
+     * @param accountId account id
+     * @param amount    signed change of the balance
+     * @param balance   balance after the change
+     * @param createdAt time in milliseconds since epoch
+     */
+    @Insert("insert into journal_entry (account_id, amount, balance, created_at) " +
+            "values (#{accountId}, #{amount}, #{balance}, #{createdAt})")
+    void insert(@Param("accountId") long accountId, @Param("amount") BigDecimal amount,
+                @Param("balance") BigDecimal balance, @Param("createdAt") long createdAt);
+
+    /**
+     * Insert both legs of a transfer by one statement, so journaling costs one round trip per transfer.
+     *
+     * @param fromAccountId source account id
+     * @param toAccountId   destination account id
+     * @param withdrawal    negated amount of the transfer
+     * @param deposit       amount of the transfer
+     * @param fromBalance   balance of the source account after the transfer
+     * @param toBalance     balance of the destination account after the transfer
+     * @param createdAt     time in milliseconds since epoch
+     */
+    @Insert("insert into journal_entry (account_id, counterparty_id, amount, balance, created_at) values " +
+            "(#{fromAccountId}, #{toAccountId}, #{withdrawal}, #{fromBalance}, #{createdAt}), " +
+            "(#{toAccountId}, #{fromAccountId}, #{deposit}, #{toBalance}, #{createdAt})")
+    void insertTransfer(@Param("fromAccountId") long fromAccountId, @Param("toAccountId") long toAccountId,
+                        @Param("withdrawal") BigDecimal withdrawal, @Param("deposit") BigDecimal deposit,
+                        @Param("fromBalance") BigDecimal fromBalance, @Param("toBalance") BigDecimal toBalance,
+                        @Param("createdAt") long createdAt);
+
+    /**
+     * Select page of entries of the account created in [{@code fromTime}, {@code toTime}) ordered by time and id, which
+     * follow the entry created at {@code afterCreatedAt} with id {@code afterId}. The page is read by a range scan of
+     * the {@code (account_id, created_at, id)} index, so its cost doesn't depend on how deep it is.
+     *
+     * @param accountId      account id
+     * @param fromTime       inclusive lower bound of time
+     * @param toTime         exclusive upper bound of time
+     * @param afterCreatedAt time of the last entry of the previous page
+     * @param afterId        id of the last entry of the previous page, 0 - for the first page
+     * @param limit          max number of entries to return
+     * @return entries ordered by time and id
+     */
+    @Results(id = "journalEntry", value = {
+            @Result(property = "id", column = "id", id = true),
+            @Result(property = "accountId", column = "account_id"),
+            @Result(property = "counterpartyId", column = "counterparty_id"),
+            @Result(property = "amount", column = "amount"),
+            @Result(property = "balance", column = "balance"),
+            @Result(property = "createdAt", column = "created_at"),
+    })
+    @Select("select id, account_id, counterparty_id, amount, balance, created_at from journal_entry " +
+            "where account_id = #{accountId} and created_at >= #{fromTime} and created_at < #{toTime} " +
+            "and (created_at > #{afterCreatedAt} or (created_at = #{afterCreatedAt} and id > #{afterId})) " +
+            "order by account_id, created_at, id fetch first #{limit} rows only")
+    List<JournalEntry> selectHistory(@Param("accountId") long accountId, @Param("fromTime") long fromTime,
+                                     @Param("toTime") long toTime, @Param("afterCreatedAt") long afterCreatedAt,
+                                     @Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * Select balance of the account right after its last change made at or before {@code time}.
+     *
+     * @param accountId account id
+     * @param time      time in milliseconds since epoch
+     * @return balance or {@code null} if there were no changes by that time
+     */
+    @Select("select balance from journal_entry where account_id = #{accountId} and created_at <= #{time} " +
+            "order by account_id desc, created_at desc, id desc fetch first 1 rows only")
+    BigDecimal selectBalanceAt(@Param("accountId") long accountId, @Param("time") long time);
+
+    /**
+     * Select balance of the account right after its last change made at or before {@code time} among the archived
+     * entries. Changes of an account are serialized by its row lock, so its entries follow in the same order by time
+     * and by id and the archived ones always precede the rest.
+     *
+     * @param accountId account id
+     * @param time      time in milliseconds since epoch
+     * @return balance or {@code null} if there were no archived changes by that time
+     */
+    @Select("select balance from journal_entry_archive where account_id = #{accountId} and created_at <= #{time} " +
+            "order by account_id desc, created_at desc, id desc fetch first 1 rows only")
+    BigDecimal selectArchivedBalanceAt(@Param("accountId") long accountId, @Param("time") long time);
+
+    /**
+     * Select balances recomputed from the checkpoints and the following entries of accounts with ids in range
+     * [{@code fromAccountId}, {@code toAccountId}) ordered by account id. Rows are fetched lazily while the cursor is
+     * iterated, so it must be consumed within a transaction.
+     *
+     * @param fromAccountId inclusive lower bound of account ids
+     * @param toAccountId   exclusive upper bound of account ids
+     * @return cursor over balances of accounts having checkpoints or entries
+     */
+    @Results(id = "accountBalance", value = {
+            @Result(property = "accountId", column = "account_id"),
+            @Result(property = "amount", column = "amount"),
+    })
+    @Select("select account_id, sum(amount) amount from (" +
+            "select account_id, balance amount from journal_checkpoint " +
+            "where account_id >= #{fromAccountId} and account_id < #{toAccountId} " +
+            "union all " +
+            "select e.account_id, e.amount from journal_entry e " +
+            "left join journal_checkpoint c on c.account_id = e.account_id " +
+            "where e.account_id >= #{fromAccountId} and e.account_id < #{toAccountId} " +
+            "and e.id > coalesce(c.entry_id, -1)" +
+            ") group by account_id order by account_id")
+    @Options(fetchSize = 1000)
+    Cursor<AccountBalance> selectBalances(@Param("fromAccountId") long fromAccountId,
+                                          @Param("toAccountId") long toAccountId);
+
+    /**
+     * Select balance of the account recomputed from its checkpoint and the following entries.
+     *
+     * @param accountId account id
+     * @return balance, 0 if there are no checkpoint and entries
+     */
+    @Select("select coalesce((select balance from journal_checkpoint where account_id = #{accountId}), 0) + " +
+            "(select coalesce(sum(amount), 0) from journal_entry where account_id = #{accountId} " +
+            "and id > coalesce((select entry_id from journal_checkpoint where account_id = #{accountId}), -1)) " +
+            "from dual")
+    BigDecimal selectBalance(@Param("accountId") long accountId);
+
+    /**
+     * Move checkpoints of accounts with ids in range [{@code fromAccountId}, {@code toAccountId}) forward: the entries
+     * following a checkpoint are added to its balance. Changes of an account are serialized by its row lock, so its
+     * entries are committed in id order and an entry committed after the checkpoint always follows it.
+     *
+     * @param fromAccountId inclusive lower bound of account ids
+     * @param toAccountId   exclusive upper bound of account ids
+     * @param createdAt     time in milliseconds since epoch
+     * @return number of accounts whose checkpoints have been moved or created
+     */
+    @Update("merge into journal_checkpoint c using (" +
+            "select e.account_id, sum(e.amount) amount, max(e.id) entry_id from journal_entry e " +
+            "left join journal_checkpoint p on p.account_id = e.account_id " +
+            "where e.account_id >= #{fromAccountId} and e.account_id < #{toAccountId} " +
+            "and e.id > coalesce(p.entry_id, -1) group by e.account_id" +
+            ") t on (c.account_id = t.account_id) " +
+            "when matched then update set c.entry_id = t.entry_id, c.balance = c.balance + t.amount, " +
+            "c.created_at = #{createdAt} " +
+            "when not matched then insert (account_id, entry_id, balance, created_at) " +
+            "values (t.account_id, t.entry_id, t.amount, #{createdAt})")
+    int checkpoint(@Param("fromAccountId") long fromAccountId, @Param("toAccountId") long toAccountId,
+                   @Param("createdAt") long createdAt);
+
+    /**
+     * Copy entries of accounts with ids in range [{@code fromAccountId}, {@code toAccountId}) created before
+     * {@code createdBefore} and covered by checkpoints to the archive. The last covered entry of an account is kept,
+     * so the current balance is still found by {@link #selectBalanceAt(long, long)}.
+     *
+     * @param fromAccountId inclusive lower bound of account ids
+     * @param toAccountId   exclusive upper bound of account ids
+     * @param createdBefore exclusive upper bound of time in milliseconds since epoch
+     * @return number of archived entries
+     */
+    @Insert("insert into journal_entry_archive (id, account_id, counterparty_id, amount, balance, created_at) " +
+            "select e.id, e.account_id, e.counterparty_id, e.amount, e.balance, e.created_at from journal_entry e " +
+            "join journal_checkpoint c on c.account_id = e.account_id " +
+            "where e.account_id >= #{fromAccountId} and e.account_id < #{toAccountId} " +
+            "and e.id < c.entry_id and e.created_at < #{createdBefore}")
+    int archive(@Param("fromAccountId") long fromAccountId, @Param("toAccountId") long toAccountId,
+                @Param("createdBefore") long createdBefore);
+
+    /**
+     * Delete entries copied by {@link #archive(long, long, long)} with the same arguments.
+     *
+     * @param fromAccountId inclusive lower bound of account ids
+     * @param toAccountId   exclusive upper bound of account ids
+     * @param createdBefore exclusive upper bound of time in milliseconds since epoch
+     * @return number of deleted entries
+     */
+    @Delete("delete from journal_entry e " +
+            "where e.account_id >= #{fromAccountId} and e.account_id < #{toAccountId} " +
+            "and e.created_at < #{createdBefore} " +
+            "and e.id < (select c.entry_id from journal_checkpoint c where c.account_id = e.account_id)")
+    int deleteArchived(@Param("fromAccountId") long fromAccountId, @Param("toAccountId") long toAccountId,
+                       @Param("createdBefore") long createdBefore);
+}
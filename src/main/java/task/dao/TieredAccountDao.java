@@ -0,0 +1,211 @@
+package task.dao;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import task.model.Account;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Two-tier {@link AccountDao}: the small working set of hot accounts is kept in a bounded in-memory tier while all
+ * the other (cold) accounts stay in the underlying database and are faulted in on first access.
+ * <p>
+ * The hot tier uses Window TinyLFU admission and eviction policy: a newly faulted-in account displaces a resident one
+ * only if it has been accessed more frequently recently, so a burst of reads of dormant accounts doesn't flush the
+ * working set. Memory consumption is bounded by {@code hotTierSize} regardless of the total number of accounts.
+ * <p>
+ * Only immutable amount snapshots are cached, so callers always get a fresh {@link Account} instance they are free to
+ * modify. Updates are written through to the database and applied to the hot tier once the surrounding transaction is
+ * committed, on rollback the cached entry is dropped.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@ThreadSafe
+public class TieredAccountDao implements AccountDao {
+
+    private final AccountDao coldTier;
+    private final Cache<Long, BigDecimal> hotTier;
+
+    private final Counter promotions;
+    private final Counter demotions;
+
+    public TieredAccountDao(AccountDao coldTier, long hotTierSize, MeterRegistry registry) {
+        this.coldTier = coldTier;
+        this.promotions = Counter.builder("account.storage.promotions")
+                .description("Number of accounts faulted in from the cold tier to the hot tier")
+                .register(registry);
+        this.demotions = Counter.builder("account.storage.demotions")
+                .description("Number of accounts evicted from the hot tier")
+                .register(registry);
+        this.hotTier = Caffeine.newBuilder()
+                .maximumSize(hotTierSize)
+                .recordStats()
+                .executor(Runnable::run) // maintenance is cheap, keep it on the calling threads
+                .removalListener((Long accountId, BigDecimal amount, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        demotions.increment();
+                    }
+                })
+                .build();
+
+        Gauge.builder("account.storage.hit.ratio", hotTier, cache -> cache.stats().hitRate())
+                .description("Ratio of account reads served by the hot tier")
+                .register(registry);
+        Gauge.builder("account.storage.hot.size", hotTier, Cache::estimatedSize)
+                .description("Number of accounts resident in the hot tier")
+                .register(registry);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Account select(long accountId) {
+        // the load is atomic per account id, so a concurrent commit can't be overwritten by a stale cold read
+        final BigDecimal amount = hotTier.get(accountId, this::faultIn);
+        return amount == null ? null : new Account().setId(accountId).setAmount(amount);
+    }
+
+    private BigDecimal faultIn(long accountId) {
+        final Account account = coldTier.select(accountId);
+        if (account == null) {
+            return null;
+        }
+        promotions.increment();
+        return account.getAmount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Account selectForUpdate(long accountId) {
+        // the lock must be taken in the database, so the hot tier is bypassed
+        return coldTier.selectForUpdate(accountId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Account> selectPage(long afterAccountId, int limit) {
+        // scans bypass the hot tier: they would flush the working set and the database has all committed amounts
+        return coldTier.selectPage(afterAccountId, limit);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<Account> selectAll() {
+        return coldTier.selectAll();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<Account> selectRange(long fromAccountId, long toAccountId) {
+        return coldTier.selectRange(fromAccountId, toAccountId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Long selectMaxId() {
+        return coldTier.selectMaxId();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void insert(Account account) {
+        // new accounts are not admitted until they are actually read: most of them are never touched again
+        coldTier.insert(account);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long nextId() {
+        return coldTier.nextId();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void insertWithId(Account account) {
+        coldTier.insertWithId(account);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int update(Account account) {
+        final int nRows = coldTier.update(account);
+        if (nRows == 1) {
+            final long accountId = account.getId();
+            final BigDecimal amount = account.getAmount();
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                            refresh(accountId, amount);
+                        } else {
+                            hotTier.invalidate(accountId);
+                        }
+                    }
+                });
+            } else {
+                refresh(accountId, amount);
+            }
+        }
+        return nRows;
+    }
+
+    private void refresh(long accountId, BigDecimal amount) {
+        // write does not promote: only accounts that are already hot are kept up to date
+        hotTier.asMap().computeIfPresent(accountId, (id, oldAmount) -> amount);
+    }
+
+    /**
+     * Return hot tier hit ratio: the share of reads that didn't touch the cold tier.
+     *
+     * @return hit ratio in range [0, 1]
+     */
+    public double getHitRatio() {
+        return hotTier.stats().hitRate();
+    }
+
+    /**
+     * Return approximate number of accounts resident in the hot tier.
+     *
+     * @return hot tier size
+     */
+    public long getHotTierSize() {
+        return hotTier.estimatedSize();
+    }
+
+    /**
+     * Perform pending maintenance of the hot tier, e.g. evictions. Mostly useful for tests.
+     */
+    public void cleanUp() {
+        hotTier.cleanUp();
+    }
+}
@@ -0,0 +1,85 @@
+package task.dao;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Result;
+import org.apache.ibatis.annotations.ResultMap;
+import org.apache.ibatis.annotations.Results;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import task.model.TransferIntent;
+
+import java.util.List;
+
+/**
+ * This DAO provides access to the log of cross-shard transfer intents stored in every shard.
+ * The implementation is generated by mybatis framework.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Mapper
+public interface TransferIntentDao {
+
+    /**
+     * Select intent by id.
+     *
+     * @param id intent id
+     * @return {@link TransferIntent} if intent with provided {@code id} exists, {@code null} - otherwise.
+     */
+    @Results(id = "transferIntent", value = {
+            @Result(property = "id", column = "id"),
+            @Result(property = "fromAccountId", column = "from_account_id"),
+            @Result(property = "toAccountId", column = "to_account_id"),
+            @Result(property = "amount", column = "amount"),
+            @Result(property = "state", column = "state"),
+    })
+    @Select("select id, from_account_id, to_account_id, amount, state from transfer_intent where id = #{id}")
+    TransferIntent select(@Param("id") String id);
+
+    /**
+     * Select at most {@code limit} intents in given {@code state}.
+     *
+     * @param state intent state
+     * @param limit max number of intents to return
+     * @return list of intents
+     */
+    @Select("select id, from_account_id, to_account_id, amount, state from transfer_intent " +
+            "where state = #{state} limit #{limit}")
+    @ResultMap("transferIntent")
+    List<TransferIntent> selectByState(@Param("state") TransferIntent.State state, @Param("limit") int limit);
+
+    /**
+     * Select at most {@code limit} intents in given {@code state} with ids greater than {@code afterId} ordered by id,
+     * so intents which stay in the state are paged past.
+     *
+     * @param state   intent state
+     * @param afterId id of the last intent of the previous page, an empty string - for the first page
+     * @param limit   max number of intents to return
+     * @return list of intents
+     */
+    @Select("select id, from_account_id, to_account_id, amount, state from transfer_intent " +
+            "where state = #{state} and id > #{afterId} order by id limit #{limit}")
+    @ResultMap("transferIntent")
+    List<TransferIntent> selectPageByState(@Param("state") TransferIntent.State state, @Param("afterId") String afterId,
+                                           @Param("limit") int limit);
+
+    /**
+     * Insert new intent.
+     *
+     * @param intent intent
+     */
+    @Insert("insert into transfer_intent (id, from_account_id, to_account_id, amount, state) " +
+            "values (#{intent.id}, #{intent.fromAccountId}, #{intent.toAccountId}, #{intent.amount}, #{intent.state})")
+    void insert(@Param("intent") TransferIntent intent);
+
+    /**
+     * Update state of existing intent.
+     *
+     * @param id    intent id
+     * @param state new state
+     * @return number of updated rows: 1 when intent exists, 0 otherwise
+     */
+    @Update("update transfer_intent set state = #{state} where id = #{id}")
+    int updateState(@Param("id") String id, @Param("state") TransferIntent.State state);
+}
@@ -0,0 +1,25 @@
+package task.exception;
+
+/**
+ * This exception is thrown by {@link task.binary.BinaryClient} when the server answers with an error status.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class BinaryProtocolException extends RuntimeException {
+
+    private final byte status;
+
+    public BinaryProtocolException(byte status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    /**
+     * Return response status, one of {@code task.binary.BinaryProtocol.STATUS_*} constants.
+     *
+     * @return response status
+     */
+    public byte getStatus() {
+        return status;
+    }
+}
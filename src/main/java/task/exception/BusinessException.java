@@ -0,0 +1,24 @@
+package task.exception;
+
+/**
+ * Base class of exceptions reporting expected business outcomes, e.g. insufficient funds, rather than failures.
+ * Such outcomes are frequent and their origin is known, so the exceptions are created without stack trace and
+ * suppressed exceptions, and subclasses build the message only when it is requested: creating one costs about as much
+ * as creating a plain object.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public abstract class BusinessException extends RuntimeException {
+
+    protected BusinessException() {
+        super(null, null, false, false);
+    }
+
+    /**
+     * Build the detail message.
+     *
+     * @return detail message
+     */
+    @Override
+    public abstract String getMessage();
+}
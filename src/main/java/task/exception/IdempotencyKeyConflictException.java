@@ -0,0 +1,24 @@
+package task.exception;
+
+/**
+ * This exception is thrown when an idempotency key is reused for a transfer with different parameters.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class IdempotencyKeyConflictException extends BusinessException {
+
+    private final String key;
+
+    public IdempotencyKeyConflictException(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public String getMessage() {
+        return "Idempotency key has been used for another transfer: " + key;
+    }
+}
@@ -9,14 +9,13 @@ import java.util.Objects;
  *
  * @author Anton Kotov (kotov-anton@yandex.ru)
  */
-public class LimitExceededException extends RuntimeException {
+public class LimitExceededException extends BusinessException {
 
     private final long accountId;
     private final BigDecimal delta;
     private final BigDecimal amount;
 
     public LimitExceededException(long accountId, BigDecimal delta, BigDecimal amount) {
-        super("Failed to withdraw from account: " + accountId + ": delta: " + delta + " is greater than amount: " + amount);
         this.accountId = accountId;
         this.delta = Objects.requireNonNull(delta, "delta is null");
         this.amount = Objects.requireNonNull(amount, "amount is null");
@@ -33,4 +32,10 @@ public class LimitExceededException extends RuntimeException {
     public BigDecimal getAmount() {
         return amount;
     }
+
+    @Override
+    public String getMessage() {
+        return "Failed to withdraw from account: " + accountId + ": delta: " + delta +
+                " is greater than amount: " + amount;
+    }
 }
@@ -6,16 +6,20 @@ package task.exception;
  *
  * @author Anton Kotov (kotov-anton@yandex.ru)
  */
-public class NoSuchAccountException extends RuntimeException {
+public class NoSuchAccountException extends BusinessException {
 
     private final long accountId;
 
     public NoSuchAccountException(long accountId) {
-        super("No such account: " + accountId);
         this.accountId = accountId;
     }
 
     public long getAccountId() {
         return accountId;
     }
+
+    @Override
+    public String getMessage() {
+        return "No such account: " + accountId;
+    }
 }
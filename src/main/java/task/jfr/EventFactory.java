@@ -0,0 +1,21 @@
+package task.jfr;
+
+import javax.annotation.Nullable;
+
+/**
+ * Source of flight recorder events. The only implementation {@link JdkEventFactory} depends on {@code jdk.jfr} and is
+ * not compiled on JDKs without it, so it is only looked up by name.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+interface EventFactory {
+
+    @Nullable
+    TransferEvent beginTransfer();
+
+    @Nullable
+    LockWaitEvent beginLockWait();
+
+    @Nullable
+    StatementEvent beginStatement();
+}
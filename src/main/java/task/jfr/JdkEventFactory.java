@@ -0,0 +1,24 @@
+package task.jfr;
+
+/**
+ * {@link EventFactory} of {@code jdk.jfr} events.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+final class JdkEventFactory implements EventFactory {
+
+    @Override
+    public TransferEvent beginTransfer() {
+        return JdkTransferEvent.beginIfEnabled();
+    }
+
+    @Override
+    public LockWaitEvent beginLockWait() {
+        return JdkLockWaitEvent.beginIfEnabled();
+    }
+
+    @Override
+    public StatementEvent beginStatement() {
+        return JdkStatementEvent.beginIfEnabled();
+    }
+}
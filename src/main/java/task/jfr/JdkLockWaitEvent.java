@@ -0,0 +1,46 @@
+package task.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Wait for the ordered locks of both accounts of a transfer.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Name("task.LockWait")
+@Label("Account Lock Wait")
+@Category("Account Service")
+@StackTrace(false)
+final class JdkLockWaitEvent extends Event implements LockWaitEvent {
+
+    private static final JdkLockWaitEvent PROBE = new JdkLockWaitEvent();
+
+    @Label("From Account")
+    long fromAccountId;
+
+    @Label("To Account")
+    long toAccountId;
+
+    static JdkLockWaitEvent beginIfEnabled() {
+        if (!PROBE.isEnabled()) {
+            return null;
+        }
+        final JdkLockWaitEvent event = new JdkLockWaitEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void complete(long fromAccountId, long toAccountId) {
+        end();
+        if (shouldCommit()) {
+            this.fromAccountId = fromAccountId;
+            this.toAccountId = toAccountId;
+            commit();
+        }
+    }
+}
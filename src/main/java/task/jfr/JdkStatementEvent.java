@@ -0,0 +1,50 @@
+package task.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Execution of a mybatis mapped statement, e.g. {@code task.dao.AccountDao.update}.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Name("task.Statement")
+@Label("Database Statement")
+@Category("Account Service")
+@StackTrace(false)
+final class JdkStatementEvent extends Event implements StatementEvent {
+
+    private static final JdkStatementEvent PROBE = new JdkStatementEvent();
+
+    @Label("Statement")
+    String statementId;
+
+    @Label("Command")
+    String command;
+
+    @Label("Succeeded")
+    boolean succeeded;
+
+    static JdkStatementEvent beginIfEnabled() {
+        if (!PROBE.isEnabled()) {
+            return null;
+        }
+        final JdkStatementEvent event = new JdkStatementEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void complete(String statementId, String command, boolean succeeded) {
+        end();
+        if (shouldCommit()) {
+            this.statementId = statementId;
+            this.command = command;
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package task.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.math.BigDecimal;
+
+/**
+ * Transfer between two accounts from validation to commit or rejection.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Name("task.Transfer")
+@Label("Transfer")
+@Category("Account Service")
+@StackTrace(false)
+final class JdkTransferEvent extends Event implements TransferEvent {
+
+    private static final JdkTransferEvent PROBE = new JdkTransferEvent();
+
+    @Label("From Account")
+    long fromAccountId;
+
+    @Label("To Account")
+    long toAccountId;
+
+    @Label("Amount Magnitude")
+    @Description("Number of integer digits of the amount: 0 - less than 1, 1 - less than 10, 2 - less than 100 etc")
+    int amountMagnitude;
+
+    @Label("Outcome")
+    String outcome;
+
+    static JdkTransferEvent beginIfEnabled() {
+        if (!PROBE.isEnabled()) {
+            return null;
+        }
+        final JdkTransferEvent event = new JdkTransferEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void complete(long fromAccountId, long toAccountId, BigDecimal amount, String outcome) {
+        end();
+        if (shouldCommit()) {
+            this.fromAccountId = fromAccountId;
+            this.toAccountId = toAccountId;
+            this.amountMagnitude = amount == null ? 0 : Math.max(0, amount.precision() - amount.scale());
+            this.outcome = outcome;
+            commit();
+        }
+    }
+}
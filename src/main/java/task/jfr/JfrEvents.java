@@ -0,0 +1,121 @@
+package task.jfr;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+
+/**
+ * Java Flight Recorder events of the service. Events are enabled by a recording, e.g. with {@code jfr/account.jfc}
+ * settings; when no recording has them enabled nothing is allocated and the cost is a check of a flag.
+ * <p>
+ * The code base stays compatible with Java 8 without JFR: only the {@code Jdk*} classes depend on {@code jdk.jfr},
+ * they are excluded from the build on JDKs older than 11 (see the {@code no-jfr} profile) and looked up by name at
+ * runtime. When they are missing or the running JDK has no {@code jdk.jfr}, every {@code begin} method returns
+ * {@code null} and every {@code end} method ignores it.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public final class JfrEvents {
+
+    private static final String FACTORY_CLASS_NAME = "task.jfr.JdkEventFactory";
+
+    @Nullable
+    private static final EventFactory FACTORY = loadFactory();
+
+    private JfrEvents() {
+    }
+
+    @Nullable
+    private static EventFactory loadFactory() {
+        try {
+            final ClassLoader classLoader = JfrEvents.class.getClassLoader();
+            Class.forName("jdk.jfr.Event", false, classLoader);
+            return (EventFactory) Class.forName(FACTORY_CLASS_NAME, true, classLoader)
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check whether the running JDK supports flight recorder events.
+     *
+     * @return {@code true} if {@code jdk.jfr} is present and the events have been built
+     */
+    public static boolean isAvailable() {
+        return FACTORY != null;
+    }
+
+    /**
+     * Begin transfer event.
+     *
+     * @return event or {@code null} if it is not recorded
+     */
+    @Nullable
+    public static TransferEvent beginTransfer() {
+        return FACTORY != null ? FACTORY.beginTransfer() : null;
+    }
+
+    /**
+     * End transfer event and commit it if it passes recording settings, e.g. threshold.
+     *
+     * @param event         event returned by {@link #beginTransfer()}
+     * @param fromAccountId source account id
+     * @param toAccountId   destination account id
+     * @param amount        amount, only its magnitude is recorded
+     * @param outcome       outcome of the transfer
+     */
+    public static void endTransfer(@Nullable TransferEvent event, long fromAccountId, long toAccountId,
+                                   @Nullable BigDecimal amount, String outcome) {
+        if (event != null) {
+            event.complete(fromAccountId, toAccountId, amount, outcome);
+        }
+    }
+
+    /**
+     * Begin lock wait event.
+     *
+     * @return event or {@code null} if it is not recorded
+     */
+    @Nullable
+    public static LockWaitEvent beginLockWait() {
+        return FACTORY != null ? FACTORY.beginLockWait() : null;
+    }
+
+    /**
+     * End lock wait event once both locks have been acquired.
+     *
+     * @param event         event returned by {@link #beginLockWait()}
+     * @param fromAccountId source account id
+     * @param toAccountId   destination account id
+     */
+    public static void endLockWait(@Nullable LockWaitEvent event, long fromAccountId, long toAccountId) {
+        if (event != null) {
+            event.complete(fromAccountId, toAccountId);
+        }
+    }
+
+    /**
+     * Begin statement event.
+     *
+     * @return event or {@code null} if it is not recorded
+     */
+    @Nullable
+    public static StatementEvent beginStatement() {
+        return FACTORY != null ? FACTORY.beginStatement() : null;
+    }
+
+    /**
+     * End statement event.
+     *
+     * @param event       event returned by {@link #beginStatement()}
+     * @param statementId mapped statement id
+     * @param command     SQL command type
+     * @param succeeded   whether the statement has completed without exception
+     */
+    public static void endStatement(@Nullable StatementEvent event, String statementId, String command,
+                                    boolean succeeded) {
+        if (event != null) {
+            event.complete(statementId, command, succeeded);
+        }
+    }
+}
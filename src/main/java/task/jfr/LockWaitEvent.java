@@ -0,0 +1,17 @@
+package task.jfr;
+
+/**
+ * Flight recorder event of a wait for the ordered locks of both accounts of a transfer.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public interface LockWaitEvent {
+
+    /**
+     * End the event once both locks have been acquired.
+     *
+     * @param fromAccountId source account id
+     * @param toAccountId   destination account id
+     */
+    void complete(long fromAccountId, long toAccountId);
+}
@@ -0,0 +1,18 @@
+package task.jfr;
+
+/**
+ * Flight recorder event of a mybatis mapped statement execution.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public interface StatementEvent {
+
+    /**
+     * End the event.
+     *
+     * @param statementId mapped statement id
+     * @param command     SQL command type
+     * @param succeeded   whether the statement has completed without exception
+     */
+    void complete(String statementId, String command, boolean succeeded);
+}
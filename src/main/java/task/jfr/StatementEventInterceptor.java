@@ -0,0 +1,46 @@
+package task.jfr;
+
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Mybatis plugin which records every mapped statement executed by DAO mappers as {@link StatementEvent}. Cursor
+ * statements are recorded up to opening the cursor, fetching is not included.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@ThreadSafe
+@Intercepts({
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "queryCursor",
+                args = {MappedStatement.class, Object.class, RowBounds.class})
+})
+public class StatementEventInterceptor implements Interceptor {
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        final StatementEvent event = JfrEvents.beginStatement();
+        if (event == null) {
+            return invocation.proceed();
+        }
+        final MappedStatement statement = (MappedStatement) invocation.getArgs()[0];
+        boolean succeeded = false;
+        try {
+            final Object result = invocation.proceed();
+            succeeded = true;
+            return result;
+        } finally {
+            JfrEvents.endStatement(event, statement.getId(), statement.getSqlCommandType().name(), succeeded);
+        }
+    }
+}
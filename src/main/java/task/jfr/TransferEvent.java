@@ -0,0 +1,22 @@
+package task.jfr;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+
+/**
+ * Flight recorder event of a transfer between two accounts from validation to commit or rejection.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public interface TransferEvent {
+
+    /**
+     * End the event and commit it if it passes recording settings, e.g. threshold.
+     *
+     * @param fromAccountId source account id
+     * @param toAccountId   destination account id
+     * @param amount        amount, only its magnitude is recorded
+     * @param outcome       outcome of the transfer
+     */
+    void complete(long fromAccountId, long toAccountId, @Nullable BigDecimal amount, String outcome);
+}
@@ -0,0 +1,447 @@
+package task.manager;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import task.model.Account;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Incrementally maintained aggregates of all the accounts: number of accounts, total balance and number of accounts
+ * per balance bucket. They are updated by {@link AccountManager} once balance changes are committed, so reading them
+ * never scans the {@code ACCOUNT} table.
+ * <p>
+ * Every counter is a {@link LongAdder}, so concurrent updates don't contend. The total balance is kept as two adders,
+ * whole units and fractions of {@link #SCALE} digits, and is exact as long as the whole part fits into {@code long}.
+ * A transfer doesn't change the total at all, it only moves accounts between buckets. Aggregates are not updated
+ * atomically with each other, so a snapshot taken while balances are changing may be off by in-flight changes.
+ * <p>
+ * To repair them by a full scan by {@link #newScan()} every change is announced by {@link #beginChange()} before it
+ * touches the {@code ACCOUNT} table and is finished by {@link #endChange()} once it is counted or rolled back.
+ * {@link #whilePaused(Supplier)} waits for the changes in progress and holds back new ones, so the scanned balances
+ * and the maintained values describe the same state. Announcements are counted by striped counters, a thread always
+ * uses the same stripe, so concurrent changes share no lock word and contend only when their threads hash to the same
+ * stripe. A pause, however, stops every balance change for the whole scan.
+ * <p>
+ * Disabled aggregates ignore all the updates and cost nothing on the transfer path.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@ThreadSafe
+public class AccountAggregates {
+
+    /**
+     * Scale of the stored amounts.
+     */
+    public static final int SCALE = 8;
+
+    private static final AccountAggregates DISABLED = new AccountAggregates();
+
+    // announcement counters are a cache line apart, so changes of different stripes don't share one
+    private static final int STRIPE_PADDING = 16;
+    private static final long PAUSE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final List<BigDecimal> bucketBounds;
+    private final LongAdder count;
+    private final LongAdder totalUnits;
+    private final LongAdder totalFractions;
+    private final LongAdder[] buckets;
+    private final int stripeMask;
+    private final AtomicLongArray announcements;
+    // changes announced by the current thread, the nested ones never wait for a pause
+    private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+    // held for the whole pause, so held back changes wait for it without spinning
+    private final ReentrantLock pause = new ReentrantLock();
+    private volatile boolean paused;
+
+    /**
+     * @param bucketBounds ascending exclusive upper bounds of the balance buckets, the last bucket is unbounded
+     * @param registry     registry of {@code account.aggregates.*} metrics
+     */
+    public AccountAggregates(List<BigDecimal> bucketBounds, MeterRegistry registry) {
+        for (int i = 1; i < bucketBounds.size(); ++i) {
+            if (bucketBounds.get(i - 1).compareTo(bucketBounds.get(i)) >= 0) {
+                throw new IllegalArgumentException("Bucket bounds are not ascending: " + bucketBounds);
+            }
+        }
+        this.bucketBounds = Collections.unmodifiableList(new ArrayList<>(bucketBounds));
+        this.count = new LongAdder();
+        this.totalUnits = new LongAdder();
+        this.totalFractions = new LongAdder();
+        this.buckets = new LongAdder[bucketBounds.size() + 1];
+        for (int i = 0; i < buckets.length; ++i) {
+            buckets[i] = new LongAdder();
+        }
+        final int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4 - 1)) << 1;
+        this.stripeMask = stripes - 1;
+        this.announcements = new AtomicLongArray(stripes * STRIPE_PADDING);
+
+        Gauge.builder("account.aggregates.count", count, LongAdder::sum)
+                .description("Number of accounts")
+                .register(registry);
+        Gauge.builder("account.aggregates.total", this, aggregates -> aggregates.getTotal().doubleValue())
+                .description("Total balance of all the accounts")
+                .register(registry);
+        for (int i = 0; i < buckets.length; ++i) {
+            Gauge.builder("account.aggregates.bucket", buckets[i], LongAdder::sum)
+                    .description("Number of accounts with balance below the bound")
+                    .tag("below", i < bucketBounds.size() ? bucketBounds.get(i).toPlainString() : "+Inf")
+                    .register(registry);
+        }
+    }
+
+    private AccountAggregates() {
+        this.bucketBounds = Collections.emptyList();
+        this.count = null;
+        this.totalUnits = null;
+        this.totalFractions = null;
+        this.buckets = null;
+        this.stripeMask = 0;
+        this.announcements = null;
+    }
+
+    /**
+     * Return aggregates which ignore all the updates.
+     *
+     * @return shared instance
+     */
+    public static AccountAggregates disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return count != null;
+    }
+
+    /**
+     * Announce a balance change. It must be called before the change touches the {@code ACCOUNT} table, by the thread
+     * which then calls {@link #endChange()}. A thread may announce several changes of one transaction, a change
+     * announced while another one of the thread is in progress is never held back.
+     */
+    public void beginChange() {
+        if (count == null) {
+            return;
+        }
+        final int[] announced = depth.get();
+        final int index = stripe();
+        while (true) {
+            announcements.incrementAndGet(index);
+            // the counter is incremented before the flag is read and the pause sets the flag before it reads the
+            // counters, so either the pause sees the change or the change sees the pause
+            if (!paused || announced[0] > 0) {
+                ++announced[0];
+                return;
+            }
+            announcements.decrementAndGet(index);
+            pause.lock();
+            pause.unlock();
+        }
+    }
+
+    /**
+     * Finish the change announced by {@link #beginChange()} once it is counted or rolled back.
+     */
+    public void endChange() {
+        if (count != null) {
+            --depth.get()[0];
+            announcements.decrementAndGet(stripe());
+        }
+    }
+
+    private int stripe() {
+        final long id = Thread.currentThread().getId();
+        return (int) ((id ^ (id >>> 16)) * 0x9E3779B9L >>> 16 & stripeMask) * STRIPE_PADDING;
+    }
+
+    /**
+     * Run the {@code action} while no balance is changing: announced changes are waited for and new ones wait until
+     * the action is finished, i.e. every transfer is stopped for the time of the action. The action must not wait for
+     * any change, e.g. for a connection held by a waiting one.
+     *
+     * @param action action, e.g. a full scan followed by {@link #reset(Snapshot)}
+     * @param <T>    type of the result
+     * @return result of the action
+     */
+    public <T> T whilePaused(Supplier<T> action) {
+        pause.lock();
+        try {
+            paused = true;
+            if (announcements != null) {
+                for (int i = 0; i < announcements.length(); i += STRIPE_PADDING) {
+                    while (announcements.get(i) != 0) {
+                        LockSupport.parkNanos(PAUSE_PARK_NANOS);
+                    }
+                }
+            }
+            return action.get();
+        } finally {
+            paused = false;
+            pause.unlock();
+        }
+    }
+
+    /**
+     * Count new account with the {@code amount} balance.
+     *
+     * @param amount balance of the account
+     */
+    public void created(BigDecimal amount) {
+        if (count != null) {
+            count.increment();
+            addToTotal(amount, false);
+            buckets[bucketOf(amount)].increment();
+        }
+    }
+
+    /**
+     * Record the change of an account balance, e.g. by one leg of a transfer spanning several transactions.
+     *
+     * @param oldAmount balance before the change
+     * @param newAmount balance after the change
+     */
+    public void changed(BigDecimal oldAmount, BigDecimal newAmount) {
+        if (count != null) {
+            addToTotal(oldAmount, true);
+            addToTotal(newAmount, false);
+            move(oldAmount, newAmount);
+        }
+    }
+
+    /**
+     * Record a transfer between two accounts: the total balance is left as is.
+     *
+     * @param fromOldAmount balance of the source account before the transfer
+     * @param fromNewAmount balance of the source account after the transfer
+     * @param toOldAmount   balance of the destination account before the transfer
+     * @param toNewAmount   balance of the destination account after the transfer
+     */
+    public void transferred(BigDecimal fromOldAmount, BigDecimal fromNewAmount,
+                            BigDecimal toOldAmount, BigDecimal toNewAmount) {
+        if (count != null) {
+            move(fromOldAmount, fromNewAmount);
+            move(toOldAmount, toNewAmount);
+        }
+    }
+
+    private void move(BigDecimal oldAmount, BigDecimal newAmount) {
+        final int oldBucket = bucketOf(oldAmount);
+        final int newBucket = bucketOf(newAmount);
+        if (oldBucket != newBucket) {
+            buckets[oldBucket].decrement();
+            buckets[newBucket].increment();
+        }
+    }
+
+    private void addToTotal(BigDecimal amount, boolean negate) {
+        final long units = amount.longValue();
+        final long fractions = amount.subtract(BigDecimal.valueOf(units)).movePointRight(SCALE).longValue();
+        totalUnits.add(negate ? -units : units);
+        totalFractions.add(negate ? -fractions : fractions);
+    }
+
+    private int bucketOf(BigDecimal amount) {
+        int bucket = 0;
+        while (bucket < bucketBounds.size() && amount.compareTo(bucketBounds.get(bucket)) >= 0) {
+            ++bucket;
+        }
+        return bucket;
+    }
+
+    private BigDecimal getTotal() {
+        return BigDecimal.valueOf(totalUnits.sum()).add(BigDecimal.valueOf(totalFractions.sum(), SCALE));
+    }
+
+    /**
+     * Return current values of the aggregates.
+     *
+     * @return snapshot
+     */
+    public Snapshot snapshot() {
+        if (count == null) {
+            return new Snapshot(0, BigDecimal.ZERO, Collections.emptyList(), new long[]{0});
+        }
+        final long[] bucketCounts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; ++i) {
+            bucketCounts[i] = buckets[i].sum();
+        }
+        return new Snapshot(count.sum(), getTotal(), bucketBounds, bucketCounts);
+    }
+
+    /**
+     * Return new scan which computes the same aggregates over accounts passed to it, e.g. by
+     * {@link AccountManager#forEachAccount}.
+     *
+     * @return scan
+     */
+    public Scan newScan() {
+        return new Scan();
+    }
+
+    /**
+     * Replace values of the aggregates by the {@code snapshot} computed by a full scan. It must be called when balances
+     * are not changing, e.g. on start or by {@link #whilePaused(Supplier)}, otherwise changes made during the scan are
+     * lost or counted twice.
+     *
+     * @param snapshot scanned aggregates
+     */
+    public void reset(Snapshot snapshot) {
+        if (count == null) {
+            return;
+        }
+        if (!bucketBounds.equals(snapshot.bucketBounds)) {
+            throw new IllegalArgumentException("Bucket bounds don't match: " + snapshot.bucketBounds);
+        }
+        count.reset();
+        count.add(snapshot.count);
+        totalUnits.reset();
+        totalFractions.reset();
+        addToTotal(snapshot.total, false);
+        for (int i = 0; i < buckets.length; ++i) {
+            buckets[i].reset();
+            buckets[i].add(snapshot.bucketCounts[i]);
+        }
+    }
+
+    /**
+     * Full scan of accounts computing the aggregates.
+     */
+    @NotThreadSafe
+    public class Scan implements Consumer<Account> {
+
+        private long scanCount;
+        private BigDecimal scanTotal = BigDecimal.ZERO;
+        private final long[] bucketCounts = new long[bucketBounds.size() + 1];
+
+        private Scan() {
+        }
+
+        @Override
+        public void accept(Account account) {
+            ++scanCount;
+            scanTotal = scanTotal.add(account.getAmount());
+            ++bucketCounts[bucketOf(account.getAmount())];
+        }
+
+        /**
+         * Return aggregates of all the scanned accounts.
+         *
+         * @return snapshot
+         */
+        public Snapshot toSnapshot() {
+            return new Snapshot(scanCount, scanTotal, bucketBounds, bucketCounts.clone());
+        }
+    }
+
+    /**
+     * Values of the aggregates.
+     */
+    @Immutable
+    public static final class Snapshot {
+
+        private final long count;
+        private final BigDecimal total;
+        private final List<BigDecimal> bucketBounds;
+        private final long[] bucketCounts;
+
+        Snapshot(long count, BigDecimal total, List<BigDecimal> bucketBounds, long[] bucketCounts) {
+            this.count = count;
+            this.total = total;
+            this.bucketBounds = bucketBounds;
+            this.bucketCounts = bucketCounts;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public BigDecimal getTotal() {
+            return total;
+        }
+
+        /**
+         * Return number of accounts per balance bucket.
+         *
+         * @return buckets in ascending order
+         */
+        public List<Bucket> getBuckets() {
+            final List<Bucket> buckets = new ArrayList<>(bucketCounts.length);
+            for (int i = 0; i < bucketCounts.length; ++i) {
+                buckets.add(new Bucket(i < bucketBounds.size() ? bucketBounds.get(i) : null, bucketCounts[i]));
+            }
+            return buckets;
+        }
+
+        /**
+         * Check whether the aggregates are the same as {@code other} ones regardless of the scale of the total.
+         *
+         * @param other other snapshot, e.g. computed by a full scan
+         * @return {@code true} if all the values are equal
+         */
+        public boolean isConsistentWith(Snapshot other) {
+            if (count != other.count || total.compareTo(other.total) != 0
+                    || !bucketBounds.equals(other.bucketBounds)) {
+                return false;
+            }
+            for (int i = 0; i < bucketCounts.length; ++i) {
+                if (bucketCounts[i] != other.bucketCounts[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{count=" + count + ", total=" + total.toPlainString() + ", buckets=" + getBuckets() + '}';
+        }
+    }
+
+    /**
+     * Number of accounts with balance below the upper bound.
+     */
+    @Immutable
+    public static final class Bucket {
+
+        @Nullable
+        private final BigDecimal upperBound;
+        private final long count;
+
+        Bucket(@Nullable BigDecimal upperBound, long count) {
+            this.upperBound = upperBound;
+            this.count = count;
+        }
+
+        /**
+         * Return exclusive upper bound of the bucket.
+         *
+         * @return bound or {@code null} for the last (unbounded) bucket
+         */
+        @Nullable
+        public BigDecimal getUpperBound() {
+            return upperBound;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return (upperBound == null ? "+Inf" : upperBound.toPlainString()) + '=' + count;
+        }
+    }
+}
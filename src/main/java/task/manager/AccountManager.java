@@ -1,12 +1,30 @@
 package task.manager;
 
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import task.dao.AccountDao;
+import task.dao.IdempotencyKeyDao;
+import task.dao.JournalDao;
+import task.exception.LimitExceededException;
 import task.exception.NoSuchAccountException;
 import task.model.Account;
+import task.model.AccountBalance;
+import task.model.BalanceDiscrepancy;
+import task.model.HistoryCursor;
+import task.model.IdempotencyKey;
+import task.model.JournalEntry;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Account manager guarantees transactional transfer.
@@ -16,10 +34,72 @@ import java.math.BigDecimal;
 public class AccountManager {
 
     private final AccountDao accountDao;
+    private final IdempotencyKeyDao idempotencyKeyDao;
+    private final TransferStageTimers stageTimers;
+    private final AccountAggregates aggregates;
+    @Nullable
+    private final JournalDao journalDao;
 
     @Inject
-    public AccountManager(AccountDao accountDao) {
+    public AccountManager(AccountDao accountDao, IdempotencyKeyDao idempotencyKeyDao) {
+        this(accountDao, idempotencyKeyDao, TransferStageTimers.disabled());
+    }
+
+    public AccountManager(AccountDao accountDao, IdempotencyKeyDao idempotencyKeyDao,
+                          TransferStageTimers stageTimers) {
+        this(accountDao, idempotencyKeyDao, stageTimers, AccountAggregates.disabled());
+    }
+
+    public AccountManager(AccountDao accountDao, IdempotencyKeyDao idempotencyKeyDao,
+                          TransferStageTimers stageTimers, AccountAggregates aggregates) {
+        this(accountDao, idempotencyKeyDao, stageTimers, aggregates, null);
+    }
+
+    /**
+     * @param journalDao journal of balance changes or {@code null} if changes are not journaled
+     */
+    public AccountManager(AccountDao accountDao, IdempotencyKeyDao idempotencyKeyDao,
+                          TransferStageTimers stageTimers, AccountAggregates aggregates,
+                          @Nullable JournalDao journalDao) {
         this.accountDao = accountDao;
+        this.idempotencyKeyDao = idempotencyKeyDao;
+        this.stageTimers = stageTimers;
+        this.aggregates = aggregates;
+        this.journalDao = journalDao;
+    }
+
+    /**
+     * Insert new {@code account} with generated id together with its opening balance journal entry.
+     *
+     * @param account new account, its id is set to the generated one
+     */
+    @Transactional
+    public void create(Account account) {
+        beginChange();
+        accountDao.insert(account);
+        created(account);
+    }
+
+    /**
+     * Insert new {@code account} with already assigned id together with its opening balance journal entry.
+     *
+     * @param account new account
+     */
+    @Transactional
+    public void createWithId(Account account) {
+        beginChange();
+        accountDao.insertWithId(account);
+        created(account);
+    }
+
+    private void created(Account account) {
+        if (journalDao != null) {
+            journalDao.insert(account.getId(), account.getAmount(), account.getAmount(), System.currentTimeMillis());
+        }
+        if (aggregates.isEnabled()) {
+            final BigDecimal amount = account.getAmount();
+            afterCommit(() -> aggregates.created(amount));
+        }
     }
 
     /**
@@ -32,11 +112,414 @@ public class AccountManager {
      */
     @Transactional
     public void transfer(Account fromAccount, Account toAccount, BigDecimal amount) {
+        beginChange();
+        final long start = stageTimers.start();
+        final BigDecimal fromOldAmount = fromAccount.getAmount();
         fromAccount.withdraw(amount);
         safeUpdate(fromAccount);
 
+        final BigDecimal toOldAmount = toAccount.getAmount();
         toAccount.deposit(amount);
         safeUpdate(toAccount);
+        if (journalDao != null) {
+            journalDao.insertTransfer(fromAccount.getId(), toAccount.getId(), amount.negate(), amount,
+                    fromAccount.getAmount(), toAccount.getAmount(), System.currentTimeMillis());
+        }
+        stageTimers.stop(TransferStageTimers.Stage.UPDATE, start);
+
+        if (aggregates.isEnabled()) {
+            final BigDecimal fromNewAmount = fromAccount.getAmount();
+            final BigDecimal toNewAmount = toAccount.getAmount();
+            afterCommit(() -> aggregates.transferred(fromOldAmount, fromNewAmount, toOldAmount, toNewAmount));
+        }
+    }
+
+    /**
+     * Transfer money from {@code fromAccount} to {@code toAccount} and record {@code idempotencyKey} in the same
+     * transaction, so the key is stored if and only if the transfer is committed.
+     *
+     * @param fromAccount    source account
+     * @param toAccount      destination account
+     * @param amount         money to transfer
+     * @param idempotencyKey key of the transfer
+     * @throws org.springframework.dao.DuplicateKeyException if the key has been already recorded
+     */
+    @Transactional
+    public void transfer(Account fromAccount, Account toAccount, BigDecimal amount, IdempotencyKey idempotencyKey) {
+        // the key goes first: a concurrent duplicate fails before any account is touched
+        recordIdempotencyKey(idempotencyKey);
+        transfer(fromAccount, toAccount, amount);
+    }
+
+    /**
+     * Transfer money between accounts in transactional manner guarding them by database row locks instead of
+     * in-process locks, so several service instances can share the database. Rows are locked in ascending id order
+     * to avoid deadlocks and are released on commit or rollback. HSQLDB locks the whole account table in its
+     * two-phase locking mode, so such transfers are serialized.
+     *
+     * @param fromAccountId source account id
+     * @param toAccountId   destination account id
+     * @param amount        money to transfer
+     * @throws NoSuchAccountException if any of the accounts doesn't exist
+     * @throws LimitExceededException if the source account doesn't have enough money
+     */
+    @Transactional
+    public void transferWithRowLocks(long fromAccountId, long toAccountId, BigDecimal amount) {
+        transferWithRowLocks(fromAccountId, toAccountId, amount, null);
+    }
+
+    /**
+     * The same as {@link #transferWithRowLocks(long, long, BigDecimal)}, but also records {@code idempotencyKey} in the
+     * transfer transaction unless it is {@code null}.
+     *
+     * @param fromAccountId  source account id
+     * @param toAccountId    destination account id
+     * @param amount         money to transfer
+     * @param idempotencyKey key of the transfer
+     * @throws org.springframework.dao.DuplicateKeyException if the key has been already recorded
+     */
+    @Transactional
+    public void transferWithRowLocks(long fromAccountId, long toAccountId, BigDecimal amount,
+                                     @Nullable IdempotencyKey idempotencyKey) {
+        if (idempotencyKey != null) {
+            recordIdempotencyKey(idempotencyKey);
+        }
+        beginChange();
+        final Account firstAccount = selectForUpdate(Math.min(fromAccountId, toAccountId));
+        final Account secondAccount = selectForUpdate(Math.max(fromAccountId, toAccountId));
+
+        final Account fromAccount = firstAccount.getId() == fromAccountId ? firstAccount : secondAccount;
+        final Account toAccount = firstAccount.getId() == fromAccountId ? secondAccount : firstAccount;
+        if (!fromAccount.canWithdraw(amount)) {
+            throw new LimitExceededException(fromAccountId, amount, fromAccount.getAmount());
+        }
+        transfer(fromAccount, toAccount, amount);
+    }
+
+    private Account selectForUpdate(long accountId) {
+        final Account account = accountDao.selectForUpdate(accountId);
+        if (account == null) {
+            throw new NoSuchAccountException(accountId);
+        }
+        return account;
+    }
+
+    /**
+     * Withdraw money from {@code account}. It is the first leg of a transfer that spans several transactions, e.g.
+     * between accounts stored in different databases.
+     *
+     * @param account account to withdraw money from
+     * @param amount  money to withdraw
+     */
+    @Transactional
+    public void withdraw(Account account, BigDecimal amount) {
+        beginChange();
+        final BigDecimal oldAmount = account.getAmount();
+        account.withdraw(amount);
+        safeUpdate(account);
+        recordChange(account.getId(), oldAmount, account.getAmount());
+    }
+
+    /**
+     * Deposit money to {@code account}. It is the second leg of a transfer that spans several transactions.
+     *
+     * @param account account to deposit money to
+     * @param amount  money to deposit
+     */
+    @Transactional
+    public void deposit(Account account, BigDecimal amount) {
+        beginChange();
+        final BigDecimal oldAmount = account.getAmount();
+        account.deposit(amount);
+        safeUpdate(account);
+        recordChange(account.getId(), oldAmount, account.getAmount());
+    }
+
+    /**
+     * Record {@code idempotencyKey}. It must be called within the transaction of the transfer the key belongs to.
+     *
+     * @param idempotencyKey key
+     * @throws org.springframework.dao.DuplicateKeyException if the key has been already recorded
+     */
+    @Transactional
+    public void recordIdempotencyKey(IdempotencyKey idempotencyKey) {
+        idempotencyKeyDao.insert(idempotencyKey);
+    }
+
+    /**
+     * Update the outcome recorded by the idempotency key.
+     *
+     * @param idempotencyKey key with the outcome
+     */
+    @Transactional
+    public void updateIdempotencyKey(IdempotencyKey idempotencyKey) {
+        idempotencyKeyDao.updateState(idempotencyKey);
+    }
+
+    /**
+     * Delete idempotency key of a transfer which has been rolled back by a compensating transaction.
+     *
+     * @param id key
+     */
+    @Transactional
+    public void forgetIdempotencyKey(String id) {
+        idempotencyKeyDao.delete(id);
+    }
+
+    /**
+     * Find recorded idempotency key.
+     *
+     * @param id key
+     * @return recorded key or {@code null} if the transfer with the key has not been committed or the key has expired
+     */
+    @Nullable
+    public IdempotencyKey findIdempotencyKey(String id) {
+        return idempotencyKeyDao.select(id);
+    }
+
+    /**
+     * Delete idempotency keys created before {@code createdBefore}, then the oldest ones beyond {@code maxKeys}.
+     *
+     * @param createdBefore time in milliseconds since epoch
+     * @param maxKeys       max number of keys to keep
+     * @return number of deleted keys
+     */
+    @Transactional
+    public int purgeIdempotencyKeys(long createdBefore, long maxKeys) {
+        int deleted = idempotencyKeyDao.deleteCreatedBefore(createdBefore);
+        final long excess = idempotencyKeyDao.count() - maxKeys;
+        if (excess > 0) {
+            deleted += idempotencyKeyDao.deleteOldest(excess);
+        }
+        return deleted;
+    }
+
+    /**
+     * Pass every account to {@code action} in ascending id order. Accounts are read through a database cursor within
+     * one read-only transaction, so only a bounded number of them is held in memory at a time.
+     *
+     * @param action action to perform on every account
+     * @return number of accounts
+     */
+    @Transactional(readOnly = true)
+    public long forEachAccount(Consumer<? super Account> action) {
+        long count = 0;
+        try (Cursor<Account> cursor = accountDao.selectAll()) {
+            for (Account account : cursor) {
+                action.accept(account);
+                ++count;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count;
+    }
+
+    /**
+     * Run the {@code action} in a read-only transaction of the account database, e.g. to hold a connection while
+     * changes are paused.
+     *
+     * @param action action
+     * @param <T>    type of the result
+     * @return result of the action
+     */
+    @Transactional(readOnly = true)
+    public <T> T inReadOnlyTransaction(Supplier<T> action) {
+        return action.get();
+    }
+
+    /**
+     * Return the greatest account id.
+     *
+     * @return max account id, 0 if there are no accounts
+     */
+    public long getMaxAccountId() {
+        final Long maxId = accountDao.selectMaxId();
+        return maxId == null ? 0 : maxId;
+    }
+
+    /**
+     * Compare stored balances of accounts with ids in range [{@code fromAccountId}, {@code toAccountId}) with
+     * balances recomputed from the journal checkpoints and the following entries. Both are streamed by database
+     * cursors in id order and merged, so memory doesn't depend on the size of the range. Transfers committed while the
+     * range is read may be reported, so every discrepancy should be confirmed by {@link #recheck(long)}.
+     *
+     * @param fromAccountId inclusive lower bound of account ids
+     * @param toAccountId   exclusive upper bound of account ids
+     * @param discrepancies action to perform on every discrepancy
+     * @return number of checked accounts
+     */
+    @Transactional(readOnly = true)
+    public long reconcileRange(long fromAccountId, long toAccountId, Consumer<BalanceDiscrepancy> discrepancies) {
+        if (journalDao == null) {
+            throw new IllegalStateException("Balance changes are not journaled");
+        }
+        long count = 0;
+        try (Cursor<Account> accounts = accountDao.selectRange(fromAccountId, toAccountId);
+             Cursor<AccountBalance> balances = journalDao.selectBalances(fromAccountId, toAccountId)) {
+            final Iterator<AccountBalance> balanceIterator = balances.iterator();
+            AccountBalance balance = balanceIterator.hasNext() ? balanceIterator.next() : null;
+            for (Account account : accounts) {
+                ++count;
+                // accounts missing in the account cursor, but having journal entries
+                while (balance != null && balance.getAccountId() < account.getId()) {
+                    discrepancies.accept(new BalanceDiscrepancy(balance.getAccountId(), null, balance.getAmount()));
+                    balance = balanceIterator.hasNext() ? balanceIterator.next() : null;
+                }
+                BigDecimal expected = BigDecimal.ZERO;
+                if (balance != null && balance.getAccountId() == account.getId()) {
+                    expected = balance.getAmount();
+                    balance = balanceIterator.hasNext() ? balanceIterator.next() : null;
+                }
+                if (account.getAmount().compareTo(expected) != 0) {
+                    discrepancies.accept(new BalanceDiscrepancy(account.getId(), account.getAmount(), expected));
+                }
+            }
+            while (balance != null) {
+                discrepancies.accept(new BalanceDiscrepancy(balance.getAccountId(), null, balance.getAmount()));
+                balance = balanceIterator.hasNext() ? balanceIterator.next() : null;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count;
+    }
+
+    /**
+     * Compare stored balance of the account with the balance recomputed from the journal while the account is locked,
+     * so a concurrent transfer can't make them differ.
+     *
+     * @param accountId account id
+     * @return discrepancy or {@code null} if the balances match
+     */
+    @Nullable
+    @Transactional
+    public BalanceDiscrepancy recheck(long accountId) {
+        if (journalDao == null) {
+            throw new IllegalStateException("Balance changes are not journaled");
+        }
+        // the database row is read bypassing any cache, balance and journal entries are changed in one transaction
+        final Account account = accountDao.selectForUpdate(accountId);
+        final BigDecimal expected = journalDao.selectBalance(accountId);
+        if (account == null) {
+            return expected.signum() == 0 ? null : new BalanceDiscrepancy(accountId, null, expected);
+        }
+        return account.getAmount().compareTo(expected) == 0
+                ? null : new BalanceDiscrepancy(accountId, account.getAmount(), expected);
+    }
+
+    /**
+     * Move journal checkpoints of accounts with ids in range [{@code fromAccountId}, {@code toAccountId}) forward, so
+     * later reconciliations sum only entries made since, and move the covered entries created before
+     * {@code archiveBefore} to the archive.
+     *
+     * @param fromAccountId inclusive lower bound of account ids
+     * @param toAccountId   exclusive upper bound of account ids
+     * @param archiveBefore time in milliseconds since epoch, 0 - entries are not archived
+     * @return number of archived entries
+     */
+    @Transactional
+    public int checkpointRange(long fromAccountId, long toAccountId, long archiveBefore) {
+        if (journalDao == null) {
+            throw new IllegalStateException("Balance changes are not journaled");
+        }
+        journalDao.checkpoint(fromAccountId, toAccountId, System.currentTimeMillis());
+        if (archiveBefore <= 0) {
+            return 0;
+        }
+        final int archived = journalDao.archive(fromAccountId, toAccountId, archiveBefore);
+        final int deleted = journalDao.deleteArchived(fromAccountId, toAccountId, archiveBefore);
+        if (archived != deleted) {
+            throw new IllegalStateException("Archived and deleted entries differ: " + archived + " != " + deleted);
+        }
+        return archived;
+    }
+
+    /**
+     * Get page of balance changes of the account made in [{@code fromTime}, {@code toTime}) ordered by time. The next
+     * page starts after the cursor of the last entry of the current one, so every page is one index range scan.
+     * Archived changes are not included.
+     *
+     * @param accountId account id
+     * @param fromTime  inclusive lower bound of time in milliseconds since epoch
+     * @param toTime    exclusive upper bound of time in milliseconds since epoch
+     * @param after     cursor of the last entry of the previous page, {@code null} - for the first page
+     * @param limit     max number of entries to return
+     * @return entries ordered by time, empty list if there are no more entries
+     * @throws NoSuchAccountException if the account doesn't exist
+     */
+    public List<JournalEntry> getHistory(long accountId, long fromTime, long toTime, @Nullable HistoryCursor after,
+                                         int limit) {
+        checkJournaled(accountId);
+        if (after == null) {
+            return journalDao.selectHistory(accountId, fromTime, toTime, Long.MIN_VALUE, 0, limit);
+        }
+        return journalDao.selectHistory(accountId, Math.max(fromTime, after.getCreatedAt()), toTime,
+                after.getCreatedAt(), after.getEntryId(), limit);
+    }
+
+    /**
+     * Get balance of the account as of {@code time}.
+     *
+     * @param accountId account id
+     * @param time      time in milliseconds since epoch
+     * @return balance after the last change made at or before {@code time}, 0 if the account didn't exist by then
+     * @throws NoSuchAccountException if the account doesn't exist
+     */
+    public BigDecimal getBalanceAt(long accountId, long time) {
+        checkJournaled(accountId);
+        BigDecimal balance = journalDao.selectBalanceAt(accountId, time);
+        if (balance == null) {
+            balance = journalDao.selectArchivedBalanceAt(accountId, time);
+        }
+        return balance == null ? BigDecimal.ZERO : balance;
+    }
+
+    private void checkJournaled(long accountId) {
+        if (journalDao == null) {
+            throw new IllegalStateException("Balance changes are not journaled");
+        }
+        if (accountDao.select(accountId) == null) {
+            throw new NoSuchAccountException(accountId);
+        }
+    }
+
+    private void recordChange(long accountId, BigDecimal oldAmount, BigDecimal newAmount) {
+        if (journalDao != null) {
+            journalDao.insert(accountId, newAmount.subtract(oldAmount), newAmount, System.currentTimeMillis());
+        }
+        if (aggregates.isEnabled()) {
+            afterCommit(() -> aggregates.changed(oldAmount, newAmount));
+        }
+    }
+
+    private void beginChange() {
+        // a repair of the aggregates pauses changes between their first statement and the end of the
+        // transaction; without a transaction the change is counted right away and there is nothing to pause
+        if (aggregates.isEnabled() && TransactionSynchronizationManager.isSynchronizationActive()) {
+            aggregates.beginChange();
+            // after-completion callbacks are run after all the after-commit ones, i.e. once the change is counted
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    aggregates.endChange();
+                }
+            });
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        // rolled back changes must not be counted
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
     }
 
     private void safeUpdate(Account account) {
@@ -0,0 +1,41 @@
+package task.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Balance of an account recomputed from its journal entries. Unlike {@link Account} the amount may be negative, e.g.
+ * when the journal is inconsistent.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class AccountBalance {
+
+    private long accountId;
+    private BigDecimal amount;
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public AccountBalance setAccountId(long accountId) {
+        this.accountId = accountId;
+        return this;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public AccountBalance setAmount(BigDecimal amount) {
+        this.amount = amount;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "AccountBalance{" +
+                "accountId=" + accountId +
+                ", amount=" + amount +
+                '}';
+    }
+}
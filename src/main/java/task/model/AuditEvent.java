@@ -0,0 +1,127 @@
+package task.model;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.math.BigDecimal;
+
+/**
+ * Audit record of an account operation.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Immutable
+public final class AuditEvent {
+
+    /**
+     * Audited operation.
+     */
+    public enum Type {
+        /**
+         * Account has been created: {@code fromAccountId} is the id of the new account, {@code toAccountId} is 0.
+         */
+        CREATE,
+        /**
+         * Money has been transferred.
+         */
+        TRANSFER,
+        /**
+         * Transfer has been rejected, e.g. because of insufficient funds.
+         */
+        REJECT
+    }
+
+    /**
+     * Max length of the stored reason in UTF-8 bytes, so it fits {@code VARCHAR(256)} whether the database counts
+     * characters or bytes.
+     */
+    public static final int MAX_REASON_BYTES = 256;
+
+    private final Type type;
+    private final long fromAccountId;
+    private final long toAccountId;
+    @Nullable
+    private final BigDecimal amount;
+    @Nullable
+    private final String reason;
+    private final long createdAt;
+
+    public AuditEvent(Type type, long fromAccountId, long toAccountId, @Nullable BigDecimal amount,
+                      @Nullable String reason, long createdAt) {
+        this.type = type;
+        this.fromAccountId = fromAccountId;
+        this.toAccountId = toAccountId;
+        this.amount = amount;
+        this.reason = truncate(reason);
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Cut the reason to at most {@link #MAX_REASON_BYTES} UTF-8 bytes between code points, so a surrogate pair is
+     * never split.
+     */
+    @Nullable
+    private static String truncate(@Nullable String reason) {
+        if (reason == null || reason.length() * 3 <= MAX_REASON_BYTES) {
+            return reason;
+        }
+        int bytes = 0;
+        int end = 0;
+        while (end < reason.length()) {
+            final int codePoint = reason.codePointAt(end);
+            bytes += codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            if (bytes > MAX_REASON_BYTES) {
+                break;
+            }
+            end += Character.charCount(codePoint);
+        }
+        return end == reason.length() ? reason : reason.substring(0, end);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getFromAccountId() {
+        return fromAccountId;
+    }
+
+    public long getToAccountId() {
+        return toAccountId;
+    }
+
+    @Nullable
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    /**
+     * Return reason of the rejection.
+     *
+     * @return message of the rejection or {@code null} if the operation hasn't been rejected
+     */
+    @Nullable
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Return time of the operation.
+     *
+     * @return time in milliseconds since epoch
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return "AuditEvent{" +
+                "type=" + type +
+                ", fromAccountId=" + fromAccountId +
+                ", toAccountId=" + toAccountId +
+                ", amount=" + amount +
+                ", reason='" + reason + '\'' +
+                ", createdAt=" + createdAt +
+                '}';
+    }
+}
@@ -0,0 +1,57 @@
+package task.model;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.math.BigDecimal;
+
+/**
+ * Account whose stored balance doesn't match the balance recomputed from its journal entries.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Immutable
+public final class BalanceDiscrepancy {
+
+    private final long accountId;
+    @Nullable
+    private final BigDecimal actual;
+    private final BigDecimal expected;
+
+    public BalanceDiscrepancy(long accountId, @Nullable BigDecimal actual, BigDecimal expected) {
+        this.accountId = accountId;
+        this.actual = actual;
+        this.expected = expected;
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * Return stored balance.
+     *
+     * @return balance or {@code null} if the account has journal entries, but doesn't exist
+     */
+    @Nullable
+    public BigDecimal getActual() {
+        return actual;
+    }
+
+    /**
+     * Return balance recomputed from the journal.
+     *
+     * @return sum of the journal entries of the account
+     */
+    public BigDecimal getExpected() {
+        return expected;
+    }
+
+    @Override
+    public String toString() {
+        return "BalanceDiscrepancy{" +
+                "accountId=" + accountId +
+                ", actual=" + actual +
+                ", expected=" + expected +
+                '}';
+    }
+}
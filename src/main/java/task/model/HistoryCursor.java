@@ -0,0 +1,88 @@
+package task.model;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Objects;
+
+/**
+ * Position in the history of an account: entries are ordered by time and then by id, so the next page starts right
+ * after the last entry of the previous one. The cursor is passed to clients as an opaque string.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Immutable
+public final class HistoryCursor {
+
+    private static final char SEPARATOR = '_';
+
+    private final long createdAt;
+    private final long entryId;
+
+    public HistoryCursor(long createdAt, long entryId) {
+        this.createdAt = createdAt;
+        this.entryId = entryId;
+    }
+
+    /**
+     * Return cursor pointing right after the {@code entry}.
+     *
+     * @param entry last entry of a page
+     * @return cursor
+     */
+    public static HistoryCursor after(JournalEntry entry) {
+        return new HistoryCursor(entry.getCreatedAt(), entry.getId());
+    }
+
+    /**
+     * Parse cursor encoded by {@link #encode()}.
+     *
+     * @param value encoded cursor
+     * @return cursor
+     * @throws IllegalArgumentException if the value is not a valid cursor
+     */
+    public static HistoryCursor parse(String value) {
+        final int separator = value.indexOf(SEPARATOR);
+        if (separator < 0) {
+            throw new IllegalArgumentException("invalid cursor: " + value);
+        }
+        try {
+            return new HistoryCursor(Long.parseLong(value.substring(0, separator)),
+                    Long.parseLong(value.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid cursor: " + value);
+        }
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getEntryId() {
+        return entryId;
+    }
+
+    public String encode() {
+        return Long.toString(createdAt) + SEPARATOR + entryId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        HistoryCursor that = (HistoryCursor) o;
+        return createdAt == that.createdAt &&
+                entryId == that.entryId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(createdAt, entryId);
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryCursor{" +
+                "createdAt=" + createdAt +
+                ", entryId=" + entryId +
+                '}';
+    }
+}
@@ -0,0 +1,228 @@
+package task.model;
+
+import task.exception.BusinessException;
+import task.exception.LimitExceededException;
+import task.exception.NoSuchAccountException;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * Record of a transfer executed with a client supplied idempotency key. It is written in the same transaction as the
+ * transfer itself, so a {@link State#TRANSFERRED TRANSFERRED} key exists if and only if the transfer has been
+ * committed, and a retried request with the same key is answered with the stored outcome instead of being executed
+ * again. A rejected transfer is recorded too, so its retry gets the original rejection even if the accounts have
+ * changed since.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class IdempotencyKey {
+
+    /**
+     * Max length of the key.
+     */
+    public static final int MAX_LENGTH = 100;
+
+    /**
+     * Outcome of the transfer.
+     */
+    public enum State {
+        /**
+         * The key has been claimed, but the outcome of the transfer is not known yet, see
+         * {@link task.service.ShardedAccountService}.
+         */
+        PENDING,
+        TRANSFERRED,
+        /**
+         * The transfer has been rejected with {@link LimitExceededException}.
+         */
+        LIMIT_EXCEEDED,
+        /**
+         * The transfer has been rejected with {@link NoSuchAccountException}.
+         */
+        NO_SUCH_ACCOUNT
+    }
+
+    private String id;
+    private long fromAccountId;
+    private long toAccountId;
+    private BigDecimal amount;
+    private long createdAt;
+    private State state = State.TRANSFERRED;
+    private Long rejectedAccountId;
+    private BigDecimal balance;
+
+    public String getId() {
+        return id;
+    }
+
+    public IdempotencyKey setId(String id) {
+        this.id = id;
+        return this;
+    }
+
+    public long getFromAccountId() {
+        return fromAccountId;
+    }
+
+    public IdempotencyKey setFromAccountId(long fromAccountId) {
+        this.fromAccountId = fromAccountId;
+        return this;
+    }
+
+    public long getToAccountId() {
+        return toAccountId;
+    }
+
+    public IdempotencyKey setToAccountId(long toAccountId) {
+        this.toAccountId = toAccountId;
+        return this;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public IdempotencyKey setAmount(BigDecimal amount) {
+        this.amount = amount;
+        return this;
+    }
+
+    /**
+     * Return creation time, the key is purged once it gets older than the configured TTL.
+     *
+     * @return creation time in milliseconds since epoch
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public IdempotencyKey setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+        return this;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public IdempotencyKey setState(State state) {
+        this.state = state;
+        return this;
+    }
+
+    /**
+     * Return id of the account the transfer has been rejected for.
+     *
+     * @return account id or {@code null} if the transfer has not been rejected
+     */
+    @Nullable
+    public Long getRejectedAccountId() {
+        return rejectedAccountId;
+    }
+
+    public IdempotencyKey setRejectedAccountId(@Nullable Long rejectedAccountId) {
+        this.rejectedAccountId = rejectedAccountId;
+        return this;
+    }
+
+    /**
+     * Return balance of the source account which has been exceeded by the transfer.
+     *
+     * @return balance or {@code null} if the transfer has not been rejected with {@link State#LIMIT_EXCEEDED}
+     */
+    @Nullable
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public IdempotencyKey setBalance(@Nullable BigDecimal balance) {
+        this.balance = balance;
+        return this;
+    }
+
+    /**
+     * Record the rejection of the transfer.
+     *
+     * @param rejection {@link LimitExceededException} or {@link NoSuchAccountException}
+     * @return this key
+     * @throws IllegalArgumentException if the rejection is of another type
+     */
+    public IdempotencyKey setRejection(BusinessException rejection) {
+        if (rejection instanceof LimitExceededException) {
+            final LimitExceededException limitExceeded = (LimitExceededException) rejection;
+            return setState(State.LIMIT_EXCEEDED)
+                    .setRejectedAccountId(limitExceeded.getAccountId())
+                    .setBalance(limitExceeded.getAmount());
+        }
+        if (rejection instanceof NoSuchAccountException) {
+            return setState(State.NO_SUCH_ACCOUNT)
+                    .setRejectedAccountId(((NoSuchAccountException) rejection).getAccountId())
+                    .setBalance(null);
+        }
+        throw new IllegalArgumentException("Unsupported rejection: " + rejection.getClass().getName());
+    }
+
+    /**
+     * Return the recorded rejection, equal to the one the transfer has been rejected with.
+     *
+     * @return rejection or {@code null} if the transfer has not been rejected
+     */
+    @Nullable
+    public BusinessException getRejection() {
+        switch (state) {
+            case LIMIT_EXCEEDED:
+                return new LimitExceededException(rejectedAccountId, amount, balance);
+            case NO_SUCH_ACCOUNT:
+                return new NoSuchAccountException(rejectedAccountId);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Check whether this key and {@code other} describe the same transfer: a retry must not change its parameters.
+     *
+     * @param other other key
+     * @return {@code true} if accounts and amount are the same
+     */
+    public boolean isSameTransfer(IdempotencyKey other) {
+        return fromAccountId == other.fromAccountId &&
+                toAccountId == other.toAccountId &&
+                // compareTo is used because of possible different scales
+                amount.compareTo(other.amount) == 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        IdempotencyKey key = (IdempotencyKey) o;
+        return Objects.equals(id, key.id) &&
+                isSameTransfer(key) &&
+                createdAt == key.createdAt &&
+                state == key.state &&
+                Objects.equals(rejectedAccountId, key.rejectedAccountId) &&
+                (balance == null ? key.balance == null : key.balance != null && balance.compareTo(key.balance) == 0);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "IdempotencyKey{" +
+                "id='" + id + '\'' +
+                ", fromAccountId=" + fromAccountId +
+                ", toAccountId=" + toAccountId +
+                ", amount=" + amount +
+                ", createdAt=" + createdAt +
+                ", state=" + state +
+                ", rejectedAccountId=" + rejectedAccountId +
+                ", balance=" + balance +
+                '}';
+    }
+}
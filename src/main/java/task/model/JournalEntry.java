@@ -0,0 +1,109 @@
+package task.model;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+
+/**
+ * Journaled change of an account balance: the opening balance of a new account, a leg of a transfer, a withdrawal or
+ * a deposit.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class JournalEntry {
+
+    private long id;
+    private long accountId;
+    @Nullable
+    private Long counterpartyId;
+    private BigDecimal amount;
+    private BigDecimal balance;
+    private long createdAt;
+
+    public long getId() {
+        return id;
+    }
+
+    public JournalEntry setId(long id) {
+        this.id = id;
+        return this;
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public JournalEntry setAccountId(long accountId) {
+        this.accountId = accountId;
+        return this;
+    }
+
+    /**
+     * Return the other account of the transfer.
+     *
+     * @return account id or {@code null} if the change isn't a leg of a transfer committed in one transaction, e.g.
+     * an opening balance or a leg of a cross-shard transfer
+     */
+    @Nullable
+    public Long getCounterpartyId() {
+        return counterpartyId;
+    }
+
+    public JournalEntry setCounterpartyId(@Nullable Long counterpartyId) {
+        this.counterpartyId = counterpartyId;
+        return this;
+    }
+
+    /**
+     * Return signed change of the balance.
+     *
+     * @return negative for withdrawals, positive for deposits
+     */
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public JournalEntry setAmount(BigDecimal amount) {
+        this.amount = amount;
+        return this;
+    }
+
+    /**
+     * Return balance of the account right after the change.
+     *
+     * @return balance
+     */
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public JournalEntry setBalance(BigDecimal balance) {
+        this.balance = balance;
+        return this;
+    }
+
+    /**
+     * Return time of the change.
+     *
+     * @return time in milliseconds since epoch
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public JournalEntry setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalEntry{" +
+                "id=" + id +
+                ", accountId=" + accountId +
+                ", counterpartyId=" + counterpartyId +
+                ", amount=" + amount +
+                ", balance=" + balance +
+                ", createdAt=" + createdAt +
+                '}';
+    }
+}
@@ -0,0 +1,112 @@
+package task.model;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * Durable record of a transfer which is performed in two steps: between accounts stored in different shards or
+ * processed by different partitions.
+ * <p>
+ * The source shard keeps the intent in {@link State#PREPARED} state from the moment money is withdrawn until it is
+ * deposited to the destination account, then the intent becomes {@link State#COMMITTED}. The destination shard keeps
+ * a copy of the intent in {@link State#APPLIED} state written in the same transaction as the deposit, so the deposit
+ * is applied exactly once no matter how many times it is retried. When both accounts are in the same database the
+ * intent is simply moved to {@link State#COMMITTED} in the deposit transaction.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class TransferIntent {
+
+    /**
+     * State of the intent.
+     */
+    public enum State {
+        PREPARED,
+        COMMITTED,
+        APPLIED,
+        /**
+         * The transfer has been rolled back: money has been returned to the source account.
+         */
+        CANCELLED
+    }
+
+    private String id;
+    private long fromAccountId;
+    private long toAccountId;
+    private BigDecimal amount;
+    private State state;
+
+    public String getId() {
+        return id;
+    }
+
+    public TransferIntent setId(String id) {
+        this.id = id;
+        return this;
+    }
+
+    public long getFromAccountId() {
+        return fromAccountId;
+    }
+
+    public TransferIntent setFromAccountId(long fromAccountId) {
+        this.fromAccountId = fromAccountId;
+        return this;
+    }
+
+    public long getToAccountId() {
+        return toAccountId;
+    }
+
+    public TransferIntent setToAccountId(long toAccountId) {
+        this.toAccountId = toAccountId;
+        return this;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public TransferIntent setAmount(BigDecimal amount) {
+        this.amount = amount;
+        return this;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public TransferIntent setState(State state) {
+        this.state = state;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TransferIntent intent = (TransferIntent) o;
+        return fromAccountId == intent.fromAccountId &&
+                toAccountId == intent.toAccountId &&
+                Objects.equals(id, intent.id) &&
+                // compareTo is used because of possible different scales
+                amount.compareTo(intent.amount) == 0 &&
+                state == intent.state;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "TransferIntent{" +
+                "id='" + id + '\'' +
+                ", fromAccountId=" + fromAccountId +
+                ", toAccountId=" + toAccountId +
+                ", amount=" + amount +
+                ", state=" + state +
+                '}';
+    }
+}
@@ -0,0 +1,110 @@
+package task.model;
+
+import task.exception.BusinessException;
+import task.exception.LimitExceededException;
+import task.exception.NoSuchAccountException;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.Objects;
+
+/**
+ * Outcome of {@link task.service.AccountService#tryTransfer}: either the transfer has been executed or it has been
+ * rejected for a business reason. The rejection is kept as a {@link BusinessException}, which is cheap to create, so
+ * callers which need to throw it can do so, while the others just look at the {@link Status}.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Immutable
+public final class TransferResult {
+
+    /**
+     * Status of the transfer.
+     */
+    public enum Status {
+        TRANSFERRED,
+        /**
+         * The source account doesn't have enough money, see {@link LimitExceededException}.
+         */
+        LIMIT_EXCEEDED,
+        /**
+         * The source or the destination account doesn't exist, see {@link NoSuchAccountException}.
+         */
+        NO_SUCH_ACCOUNT
+    }
+
+    private static final TransferResult TRANSFERRED = new TransferResult(Status.TRANSFERRED, null);
+
+    private final Status status;
+    @Nullable
+    private final BusinessException rejection;
+
+    private TransferResult(Status status, @Nullable BusinessException rejection) {
+        this.status = status;
+        this.rejection = rejection;
+    }
+
+    /**
+     * Return result of the executed transfer.
+     *
+     * @return shared instance
+     */
+    public static TransferResult transferred() {
+        return TRANSFERRED;
+    }
+
+    /**
+     * Return result of the transfer rejected because of insufficient funds.
+     *
+     * @param rejection rejection details
+     * @return rejected result
+     */
+    public static TransferResult rejected(LimitExceededException rejection) {
+        return new TransferResult(Status.LIMIT_EXCEEDED, Objects.requireNonNull(rejection, "rejection is null"));
+    }
+
+    /**
+     * Return result of the transfer rejected because of nonexistent account.
+     *
+     * @param rejection rejection details
+     * @return rejected result
+     */
+    public static TransferResult rejected(NoSuchAccountException rejection) {
+        return new TransferResult(Status.NO_SUCH_ACCOUNT, Objects.requireNonNull(rejection, "rejection is null"));
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isTransferred() {
+        return status == Status.TRANSFERRED;
+    }
+
+    /**
+     * Return the reason of the rejection.
+     *
+     * @return rejection or {@code null} if the transfer has been executed
+     */
+    @Nullable
+    public BusinessException getRejection() {
+        return rejection;
+    }
+
+    /**
+     * Throw the rejection if the transfer has been rejected, the way {@link task.service.AccountService#transfer}
+     * reports it.
+     *
+     * @throws BusinessException if the transfer has been rejected
+     */
+    public void throwIfRejected() {
+        if (rejection != null) {
+            throw rejection;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return rejection == null ? status.name() : status + ": " + rejection.getMessage();
+    }
+}
@@ -0,0 +1,135 @@
+package task.rest;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import task.manager.AccountAggregates;
+import task.manager.AccountAggregates.Snapshot;
+import task.manager.AccountManager;
+
+import java.util.List;
+
+/**
+ * Admin endpoint of {@link AccountAggregates}: {@code GET /aggregates} returns the incrementally maintained values,
+ * {@code POST /aggregates} reconciles them against a full scan of all the accounts, {@code POST /aggregates/repair}
+ * also replaces inconsistent values by the scanned ones.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Endpoint(id = "aggregates")
+public class AccountAggregatesEndpoint {
+
+    private final AccountAggregates aggregates;
+    private final List<AccountManager> accountManagers;
+
+    /**
+     * @param aggregates      aggregates
+     * @param accountManagers managers of all the account stores, e.g. shards
+     */
+    public AccountAggregatesEndpoint(AccountAggregates aggregates, List<AccountManager> accountManagers) {
+        this.aggregates = aggregates;
+        this.accountManagers = accountManagers;
+    }
+
+    @ReadOperation
+    public Snapshot aggregates() {
+        return aggregates.snapshot();
+    }
+
+    /**
+     * Compute the aggregates by a full scan and compare them with the maintained ones. Balance changes go on during the
+     * scan, so a difference may be caused by changes committed meanwhile and a persistent one is worth a repair.
+     *
+     * @return maintained and scanned aggregates
+     */
+    @WriteOperation
+    public Reconciliation reconcile() {
+        return reconcile(0, false);
+    }
+
+    /**
+     * The same as {@link #reconcile()}, but balance changes are paused for the time of the scan (see
+     * {@link AccountAggregates#whilePaused}), so both values describe the same state, and inconsistent maintained
+     * values are replaced by the scanned ones. Every transfer waits for the scan.
+     *
+     * @param action {@code repair}
+     * @return maintained and scanned aggregates
+     */
+    @WriteOperation
+    public Reconciliation reconcile(@Selector String action) {
+        if (!"repair".equals(action)) {
+            throw new IllegalArgumentException("Unsupported action: " + action);
+        }
+        return reconcile(0, true);
+    }
+
+    private Reconciliation reconcile(int store, boolean repair) {
+        if (store < accountManagers.size()) {
+            // a connection of every store is taken before changes are paused: paused changes hold connections too
+            return accountManagers.get(store).inReadOnlyTransaction(() -> reconcile(store + 1, repair));
+        }
+        if (!repair) {
+            return new Reconciliation(aggregates.snapshot(), scan(), false);
+        }
+        return aggregates.whilePaused(() -> {
+            final Snapshot maintained = aggregates.snapshot();
+            final Snapshot scanned = scan();
+            final boolean repaired = !maintained.isConsistentWith(scanned);
+            if (repaired) {
+                aggregates.reset(scanned);
+            }
+            return new Reconciliation(maintained, scanned, repaired);
+        });
+    }
+
+    /**
+     * Compute the aggregates by a full scan of all the accounts.
+     *
+     * @return scanned aggregates
+     */
+    public Snapshot scan() {
+        final AccountAggregates.Scan scan = aggregates.newScan();
+        for (AccountManager accountManager : accountManagers) {
+            accountManager.forEachAccount(scan);
+        }
+        return scan.toSnapshot();
+    }
+
+    /**
+     * Result of the reconciliation.
+     */
+    public static final class Reconciliation {
+
+        private final Snapshot maintained;
+        private final Snapshot scanned;
+        private final boolean repaired;
+
+        Reconciliation(Snapshot maintained, Snapshot scanned, boolean repaired) {
+            this.maintained = maintained;
+            this.scanned = scanned;
+            this.repaired = repaired;
+        }
+
+        public Snapshot getMaintained() {
+            return maintained;
+        }
+
+        public Snapshot getScanned() {
+            return scanned;
+        }
+
+        public boolean isConsistent() {
+            return maintained.isConsistentWith(scanned);
+        }
+
+        /**
+         * Check whether the maintained values have been replaced by the scanned ones.
+         *
+         * @return {@code true} if the values were inconsistent and have been repaired
+         */
+        public boolean isRepaired() {
+            return repaired;
+        }
+    }
+}
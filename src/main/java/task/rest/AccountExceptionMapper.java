@@ -1,6 +1,7 @@
 package task.rest;
 
 import com.google.common.collect.ImmutableMap;
+import task.exception.IdempotencyKeyConflictException;
 import task.exception.LimitExceededException;
 import task.exception.NoSuchAccountException;
 
@@ -23,13 +24,31 @@ public class AccountExceptionMapper implements ExceptionMapper<Exception> {
                     .put(LimitExceededException.class, Status.BAD_REQUEST)
                     .put(NoSuchAccountException.class, Status.NOT_FOUND)
                     .put(IllegalArgumentException.class, Status.BAD_REQUEST)
+                    .put(IdempotencyKeyConflictException.class, Status.CONFLICT)
                     .build();
 
     @Override
     public Response toResponse(Exception exception) {
-        return Response.status(statusesByException.getOrDefault(exception.getClass(), Status.INTERNAL_SERVER_ERROR))
+        return Response.status(statusOf(exception))
                 .entity(exception.getMessage())
                 .type("text/plain")
                 .build();
     }
+
+    /**
+     * Return response status corresponding to given {@code exception}.
+     *
+     * @param exception exception
+     * @return response status
+     */
+    Status statusOf(Exception exception) {
+        // the closest mapped superclass wins, so subclasses of known exceptions are mapped too
+        for (Class<?> type = exception.getClass(); type != Exception.class; type = type.getSuperclass()) {
+            final Status status = statusesByException.get(type);
+            if (status != null) {
+                return status;
+            }
+        }
+        return Status.INTERNAL_SERVER_ERROR;
+    }
 }
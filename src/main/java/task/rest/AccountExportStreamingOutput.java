@@ -0,0 +1,95 @@
+package task.rest;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import task.service.AccountService;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes all accounts to the response body as they are read from the database cursor, so the export of any number of
+ * accounts takes constant memory.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+class AccountExportStreamingOutput implements StreamingOutput {
+
+    /**
+     * Output format.
+     */
+    enum Format {
+        /**
+         * JSON array of {@code {"accountId": ..., "amount": ...}} objects.
+         */
+        JSON,
+        /**
+         * CSV with {@code account_id,amount} header.
+         */
+        CSV
+    }
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final AccountService accountService;
+    private final Format format;
+
+    AccountExportStreamingOutput(AccountService accountService, Format format) {
+        this.accountService = accountService;
+        this.format = format;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        try {
+            if (format == Format.JSON) {
+                writeJson(output);
+            } else {
+                writeCsv(output);
+            }
+        } catch (UncheckedIOException e) {
+            // thrown by the actions below, e.g. when the client has disconnected
+            throw e.getCause();
+        }
+    }
+
+    private void writeJson(OutputStream output) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            accountService.exportAccounts(account -> {
+                try {
+                    generator.writeStartObject();
+                    generator.writeNumberField("accountId", account.getId());
+                    generator.writeNumberField("amount", account.getAmount());
+                    generator.writeEndObject();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+        }
+    }
+
+    private void writeCsv(OutputStream output) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+            writer.write("account_id,amount\n");
+            accountService.exportAccounts(account -> {
+                try {
+                    writer.write(Long.toString(account.getId()));
+                    writer.write(',');
+                    writer.write(account.getAmount().toPlainString());
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
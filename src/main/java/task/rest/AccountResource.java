@@ -3,21 +3,48 @@ package task.rest;
 import io.micrometer.core.annotation.Timed;
 import task.api.CreateAccountRequest;
 import task.api.CreateAccountResponse;
+import task.api.GetBalanceResponse;
 import task.api.GetAccountResponse;
+import task.api.GetAccountsResponse;
+import task.api.GetTransferResponse;
+import task.api.GetTransfersResponse;
 import task.api.TransferRequest;
 import task.model.Account;
+import task.model.HistoryCursor;
+import task.model.JournalEntry;
+import task.model.TransferResult;
 import task.service.AccountService;
+import task.service.BoundedExecutor;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Providers;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * This REST resource exposes {@link AccountService} API. Exceptions are handled by {@link AccountExceptionMapper}.
@@ -26,6 +53,9 @@ import javax.ws.rs.core.Response;
  * @see CreateAccountRequest
  * @see CreateAccountResponse
  * @see GetAccountResponse
+ * @see GetAccountsResponse
+ * @see GetTransfersResponse
+ * @see GetBalanceResponse
  * @see TransferRequest
  * @see AccountExceptionMapper
  */
@@ -33,11 +63,57 @@ import javax.ws.rs.core.Response;
 @Produces(MediaType.APPLICATION_JSON)
 public class AccountResource {
 
+    /**
+     * Seconds the client is advised to wait before retrying rejected request.
+     */
+    static final String RETRY_AFTER_SECONDS = "1";
+
+    /**
+     * Media type of newline-delimited JSON.
+     */
+    static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    /**
+     * Media type of CSV.
+     */
+    static final String TEXT_CSV = "text/csv";
+
+    /**
+     * Header with client supplied key which makes a transfer request safe to retry.
+     */
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    /**
+     * Response header which is set to {@code true} when the transfer has been executed by a previous request with the
+     * same idempotency key and the response is replayed.
+     */
+    static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
+    /**
+     * Max length of idempotency key, the stream endpoint derives longer per item keys from it.
+     */
+    static final int MAX_IDEMPOTENCY_KEY_LENGTH = 64;
+
+    /**
+     * Max number of accounts per page.
+     */
+    static final int MAX_PAGE_SIZE = 1000;
+
     private final AccountService accountService;
+    private final BoundedExecutor transferExecutor;
+    private final Providers providers;
 
+    /**
+     * @param accountService   account service
+     * @param transferExecutor executor of asynchronous transfers
+     * @param providers        providers with the registered exception mappers
+     */
     @Inject
-    public AccountResource(AccountService accountService) {
+    public AccountResource(AccountService accountService, BoundedExecutor transferExecutor,
+                           @Context Providers providers) {
         this.accountService = accountService;
+        this.transferExecutor = transferExecutor;
+        this.providers = providers;
     }
 
     /**
@@ -69,16 +145,214 @@ public class AccountResource {
     }
 
     /**
-     * Transfers money from one account to another.
+     * Get page of accounts ordered by id. The next page is requested with {@code after} set to {@code next} of the
+     * current one, so deep pages cost as much as the first one.
+     *
+     * @param after id of the last account of the previous page, 0 - for the first page
+     * @param limit max number of accounts to return
+     * @return {@link Response} with Status.OK status and {@link GetAccountsResponse} entity.
+     */
+    @Timed(value = "http.request", extraTags = {"uri", "/accounts"})
+    @GET
+    public Response getAccounts(@QueryParam("after") @DefaultValue("0") long after,
+                                @QueryParam("limit") @DefaultValue("100") @Min(1) @Max(MAX_PAGE_SIZE) int limit) {
+        final List<Account> accounts = accountService.getAccounts(after, limit);
+        final List<GetAccountResponse> page = new ArrayList<>(accounts.size());
+        for (Account account : accounts) {
+            page.add(new GetAccountResponse(account.getId(), account.getAmount()));
+        }
+        final Long next = accounts.size() < limit ? null : accounts.get(accounts.size() - 1).getId();
+        return Response.ok(new GetAccountsResponse(page, next)).build();
+    }
+
+    /**
+     * Get page of balance changes of the account made in [{@code from}, {@code to}) ordered by time: its transfers,
+     * withdrawals, deposits and the opening balance. The next page is requested with {@code cursor} set to
+     * {@code next} of the current one, so deep pages cost as much as the first one.
      *
-     * @param request {@link TransferRequest}
+     * @param accountId account id
+     * @param from      inclusive lower bound of time in milliseconds since epoch
+     * @param to        exclusive upper bound of time in milliseconds since epoch
+     * @param cursor    cursor of the previous page, none - for the first page
+     * @param limit     max number of changes to return
+     * @return {@link Response} with Status.OK status and {@link GetTransfersResponse} entity in case of success.
+     */
+    @Timed(value = "http.request", extraTags = {"uri", "/accounts/{accountId}/transfers"})
+    @GET
+    @Path("/{accountId}/transfers")
+    public Response getTransfers(@NotNull @PathParam("accountId") long accountId,
+                                 @QueryParam("from") @DefaultValue("0") long from,
+                                 @QueryParam("to") @DefaultValue("" + Long.MAX_VALUE) long to,
+                                 @QueryParam("cursor") @Nullable String cursor,
+                                 @QueryParam("limit") @DefaultValue("100") @Min(1) @Max(MAX_PAGE_SIZE) int limit) {
+        final HistoryCursor after = cursor == null || cursor.isEmpty() ? null : HistoryCursor.parse(cursor);
+        final List<JournalEntry> entries = accountService.getHistory(accountId, from, to, after, limit);
+        final List<GetTransferResponse> page = new ArrayList<>(entries.size());
+        for (JournalEntry entry : entries) {
+            page.add(new GetTransferResponse(entry.getCounterpartyId(), entry.getAmount(), entry.getBalance(),
+                    entry.getCreatedAt()));
+        }
+        final String next = entries.size() < limit ? null
+                : HistoryCursor.after(entries.get(entries.size() - 1)).encode();
+        return Response.ok(new GetTransfersResponse(page, next)).build();
+    }
+
+    /**
+     * Get balance of the account as of given time.
+     *
+     * @param accountId account id
+     * @param at        time in milliseconds since epoch, now by default
+     * @return {@link Response} with Status.OK status and {@link GetBalanceResponse} entity in case of success.
+     */
+    @Timed(value = "http.request", extraTags = {"uri", "/accounts/{accountId}/balance"})
+    @GET
+    @Path("/{accountId}/balance")
+    public Response getBalance(@NotNull @PathParam("accountId") long accountId, @QueryParam("at") @Nullable Long at) {
+        final long time = at == null ? System.currentTimeMillis() : at;
+        final BigDecimal amount = accountService.getBalanceAt(accountId, time);
+        return Response.ok(new GetBalanceResponse(accountId, time, amount)).build();
+    }
+
+    /**
+     * Export all accounts ordered by id as JSON array. The accounts are streamed from the database cursor to the
+     * client, so the export takes constant memory.
+     *
+     * @return {@link Response} with Status.OK status and streamed JSON array entity.
+     */
+    @Timed(value = "http.request", extraTags = {"uri", "/accounts/export"})
+    @GET
+    @Path("/export")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response exportJson() {
+        return Response.ok(new AccountExportStreamingOutput(accountService,
+                AccountExportStreamingOutput.Format.JSON)).build();
+    }
+
+    /**
+     * Export all accounts ordered by id as CSV, see {@link #exportJson()}.
+     *
+     * @return {@link Response} with Status.OK status and streamed CSV entity.
+     */
+    @Timed(value = "http.request", extraTags = {"uri", "/accounts/export"})
+    @GET
+    @Path("/export")
+    @Produces(TEXT_CSV)
+    public Response exportCsv() {
+        return Response.ok(new AccountExportStreamingOutput(accountService,
+                AccountExportStreamingOutput.Format.CSV)).build();
+    }
+
+    /**
+     * Transfers money from one account to another. If {@value #IDEMPOTENCY_KEY} header is set, the transfer is
+     * executed at most once per key, so the request can be safely retried after a timeout: a retry of a transfer
+     * which has been already executed gets the same response with {@value #IDEMPOTENT_REPLAYED} header.
+     *
+     * @param request        {@link TransferRequest}
+     * @param idempotencyKey optional idempotency key
      * @return {@link Response} with Status.OK status and "OK" entity in case of success.
      */
     @Timed(value = "http.request", extraTags = {"uri", "/accounts/transfer"})
     @POST
     @Path("/transfer")
-    public Response transfer(@Valid @NotNull TransferRequest request) {
-        accountService.transfer(request.getFrom(), request.getTo(), request.getAmount());
-        return Response.ok("OK").build();
+    public Response transfer(@Valid @NotNull TransferRequest request,
+                             @HeaderParam(IDEMPOTENCY_KEY) @Size(min = 1, max = MAX_IDEMPOTENCY_KEY_LENGTH)
+                                     String idempotencyKey) {
+        return transferResponse(request, idempotencyKey);
+    }
+
+    private Response transferResponse(TransferRequest request, @Nullable String idempotencyKey) {
+        if (idempotencyKey == null) {
+            // a rejection is answered without throwing: it is as frequent as a success for some clients
+            final TransferResult result = accountService.tryTransfer(request.getFrom(), request.getTo(),
+                    request.getAmount());
+            return result.isTransferred()
+                    ? Response.ok("OK").build()
+                    : toResponse(result.getRejection());
+        }
+        final boolean transferred = accountService.transfer(request.getFrom(), request.getTo(), request.getAmount(),
+                idempotencyKey);
+        final Response.ResponseBuilder response = Response.ok("OK");
+        if (!transferred) {
+            response.header(IDEMPOTENT_REPLAYED, "true");
+        }
+        return response.build();
+    }
+
+    /**
+     * Transfers money from one account to another asynchronously: the request thread is released immediately and the
+     * transfer is executed by the bounded transfer executor. If the executor queue is full the request is rejected
+     * right away, so the throughput of accepted transfers doesn't degrade under overload.
+     * <p>
+     * The {@code http.request} timer of the method is stopped by the Jersey metrics listener when the request is
+     * finished, i.e. once the suspended response is resumed and written, so it covers the queue time and the transfer
+     * itself rather than only the hand-over to the executor ({@code AsyncTransferTimingIT}).
+     * <p>
+     * {@value #IDEMPOTENCY_KEY} header is supported the same way as by {@link #transfer(TransferRequest, String)}.
+     *
+     * @param request        {@link TransferRequest}
+     * @param idempotencyKey optional idempotency key
+     * @param asyncResponse  resumed with Status.OK status and "OK" entity in case of success, with
+     *                       Status.SERVICE_UNAVAILABLE status if the executor queue is full.
+     */
+    @Timed(value = "http.request", extraTags = {"uri", "/accounts/transfer/async"})
+    @POST
+    @Path("/transfer/async")
+    public void transferAsync(@Valid @NotNull TransferRequest request,
+                              @HeaderParam(IDEMPOTENCY_KEY) @Size(min = 1, max = MAX_IDEMPOTENCY_KEY_LENGTH)
+                                      String idempotencyKey,
+                              @Suspended AsyncResponse asyncResponse) {
+        try {
+            transferExecutor.execute(() -> {
+                try {
+                    asyncResponse.resume(transferResponse(request, idempotencyKey));
+                } catch (RuntimeException e) {
+                    // mapped by AccountExceptionMapper
+                    asyncResponse.resume(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            asyncResponse.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                    .entity("Too many transfers in progress")
+                    .type("text/plain")
+                    .build());
+        }
+    }
+
+    /**
+     * Transfers money for every {@link TransferRequest} of newline-delimited JSON stream. Items are executed one by
+     * one while the body is being uploaded and a result line per item is streamed back, see
+     * {@link TransferStreamingOutput}, so a batch of any size costs one HTTP request and constant memory. If
+     * {@value #IDEMPOTENCY_KEY} header is set, every item gets its own key derived from the header and its index, so
+     * a retried stream executes only the items which haven't been executed before.
+     * <p>
+     * The items are executed while the entity is written, after this method has returned. The {@code http.request}
+     * timer of the method is stopped by the Jersey metrics listener when the request is finished, so it covers the
+     * whole stream ({@code AsyncTransferTimingIT}).
+     *
+     * @param input          request body
+     * @param idempotencyKey optional idempotency key of the whole stream
+     * @return {@link Response} with Status.OK status and newline-delimited results entity.
+     */
+    @Timed(value = "http.request", extraTags = {"uri", "/accounts/transfer/stream"})
+    @POST
+    @Path("/transfer/stream")
+    @Consumes(APPLICATION_NDJSON)
+    @Produces(APPLICATION_NDJSON)
+    public Response transferStream(InputStream input,
+                                   @HeaderParam(IDEMPOTENCY_KEY) @Size(min = 1, max = MAX_IDEMPOTENCY_KEY_LENGTH)
+                                           String idempotencyKey) {
+        return Response.ok(new TransferStreamingOutput(accountService, this::toResponse, input, idempotencyKey))
+                .build();
+    }
+
+    /**
+     * Map the exception by the registered exception mapper, the same way as if it had been thrown by the resource.
+     */
+    @SuppressWarnings("unchecked")
+    private Response toResponse(Exception exception) {
+        final ExceptionMapper<Exception> mapper =
+                providers.getExceptionMapper((Class<Exception>) exception.getClass());
+        return mapper == null ? Response.serverError().build() : mapper.toResponse(exception);
     }
 }
@@ -0,0 +1,41 @@
+package task.rest;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import task.service.BalanceReconciler;
+import task.service.BalanceReconciler.Report;
+
+import javax.annotation.Nullable;
+
+/**
+ * Admin endpoint of {@link BalanceReconciler}: {@code GET /reconciliation} returns the report of the last
+ * reconciliation, {@code POST /reconciliation} reconciles all the accounts right away.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@Endpoint(id = "reconciliation")
+public class ReconciliationEndpoint {
+
+    private final BalanceReconciler reconciler;
+
+    public ReconciliationEndpoint(BalanceReconciler reconciler) {
+        this.reconciler = reconciler;
+    }
+
+    /**
+     * Return report of the last reconciliation.
+     *
+     * @return report or {@code null} (404) if there were no reconciliations yet
+     */
+    @Nullable
+    @ReadOperation
+    public Report lastReport() {
+        return reconciler.getLastReport();
+    }
+
+    @WriteOperation
+    public Report reconcile() {
+        return reconciler.reconcile();
+    }
+}
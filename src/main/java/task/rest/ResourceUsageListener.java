@@ -0,0 +1,168 @@
+package task.rest;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Attributes heap allocation and CPU time to requests. For a sampled request the allocated bytes and CPU time of the
+ * request thread are read from {@link ThreadMXBean} when the request starts and when it finishes (i.e. after the
+ * response entity has been written), the differences are recorded as {@code http.request.allocated} and
+ * {@code http.request.cpu} distributions tagged by the {@code uri} of the resource method's {@link Timed} annotation.
+ * <p>
+ * An asynchronous request finishes on another thread, so only the part executed by the request thread up to the
+ * return from the resource method is recorded.
+ * <p>
+ * Meters are registered once per {@code uri} and cached, so a sampled request only looks them up.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@ThreadSafe
+public class ResourceUsageListener implements ApplicationEventListener {
+
+    static final String UNKNOWN_URI = "UNKNOWN";
+
+    private final MeterRegistry registry;
+    private final double samplingRate;
+    @Nullable
+    private final com.sun.management.ThreadMXBean threadMXBean;
+    private final boolean cpuTimeSupported;
+    private final Map<Method, String> urisByMethod = new ConcurrentHashMap<>();
+    private final Map<String, Meters> metersByUri = new ConcurrentHashMap<>();
+
+    /**
+     * @param registry     registry of the distributions
+     * @param samplingRate share of measured requests in range [0, 1]
+     */
+    public ResourceUsageListener(MeterRegistry registry, double samplingRate) {
+        if (samplingRate < 0 || samplingRate > 1) {
+            throw new IllegalArgumentException("sampling rate is not in [0, 1]: " + samplingRate);
+        }
+        this.registry = registry;
+        this.samplingRate = samplingRate;
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        // allocation accounting is a HotSpot extension
+        this.threadMXBean = bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                ? (com.sun.management.ThreadMXBean) bean : null;
+        this.cpuTimeSupported = bean.isCurrentThreadCpuTimeSupported();
+    }
+
+    @Override
+    public void onEvent(ApplicationEvent event) {
+    }
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent requestEvent) {
+        if (samplingRate <= 0 || (samplingRate < 1 && ThreadLocalRandom.current().nextDouble() >= samplingRate)) {
+            return null;
+        }
+        return new Usage();
+    }
+
+    private long allocatedBytes() {
+        return threadMXBean == null ? 0 : threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private long cpuNanos() {
+        return cpuTimeSupported ? ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime() : 0;
+    }
+
+    private void record(@Nullable ResourceMethod resourceMethod, long allocatedBytes, long cpuNanos) {
+        final String uri = resourceMethod == null
+                ? UNKNOWN_URI
+                : urisByMethod.computeIfAbsent(resourceMethod.getInvocable().getHandlingMethod(),
+                ResourceUsageListener::uriOf);
+        final Meters meters = metersByUri.computeIfAbsent(uri, this::register);
+        if (meters.allocated != null) {
+            meters.allocated.record(allocatedBytes);
+        }
+        if (meters.cpu != null) {
+            meters.cpu.record(cpuNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Meters register(String uri) {
+        final DistributionSummary allocated = threadMXBean == null ? null
+                : DistributionSummary.builder("http.request.allocated")
+                .description("Bytes allocated by the request thread")
+                .baseUnit("bytes")
+                .tag("uri", uri)
+                .register(registry);
+        final Timer cpu = !cpuTimeSupported ? null
+                : Timer.builder("http.request.cpu")
+                .description("CPU time of the request thread")
+                .tag("uri", uri)
+                .register(registry);
+        return new Meters(allocated, cpu);
+    }
+
+    static String uriOf(Method method) {
+        final Timed timed = method.getAnnotation(Timed.class);
+        if (timed != null) {
+            final String[] extraTags = timed.extraTags();
+            for (int i = 0; i + 1 < extraTags.length; i += 2) {
+                if ("uri".equals(extraTags[i])) {
+                    return extraTags[i + 1];
+                }
+            }
+        }
+        return UNKNOWN_URI;
+    }
+
+    private static final class Meters {
+
+        @Nullable
+        final DistributionSummary allocated;
+        @Nullable
+        final Timer cpu;
+
+        Meters(@Nullable DistributionSummary allocated, @Nullable Timer cpu) {
+            this.allocated = allocated;
+            this.cpu = cpu;
+        }
+    }
+
+    /**
+     * Usage of one request, it is accessed by the threads the request is processed by one after another.
+     */
+    private class Usage implements RequestEventListener {
+
+        private final Thread thread = Thread.currentThread();
+        private final long startAllocatedBytes = allocatedBytes();
+        private final long startCpuNanos = cpuNanos();
+        private long methodAllocatedBytes = -1;
+        private long methodCpuNanos;
+
+        @Override
+        public void onEvent(RequestEvent event) {
+            if (event.getType() == RequestEvent.Type.RESOURCE_METHOD_FINISHED && Thread.currentThread() == thread) {
+                methodAllocatedBytes = allocatedBytes() - startAllocatedBytes;
+                methodCpuNanos = cpuNanos() - startCpuNanos;
+            } else if (event.getType() == RequestEvent.Type.FINISHED) {
+                final ResourceMethod resourceMethod = event.getUriInfo().getMatchedResourceMethod();
+                if (Thread.currentThread() == thread) {
+                    record(resourceMethod, allocatedBytes() - startAllocatedBytes, cpuNanos() - startCpuNanos);
+                } else if (methodAllocatedBytes >= 0) {
+                    record(resourceMethod, methodAllocatedBytes, methodCpuNanos);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package task.rest;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import task.api.TransferRequest;
+import task.model.TransferResult;
+import task.service.AccountService;
+
+import javax.annotation.Nullable;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Executes a stream of newline-delimited {@link TransferRequest} objects one by one as they are read from the request
+ * body and writes a result line per item to the response body:
+ * <pre>
+ * {"index":0,"status":"OK"}
+ * {"index":1,"status":"NOT_FOUND","message":"No such account: 42"}
+ * {"index":2,"status":"OK","replayed":true}
+ * </pre>
+ * Items are parsed by the Jackson streaming parser without binding the whole body, so memory consumption doesn't
+ * depend on the size of the upload. A failed item doesn't stop the stream, except malformed JSON after which the input
+ * can't be resynchronized: the error line is written and the stream is finished.
+ * <p>
+ * Results are flushed in batches, but never held back longer than {@value #FLUSH_INTERVAL_MILLIS} ms or while the
+ * client is still uploading: pending results are flushed before waiting for more input.
+ * <p>
+ * If the stream has an idempotency key, item {@code i} is executed with key {@code <key>/<i>}, so a retry of the
+ * same stream replays the items which have been already executed.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+class TransferStreamingOutput implements StreamingOutput {
+
+    private static final Logger log = LoggerFactory.getLogger(TransferStreamingOutput.class);
+
+    // every result is terminated by a line feed instead of the default space between root values
+    private static final JsonFactory JSON_FACTORY = new JsonFactory().setRootValueSeparator("");
+
+    /**
+     * Results are flushed to the client in batches of this many items, so every item doesn't cost a separate chunk.
+     */
+    static final int FLUSH_BATCH_SIZE = 64;
+
+    /**
+     * Max time a result may wait for its batch to be flushed.
+     */
+    static final long FLUSH_INTERVAL_MILLIS = 100;
+
+    private static final long FLUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MILLIS);
+
+    private final AccountService accountService;
+    private final Function<Exception, Response> exceptionMapper;
+    private final InputStream input;
+    private final String idempotencyKey;
+    private int unflushedResults;
+    private long lastFlushNanos;
+
+    /**
+     * @param accountService  account service
+     * @param exceptionMapper maps an exception of an item to the response the item would get as a single request
+     * @param input           request body
+     * @param idempotencyKey  optional idempotency key of the whole stream
+     */
+    TransferStreamingOutput(AccountService accountService, Function<Exception, Response> exceptionMapper,
+                            InputStream input, @Nullable String idempotencyKey) {
+        this.accountService = accountService;
+        this.exceptionMapper = exceptionMapper;
+        this.input = input;
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        long index = 0;
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8);
+             JsonParser parser = JSON_FACTORY.createParser(new FlushingInputStream(input, generator))) {
+            lastFlushNanos = System.nanoTime();
+            try {
+                JsonToken token;
+                while ((token = parser.nextToken()) != null) {
+                    if (token != JsonToken.START_OBJECT) {
+                        throw new JsonParseException(parser, "Transfer request object expected: " + token);
+                    }
+                    writeResult(generator, index, transfer(parser, index));
+                    index++;
+                    unflushedResults++;
+                    if (unflushedResults >= FLUSH_BATCH_SIZE || System.nanoTime() - lastFlushNanos >= FLUSH_INTERVAL) {
+                        flush(generator);
+                    }
+                }
+            } catch (JsonParseException e) {
+                writeResult(generator, index, new Result(e));
+            }
+        }
+        log.info("Transfer stream has been processed [items: {}]", index);
+    }
+
+    private void flush(JsonGenerator generator) throws IOException {
+        if (unflushedResults > 0) {
+            generator.flush();
+            unflushedResults = 0;
+        }
+        lastFlushNanos = System.nanoTime();
+    }
+
+    private Result transfer(JsonParser parser, long index) throws IOException {
+        Long from = null;
+        Long to = null;
+        String amount = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if ("from".equals(field)) {
+                from = value == JsonToken.VALUE_NULL ? null : parser.getValueAsLong();
+            } else if ("to".equals(field)) {
+                to = value == JsonToken.VALUE_NULL ? null : parser.getValueAsLong();
+            } else if ("amount".equals(field)) {
+                amount = value == JsonToken.VALUE_NULL ? null : parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        try {
+            // the same validation as of a single transfer request, an absent id must not become account 0
+            if (from == null) {
+                throw new IllegalArgumentException("from is null");
+            }
+            if (to == null) {
+                throw new IllegalArgumentException("to is null");
+            }
+            if (amount == null) {
+                throw new IllegalArgumentException("amount is null");
+            }
+            if (idempotencyKey == null) {
+                final TransferResult result = accountService.tryTransfer(from, to, toDecimal(amount));
+                return result.isTransferred() ? Result.OK : new Result(result.getRejection());
+            }
+            return accountService.transfer(from, to, toDecimal(amount), idempotencyKey + "/" + index)
+                    ? Result.OK : Result.REPLAYED;
+        } catch (RuntimeException e) {
+            return new Result(e);
+        }
+    }
+
+    private static BigDecimal toDecimal(String amount) {
+        try {
+            return new BigDecimal(amount);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("amount is not a number: " + amount);
+        }
+    }
+
+    private void writeResult(JsonGenerator generator, long index, Result result) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("index", index);
+        final Exception exception = result.exception;
+        if (exception == null) {
+            generator.writeStringField("status", "OK");
+            if (result.replayed) {
+                generator.writeBooleanField("replayed", true);
+            }
+        } else {
+            final Response.StatusType status = exception instanceof JsonParseException
+                    ? Status.BAD_REQUEST : exceptionMapper.apply(exception).getStatusInfo();
+            generator.writeStringField("status", status.toEnum().name());
+            generator.writeStringField("message", exception.getMessage());
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    /**
+     * Flushes pending results before a read which would block, so a client which uploads items slowly gets the results
+     * of the uploaded ones without waiting for a full batch.
+     */
+    private class FlushingInputStream extends FilterInputStream {
+
+        private final JsonGenerator generator;
+
+        FlushingInputStream(InputStream input, JsonGenerator generator) {
+            super(input);
+            this.generator = generator;
+        }
+
+        @Override
+        public int read() throws IOException {
+            flushBeforeBlocking();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            flushBeforeBlocking();
+            return super.read(buffer, offset, length);
+        }
+
+        private void flushBeforeBlocking() throws IOException {
+            if (unflushedResults > 0 && available() == 0) {
+                flush(generator);
+            }
+        }
+    }
+
+    /**
+     * Outcome of one item.
+     */
+    private static class Result {
+
+        static final Result OK = new Result(null, false);
+        static final Result REPLAYED = new Result(null, true);
+
+        final Exception exception;
+        final boolean replayed;
+
+        Result(Exception exception) {
+            this(exception, false);
+        }
+
+        private Result(@Nullable Exception exception, boolean replayed) {
+            this.exception = exception;
+            this.replayed = replayed;
+        }
+    }
+}
@@ -1,11 +1,17 @@
 package task.service;
 
+import task.exception.IdempotencyKeyConflictException;
 import task.exception.LimitExceededException;
 import task.exception.NoSuchAccountException;
 import task.model.Account;
+import task.model.HistoryCursor;
+import task.model.JournalEntry;
+import task.model.TransferResult;
 
 import javax.annotation.Nullable;
 import java.math.BigDecimal;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Main application service that provides key account functionality and is exposed as REST HTTP service.
@@ -31,6 +37,51 @@ public interface AccountService {
      */
     Account getAccount(long accountId);
 
+    /**
+     * Get page of accounts with ids greater than {@code afterAccountId} ordered by id. The next page starts after the
+     * id of the last returned account.
+     *
+     * @param afterAccountId id of the last account of the previous page, 0 - for the first page
+     * @param limit          max number of accounts to return
+     * @return accounts ordered by id, empty list if there are no more accounts
+     * @throws IllegalArgumentException when {@code limit} is not positive
+     */
+    List<Account> getAccounts(long afterAccountId, int limit);
+
+    /**
+     * Pass every account to {@code action} streaming them from the storage, so the number of accounts held in memory
+     * doesn't depend on the total number of accounts.
+     *
+     * @param action action to perform on every account
+     * @return number of exported accounts
+     */
+    long exportAccounts(Consumer<? super Account> action);
+
+    /**
+     * Get page of balance changes of account with given {@code accountId} made in [{@code fromTime}, {@code toTime})
+     * ordered by time. The next page starts after the cursor of the last returned entry.
+     *
+     * @param accountId account id
+     * @param fromTime  inclusive lower bound of time in milliseconds since epoch
+     * @param toTime    exclusive upper bound of time in milliseconds since epoch
+     * @param after     cursor of the last entry of the previous page, {@code null} - for the first page
+     * @param limit     max number of entries to return
+     * @return entries ordered by time, empty list if there are no more entries
+     * @throws IllegalArgumentException when {@code limit} is not positive
+     * @throws NoSuchAccountException   if account with given {@code accountId} doesn't exist
+     */
+    List<JournalEntry> getHistory(long accountId, long fromTime, long toTime, @Nullable HistoryCursor after, int limit);
+
+    /**
+     * Get balance of account with given {@code accountId} as of {@code time}.
+     *
+     * @param accountId account id
+     * @param time      time in milliseconds since epoch
+     * @return balance after the last change made at or before {@code time}, 0 if the account didn't exist by then
+     * @throws NoSuchAccountException if account with given {@code accountId} doesn't exist
+     */
+    BigDecimal getBalanceAt(long accountId, long time);
+
     /**
      * Transfer money from account with id: {@code fromAccountId} to account with id: {@code toAccountId}.
      *
@@ -43,4 +94,35 @@ public interface AccountService {
      * @throws LimitExceededException   when {@code amount} is greater that amount on account with id: {@code fromAccountId}
      */
     void transfer(long fromAccountId, long toAccountId, BigDecimal amount);
+
+    /**
+     * Transfer money like {@link #transfer(long, long, BigDecimal)}, but return business rejections - insufficient
+     * funds and nonexistent accounts - instead of throwing them, so callers for which a rejection is a normal outcome
+     * don't pay for exception handling. Invalid arguments and infrastructure failures are still thrown.
+     *
+     * @param fromAccountId account id to transfer money from
+     * @param toAccountId   account id to transfer money to
+     * @param amount        money amount to transfer
+     * @return result of the transfer
+     * @throws NullPointerException     when {@code amount} is null
+     * @throws IllegalArgumentException when {@code fromAccountId == toAccountId} or amount is not positive
+     */
+    TransferResult tryTransfer(long fromAccountId, long toAccountId, BigDecimal amount);
+
+    /**
+     * Transfer money like {@link #transfer(long, long, BigDecimal)}, but at most once per {@code idempotencyKey}: the
+     * key is recorded in the transfer transaction and a repeated call with the same key is replayed without executing
+     * the transfer again. Keys are kept for a limited time, see {@code IdempotencyKeyPurger}.
+     *
+     * @param fromAccountId  account id to transfer money from
+     * @param toAccountId    account id to transfer money to
+     * @param amount         money amount to transfer
+     * @param idempotencyKey client supplied key of the transfer
+     * @return {@code true} if the transfer has been executed by this call, {@code false} if it has been replayed
+     * @throws IdempotencyKeyConflictException when the key has been used for a transfer with other parameters
+     * @throws IllegalArgumentException        when the key is empty or longer than
+     *                                         {@link task.model.IdempotencyKey#MAX_LENGTH}
+     * @see #transfer(long, long, BigDecimal)
+     */
+    boolean transfer(long fromAccountId, long toAccountId, BigDecimal amount, String idempotencyKey);
 }
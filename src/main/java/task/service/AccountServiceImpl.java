@@ -1,44 +1,111 @@
 package task.service;
 
-import org.apache.commons.lang3.tuple.Pair;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import task.dao.AccountDao;
+import task.exception.BusinessException;
 import task.exception.LimitExceededException;
 import task.exception.NoSuchAccountException;
+import task.jfr.JfrEvents;
+import task.jfr.LockWaitEvent;
+import task.jfr.TransferEvent;
 import task.manager.AccountManager;
+import task.manager.TransferStageTimers;
+import task.manager.TransferStageTimers.Stage;
 import task.model.Account;
+import task.model.AuditEvent;
+import task.model.HistoryCursor;
+import task.model.JournalEntry;
+import task.model.IdempotencyKey;
+import task.model.TransferResult;
+import task.service.ServiceEventLog.Operation;
+import task.service.ServiceEventLog.Outcome;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
 
 /**
  * Thread safe implementation of {@link AccountService}. If several threads want to modify the same account they will be
  * synchronized by lock for that particular account to prevent inconsistent state.
+ * <p>
+ * The lock is either in-process ({@link LockingMode#JVM}) or the database row lock ({@link LockingMode#DATABASE}),
+ * the latter allows several service instances to share one database.
  *
  * @author Anton Kotov (kotov-anton@yandex.ru)
  */
 @ThreadSafe
 public class AccountServiceImpl implements AccountService {
 
-    private static final Logger log = LoggerFactory.getLogger(AccountServiceImpl.class);
+    /**
+     * Defines how concurrent transfers of the same account are synchronized.
+     */
+    public enum LockingMode {
+        /**
+         * Locks of {@link OrderedLocksProvider}: the cheapest option, but only threads of one instance are
+         * synchronized.
+         */
+        JVM,
+        /**
+         * Row locks taken by {@code SELECT ... FOR UPDATE} within the transfer transaction: all instances sharing the
+         * database are synchronized, at the cost of holding the transaction open while waiting for the locks. HSQLDB
+         * locks the whole account table for {@code FOR UPDATE}, so transfers of all accounts are serialized. An
+         * in-process HSQLDB file database can be opened by one JVM only, so the instances are either contexts of one
+         * JVM or connect to an HSQLDB server.
+         */
+        DATABASE
+    }
 
     private final AccountManager accountManager;
     private final AccountDao accountDao;
     private final OrderedLocksProvider orderedLocksProvider;
+    private final LockingMode lockingMode;
+    private final ServiceEventLog eventLog;
+    private final TransferStageTimers stageTimers;
+    private final AuditPipeline audit;
 
     @Inject
     public AccountServiceImpl(AccountManager accountManager, AccountDao accountDao,
                               OrderedLocksProvider orderedLocksProvider) {
+        this(accountManager, accountDao, orderedLocksProvider, LockingMode.JVM);
+    }
+
+    public AccountServiceImpl(AccountManager accountManager, AccountDao accountDao,
+                              OrderedLocksProvider orderedLocksProvider, LockingMode lockingMode) {
+        this(accountManager, accountDao, orderedLocksProvider, lockingMode, ServiceEventLog.failuresOnly(),
+                TransferStageTimers.disabled());
+    }
+
+    /**
+     * @param eventLog    log of operations, it is not closed by the service
+     * @param stageTimers timers of the transfer stages
+     */
+    public AccountServiceImpl(AccountManager accountManager, AccountDao accountDao,
+                              OrderedLocksProvider orderedLocksProvider, LockingMode lockingMode,
+                              ServiceEventLog eventLog, TransferStageTimers stageTimers) {
+        this(accountManager, accountDao, orderedLocksProvider, lockingMode, eventLog, stageTimers,
+                AuditPipeline.disabled());
+    }
+
+    /**
+     * @param eventLog    log of operations, it is not closed by the service
+     * @param stageTimers timers of the transfer stages
+     * @param audit       audit of creations and transfers, it is not closed by the service
+     */
+    public AccountServiceImpl(AccountManager accountManager, AccountDao accountDao,
+                              OrderedLocksProvider orderedLocksProvider, LockingMode lockingMode,
+                              ServiceEventLog eventLog, TransferStageTimers stageTimers, AuditPipeline audit) {
         this.accountManager = accountManager;
         this.accountDao = accountDao;
         this.orderedLocksProvider = orderedLocksProvider;
+        this.lockingMode = lockingMode;
+        this.eventLog = eventLog;
+        this.stageTimers = stageTimers;
+        this.audit = audit;
     }
 
     /**
@@ -46,14 +113,15 @@ public class AccountServiceImpl implements AccountService {
      */
     @Override
     public Account create(@Nullable BigDecimal amount) {
-        log.info("Creating account [amount: {}]", amount);
+        final long start = System.nanoTime();
         try {
-            final Account account = new Account().setAmount(Optional.ofNullable(amount).orElse(BigDecimal.ZERO));
-            accountDao.insert(account);
-            log.info("Account has been successfully created [account: {}]", account);
+            final Account account = new Account().setAmount(amount == null ? BigDecimal.ZERO : amount);
+            accountManager.create(account);
+            audit.publish(AuditEvent.Type.CREATE, account.getId(), 0, account.getAmount(), null);
+            eventLog.record(Operation.CREATE, Outcome.OK, start, account.getId(), 0, account.getAmount(), null, null);
             return account;
         } catch (RuntimeException e) {
-            log.error("Failed to create account [amount: {}, error message: {}]", amount, e.getMessage());
+            eventLog.record(Operation.CREATE, Outcome.FAILED, start, 0, 0, amount, null, e);
             throw e;
         }
     }
@@ -63,14 +131,16 @@ public class AccountServiceImpl implements AccountService {
      */
     @Override
     public Account getAccount(long accountId) {
-        log.info("Getting account [accountId: {}]", accountId);
+        final long start = System.nanoTime();
         try {
-            final Account account = Optional.ofNullable(accountDao.select(accountId))
-                    .orElseThrow(() -> new NoSuchAccountException(accountId));
-            log.info("Account has been successfully found [account: {}]", account);
+            final Account account = findAccount(accountId);
+            eventLog.record(Operation.GET, Outcome.OK, start, accountId, 0, account.getAmount(), null, null);
             return account;
+        } catch (BusinessException e) {
+            eventLog.record(Operation.GET, Outcome.REJECTED, start, accountId, 0, null, null, e);
+            throw e;
         } catch (RuntimeException e) {
-            log.error("Failed to get account [accountId: {}, error message: {}]", accountId, e.getMessage());
+            eventLog.record(Operation.GET, Outcome.FAILED, start, accountId, 0, null, null, e);
             throw e;
         }
     }
@@ -79,37 +149,197 @@ public class AccountServiceImpl implements AccountService {
      * {@inheritDoc}
      */
     @Override
-    public void transfer(long fromAccountId, long toAccountId, BigDecimal amount) {
-        log.info("Transferring amount [fromAccountId: {}, toAccountId: {}, amount:{}]", fromAccountId, toAccountId, amount);
+    public List<Account> getAccounts(long afterAccountId, int limit) {
+        final long start = System.nanoTime();
         try {
-            if (fromAccountId == toAccountId) {
-                throw new IllegalArgumentException("fromAccountId == toAccountId: " + fromAccountId);
+            if (limit <= 0) {
+                throw new IllegalArgumentException("limit is not positive: " + limit);
             }
-            if (Objects.requireNonNull(amount, "amount is null").compareTo(BigDecimal.ZERO) <= 0) {
-                throw new IllegalArgumentException("amount is not positive: " + amount);
+            final List<Account> accounts = accountDao.selectPage(afterAccountId, limit);
+            eventLog.record(Operation.GET_PAGE, Outcome.OK, start, afterAccountId, limit, null, null, null);
+            return accounts;
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.GET_PAGE, Outcome.FAILED, start, afterAccountId, limit, null, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<JournalEntry> getHistory(long accountId, long fromTime, long toTime, @Nullable HistoryCursor after,
+                                         int limit) {
+        final long start = System.nanoTime();
+        try {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("limit is not positive: " + limit);
             }
-            threadSafeTransfer(fromAccountId, toAccountId, amount);
-            log.info("Amount has been successfully transferred [fromAccountId: {}, toAccountId: {}, amount:{}]",
-                    fromAccountId, toAccountId, amount);
+            final List<JournalEntry> entries = accountManager.getHistory(accountId, fromTime, toTime, after, limit);
+            eventLog.record(Operation.GET_HISTORY, Outcome.OK, start, accountId, limit, null, null, null);
+            return entries;
+        } catch (BusinessException e) {
+            eventLog.record(Operation.GET_HISTORY, Outcome.REJECTED, start, accountId, limit, null, null, e);
+            throw e;
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.GET_HISTORY, Outcome.FAILED, start, accountId, limit, null, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BigDecimal getBalanceAt(long accountId, long time) {
+        final long start = System.nanoTime();
+        try {
+            final BigDecimal balance = accountManager.getBalanceAt(accountId, time);
+            eventLog.record(Operation.GET_BALANCE_AT, Outcome.OK, start, accountId, time, balance, null, null);
+            return balance;
+        } catch (BusinessException e) {
+            eventLog.record(Operation.GET_BALANCE_AT, Outcome.REJECTED, start, accountId, time, null, null, e);
+            throw e;
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.GET_BALANCE_AT, Outcome.FAILED, start, accountId, time, null, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long exportAccounts(Consumer<? super Account> action) {
+        final long start = System.nanoTime();
+        try {
+            final long count = accountManager.forEachAccount(action);
+            eventLog.record(Operation.EXPORT, Outcome.OK, start, count, 0, null, null, null);
+            return count;
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.EXPORT, Outcome.FAILED, start, 0, 0, null, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void transfer(long fromAccountId, long toAccountId, BigDecimal amount) {
+        tryTransfer(fromAccountId, toAccountId, amount).throwIfRejected();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TransferResult tryTransfer(long fromAccountId, long toAccountId, BigDecimal amount) {
+        final long start = System.nanoTime();
+        try {
+            final TransferResult result = transfer(fromAccountId, toAccountId, amount, (IdempotencyKey) null);
+            // rejections are sampled like successes since they are normal outcomes
+            eventLog.record(Operation.TRANSFER, result.isTransferred() ? Outcome.OK : Outcome.REJECTED, start,
+                    fromAccountId, toAccountId, amount, null, result.getRejection());
+            return result;
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.TRANSFER, Outcome.FAILED, start, fromAccountId, toAccountId, amount, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean transfer(long fromAccountId, long toAccountId, BigDecimal amount, String idempotencyKey) {
+        final long start = System.nanoTime();
+        try {
+            final boolean transferred = IdempotencyKeys.transferOnce(
+                    IdempotencyKeys.newKey(idempotencyKey, fromAccountId, toAccountId, amount),
+                    accountManager::findIdempotencyKey,
+                    key -> transfer(fromAccountId, toAccountId, amount, key).throwIfRejected(),
+                    accountManager::recordIdempotencyKey);
+            eventLog.record(Operation.TRANSFER, transferred ? Outcome.OK : Outcome.REPLAYED, start,
+                    fromAccountId, toAccountId, amount, idempotencyKey, null);
+            return transferred;
+        } catch (BusinessException e) {
+            eventLog.record(Operation.TRANSFER, Outcome.REJECTED, start, fromAccountId, toAccountId, amount,
+                    idempotencyKey, e);
+            throw e;
         } catch (RuntimeException e) {
-            log.error("Failed to transfer amount [fromAccountId: {}, toAccountId: {}, amount:{}, error message: {}]",
-                    fromAccountId, toAccountId, amount, e.getMessage());
+            eventLog.record(Operation.TRANSFER, Outcome.FAILED, start, fromAccountId, toAccountId, amount,
+                    idempotencyKey, e);
             throw e;
         }
     }
 
-    private void threadSafeTransfer(long fromAccountId, long toAccountId, BigDecimal amount) {
-        // locks are ordered to avoid deadlocks
-        final Pair<Lock, Lock> orderedLocks = orderedLocksProvider.getOrderedLocks(fromAccountId, toAccountId);
+    private TransferResult transfer(long fromAccountId, long toAccountId, BigDecimal amount,
+                                    @Nullable IdempotencyKey idempotencyKey) {
+        final TransferEvent event = JfrEvents.beginTransfer();
+        TransferResult result = null;
+        try {
+            result = validatedTransfer(fromAccountId, toAccountId, amount, idempotencyKey);
+            // the account locks are released by now, so auditing never prolongs them
+            if (result.isTransferred()) {
+                audit.publish(AuditEvent.Type.TRANSFER, fromAccountId, toAccountId, amount, null);
+            } else {
+                audit.publish(AuditEvent.Type.REJECT, fromAccountId, toAccountId, amount,
+                        result.getRejection().getMessage());
+            }
+            return result;
+        } finally {
+            JfrEvents.endTransfer(event, fromAccountId, toAccountId, amount,
+                    result == null ? "FAILED" : result.getStatus().name());
+        }
+    }
+
+    private TransferResult validatedTransfer(long fromAccountId, long toAccountId, BigDecimal amount,
+                                             @Nullable IdempotencyKey idempotencyKey) {
+        final long start = stageTimers.start();
+        if (fromAccountId == toAccountId) {
+            throw new IllegalArgumentException("fromAccountId == toAccountId: " + fromAccountId);
+        }
+        if (Objects.requireNonNull(amount, "amount is null").compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("amount is not positive: " + amount);
+        }
+        stageTimers.stop(Stage.VALIDATE, start);
+        try {
+            if (lockingMode == LockingMode.DATABASE) {
+                // the database serializes transfers of the same account, so no in-process lock is needed
+                final long transactionStart = stageTimers.start();
+                if (idempotencyKey == null) {
+                    accountManager.transferWithRowLocks(fromAccountId, toAccountId, amount);
+                } else {
+                    accountManager.transferWithRowLocks(fromAccountId, toAccountId, amount, idempotencyKey);
+                }
+                stageTimers.stop(Stage.TRANSACTION, transactionStart);
+                return TransferResult.transferred();
+            }
+            return threadSafeTransfer(fromAccountId, toAccountId, amount, idempotencyKey);
+        } catch (LimitExceededException e) {
+            // thrown from within the transaction to roll it back
+            return TransferResult.rejected(e);
+        } catch (NoSuchAccountException e) {
+            return TransferResult.rejected(e);
+        }
+    }
 
-        final Lock firstLock = orderedLocks.getLeft();
-        final Lock secondLock = orderedLocks.getRight();
+    private TransferResult threadSafeTransfer(long fromAccountId, long toAccountId, BigDecimal amount,
+                                              @Nullable IdempotencyKey idempotencyKey) {
+        // locks are ordered to avoid deadlocks; they must not be replaced by synchronized, which pins virtual threads
+        final Lock firstLock = orderedLocksProvider.getFirstLock(fromAccountId, toAccountId);
+        final Lock secondLock = orderedLocksProvider.getSecondLock(fromAccountId, toAccountId);
 
+        final long start = stageTimers.start();
+        final LockWaitEvent event = JfrEvents.beginLockWait();
         firstLock.lock();
         try {
             secondLock.lock();
             try {
-                transferInternal(fromAccountId, toAccountId, amount);
+                JfrEvents.endLockWait(event, fromAccountId, toAccountId);
+                stageTimers.stop(Stage.LOCK, start);
+                return transferInternal(fromAccountId, toAccountId, amount, idempotencyKey);
             } finally {
                 secondLock.unlock();
             }
@@ -119,15 +349,39 @@ public class AccountServiceImpl implements AccountService {
     }
 
     @GuardedBy("threadSafeTransfer()")
-    private void transferInternal(long fromAccountId, long toAccountId, BigDecimal amount) {
-        final Account fromAccount = getAccount(fromAccountId);
-        final Account toAccount = getAccount(toAccountId);
+    private TransferResult transferInternal(long fromAccountId, long toAccountId, BigDecimal amount,
+                                            @Nullable IdempotencyKey idempotencyKey) {
+        final long readStart = stageTimers.start();
+        final Account fromAccount = accountDao.select(fromAccountId);
+        if (fromAccount == null) {
+            return TransferResult.rejected(new NoSuchAccountException(fromAccountId));
+        }
+        final Account toAccount = accountDao.select(toAccountId);
+        if (toAccount == null) {
+            return TransferResult.rejected(new NoSuchAccountException(toAccountId));
+        }
+        stageTimers.stop(Stage.READ, readStart);
 
         // this pre-check allows us to avoid extra database transaction: begin -> rollback in case of exceeded limit
         if (!fromAccount.canWithdraw(amount)) {
-            throw new LimitExceededException(fromAccountId, amount, fromAccount.getAmount());
+            return TransferResult.rejected(new LimitExceededException(fromAccountId, amount, fromAccount.getAmount()));
+        }
+
+        final long transactionStart = stageTimers.start();
+        if (idempotencyKey == null) {
+            accountManager.transfer(fromAccount, toAccount, amount);
+        } else {
+            accountManager.transfer(fromAccount, toAccount, amount, idempotencyKey);
         }
+        stageTimers.stop(Stage.TRANSACTION, transactionStart);
+        return TransferResult.transferred();
+    }
 
-        accountManager.transfer(fromAccount, toAccount, amount);
+    private Account findAccount(long accountId) {
+        final Account account = accountDao.select(accountId);
+        if (account == null) {
+            throw new NoSuchAccountException(accountId);
+        }
+        return account;
     }
 }
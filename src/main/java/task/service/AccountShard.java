@@ -0,0 +1,59 @@
+package task.service;
+
+import org.springframework.transaction.support.TransactionOperations;
+import task.dao.AccountDao;
+import task.dao.TransferIntentDao;
+import task.manager.AccountManager;
+
+/**
+ * One shard of account storage: separate database with its own DAOs and transactions.
+ * <p>
+ * {@link AccountManager} of the shard is not transactional by itself, it must be called within
+ * {@link #getTransactions()}.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class AccountShard {
+
+    private final int index;
+    private final AccountDao accountDao;
+    private final TransferIntentDao transferIntentDao;
+    private final AccountManager accountManager;
+    private final TransactionOperations transactions;
+
+    public AccountShard(int index, AccountDao accountDao, TransferIntentDao transferIntentDao,
+                        AccountManager accountManager, TransactionOperations transactions) {
+        this.index = index;
+        this.accountDao = accountDao;
+        this.transferIntentDao = transferIntentDao;
+        this.accountManager = accountManager;
+        this.transactions = transactions;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public AccountDao getAccountDao() {
+        return accountDao;
+    }
+
+    public TransferIntentDao getTransferIntentDao() {
+        return transferIntentDao;
+    }
+
+    public AccountManager getAccountManager() {
+        return accountManager;
+    }
+
+    public TransactionOperations getTransactions() {
+        return transactions;
+    }
+
+    @Override
+    public String toString() {
+        return "AccountShard{" +
+                "index=" + index +
+                '}';
+    }
+}
@@ -0,0 +1,102 @@
+package task.service;
+
+import com.google.common.collect.ImmutableList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed set of account shards. Accounts are distributed by hash: account with id {@code id} is stored in the shard
+ * with index {@code id mod N}, where {@code N} is the number of shards. So the number of shards can't be changed once
+ * accounts are created.
+ * <p>
+ * Every shard allocates ids from its own sequence: {@code id = localId * N + shardIndex}.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@ThreadSafe
+public class AccountShards implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountShards.class);
+
+    private final List<AccountShard> shards;
+    private final List<AutoCloseable> resources;
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    /**
+     * @param shards    shards ordered by index
+     * @param resources resources (pools, databases) to close on {@link #close()}, they are closed in reverse order
+     */
+    public AccountShards(List<AccountShard> shards, List<AutoCloseable> resources) {
+        for (int i = 0; i < shards.size(); ++i) {
+            if (shards.get(i).getIndex() != i) {
+                throw new IllegalArgumentException("shard at position " + i + " has index " + shards.get(i).getIndex());
+            }
+        }
+        this.shards = ImmutableList.copyOf(shards);
+        this.resources = ImmutableList.copyOf(resources).reverse();
+    }
+
+    /**
+     * Return all shards ordered by index.
+     *
+     * @return shards
+     */
+    public List<AccountShard> getShards() {
+        return shards;
+    }
+
+    /**
+     * Return shard that stores account with given {@code accountId}.
+     *
+     * @param accountId account id
+     * @return shard
+     */
+    public AccountShard shardOf(long accountId) {
+        return shards.get((int) Math.floorMod(accountId, (long) shards.size()));
+    }
+
+    /**
+     * Return shard that stores idempotency key with given {@code id}, whatever the accounts of the transfer are.
+     *
+     * @param id idempotency key
+     * @return shard
+     */
+    public AccountShard shardOfKey(String id) {
+        return shards.get(Math.floorMod(id.hashCode(), shards.size()));
+    }
+
+    /**
+     * Return shard to create the next account in. Shards are chosen in round-robin fashion.
+     *
+     * @return shard
+     */
+    public AccountShard nextShard() {
+        return shards.get(Math.floorMod(nextShard.getAndIncrement(), shards.size()));
+    }
+
+    /**
+     * Convert id allocated from the sequence of the {@code shard} to the global account id.
+     *
+     * @param shard   shard
+     * @param localId id allocated from the shard sequence
+     * @return account id
+     */
+    public long toAccountId(AccountShard shard, long localId) {
+        return localId * shards.size() + shard.getIndex();
+    }
+
+    @Override
+    public void close() {
+        for (AutoCloseable resource : resources) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                log.error("Failed to close shard resource [resource: {}, error message: {}]", resource, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package task.service;
+
+import task.exception.LimitExceededException;
+import task.exception.NoSuchAccountException;
+import task.model.Account;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Non-blocking counterpart of {@link AccountService} for callers that embed the service and want to pipeline many
+ * independent operations without holding a thread per operation. Every method returns immediately, errors described
+ * by {@link AccountService} complete the returned future exceptionally.
+ * <p>
+ * If the service is overloaded the future is completed exceptionally with {@link RejectedExecutionException}.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public interface AsyncAccountService {
+
+    /**
+     * Create new account with given {@code amount}.
+     *
+     * @param amount the money to create new account with
+     * @return future of new account
+     */
+    CompletableFuture<Account> create(@Nullable BigDecimal amount);
+
+    /**
+     * Get account with given {@code accountId}.
+     *
+     * @param accountId account id
+     * @return future of account with given {@code accountId}, it is completed with {@link NoSuchAccountException} if
+     * account doesn't exist
+     */
+    CompletableFuture<Account> getAccount(long accountId);
+
+    /**
+     * Transfer money from account with id: {@code fromAccountId} to account with id: {@code toAccountId}.
+     *
+     * @param fromAccountId account id to transfer money from
+     * @param toAccountId   account id to transfer money to
+     * @param amount        money amount to transfer
+     * @return future completed when the transfer is committed, it is completed with {@link IllegalArgumentException},
+     * {@link NoSuchAccountException} or {@link LimitExceededException} in the same cases as
+     * {@link AccountService#transfer(long, long, BigDecimal)} throws them
+     */
+    CompletableFuture<Void> transfer(long fromAccountId, long toAccountId, BigDecimal amount);
+}
@@ -0,0 +1,102 @@
+package task.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import task.model.Account;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Implementation of {@link AsyncAccountService} which runs operations of the blocking {@link AccountService} on given
+ * executors, so locking and transaction semantics are exactly the same as of the blocking service.
+ * <p>
+ * Reads and writes use separate executors: writes may wait for account locks and must not starve reads. Executors are
+ * shut down on {@link #close()} if they are {@link ExecutorService}s or {@link AutoCloseable}.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@ThreadSafe
+public class AsyncAccountServiceImpl implements AsyncAccountService, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncAccountServiceImpl.class);
+
+    private final AccountService accountService;
+    private final Executor readExecutor;
+    private final Executor writeExecutor;
+
+    /**
+     * @param accountService blocking service
+     * @param readExecutor   executor of {@link #getAccount(long)}
+     * @param writeExecutor  executor of {@link #create(BigDecimal)} and {@link #transfer(long, long, BigDecimal)}
+     */
+    public AsyncAccountServiceImpl(AccountService accountService, Executor readExecutor, Executor writeExecutor) {
+        this.accountService = accountService;
+        this.readExecutor = readExecutor;
+        this.writeExecutor = writeExecutor;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Account> create(@Nullable BigDecimal amount) {
+        return supplyAsync(() -> accountService.create(amount), writeExecutor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Account> getAccount(long accountId) {
+        return supplyAsync(() -> accountService.getAccount(accountId), readExecutor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Void> transfer(long fromAccountId, long toAccountId, BigDecimal amount) {
+        return supplyAsync(() -> {
+            accountService.transfer(fromAccountId, toAccountId, amount);
+            return null;
+        }, writeExecutor);
+    }
+
+    private static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, executor);
+        } catch (RejectedExecutionException e) {
+            // report overload through the future as well, so callers handle all errors in one place
+            final CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    @Override
+    public void close() {
+        close(writeExecutor);
+        if (readExecutor != writeExecutor) {
+            close(readExecutor);
+        }
+    }
+
+    private static void close(Executor executor) {
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdown();
+        } else if (executor instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) executor).close();
+            } catch (Exception e) {
+                log.error("Failed to close executor [executor: {}, error message: {}]", executor, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package task.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import task.dao.AuditDao;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the audit table bounded: periodically deletes events older than {@code retentionDays}. Events are deleted by
+ * chunks of {@value #CHUNK_SIZE} rows, each chunk in its own statement, so a purge of a large backlog neither holds
+ * a long lock on the table nor builds a huge transaction.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class AuditEventPurger implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditEventPurger.class);
+
+    static final int CHUNK_SIZE = 10_000;
+
+    private final AuditDao auditDao;
+    private final long retentionMillis;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param auditDao             DAO of the audit table
+     * @param retentionDays        time to keep an event, 0 - events are kept forever
+     * @param purgeIntervalSeconds period of purges, 0 - no periodic purges
+     */
+    public AuditEventPurger(AuditDao auditDao, long retentionDays, long purgeIntervalSeconds) {
+        if (retentionDays < 0) {
+            throw new IllegalArgumentException("Retention days is negative: " + retentionDays);
+        }
+        this.auditDao = auditDao;
+        this.retentionMillis = TimeUnit.DAYS.toMillis(retentionDays);
+        if (retentionDays > 0 && purgeIntervalSeconds > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "audit-event-purge");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::purge, purgeIntervalSeconds, purgeIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Delete expired events.
+     *
+     * @return number of deleted events
+     */
+    public int purge() {
+        if (retentionMillis == 0) {
+            return 0;
+        }
+        final long createdBefore = System.currentTimeMillis() - retentionMillis;
+        int purged = 0;
+        try {
+            int deleted;
+            do {
+                deleted = auditDao.deleteCreatedBefore(createdBefore, CHUNK_SIZE);
+                purged += deleted;
+            } while (deleted == CHUNK_SIZE && !Thread.currentThread().isInterrupted());
+        } catch (RuntimeException e) {
+            log.error("Failed to purge audit events [error message: {}]", e.getMessage());
+        }
+        if (purged > 0) {
+            log.info("Audit events have been purged [count: {}]", purged);
+        }
+        return purged;
+    }
+
+    /**
+     * Stop periodic purges.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package task.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import task.concurrent.BatchingWriter;
+import task.dao.AuditDao;
+import task.model.AuditEvent;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous audit log of account operations. A request thread hands the event over to a {@link BatchingWriter}
+ * once the operation is finished and its locks are released, the writer thread inserts events into the
+ * {@code AUDIT_EVENT} table by multi-row statements of up to {@code batchSize} rows, so auditing neither extends
+ * transfer transactions nor costs a round trip per event. If a batch fails, its events are inserted one by one, so
+ * a single bad row doesn't fail the others.
+ * <p>
+ * By default publishing never blocks: an event which doesn't fit into the full buffer is dropped and counted. In the
+ * durable mode the publisher waits for free space and then, up to 10 seconds, for the first attempt to write its
+ * event. The audited operation is committed by then, so a failed write never fails the request: the event is retried
+ * with exponential backoff up to 8 attempts and counted as failed only when the attempts are exhausted or the retry
+ * queue, bounded by {@code capacity}, is full.
+ * <p>
+ * Metrics: {@code account.audit.published}, {@code account.audit.dropped}, {@code account.audit.written},
+ * {@code account.audit.retried} and {@code account.audit.failed} events, {@code account.audit.pending} events waiting
+ * to be written and {@code account.audit.lag} - time from publishing the oldest event of a batch to writing the
+ * batch.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@ThreadSafe
+public class AuditPipeline implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditPipeline.class);
+
+    private static final AuditPipeline DISABLED = new AuditPipeline();
+
+    private static final long DURABLE_TIMEOUT_SECONDS = 10;
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long RETRY_PERIOD_MILLIS = 100;
+    private static final long MIN_RETRY_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MAX_RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    @Nullable
+    private final AuditDao auditDao;
+    private final int capacity;
+    private final boolean durable;
+    @Nullable
+    private final BatchingWriter<Entry> writer;
+    @Nullable
+    private final ScheduledExecutorService retryScheduler;
+    private final Queue<Entry> retries = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger retrySize = new AtomicInteger();
+    @Nullable
+    private final Counter published;
+    @Nullable
+    private final Counter dropped;
+    @Nullable
+    private final Counter written;
+    @Nullable
+    private final Counter retried;
+    @Nullable
+    private final Counter failed;
+    @Nullable
+    private final Timer lag;
+
+    /**
+     * @param auditDao  DAO of the audit table
+     * @param capacity  buffer size, must be a power of two, it also bounds the number of events waiting for a retry
+     * @param batchSize max number of events inserted by one statement
+     * @param durable   whether publishers wait for their events to be written
+     * @param registry  registry of {@code account.audit.*} metrics
+     */
+    public AuditPipeline(AuditDao auditDao, int capacity, int batchSize, boolean durable, MeterRegistry registry) {
+        this.auditDao = auditDao;
+        this.capacity = capacity;
+        this.durable = durable;
+
+        this.published = Counter.builder("account.audit.published")
+                .description("Number of published audit events")
+                .register(registry);
+        this.dropped = Counter.builder("account.audit.dropped")
+                .description("Number of audit events dropped because the buffer was full")
+                .register(registry);
+        this.written = Counter.builder("account.audit.written")
+                .description("Number of audit events written to the audit table")
+                .register(registry);
+        this.retried = Counter.builder("account.audit.retried")
+                .description("Number of failed attempts to write an audit event which have been scheduled for retry")
+                .register(registry);
+        this.failed = Counter.builder("account.audit.failed")
+                .description("Number of audit events which failed to be written and have been given up")
+                .register(registry);
+        Gauge.builder("account.audit.pending", this, AuditPipeline::getPending)
+                .description("Number of published audit events waiting to be written")
+                .register(registry);
+        this.lag = Timer.builder("account.audit.lag")
+                .description("Time from publishing the oldest event of a batch to writing the batch")
+                .register(registry);
+
+        this.writer = new BatchingWriter<>("audit-writer", capacity, batchSize, this::write);
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "audit-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        retryScheduler.scheduleWithFixedDelay(this::retry, RETRY_PERIOD_MILLIS, RETRY_PERIOD_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private AuditPipeline() {
+        this.auditDao = null;
+        this.capacity = 0;
+        this.durable = false;
+        this.writer = null;
+        this.retryScheduler = null;
+        this.published = null;
+        this.dropped = null;
+        this.written = null;
+        this.retried = null;
+        this.failed = null;
+        this.lag = null;
+    }
+
+    /**
+     * Return pipeline which ignores all the events.
+     *
+     * @return shared instance
+     */
+    public static AuditPipeline disabled() {
+        return DISABLED;
+    }
+
+    public boolean isDurable() {
+        return durable;
+    }
+
+    /**
+     * Publish new event. It must be called after the audited operation has released its locks. It never throws
+     * because of the audit table: the operation is already committed.
+     *
+     * @param type          type of the operation
+     * @param fromAccountId source account id or id of the created account
+     * @param toAccountId   destination account id, 0 - for account creation
+     * @param amount        amount of the operation
+     * @param reason        reason of the rejection
+     */
+    public void publish(AuditEvent.Type type, long fromAccountId, long toAccountId, @Nullable BigDecimal amount,
+                        @Nullable String reason) {
+        if (writer == null) {
+            return;
+        }
+        final Entry entry = new Entry(new AuditEvent(type, fromAccountId, toAccountId, amount, reason,
+                System.currentTimeMillis()), System.nanoTime(), durable ? new CompletableFuture<>() : null);
+        if (!(durable ? writer.put(entry) : writer.offer(entry))) {
+            // the buffer is full or the pipeline is closed
+            dropped.increment();
+            return;
+        }
+        published.increment();
+        if (entry.written == null) {
+            return;
+        }
+        try {
+            entry.written.get(DURABLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // the event stays with the pipeline: it is either being written or waiting for a retry
+            log.warn("Audit event has not been written yet [event: {}, error message: {}]", entry.event,
+                    e.getMessage());
+        }
+    }
+
+    private void write(List<Entry> batch) {
+        final List<AuditEvent> events = new ArrayList<>(batch.size());
+        for (Entry entry : batch) {
+            events.add(entry.event);
+        }
+        try {
+            auditDao.insert(events);
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                failedAttempt(batch.get(0), e);
+                return;
+            }
+            log.warn("Failed to write audit events, writing them one by one [count: {}, error message: {}]",
+                    batch.size(), e.getMessage());
+            for (Entry entry : batch) {
+                try {
+                    auditDao.insert(Collections.singletonList(entry.event));
+                    written(entry);
+                } catch (RuntimeException rowException) {
+                    failedAttempt(entry, rowException);
+                }
+            }
+            return;
+        }
+        lag.record(System.nanoTime() - batch.get(0).publishedNanos, TimeUnit.NANOSECONDS);
+        for (Entry entry : batch) {
+            written(entry);
+        }
+    }
+
+    private void written(Entry entry) {
+        written.increment();
+        if (entry.written != null) {
+            entry.written.complete(null);
+        }
+    }
+
+    private void failedAttempt(Entry entry, RuntimeException e) {
+        ++entry.attempts;
+        if (entry.attempts < MAX_ATTEMPTS && retrySize.incrementAndGet() <= capacity) {
+            final long delayNanos = Math.min(MIN_RETRY_DELAY_NANOS << (entry.attempts - 1), MAX_RETRY_DELAY_NANOS);
+            entry.retryAtNanos = System.nanoTime() + delayNanos;
+            retries.add(entry);
+            retried.increment();
+            log.warn("Failed to write audit event, it will be retried [event: {}, attempt: {}, error message: {}]",
+                    entry.event, entry.attempts, e.getMessage());
+        } else {
+            if (entry.attempts < MAX_ATTEMPTS) {
+                retrySize.decrementAndGet();
+            }
+            failed(entry, e.getMessage());
+        }
+        // the publisher is woken up only once the retry is queued, so a close() following the publish sees the event
+        if (entry.written != null) {
+            entry.written.completeExceptionally(e);
+        }
+    }
+
+    private void failed(Entry entry, String errorMessage) {
+        failed.increment();
+        log.error("Failed to write audit event, it has been given up [event: {}, attempts: {}, error message: {}]",
+                entry.event, entry.attempts, errorMessage);
+    }
+
+    /**
+     * Hand the events whose retry is due over to the writer. The writer is never waited for: an event which doesn't
+     * fit into the buffer stays in the queue till the next run.
+     */
+    private void retry() {
+        final long now = System.nanoTime();
+        for (int i = retrySize.get(); i > 0; i--) {
+            final Entry entry = retries.poll();
+            if (entry == null) {
+                return;
+            }
+            if (now - entry.retryAtNanos >= 0 && writer.offer(entry)) {
+                retrySize.decrementAndGet();
+            } else {
+                retries.add(entry);
+            }
+        }
+    }
+
+    private double getPending() {
+        return published.count() - written.count() - failed.count();
+    }
+
+    /**
+     * Stop accepting events and wait for the writer to write already published ones. Events waiting for a retry get
+     * one more attempt regardless of their backoff, the ones which fail it are given up.
+     */
+    @Override
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        retryScheduler.shutdownNow();
+        try {
+            retryScheduler.awaitTermination(DURABLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Entry entry;
+        final List<Entry> lastAttempts = new ArrayList<>();
+        while ((entry = retries.poll()) != null) {
+            lastAttempts.add(entry);
+        }
+        retrySize.addAndGet(-lastAttempts.size());
+        for (Entry lastAttempt : lastAttempts) {
+            if (!writer.put(lastAttempt)) {
+                failed(lastAttempt, "Audit pipeline is closed");
+            }
+        }
+        writer.close();
+        while ((entry = retries.poll()) != null) {
+            failed(entry, "Audit pipeline is closed");
+        }
+    }
+
+    private static final class Entry {
+
+        final AuditEvent event;
+        final long publishedNanos;
+        @Nullable
+        final CompletableFuture<Void> written;
+        // accessed by the writer and then by the retry thread, the queue hands it over safely
+        int attempts;
+        long retryAtNanos;
+
+        Entry(AuditEvent event, long publishedNanos, @Nullable CompletableFuture<Void> written) {
+            this.event = event;
+            this.publishedNanos = publishedNanos;
+            this.written = written;
+        }
+    }
+}
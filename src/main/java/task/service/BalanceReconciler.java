@@ -0,0 +1,368 @@
+package task.service;
+
+import com.google.common.util.concurrent.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import task.manager.AccountManager;
+import task.model.BalanceDiscrepancy;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Verifies stored balances of all the accounts against balances recomputed from the journal of balance changes.
+ * <p>
+ * The id space of every store is split into chunks of {@code chunkSize} accounts which are reconciled in parallel by a
+ * fork/join pool. Every chunk streams accounts and journal sums by two cursors and merges them, so memory depends on
+ * {@code chunkSize * parallelism} rather than on the number of accounts. Reading is throttled to
+ * {@code accountsPerSecond} to leave database capacity to transfers; {@code parallelism} should stay well below the
+ * connection pool size for the same reason.
+ * <p>
+ * A chunk isn't read atomically, so a transfer committed meanwhile may look like a discrepancy. Every suspected
+ * discrepancy is therefore rechecked with the account locked and only confirmed ones are reported.
+ * <p>
+ * With checkpoints enabled every reconciled chunk moves the journal checkpoints of its accounts forward, so the next
+ * reconciliation sums only entries made since, and entries covered by checkpoints are archived once they are older
+ * than {@code archiveAfterMillis}.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@ThreadSafe
+public class BalanceReconciler implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(BalanceReconciler.class);
+
+    private final List<AccountManager> accountManagers;
+    private final int chunkSize;
+    @Nullable
+    private final RateLimiter rateLimiter;
+    private final int maxReported;
+    private final boolean checkpoints;
+    private final long archiveAfterMillis;
+    private final ForkJoinPool pool;
+    private final ScheduledExecutorService scheduler;
+    private final Lock lock = new ReentrantLock();
+    @Nullable
+    private volatile Report lastReport;
+
+    /**
+     * @param accountManagers   account managers of the stores, i.e. of every database or shard
+     * @param parallelism       number of chunks reconciled at the same time
+     * @param chunkSize         number of account ids per chunk
+     * @param accountsPerSecond max rate of reading accounts, 0 - unlimited
+     * @param maxReported       max number of discrepancies kept in the report
+     * @param intervalSeconds   period of reconciliations, 0 - no periodic reconciliations
+     */
+    public BalanceReconciler(List<AccountManager> accountManagers, int parallelism, int chunkSize,
+                             double accountsPerSecond, int maxReported, long intervalSeconds) {
+        this(accountManagers, parallelism, chunkSize, accountsPerSecond, maxReported, intervalSeconds, false, 0);
+    }
+
+    /**
+     * @param accountManagers    account managers of the stores, i.e. of every database or shard
+     * @param parallelism        number of chunks reconciled at the same time
+     * @param chunkSize          number of account ids per chunk
+     * @param accountsPerSecond  max rate of reading accounts, 0 - unlimited
+     * @param maxReported        max number of discrepancies kept in the report
+     * @param intervalSeconds    period of reconciliations, 0 - no periodic reconciliations
+     * @param checkpoints        whether reconciled chunks are checkpointed
+     * @param archiveAfterMillis age of checkpointed entries moved to the archive, 0 - entries are not archived
+     */
+    public BalanceReconciler(List<AccountManager> accountManagers, int parallelism, int chunkSize,
+                             double accountsPerSecond, int maxReported, long intervalSeconds, boolean checkpoints,
+                             long archiveAfterMillis) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size is not positive: " + chunkSize);
+        }
+        this.accountManagers = accountManagers;
+        this.chunkSize = chunkSize;
+        this.rateLimiter = accountsPerSecond > 0 ? RateLimiter.create(accountsPerSecond) : null;
+        this.maxReported = maxReported;
+        this.checkpoints = checkpoints;
+        this.archiveAfterMillis = archiveAfterMillis;
+        this.pool = new ForkJoinPool(parallelism, p -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("balance-reconciliation-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        if (intervalSeconds > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "balance-reconciliation");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::reconcile, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Reconcile all the accounts. Concurrent calls are executed one after another.
+     *
+     * @return report of the reconciliation
+     */
+    public Report reconcile() {
+        lock.lock();
+        try {
+            final Run run = new Run();
+            log.info("Balance reconciliation has been started");
+            final List<Chunk> roots = new ArrayList<>();
+            for (AccountManager accountManager : accountManagers) {
+                try {
+                    final long maxAccountId = accountManager.getMaxAccountId();
+                    if (maxAccountId > 0) {
+                        roots.add(new Chunk(run, accountManager, 1, maxAccountId + 1));
+                    }
+                } catch (RuntimeException e) {
+                    run.failedChunks.increment();
+                    log.error("Failed to get max account id [error message: {}]", e.getMessage());
+                }
+            }
+            for (Chunk root : roots) {
+                pool.execute(root);
+            }
+            for (Chunk root : roots) {
+                root.join();
+            }
+            final Report report = run.toReport();
+            if (report.getConfirmed() > 0 || report.getFailedChunks() > 0) {
+                log.warn("Balance reconciliation has found problems [report: {}]", report);
+            } else {
+                log.info("Balance reconciliation has been finished [report: {}]", report);
+            }
+            lastReport = report;
+            return report;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return report of the last finished reconciliation.
+     *
+     * @return report or {@code null} if there were no reconciliations yet
+     */
+    @Nullable
+    public Report getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * Stop periodic reconciliations.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        pool.shutdownNow();
+    }
+
+    /**
+     * State of one reconciliation shared by its chunks.
+     */
+    private final class Run {
+
+        private final long startedAt = System.currentTimeMillis();
+        private final long startNanos = System.nanoTime();
+        private final LongAdder chunks = new LongAdder();
+        private final LongAdder failedChunks = new LongAdder();
+        private final LongAdder checked = new LongAdder();
+        private final LongAdder suspected = new LongAdder();
+        private final LongAdder confirmed = new LongAdder();
+        private final LongAdder archived = new LongAdder();
+        private final List<BalanceDiscrepancy> discrepancies = new ArrayList<>();
+
+        void report(BalanceDiscrepancy discrepancy) {
+            confirmed.increment();
+            synchronized (discrepancies) {
+                if (discrepancies.size() < maxReported) {
+                    discrepancies.add(discrepancy);
+                }
+            }
+        }
+
+        Report toReport() {
+            final List<BalanceDiscrepancy> reported;
+            synchronized (discrepancies) {
+                reported = new ArrayList<>(discrepancies);
+            }
+            return new Report(startedAt, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), chunks.sum(),
+                    failedChunks.sum(), checked.sum(), suspected.sum(), confirmed.sum(), archived.sum(), reported);
+        }
+    }
+
+    /**
+     * Reconciliation of accounts with ids in range [{@code fromAccountId}, {@code toAccountId}), split in halves until
+     * it fits into a chunk.
+     */
+    private final class Chunk extends RecursiveAction {
+
+        private final Run run;
+        private final AccountManager accountManager;
+        private final long fromAccountId;
+        private final long toAccountId;
+
+        Chunk(Run run, AccountManager accountManager, long fromAccountId, long toAccountId) {
+            this.run = run;
+            this.accountManager = accountManager;
+            this.fromAccountId = fromAccountId;
+            this.toAccountId = toAccountId;
+        }
+
+        @Override
+        protected void compute() {
+            if (toAccountId - fromAccountId > chunkSize) {
+                final long middle = fromAccountId + (toAccountId - fromAccountId) / 2;
+                invokeAll(new Chunk(run, accountManager, fromAccountId, middle),
+                        new Chunk(run, accountManager, middle, toAccountId));
+                return;
+            }
+            run.chunks.increment();
+            try {
+                if (rateLimiter != null) {
+                    rateLimiter.acquire((int) (toAccountId - fromAccountId));
+                }
+                final List<BalanceDiscrepancy> suspects = new ArrayList<>();
+                run.checked.add(accountManager.reconcileRange(fromAccountId, toAccountId, suspects::add));
+                // rechecks lock accounts, so they are done after the read-only range transaction is finished
+                for (BalanceDiscrepancy suspect : suspects) {
+                    run.suspected.increment();
+                    final BalanceDiscrepancy discrepancy = accountManager.recheck(suspect.getAccountId());
+                    if (discrepancy != null) {
+                        run.report(discrepancy);
+                    }
+                }
+                if (checkpoints) {
+                    run.archived.add(accountManager.checkpointRange(fromAccountId, toAccountId,
+                            archiveAfterMillis > 0 ? run.startedAt - archiveAfterMillis : 0));
+                }
+            } catch (RuntimeException e) {
+                run.failedChunks.increment();
+                log.error("Failed to reconcile balances [from account id: {}, to account id: {}, error message: {}]",
+                        fromAccountId, toAccountId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Result of a reconciliation.
+     */
+    @Immutable
+    public static final class Report {
+
+        private final long startedAt;
+        private final long durationMillis;
+        private final long chunks;
+        private final long failedChunks;
+        private final long checked;
+        private final long suspected;
+        private final long confirmed;
+        private final long archived;
+        private final List<BalanceDiscrepancy> discrepancies;
+
+        Report(long startedAt, long durationMillis, long chunks, long failedChunks, long checked, long suspected,
+               long confirmed, long archived, List<BalanceDiscrepancy> discrepancies) {
+            this.startedAt = startedAt;
+            this.durationMillis = durationMillis;
+            this.chunks = chunks;
+            this.failedChunks = failedChunks;
+            this.checked = checked;
+            this.suspected = suspected;
+            this.confirmed = confirmed;
+            this.archived = archived;
+            this.discrepancies = Collections.unmodifiableList(discrepancies);
+        }
+
+        /**
+         * @return start time in milliseconds since the epoch
+         */
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public long getChunks() {
+            return chunks;
+        }
+
+        /**
+         * @return number of chunks which couldn't be reconciled, e.g. because of database errors
+         */
+        public long getFailedChunks() {
+            return failedChunks;
+        }
+
+        /**
+         * @return number of checked accounts
+         */
+        public long getChecked() {
+            return checked;
+        }
+
+        /**
+         * @return number of discrepancies found by range scans, including ones caused by concurrent transfers
+         */
+        public long getSuspected() {
+            return suspected;
+        }
+
+        /**
+         * @return number of discrepancies confirmed by rechecks
+         */
+        public long getConfirmed() {
+            return confirmed;
+        }
+
+        /**
+         * @return number of journal entries moved to the archive
+         */
+        public long getArchived() {
+            return archived;
+        }
+
+        /**
+         * @return confirmed discrepancies, at most {@code maxReported} of them
+         */
+        public List<BalanceDiscrepancy> getDiscrepancies() {
+            return discrepancies;
+        }
+
+        public boolean isConsistent() {
+            return confirmed == 0 && failedChunks == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Report{" +
+                    "startedAt=" + startedAt +
+                    ", durationMillis=" + durationMillis +
+                    ", chunks=" + chunks +
+                    ", failedChunks=" + failedChunks +
+                    ", checked=" + checked +
+                    ", suspected=" + suspected +
+                    ", confirmed=" + confirmed +
+                    ", archived=" + archived +
+                    ", discrepancies=" + discrepancies +
+                    '}';
+        }
+    }
+}
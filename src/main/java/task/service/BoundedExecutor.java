@@ -0,0 +1,210 @@
+package task.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed size thread pool with bounded queue. When the queue is full new tasks are rejected immediately with
+ * {@link RejectedExecutionException} instead of waiting, so callers can shed the load (e.g. answer
+ * {@code 503 Service Unavailable}) while already accepted tasks are completed within bounded time.
+ * <p>
+ * Alternatively tasks are run by a thread per task executor, e.g. of virtual threads ({@link #virtual}). There is no
+ * queue then, but the number of accepted and not yet completed tasks is bounded the same way: a task above the limit
+ * is rejected, so overload doesn't turn into unbounded number of threads and memory.
+ * <p>
+ * The following metrics tagged by executor {@code name} are exported:
+ * <ul>
+ * <li>{@code account.executor.tasks} - number of accepted and not yet completed tasks;</li>
+ * <li>{@code account.executor.queue.depth} - number of tasks waiting in the queue;</li>
+ * <li>{@code account.executor.queue.time} - time tasks spend in the queue before execution;</li>
+ * <li>{@code account.executor.rejected} - number of rejected tasks.</li>
+ * </ul>
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@ThreadSafe
+public class BoundedExecutor implements Executor, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(BoundedExecutor.class);
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final String name;
+    private final ExecutorService executor;
+    @Nullable
+    private final ThreadPoolExecutor pool;
+    @Nullable
+    private final Semaphore permits;
+    private final int maxTasks;
+    private final Timer queueTime;
+    private final Counter rejected;
+
+    /**
+     * @param name          executor name, it is used as thread name prefix and metrics tag
+     * @param threads       number of threads
+     * @param queueCapacity max number of tasks waiting for a free thread
+     * @param registry      meter registry
+     */
+    public BoundedExecutor(String name, int threads, int queueCapacity, MeterRegistry registry) {
+        this(name, new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(queueCapacity), newThreadFactory(name),
+                        new ThreadPoolExecutor.AbortPolicy()),
+                (Semaphore) null, registry);
+    }
+
+    /**
+     * @param name     executor name, it is used as metrics tag
+     * @param executor executor which starts new thread for each task, it is shut down by {@link #close()}
+     * @param maxTasks max number of accepted and not yet completed tasks
+     * @param registry meter registry
+     */
+    public BoundedExecutor(String name, ExecutorService executor, int maxTasks, MeterRegistry registry) {
+        this(name, executor, new Semaphore(checkMaxTasks(maxTasks)), registry);
+    }
+
+    private BoundedExecutor(String name, ExecutorService executor, @Nullable Semaphore permits,
+                            MeterRegistry registry) {
+        this.name = name;
+        this.executor = executor;
+        this.permits = permits;
+        this.pool = permits == null ? (ThreadPoolExecutor) executor : null;
+        this.maxTasks = permits == null ? 0 : permits.availablePermits();
+        this.queueTime = Timer.builder("account.executor.queue.time")
+                .description("Time tasks spend in the queue before execution")
+                .tag("name", name)
+                .register(registry);
+        this.rejected = Counter.builder("account.executor.rejected")
+                .description("Number of tasks rejected because the executor was full")
+                .tag("name", name)
+                .register(registry);
+        Gauge.builder("account.executor.queue.depth", this, BoundedExecutor::getQueueDepth)
+                .description("Number of tasks waiting in the queue")
+                .tag("name", name)
+                .register(registry);
+        Gauge.builder("account.executor.tasks", this, BoundedExecutor::getTasks)
+                .description("Number of accepted and not yet completed tasks")
+                .tag("name", name)
+                .register(registry);
+    }
+
+    /**
+     * Create executor which runs every task on new virtual thread. Tasks waiting for locks or I/O park cheaply, so
+     * {@code maxTasks} may be much larger than a platform pool size, but it still bounds memory under overload.
+     *
+     * @param name     executor name, it is used as thread name prefix and metrics tag
+     * @param maxTasks max number of accepted and not yet completed tasks
+     * @param registry meter registry
+     * @return executor or {@code null} if virtual threads are not supported
+     */
+    @Nullable
+    public static BoundedExecutor virtual(String name, int maxTasks, MeterRegistry registry) {
+        final ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor(name);
+        return executor == null ? null : new BoundedExecutor(name, executor, maxTasks, registry);
+    }
+
+    private static int checkMaxTasks(int maxTasks) {
+        if (maxTasks <= 0) {
+            throw new IllegalArgumentException("Max number of tasks is not positive: " + maxTasks);
+        }
+        return maxTasks;
+    }
+
+    private static ThreadFactory newThreadFactory(String name) {
+        final AtomicInteger counter = new AtomicInteger();
+        return r -> new Thread(r, name + "-" + counter.incrementAndGet());
+    }
+
+    /**
+     * Execute given {@code task} by one of the pool threads or by its own thread.
+     *
+     * @param task task
+     * @throws RejectedExecutionException if the queue is full, {@code maxTasks} are in progress or the executor is
+     *                                    closed
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (permits == null) {
+            final long enqueuedAt = System.nanoTime();
+            try {
+                executor.execute(() -> {
+                    queueTime.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+                    task.run();
+                });
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                throw e;
+            }
+            return;
+        }
+        if (!permits.tryAcquire()) {
+            rejected.increment();
+            throw new RejectedExecutionException("Too many tasks [name: " + name + ", max tasks: " + maxTasks + "]");
+        }
+        final long enqueuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                try {
+                    queueTime.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Return number of tasks waiting in the queue, it is always 0 for a thread per task executor.
+     *
+     * @return queue depth
+     */
+    public int getQueueDepth() {
+        return pool == null ? 0 : pool.getQueue().size();
+    }
+
+    /**
+     * Return number of accepted and not yet completed tasks.
+     *
+     * @return number of tasks
+     */
+    public int getTasks() {
+        return pool == null ? maxTasks - permits.availablePermits() : pool.getActiveCount() + pool.getQueue().size();
+    }
+
+    /**
+     * Stop accepting new tasks and wait for the accepted ones to complete.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Executor has not completed tasks in time [name: {}, tasks: {}]", name, getTasks());
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -3,7 +3,6 @@ package task.service;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
-import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -25,18 +24,14 @@ public class GuavaCacheOrderedLocksProvider implements OrderedLocksProvider {
             });
 
     @Override
-    public Pair<Lock, Lock> getOrderedLocks(long fromAccountId, long toAccountId) {
+    public Lock getFirstLock(long fromAccountId, long toAccountId) {
         // locks are ordered to avoid deadlocks
-        final long firstId;
-        final long secondId;
-        if (fromAccountId < toAccountId) {
-            firstId = fromAccountId;
-            secondId = toAccountId;
-        } else {
-            firstId = toAccountId;
-            secondId = fromAccountId;
-        }
-        return Pair.of(getOrCreateLock(firstId), getOrCreateLock(secondId));
+        return getOrCreateLock(Math.min(fromAccountId, toAccountId));
+    }
+
+    @Override
+    public Lock getSecondLock(long fromAccountId, long toAccountId) {
+        return getOrCreateLock(Math.max(fromAccountId, toAccountId));
     }
 
     private Lock getOrCreateLock(long accountId) {
@@ -0,0 +1,80 @@
+package task.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import task.manager.AccountManager;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps idempotency key stores bounded: periodically deletes keys older than {@code ttlSeconds} and then the oldest
+ * keys beyond {@code maxKeys} per store. A request retried after its key has been purged is executed again.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class IdempotencyKeyPurger implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyKeyPurger.class);
+
+    private final List<AccountManager> accountManagers;
+    private final long ttlMillis;
+    private final long maxKeys;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param accountManagers        account managers of the stores, i.e. of every database or shard
+     * @param ttlSeconds             time to keep a key
+     * @param maxKeys                max number of keys per store
+     * @param purgeIntervalSeconds   period of purges, 0 - no periodic purges
+     */
+    public IdempotencyKeyPurger(List<AccountManager> accountManagers, long ttlSeconds, long maxKeys,
+                                long purgeIntervalSeconds) {
+        this.accountManagers = accountManagers;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.maxKeys = maxKeys;
+        if (purgeIntervalSeconds > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "idempotency-key-purge");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::purge, purgeIntervalSeconds, purgeIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Delete expired keys and the oldest keys beyond the limit.
+     *
+     * @return number of deleted keys
+     */
+    public int purge() {
+        final long createdBefore = System.currentTimeMillis() - ttlMillis;
+        int purged = 0;
+        for (AccountManager accountManager : accountManagers) {
+            try {
+                purged += accountManager.purgeIdempotencyKeys(createdBefore, maxKeys);
+            } catch (RuntimeException e) {
+                log.error("Failed to purge idempotency keys [error message: {}]", e.getMessage());
+            }
+        }
+        if (purged > 0) {
+            log.info("Idempotency keys have been purged [count: {}]", purged);
+        }
+        return purged;
+    }
+
+    /**
+     * Stop periodic purges.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
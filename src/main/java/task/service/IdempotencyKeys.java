@@ -0,0 +1,112 @@
+package task.service;
+
+import org.springframework.dao.DuplicateKeyException;
+import task.exception.BusinessException;
+import task.exception.IdempotencyKeyConflictException;
+import task.exception.LimitExceededException;
+import task.exception.NoSuchAccountException;
+import task.model.IdempotencyKey;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Idempotent transfer logic shared by {@link AccountService} implementations.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+final class IdempotencyKeys {
+
+    private IdempotencyKeys() {
+    }
+
+    /**
+     * Create key of the transfer.
+     *
+     * @throws NullPointerException     when {@code id} or {@code amount} is null
+     * @throws IllegalArgumentException when {@code id} is empty or too long
+     */
+    static IdempotencyKey newKey(String id, long fromAccountId, long toAccountId, BigDecimal amount) {
+        Objects.requireNonNull(id, "idempotencyKey is null");
+        if (id.isEmpty() || id.length() > IdempotencyKey.MAX_LENGTH) {
+            throw new IllegalArgumentException("idempotencyKey length is not in [1, " + IdempotencyKey.MAX_LENGTH +
+                    "]: " + id.length());
+        }
+        return new IdempotencyKey()
+                .setId(id)
+                .setFromAccountId(fromAccountId)
+                .setToAccountId(toAccountId)
+                .setAmount(Objects.requireNonNull(amount, "amount is null"))
+                .setCreatedAt(System.currentTimeMillis());
+    }
+
+    /**
+     * Execute {@code transfer} unless a transfer with the same key has been already committed or rejected. A
+     * rejection is recorded by {@code recordRejection}, so a retry gets the same rejection.
+     *
+     * @param key             key of the transfer
+     * @param store           finds recorded key by id
+     * @param transfer        executes the transfer recording the key in its transaction
+     * @param recordRejection records the key of the rejected transfer
+     * @return {@code true} if the transfer has been executed, {@code false} if it has been replayed
+     * @throws IdempotencyKeyConflictException if the key has been recorded with other transfer parameters
+     * @throws BusinessException               if the transfer has been rejected now or before
+     */
+    static boolean transferOnce(IdempotencyKey key, Function<String, IdempotencyKey> store,
+                                Consumer<IdempotencyKey> transfer, Consumer<IdempotencyKey> recordRejection) {
+        if (isReplay(store.apply(key.getId()), key)) {
+            return false;
+        }
+        try {
+            transfer.accept(key);
+            return true;
+        } catch (LimitExceededException | NoSuchAccountException e) {
+            if (isReplay(store.apply(key.getId()), key)) {
+                return false;
+            }
+            try {
+                recordRejection.accept(key.setRejection(e));
+            } catch (DuplicateKeyException duplicate) {
+                // a request with the same key has recorded its outcome in the meantime, it wins
+                if (isReplay(store.apply(key.getId()), key)) {
+                    return false;
+                }
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            // a request with the same key may have committed in the meantime, e.g. the original request was still in
+            // flight when the client retried it: then this one is a replay whatever the reason of its failure is
+            if (isReplay(store.apply(key.getId()), key)) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Check whether the transfer has been already executed with the key.
+     *
+     * @param recorded  recorded key, it must not be {@link IdempotencyKey.State#PENDING PENDING}
+     * @param requested key of the request
+     * @return {@code true} if the transfer has been executed, {@code false} if the key has not been recorded
+     * @throws IdempotencyKeyConflictException if the key has been recorded with other transfer parameters
+     * @throws BusinessException               the recorded rejection if the transfer has been rejected
+     */
+    static boolean isReplay(@Nullable IdempotencyKey recorded, IdempotencyKey requested) {
+        if (recorded == null) {
+            return false;
+        }
+        if (!recorded.isSameTransfer(requested)) {
+            throw new IdempotencyKeyConflictException(requested.getId());
+        }
+        // the amount of the request keeps its scale, so the replayed rejection reads exactly like the original one
+        final BusinessException rejection = recorded.setAmount(requested.getAmount()).getRejection();
+        if (rejection != null) {
+            throw rejection;
+        }
+        return true;
+    }
+}
@@ -1,7 +1,5 @@
 package task.service;
 
-import org.apache.commons.lang3.tuple.Pair;
-
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -21,20 +19,14 @@ public class LocksArrayOrderedLocksProvider implements OrderedLocksProvider {
     }
 
     @Override
-    public Pair<Lock, Lock> getOrderedLocks(long fromAccountId, long toAccountId) {
+    public Lock getFirstLock(long fromAccountId, long toAccountId) {
         // locks indexes are ordered to avoid deadlocks
-        final int fromLockIndex = getLockIndex(fromAccountId);
-        final int toLockIndex = getLockIndex(toAccountId);
-        final int firstIndex;
-        final int secondIndex;
-        if (fromLockIndex < toLockIndex) {
-            firstIndex = fromLockIndex;
-            secondIndex = toLockIndex;
-        } else {
-            firstIndex = toLockIndex;
-            secondIndex = fromLockIndex;
-        }
-        return Pair.of(locks[firstIndex], locks[secondIndex]);
+        return locks[Math.min(getLockIndex(fromAccountId), getLockIndex(toAccountId))];
+    }
+
+    @Override
+    public Lock getSecondLock(long fromAccountId, long toAccountId) {
+        return locks[Math.max(getLockIndex(fromAccountId), getLockIndex(toAccountId))];
     }
 
     private int getLockIndex(long accountId) {
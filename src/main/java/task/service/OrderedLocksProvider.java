@@ -1,14 +1,33 @@
 package task.service;
 
-import org.apache.commons.lang3.tuple.Pair;
-
 import java.util.concurrent.locks.Lock;
 
 /**
- * This interface provides pair of locks ordered by specified from- and to-account ids.
+ * This interface provides pair of locks ordered by specified from- and to-account ids. The locks are returned one by
+ * one rather than as a pair object, so acquiring them doesn't allocate on the transfer path.
+ * <p>
+ * Callers must lock {@link #getFirstLock} before {@link #getSecondLock} to avoid deadlocks. Both methods may return
+ * the same (reentrant) lock.
  *
  * @author Anton Kotov (kotov-anton@yandex.ru)
  */
 public interface OrderedLocksProvider {
-    Pair<Lock, Lock> getOrderedLocks(long fromAccountId, long toAccountId);
+
+    /**
+     * Return the lock to be acquired first.
+     *
+     * @param fromAccountId from-account id
+     * @param toAccountId   to-account id
+     * @return first lock
+     */
+    Lock getFirstLock(long fromAccountId, long toAccountId);
+
+    /**
+     * Return the lock to be acquired second.
+     *
+     * @param fromAccountId from-account id
+     * @param toAccountId   to-account id
+     * @return second lock
+     */
+    Lock getSecondLock(long fromAccountId, long toAccountId);
 }
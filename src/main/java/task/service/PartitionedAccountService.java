@@ -0,0 +1,595 @@
+package task.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionOperations;
+import task.concurrent.RingBufferExecutor;
+import task.dao.AccountDao;
+import task.dao.TransferIntentDao;
+import task.exception.BusinessException;
+import task.exception.LimitExceededException;
+import task.exception.NoSuchAccountException;
+import task.manager.AccountManager;
+import task.model.Account;
+import task.model.AuditEvent;
+import task.model.HistoryCursor;
+import task.model.JournalEntry;
+import task.model.IdempotencyKey;
+import task.model.TransferResult;
+import task.model.TransferIntent;
+import task.service.ServiceEventLog.Operation;
+import task.service.ServiceEventLog.Outcome;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free implementation of {@link AccountService}: accounts are partitioned by id across N single-threaded workers,
+ * each fed by its own {@link RingBufferExecutor}. The only writer of a partition is its worker, so modifications of
+ * its accounts never conflict and need no locks.
+ * <p>
+ * Transfer within a partition is one task of the partition worker executed in one transaction. Transfer across
+ * partitions is performed in two steps:
+ * <ol>
+ * <li>debit: the source partition withdraws money and records {@link TransferIntent.State#PREPARED PREPARED} intent;
+ * </li>
+ * <li>credit: the destination partition deposits money and moves the intent to
+ * {@link TransferIntent.State#COMMITTED COMMITTED} in one transaction.</li>
+ * </ol>
+ * If credit fails the source partition refunds money and cancels the intent, so the transfer either happens or not.
+ * Intents left prepared by a crash or by a failed refund are credited on start and then periodically by the worker of
+ * the destination partition. While a transfer is between the steps the money is in flight: it is visible neither on
+ * the source nor on the destination account.
+ * <p>
+ * The caller thread waits for each step, workers never wait for each other. Accounts, intents and idempotency keys
+ * are written by partition workers only.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@ThreadSafe
+public class PartitionedAccountService implements AccountService, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionedAccountService.class);
+
+    private static final int RECOVERY_BATCH_SIZE = 100;
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+    private final AccountManager accountManager;
+    private final AccountDao accountDao;
+    private final TransferIntentDao transferIntentDao;
+    private final TransactionOperations transactions;
+    private final RingBufferExecutor[] partitions;
+    private final ServiceEventLog eventLog;
+    private final AuditPipeline audit;
+    @Nullable
+    private final ScheduledExecutorService recoveryScheduler;
+    // intents whose transfer is still in progress: they are credited or refunded by their own caller
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param accountManager    account manager
+     * @param accountDao        account DAO
+     * @param transferIntentDao transfer intent DAO
+     * @param transactions      transactions of the account database
+     * @param partitions        number of partitions
+     * @param ringBufferSize    capacity of the ring buffer of each partition, must be a power of two
+     */
+    public PartitionedAccountService(AccountManager accountManager, AccountDao accountDao,
+                                     TransferIntentDao transferIntentDao, TransactionOperations transactions,
+                                     int partitions, int ringBufferSize) {
+        this(accountManager, accountDao, transferIntentDao, transactions, partitions, ringBufferSize,
+                ServiceEventLog.failuresOnly());
+    }
+
+    /**
+     * @param accountManager    account manager
+     * @param accountDao        account DAO
+     * @param transferIntentDao transfer intent DAO
+     * @param transactions      transactions of the account database
+     * @param partitions        number of partitions
+     * @param ringBufferSize    capacity of the ring buffer of each partition, must be a power of two
+     * @param eventLog          log of operations, it is not closed by the service
+     */
+    public PartitionedAccountService(AccountManager accountManager, AccountDao accountDao,
+                                     TransferIntentDao transferIntentDao, TransactionOperations transactions,
+                                     int partitions, int ringBufferSize, ServiceEventLog eventLog) {
+        this(accountManager, accountDao, transferIntentDao, transactions, partitions, ringBufferSize, eventLog,
+                AuditPipeline.disabled());
+    }
+
+    /**
+     * @param accountManager    account manager
+     * @param accountDao        account DAO
+     * @param transferIntentDao transfer intent DAO
+     * @param transactions      transactions of the account database
+     * @param partitions        number of partitions
+     * @param ringBufferSize    capacity of the ring buffer of each partition, must be a power of two
+     * @param eventLog          log of operations, it is not closed by the service
+     * @param audit             audit of creations and transfers, it is not closed by the service
+     */
+    public PartitionedAccountService(AccountManager accountManager, AccountDao accountDao,
+                                     TransferIntentDao transferIntentDao, TransactionOperations transactions,
+                                     int partitions, int ringBufferSize, ServiceEventLog eventLog,
+                                     AuditPipeline audit) {
+        this(accountManager, accountDao, transferIntentDao, transactions, partitions, ringBufferSize, eventLog, audit,
+                0);
+    }
+
+    /**
+     * @param accountManager          account manager
+     * @param accountDao              account DAO
+     * @param transferIntentDao       transfer intent DAO
+     * @param transactions            transactions of the account database
+     * @param partitions              number of partitions
+     * @param ringBufferSize          capacity of the ring buffer of each partition, must be a power of two
+     * @param eventLog                log of operations, it is not closed by the service
+     * @param audit                   audit of creations and transfers, it is not closed by the service
+     * @param recoveryIntervalSeconds interval of periodic recovery, 0 - recover only once on start
+     */
+    public PartitionedAccountService(AccountManager accountManager, AccountDao accountDao,
+                                     TransferIntentDao transferIntentDao, TransactionOperations transactions,
+                                     int partitions, int ringBufferSize, ServiceEventLog eventLog,
+                                     AuditPipeline audit, long recoveryIntervalSeconds) {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("Number of partitions is not positive: " + partitions);
+        }
+        this.accountManager = accountManager;
+        this.accountDao = accountDao;
+        this.transferIntentDao = transferIntentDao;
+        this.transactions = transactions;
+        this.eventLog = eventLog;
+        this.audit = audit;
+
+        // complete transfers interrupted by the previous shutdown before the workers start
+        recover(this::creditPrepared);
+
+        this.partitions = new RingBufferExecutor[partitions];
+        for (int i = 0; i < partitions; ++i) {
+            this.partitions[i] = new RingBufferExecutor("account-partition-" + i, ringBufferSize);
+        }
+
+        if (recoveryIntervalSeconds > 0) {
+            recoveryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "transfer-recovery");
+                thread.setDaemon(true);
+                return thread;
+            });
+            recoveryScheduler.scheduleWithFixedDelay(this::recoverByPartitions,
+                    recoveryIntervalSeconds, recoveryIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            recoveryScheduler = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Account create(@Nullable BigDecimal amount) {
+        final long start = System.nanoTime();
+        try {
+            // new account can't conflict with anything, so there is no need to go through its partition
+            final Account account = new Account().setAmount(Optional.ofNullable(amount).orElse(BigDecimal.ZERO));
+            accountManager.create(account);
+            audit.publish(AuditEvent.Type.CREATE, account.getId(), 0, account.getAmount(), null);
+            eventLog.record(Operation.CREATE, Outcome.OK, start, account.getId(), 0, account.getAmount(), null, null);
+            return account;
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.CREATE, Outcome.FAILED, start, 0, 0, amount, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Account getAccount(long accountId) {
+        final long start = System.nanoTime();
+        try {
+            final Account account = selectAccount(accountId);
+            eventLog.record(Operation.GET, Outcome.OK, start, accountId, 0, account.getAmount(), null, null);
+            return account;
+        } catch (BusinessException e) {
+            eventLog.record(Operation.GET, Outcome.REJECTED, start, accountId, 0, null, null, e);
+            throw e;
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.GET, Outcome.FAILED, start, accountId, 0, null, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Account> getAccounts(long afterAccountId, int limit) {
+        final long start = System.nanoTime();
+        try {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("limit is not positive: " + limit);
+            }
+            final List<Account> accounts = accountDao.selectPage(afterAccountId, limit);
+            eventLog.record(Operation.GET_PAGE, Outcome.OK, start, afterAccountId, limit, null, null, null);
+            return accounts;
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.GET_PAGE, Outcome.FAILED, start, afterAccountId, limit, null, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<JournalEntry> getHistory(long accountId, long fromTime, long toTime, @Nullable HistoryCursor after,
+                                         int limit) {
+        final long start = System.nanoTime();
+        try {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("limit is not positive: " + limit);
+            }
+            final List<JournalEntry> entries = accountManager.getHistory(accountId, fromTime, toTime, after, limit);
+            eventLog.record(Operation.GET_HISTORY, Outcome.OK, start, accountId, limit, null, null, null);
+            return entries;
+        } catch (BusinessException e) {
+            eventLog.record(Operation.GET_HISTORY, Outcome.REJECTED, start, accountId, limit, null, null, e);
+            throw e;
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.GET_HISTORY, Outcome.FAILED, start, accountId, limit, null, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BigDecimal getBalanceAt(long accountId, long time) {
+        final long start = System.nanoTime();
+        try {
+            final BigDecimal balance = accountManager.getBalanceAt(accountId, time);
+            eventLog.record(Operation.GET_BALANCE_AT, Outcome.OK, start, accountId, time, balance, null, null);
+            return balance;
+        } catch (BusinessException e) {
+            eventLog.record(Operation.GET_BALANCE_AT, Outcome.REJECTED, start, accountId, time, null, null, e);
+            throw e;
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.GET_BALANCE_AT, Outcome.FAILED, start, accountId, time, null, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long exportAccounts(Consumer<? super Account> action) {
+        final long start = System.nanoTime();
+        try {
+            // reads need no partition worker: the cursor sees the committed state as any other reader
+            final Long count = transactions.execute(status -> accountManager.forEachAccount(action));
+            eventLog.record(Operation.EXPORT, Outcome.OK, start, count, 0, null, null, null);
+            return count;
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.EXPORT, Outcome.FAILED, start, 0, 0, null, null, e);
+            throw e;
+        }
+    }
+
+    private Account selectAccount(long accountId) {
+        return Optional.ofNullable(accountDao.select(accountId))
+                .orElseThrow(() -> new NoSuchAccountException(accountId));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void transfer(long fromAccountId, long toAccountId, BigDecimal amount) {
+        tryTransfer(fromAccountId, toAccountId, amount).throwIfRejected();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TransferResult tryTransfer(long fromAccountId, long toAccountId, BigDecimal amount) {
+        final long start = System.nanoTime();
+        try {
+            transfer(fromAccountId, toAccountId, amount, (IdempotencyKey) null);
+            eventLog.record(Operation.TRANSFER, Outcome.OK, start, fromAccountId, toAccountId, amount, null, null);
+            return TransferResult.transferred();
+        } catch (LimitExceededException e) {
+            eventLog.record(Operation.TRANSFER, Outcome.REJECTED, start, fromAccountId, toAccountId, amount, null, e);
+            return TransferResult.rejected(e);
+        } catch (NoSuchAccountException e) {
+            eventLog.record(Operation.TRANSFER, Outcome.REJECTED, start, fromAccountId, toAccountId, amount, null, e);
+            return TransferResult.rejected(e);
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.TRANSFER, Outcome.FAILED, start, fromAccountId, toAccountId, amount, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The key is looked up and its rejection is recorded by the worker of the source partition, the same worker
+     * records the key together with the transfer and forgets it on refund, so keys of the transfers of an account
+     * have the only writer. A key reused with another source account is refused by the unique key of the table.
+     */
+    @Override
+    public boolean transfer(long fromAccountId, long toAccountId, BigDecimal amount, String idempotencyKey) {
+        final long start = System.nanoTime();
+        try {
+            final RingBufferExecutor fromPartition = partitionOf(fromAccountId);
+            final boolean transferred = IdempotencyKeys.transferOnce(
+                    IdempotencyKeys.newKey(idempotencyKey, fromAccountId, toAccountId, amount),
+                    id -> call(fromPartition, () -> accountManager.findIdempotencyKey(id)),
+                    key -> transfer(fromAccountId, toAccountId, amount, key),
+                    key -> call(fromPartition, () -> {
+                        accountManager.recordIdempotencyKey(key);
+                        return null;
+                    }));
+            eventLog.record(Operation.TRANSFER, transferred ? Outcome.OK : Outcome.REPLAYED, start,
+                    fromAccountId, toAccountId, amount, idempotencyKey, null);
+            return transferred;
+        } catch (BusinessException e) {
+            eventLog.record(Operation.TRANSFER, Outcome.REJECTED, start, fromAccountId, toAccountId, amount,
+                    idempotencyKey, e);
+            throw e;
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.TRANSFER, Outcome.FAILED, start, fromAccountId, toAccountId, amount,
+                    idempotencyKey, e);
+            throw e;
+        }
+    }
+
+    private void transfer(long fromAccountId, long toAccountId, BigDecimal amount,
+                          @Nullable IdempotencyKey idempotencyKey) {
+        if (fromAccountId == toAccountId) {
+            throw new IllegalArgumentException("fromAccountId == toAccountId: " + fromAccountId);
+        }
+        if (Objects.requireNonNull(amount, "amount is null").compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("amount is not positive: " + amount);
+        }
+        final RingBufferExecutor fromPartition = partitionOf(fromAccountId);
+        final RingBufferExecutor toPartition = partitionOf(toAccountId);
+        try {
+            if (fromPartition == toPartition) {
+                call(fromPartition, () -> {
+                    transferInternal(fromAccountId, toAccountId, amount, idempotencyKey);
+                    return null;
+                });
+            } else {
+                crossPartitionTransfer(fromPartition, toPartition, fromAccountId, toAccountId, amount,
+                        idempotencyKey);
+            }
+        } catch (LimitExceededException | NoSuchAccountException e) {
+            audit.publish(AuditEvent.Type.REJECT, fromAccountId, toAccountId, amount, e.getMessage());
+            throw e;
+        }
+        // events are published by the caller thread, so auditing never holds up partition workers
+        audit.publish(AuditEvent.Type.TRANSFER, fromAccountId, toAccountId, amount, null);
+    }
+
+    private RingBufferExecutor partitionOf(long accountId) {
+        return partitions[(int) Math.floorMod(accountId, (long) partitions.length)];
+    }
+
+    private void transferInternal(long fromAccountId, long toAccountId, BigDecimal amount,
+                                  @Nullable IdempotencyKey idempotencyKey) {
+        final Account fromAccount = selectAccount(fromAccountId);
+        final Account toAccount = selectAccount(toAccountId);
+
+        // this pre-check allows us to avoid extra database transaction: begin -> rollback in case of exceeded limit
+        if (!fromAccount.canWithdraw(amount)) {
+            throw new LimitExceededException(fromAccountId, amount, fromAccount.getAmount());
+        }
+
+        if (idempotencyKey == null) {
+            accountManager.transfer(fromAccount, toAccount, amount);
+        } else {
+            accountManager.transfer(fromAccount, toAccount, amount, idempotencyKey);
+        }
+    }
+
+    private void crossPartitionTransfer(RingBufferExecutor fromPartition, RingBufferExecutor toPartition,
+                                        long fromAccountId, long toAccountId, BigDecimal amount,
+                                        @Nullable IdempotencyKey idempotencyKey) {
+        final TransferIntent intent = call(fromPartition,
+                () -> debit(fromAccountId, toAccountId, amount, idempotencyKey));
+        try {
+            call(toPartition, () -> {
+                credit(intent);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            try {
+                call(fromPartition, () -> {
+                    refund(intent, idempotencyKey);
+                    return null;
+                });
+            } catch (RuntimeException refundException) {
+                // the intent stays prepared and will be credited by the next recovery
+                log.error("Failed to refund transfer [intent: {}, error message: {}]",
+                        intent, refundException.getMessage());
+            }
+            throw e;
+        } finally {
+            inFlight.remove(intent.getId());
+        }
+    }
+
+    private TransferIntent debit(long fromAccountId, long toAccountId, BigDecimal amount,
+                                 @Nullable IdempotencyKey idempotencyKey) {
+        final Account fromAccount = selectAccount(fromAccountId);
+        // accounts are never deleted, so the destination account is still there when it is credited
+        selectAccount(toAccountId);
+        if (!fromAccount.canWithdraw(amount)) {
+            throw new LimitExceededException(fromAccountId, amount, fromAccount.getAmount());
+        }
+        final TransferIntent intent = new TransferIntent()
+                .setId(UUID.randomUUID().toString())
+                .setFromAccountId(fromAccountId)
+                .setToAccountId(toAccountId)
+                .setAmount(amount)
+                .setState(TransferIntent.State.PREPARED);
+        // announced before the intent is committed, so recovery never sees it prepared while its caller is running
+        inFlight.add(intent.getId());
+        try {
+            transactions.executeWithoutResult(status -> {
+                // once debited the transfer is either credited or refunded, so the key is recorded with the debit
+                if (idempotencyKey != null) {
+                    accountManager.recordIdempotencyKey(idempotencyKey);
+                }
+                accountManager.withdraw(fromAccount, amount);
+                transferIntentDao.insert(intent);
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(intent.getId());
+            throw e;
+        }
+        return intent;
+    }
+
+    private void credit(TransferIntent intent) {
+        transactions.executeWithoutResult(status -> {
+            final Account toAccount = selectAccount(intent.getToAccountId());
+            accountManager.deposit(toAccount, intent.getAmount());
+            transferIntentDao.updateState(intent.getId(), TransferIntent.State.COMMITTED);
+        });
+    }
+
+    private void refund(TransferIntent intent, @Nullable IdempotencyKey idempotencyKey) {
+        transactions.executeWithoutResult(status -> {
+            // the intent is committed together with the credit, so a credit which has actually succeeded is never
+            // refunded
+            final TransferIntent actual = transferIntentDao.select(intent.getId());
+            if (actual == null || actual.getState() != TransferIntent.State.PREPARED) {
+                return;
+            }
+            final Account fromAccount = selectAccount(intent.getFromAccountId());
+            accountManager.deposit(fromAccount, intent.getAmount());
+            transferIntentDao.updateState(intent.getId(), TransferIntent.State.CANCELLED);
+            // the transfer hasn't happened, so a retry with the same key must execute it again
+            if (idempotencyKey != null) {
+                accountManager.forgetIdempotencyKey(idempotencyKey.getId());
+            }
+        });
+    }
+
+    private static <T> T call(RingBufferExecutor partition, Supplier<T> operation) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        partition.execute(() -> {
+            try {
+                future.complete(operation.get());
+            } catch (Throwable e) {
+                // the caller must never hang on the future
+                future.completeExceptionally(e);
+            }
+        });
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Credit the intent unless it is no longer prepared or its transfer is still in progress. It is called by the
+     * worker of the destination partition or on start, while no partition worker is running.
+     *
+     * @param intent prepared intent
+     * @return {@code true} if the intent has been credited
+     */
+    private boolean creditPrepared(TransferIntent intent) {
+        final Boolean credited = transactions.execute(status -> {
+            final TransferIntent actual = transferIntentDao.select(intent.getId());
+            if (actual == null || actual.getState() != TransferIntent.State.PREPARED
+                    || inFlight.contains(intent.getId())) {
+                return false;
+            }
+            credit(actual);
+            return true;
+        });
+        return Boolean.TRUE.equals(credited);
+    }
+
+    /**
+     * Credit all transfers which have been debited but neither credited nor refunded. An intent which fails to be
+     * credited is logged and skipped, so it holds up neither the start nor the other intents.
+     *
+     * @param creditor credits a prepared intent and tells whether it has been credited
+     * @return number of recovered transfers
+     */
+    private int recover(Predicate<TransferIntent> creditor) {
+        int recovered = 0;
+        String afterId = "";
+        List<TransferIntent> intents;
+        do {
+            intents = transferIntentDao.selectPageByState(TransferIntent.State.PREPARED, afterId, RECOVERY_BATCH_SIZE);
+            for (TransferIntent intent : intents) {
+                try {
+                    if (creditor.test(intent)) {
+                        ++recovered;
+                    }
+                } catch (RuntimeException e) {
+                    log.error("Failed to recover transfer [intent: {}, error message: {}]", intent, e.getMessage());
+                }
+                afterId = intent.getId();
+            }
+        } while (intents.size() == RECOVERY_BATCH_SIZE);
+        if (recovered > 0) {
+            log.info("Transfers have been recovered [count: {}]", recovered);
+        }
+        return recovered;
+    }
+
+    private void recoverByPartitions() {
+        try {
+            // the destination partition credits the intent, so recovery never races with its other deposits
+            recover(intent -> call(partitionOf(intent.getToAccountId()), () -> creditPrepared(intent)));
+        } catch (RuntimeException e) {
+            // a failed run must not cancel the next ones
+            log.error("Failed to recover transfers [error message: {}]", e.getMessage());
+        }
+    }
+
+    /**
+     * Stop periodic recovery and then partition workers after they execute already submitted tasks.
+     */
+    @Override
+    public void close() {
+        if (recoveryScheduler != null) {
+            recoveryScheduler.shutdownNow();
+            try {
+                recoveryScheduler.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (RingBufferExecutor partition : partitions) {
+            partition.close();
+        }
+    }
+}
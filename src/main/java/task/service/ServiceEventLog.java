@@ -0,0 +1,286 @@
+package task.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import task.concurrent.BatchingWriter;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous structured log of service operations. A request thread only decides whether the event is sampled and
+ * hands it over to a {@link BatchingWriter}; its only thread encodes events as compact {@code key=value} lines and
+ * writes them to the {@value #LOGGER_NAME} logger, so formatting and appender I/O never block request threads. When
+ * the buffer is full the event is dropped and counted instead of waiting.
+ * <p>
+ * Every {@link Operation} has its own sampling rate. Failures are never sampled out and never dropped: a failure which
+ * doesn't fit into the buffer or is recorded after {@link #close()} is written by the calling thread.
+ * <p>
+ * Sample line:
+ * <pre>
+ * op=TRANSFER outcome=REJECTED us=153 from=1 to=2 amount=100 reason="Failed to withdraw from account: 1: ..."
+ * </pre>
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@ThreadSafe
+public class ServiceEventLog implements AutoCloseable {
+
+    public static final String LOGGER_NAME = "task.events";
+
+    private static final Logger log = LoggerFactory.getLogger(LOGGER_NAME);
+
+    private static final int BATCH_SIZE = 64;
+
+    /**
+     * Logged operation of {@link AccountService}.
+     */
+    public enum Operation {
+        CREATE,
+        GET,
+        GET_PAGE,
+        EXPORT,
+        TRANSFER,
+        GET_HISTORY,
+        GET_BALANCE_AT
+    }
+
+    /**
+     * Outcome of the operation.
+     */
+    public enum Outcome {
+        OK,
+        /**
+         * Idempotent transfer has been replayed.
+         */
+        REPLAYED,
+        /**
+         * The operation has been rejected for a business reason, e.g. insufficient funds.
+         */
+        REJECTED,
+        /**
+         * The operation has failed, such events are always logged.
+         */
+        FAILED
+    }
+
+    private final double[] samplingRates = new double[Operation.values().length];
+    @Nullable
+    private final BatchingWriter<Event> writer;
+    @Nullable
+    private final Counter written;
+    @Nullable
+    private final Counter dropped;
+    private final StringBuilder line = new StringBuilder(256); // used by the writer thread only
+
+    /**
+     * @param capacity      ring buffer capacity, must be a power of two
+     * @param samplingRates share of logged events per operation in range [0, 1], missing operations are not logged
+     * @param registry      registry of {@code account.events.*} metrics
+     */
+    public ServiceEventLog(int capacity, Map<Operation, Double> samplingRates, MeterRegistry registry) {
+        for (Map.Entry<Operation, Double> entry : samplingRates.entrySet()) {
+            final double rate = entry.getValue();
+            if (rate < 0 || rate > 1) {
+                throw new IllegalArgumentException("sampling rate is not in [0, 1]: " + entry);
+            }
+            this.samplingRates[entry.getKey().ordinal()] = rate;
+        }
+        this.written = Counter.builder("account.events.written")
+                .description("Number of service events written to the log")
+                .register(registry);
+        this.dropped = Counter.builder("account.events.dropped")
+                .description("Number of sampled service events dropped because the log buffer was full or closed")
+                .register(registry);
+        this.writer = new BatchingWriter<>("service-event-log", capacity, BATCH_SIZE, this::write);
+    }
+
+    private ServiceEventLog() {
+        this.writer = null;
+        this.written = null;
+        this.dropped = null;
+    }
+
+    /**
+     * Return log which samples out all the events but failures and writes failures synchronously.
+     *
+     * @return log without writer thread
+     */
+    public static ServiceEventLog failuresOnly() {
+        return new ServiceEventLog();
+    }
+
+    /**
+     * Return sampling rates of all operations set to the same {@code rate}.
+     *
+     * @param rate sampling rate
+     * @return sampling rates
+     */
+    public static Map<Operation, Double> samplingRates(double rate) {
+        final Map<Operation, Double> samplingRates = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            samplingRates.put(operation, rate);
+        }
+        return samplingRates;
+    }
+
+    /**
+     * Record the event if it is sampled. The meaning of {@code first} and {@code second} depends on the operation:
+     * account id for {@link Operation#CREATE} and {@link Operation#GET}, after-id and limit for
+     * {@link Operation#GET_PAGE}, count for {@link Operation#EXPORT}, from- and to-account ids for
+     * {@link Operation#TRANSFER}, account id and limit for {@link Operation#GET_HISTORY}, account id and time for
+     * {@link Operation#GET_BALANCE_AT}. Nothing is allocated for an event which is not sampled.
+     *
+     * @param operation  operation
+     * @param outcome    outcome
+     * @param startNanos {@link System#nanoTime()} at the start of the operation
+     * @param first      first operation argument
+     * @param second     second operation argument
+     * @param amount     amount or {@code null}
+     * @param key        idempotency key or {@code null}
+     * @param error      reason of the rejection or failure, its message is built by the writer thread
+     */
+    public void record(Operation operation, Outcome outcome, long startNanos, long first, long second,
+                       @Nullable BigDecimal amount, @Nullable String key, @Nullable Throwable error) {
+        if (outcome != Outcome.FAILED && !isSampled(operation)) {
+            return;
+        }
+        final Event event = new Event(operation, outcome, System.nanoTime() - startNanos, first, second, amount, key,
+                error);
+        if (writer != null && writer.offer(event)) {
+            return;
+        }
+        if (outcome == Outcome.FAILED) {
+            // a failure must not be lost, it is rare enough to be written by the request thread
+            log.error(encode(event, new StringBuilder(256)).toString());
+        } else if (dropped != null) {
+            dropped.increment();
+        }
+    }
+
+    private boolean isSampled(Operation operation) {
+        final double rate = samplingRates[operation.ordinal()];
+        return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    private void write(List<Event> events) {
+        for (Event event : events) {
+            write(event);
+        }
+    }
+
+    private void write(Event event) {
+        try {
+            line.setLength(0);
+            final String message = encode(event, line).toString();
+            if (event.outcome == Outcome.FAILED) {
+                log.error(message);
+            } else {
+                log.info(message);
+            }
+            written.increment();
+        } catch (RuntimeException e) {
+            // e.g. a failing appender must not kill the writer
+            dropped.increment();
+        }
+    }
+
+    static StringBuilder encode(Event event, StringBuilder line) {
+        line.append("op=").append(event.operation)
+                .append(" outcome=").append(event.outcome)
+                .append(" us=").append(TimeUnit.NANOSECONDS.toMicros(event.durationNanos));
+        switch (event.operation) {
+            case CREATE:
+            case GET:
+                line.append(" account=").append(event.first);
+                break;
+            case GET_PAGE:
+                line.append(" after=").append(event.first).append(" limit=").append(event.second);
+                break;
+            case EXPORT:
+                line.append(" count=").append(event.first);
+                break;
+            case TRANSFER:
+                line.append(" from=").append(event.first).append(" to=").append(event.second);
+                break;
+            case GET_HISTORY:
+                line.append(" account=").append(event.first).append(" limit=").append(event.second);
+                break;
+            case GET_BALANCE_AT:
+                line.append(" account=").append(event.first).append(" at=").append(event.second);
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation: " + event.operation);
+        }
+        if (event.amount != null) {
+            line.append(" amount=").append(event.amount.toPlainString());
+        }
+        if (event.key != null) {
+            appendQuoted(line.append(" key="), event.key);
+        }
+        if (event.error != null) {
+            appendQuoted(line.append(" reason="), String.valueOf(event.error.getMessage()));
+        }
+        return line;
+    }
+
+    private static void appendQuoted(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); ++i) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c == '\n' || c == '\r') {
+                line.append(' ');
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * Stop accepting events and wait for the writer to write already recorded ones.
+     */
+    @Override
+    public void close() {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    static final class Event {
+
+        final Operation operation;
+        final Outcome outcome;
+        final long durationNanos;
+        final long first;
+        final long second;
+        @Nullable
+        final BigDecimal amount;
+        @Nullable
+        final String key;
+        @Nullable
+        final Throwable error;
+
+        Event(Operation operation, Outcome outcome, long durationNanos, long first, long second,
+              @Nullable BigDecimal amount, @Nullable String key, @Nullable Throwable error) {
+            this.operation = operation;
+            this.outcome = outcome;
+            this.durationNanos = durationNanos;
+            this.first = first;
+            this.second = second;
+            this.amount = amount;
+            this.key = key;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,582 @@
+package task.service;
+
+import com.google.common.util.concurrent.Striped;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import task.exception.BusinessException;
+import task.exception.LimitExceededException;
+import task.exception.NoSuchAccountException;
+import task.jfr.JfrEvents;
+import task.jfr.LockWaitEvent;
+import task.model.Account;
+import task.model.AuditEvent;
+import task.model.HistoryCursor;
+import task.model.JournalEntry;
+import task.model.IdempotencyKey;
+import task.model.TransferResult;
+import task.model.TransferIntent;
+import task.service.ServiceEventLog.Operation;
+import task.service.ServiceEventLog.Outcome;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+
+/**
+ * Thread safe implementation of {@link AccountService} over {@link AccountShards}.
+ * <p>
+ * Transfer between accounts of the same shard is a single local transaction. Transfer between accounts of different
+ * shards is performed in two local transactions:
+ * <ol>
+ * <li>the source shard withdraws money and records {@link TransferIntent.State#PREPARED PREPARED} intent - once this
+ * transaction is committed the transfer is guaranteed to complete;</li>
+ * <li>the destination shard deposits money and records {@link TransferIntent.State#APPLIED APPLIED} copy of the intent
+ * unless it has been already recorded, then the source intent becomes {@link TransferIntent.State#COMMITTED COMMITTED}.
+ * </li>
+ * </ol>
+ * If the second step fails (e.g. the process is killed) the transfer is completed later by {@link #recover()} which is
+ * run on start and then periodically. Until then money is in flight: it is withdrawn but not yet deposited.
+ * <p>
+ * Accounts are guarded by the same in-process locks as in {@link AccountServiceImpl}, so the service must be the only
+ * writer to the shards.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@ThreadSafe
+public class ShardedAccountService implements AccountService, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedAccountService.class);
+
+    private static final int RECOVERY_BATCH_SIZE = 100;
+    private static final int KEY_LOCK_STRIPES = 1024;
+
+    private final AccountShards shards;
+    private final OrderedLocksProvider orderedLocksProvider;
+    private final ScheduledExecutorService recoveryScheduler;
+    private final Striped<Lock> keyLocks = Striped.lock(KEY_LOCK_STRIPES);
+    private final ServiceEventLog eventLog;
+    private final AuditPipeline audit;
+
+    /**
+     * @param shards                  shards
+     * @param orderedLocksProvider    locks provider
+     * @param recoveryIntervalSeconds interval of periodic recovery, 0 - recover only once on start
+     */
+    public ShardedAccountService(AccountShards shards, OrderedLocksProvider orderedLocksProvider,
+                                 long recoveryIntervalSeconds) {
+        this(shards, orderedLocksProvider, recoveryIntervalSeconds, ServiceEventLog.failuresOnly());
+    }
+
+    /**
+     * @param shards                  shards
+     * @param orderedLocksProvider    locks provider
+     * @param recoveryIntervalSeconds interval of periodic recovery, 0 - recover only once on start
+     * @param eventLog                log of operations, it is not closed by the service
+     */
+    public ShardedAccountService(AccountShards shards, OrderedLocksProvider orderedLocksProvider,
+                                 long recoveryIntervalSeconds, ServiceEventLog eventLog) {
+        this(shards, orderedLocksProvider, recoveryIntervalSeconds, eventLog, AuditPipeline.disabled());
+    }
+
+    /**
+     * @param shards                  shards
+     * @param orderedLocksProvider    locks provider
+     * @param recoveryIntervalSeconds interval of periodic recovery, 0 - recover only once on start
+     * @param eventLog                log of operations, it is not closed by the service
+     * @param audit                   audit of creations and transfers, it is not closed by the service
+     */
+    public ShardedAccountService(AccountShards shards, OrderedLocksProvider orderedLocksProvider,
+                                 long recoveryIntervalSeconds, ServiceEventLog eventLog, AuditPipeline audit) {
+        this.shards = shards;
+        this.orderedLocksProvider = orderedLocksProvider;
+        this.eventLog = eventLog;
+        this.audit = audit;
+
+        // complete transfers interrupted by the previous shutdown
+        recover();
+
+        if (recoveryIntervalSeconds > 0) {
+            recoveryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "transfer-recovery");
+                thread.setDaemon(true);
+                return thread;
+            });
+            recoveryScheduler.scheduleWithFixedDelay(this::recover,
+                    recoveryIntervalSeconds, recoveryIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            recoveryScheduler = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Account create(@Nullable BigDecimal amount) {
+        final long start = System.nanoTime();
+        try {
+            final AccountShard shard = shards.nextShard();
+            final Account account = new Account().setAmount(Optional.ofNullable(amount).orElse(BigDecimal.ZERO));
+            account.setId(shards.toAccountId(shard, shard.getAccountDao().nextId()));
+            shard.getAccountManager().createWithId(account);
+            audit.publish(AuditEvent.Type.CREATE, account.getId(), 0, account.getAmount(), null);
+            eventLog.record(Operation.CREATE, Outcome.OK, start, account.getId(), 0, account.getAmount(), null, null);
+            return account;
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.CREATE, Outcome.FAILED, start, 0, 0, amount, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Account getAccount(long accountId) {
+        final long start = System.nanoTime();
+        try {
+            final Account account = selectAccount(accountId);
+            eventLog.record(Operation.GET, Outcome.OK, start, accountId, 0, account.getAmount(), null, null);
+            return account;
+        } catch (BusinessException e) {
+            eventLog.record(Operation.GET, Outcome.REJECTED, start, accountId, 0, null, null, e);
+            throw e;
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.GET, Outcome.FAILED, start, accountId, 0, null, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every shard returns its own page and the pages are merged, so the cost is {@code limit} rows per shard.
+     */
+    @Override
+    public List<Account> getAccounts(long afterAccountId, int limit) {
+        final long start = System.nanoTime();
+        try {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("limit is not positive: " + limit);
+            }
+            final List<Account> accounts = new ArrayList<>();
+            for (AccountShard shard : shards.getShards()) {
+                accounts.addAll(shard.getAccountDao().selectPage(afterAccountId, limit));
+            }
+            accounts.sort(Comparator.comparingLong(Account::getId));
+            final List<Account> page = accounts.size() > limit ? accounts.subList(0, limit) : accounts;
+            eventLog.record(Operation.GET_PAGE, Outcome.OK, start, afterAccountId, limit, null, null, null);
+            return page;
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.GET_PAGE, Outcome.FAILED, start, afterAccountId, limit, null, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<JournalEntry> getHistory(long accountId, long fromTime, long toTime, @Nullable HistoryCursor after,
+                                         int limit) {
+        final long start = System.nanoTime();
+        try {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("limit is not positive: " + limit);
+            }
+            final List<JournalEntry> entries = shards.shardOf(accountId).getAccountManager()
+                    .getHistory(accountId, fromTime, toTime, after, limit);
+            eventLog.record(Operation.GET_HISTORY, Outcome.OK, start, accountId, limit, null, null, null);
+            return entries;
+        } catch (BusinessException e) {
+            eventLog.record(Operation.GET_HISTORY, Outcome.REJECTED, start, accountId, limit, null, null, e);
+            throw e;
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.GET_HISTORY, Outcome.FAILED, start, accountId, limit, null, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BigDecimal getBalanceAt(long accountId, long time) {
+        final long start = System.nanoTime();
+        try {
+            final BigDecimal balance = shards.shardOf(accountId).getAccountManager().getBalanceAt(accountId, time);
+            eventLog.record(Operation.GET_BALANCE_AT, Outcome.OK, start, accountId, time, balance, null, null);
+            return balance;
+        } catch (BusinessException e) {
+            eventLog.record(Operation.GET_BALANCE_AT, Outcome.REJECTED, start, accountId, time, null, null, e);
+            throw e;
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.GET_BALANCE_AT, Outcome.FAILED, start, accountId, time, null, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Shards are exported one after another, so accounts are ordered by id within a shard only.
+     */
+    @Override
+    public long exportAccounts(Consumer<? super Account> action) {
+        final long start = System.nanoTime();
+        try {
+            long count = 0;
+            for (AccountShard shard : shards.getShards()) {
+                final Long shardCount = shard.getTransactions().execute(status ->
+                        shard.getAccountManager().forEachAccount(action));
+                count += shardCount;
+            }
+            eventLog.record(Operation.EXPORT, Outcome.OK, start, count, 0, null, null, null);
+            return count;
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.EXPORT, Outcome.FAILED, start, 0, 0, null, null, e);
+            throw e;
+        }
+    }
+
+    private Account selectAccount(long accountId) {
+        return Optional.ofNullable(shards.shardOf(accountId).getAccountDao().select(accountId))
+                .orElseThrow(() -> new NoSuchAccountException(accountId));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void transfer(long fromAccountId, long toAccountId, BigDecimal amount) {
+        tryTransfer(fromAccountId, toAccountId, amount).throwIfRejected();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TransferResult tryTransfer(long fromAccountId, long toAccountId, BigDecimal amount) {
+        final long start = System.nanoTime();
+        try {
+            transfer(fromAccountId, toAccountId, amount, (IdempotencyKey) null);
+            eventLog.record(Operation.TRANSFER, Outcome.OK, start, fromAccountId, toAccountId, amount, null, null);
+            return TransferResult.transferred();
+        } catch (LimitExceededException e) {
+            eventLog.record(Operation.TRANSFER, Outcome.REJECTED, start, fromAccountId, toAccountId, amount, null, e);
+            return TransferResult.rejected(e);
+        } catch (NoSuchAccountException e) {
+            eventLog.record(Operation.TRANSFER, Outcome.REJECTED, start, fromAccountId, toAccountId, amount, null, e);
+            return TransferResult.rejected(e);
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.TRANSFER, Outcome.FAILED, start, fromAccountId, toAccountId, amount, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The key is stored in the shard chosen by the hash of the key, so it is unique across the shards whatever the
+     * accounts of the transfer are. If it is not the shard of the source account, the key is claimed as
+     * {@link IdempotencyKey.State#PENDING PENDING} before the transfer and gets its outcome after it, while the
+     * transaction of the transfer records a copy of the key in the source shard. A key left pending by a crash is
+     * resolved by that copy when the key is used again. Requests with the same key are serialized by in-process
+     * locks, so a pending key is never seen while its transfer is in progress.
+     */
+    @Override
+    public boolean transfer(long fromAccountId, long toAccountId, BigDecimal amount, String idempotencyKey) {
+        final long start = System.nanoTime();
+        try {
+            final boolean transferred =
+                    transferOnce(IdempotencyKeys.newKey(idempotencyKey, fromAccountId, toAccountId, amount));
+            eventLog.record(Operation.TRANSFER, transferred ? Outcome.OK : Outcome.REPLAYED, start,
+                    fromAccountId, toAccountId, amount, idempotencyKey, null);
+            return transferred;
+        } catch (BusinessException e) {
+            eventLog.record(Operation.TRANSFER, Outcome.REJECTED, start, fromAccountId, toAccountId, amount,
+                    idempotencyKey, e);
+            throw e;
+        } catch (RuntimeException e) {
+            eventLog.record(Operation.TRANSFER, Outcome.FAILED, start, fromAccountId, toAccountId, amount,
+                    idempotencyKey, e);
+            throw e;
+        }
+    }
+
+    private boolean transferOnce(IdempotencyKey key) {
+        final AccountShard keyShard = shards.shardOfKey(key.getId());
+        final Lock keyLock = keyLocks.get(key.getId());
+        keyLock.lock();
+        try {
+            final IdempotencyKey recorded = keyShard.getAccountManager().findIdempotencyKey(key.getId());
+            if (IdempotencyKeys.isReplay(resolve(keyShard, recorded), key)) {
+                return false;
+            }
+            final boolean claimed = keyShard != shards.shardOf(key.getFromAccountId());
+            if (claimed) {
+                keyShard.getAccountManager().recordIdempotencyKey(pending(key));
+            }
+            try {
+                transfer(key.getFromAccountId(), key.getToAccountId(), key.getAmount(), key);
+            } catch (LimitExceededException | NoSuchAccountException e) {
+                key.setRejection(e);
+                if (claimed) {
+                    keyShard.getAccountManager().updateIdempotencyKey(key);
+                } else {
+                    keyShard.getAccountManager().recordIdempotencyKey(key);
+                }
+                throw e;
+            } catch (RuntimeException e) {
+                // the outcome is unknown, e.g. the commit has failed: the copy of the key tells whether it is committed
+                if (claimed && resolve(keyShard, pending(key)) != null) {
+                    return true;
+                }
+                throw e;
+            }
+            if (claimed) {
+                try {
+                    keyShard.getAccountManager().updateIdempotencyKey(key);
+                } catch (RuntimeException e) {
+                    log.error("Failed to record outcome of transfer, it will be resolved by the next request with " +
+                            "the key [idempotencyKey: {}, error message: {}]", key.getId(), e.getMessage());
+                }
+            }
+            return true;
+        } finally {
+            keyLock.unlock();
+        }
+    }
+
+    /**
+     * Resolve the outcome of a pending key by the copy recorded by the transaction of the transfer in the source shard.
+     * The lock of the key must be held.
+     *
+     * @param keyShard shard of the key
+     * @param recorded key recorded in the shard of the key
+     * @return the key with the resolved outcome, {@code null} if the key is not recorded or the transfer has not been
+     * committed, then the pending key is deleted
+     */
+    @Nullable
+    private IdempotencyKey resolve(AccountShard keyShard, @Nullable IdempotencyKey recorded) {
+        if (recorded == null || recorded.getState() != IdempotencyKey.State.PENDING) {
+            return recorded;
+        }
+        final IdempotencyKey committed = shards.shardOf(recorded.getFromAccountId()).getAccountManager()
+                .findIdempotencyKey(recorded.getId());
+        if (committed == null) {
+            keyShard.getAccountManager().forgetIdempotencyKey(recorded.getId());
+            return null;
+        }
+        keyShard.getAccountManager().updateIdempotencyKey(committed);
+        return committed;
+    }
+
+    private static IdempotencyKey pending(IdempotencyKey key) {
+        return new IdempotencyKey()
+                .setId(key.getId())
+                .setFromAccountId(key.getFromAccountId())
+                .setToAccountId(key.getToAccountId())
+                .setAmount(key.getAmount())
+                .setCreatedAt(key.getCreatedAt())
+                .setState(IdempotencyKey.State.PENDING);
+    }
+
+    private void transfer(long fromAccountId, long toAccountId, BigDecimal amount,
+                          @Nullable IdempotencyKey idempotencyKey) {
+        if (fromAccountId == toAccountId) {
+            throw new IllegalArgumentException("fromAccountId == toAccountId: " + fromAccountId);
+        }
+        if (Objects.requireNonNull(amount, "amount is null").compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("amount is not positive: " + amount);
+        }
+        final Lock firstLock = orderedLocksProvider.getFirstLock(fromAccountId, toAccountId);
+        final Lock secondLock = orderedLocksProvider.getSecondLock(fromAccountId, toAccountId);
+        try {
+            lock(firstLock, secondLock, fromAccountId, toAccountId);
+            try {
+                transferInternal(fromAccountId, toAccountId, amount, idempotencyKey);
+            } finally {
+                unlock(firstLock, secondLock);
+            }
+        } catch (LimitExceededException | NoSuchAccountException e) {
+            audit.publish(AuditEvent.Type.REJECT, fromAccountId, toAccountId, amount, e.getMessage());
+            throw e;
+        }
+        // the account locks are released by now, so auditing never prolongs them
+        audit.publish(AuditEvent.Type.TRANSFER, fromAccountId, toAccountId, amount, null);
+    }
+
+    @GuardedBy("orderedLocksProvider")
+    private void transferInternal(long fromAccountId, long toAccountId, BigDecimal amount,
+                                  @Nullable IdempotencyKey idempotencyKey) {
+        final Account fromAccount = selectAccount(fromAccountId);
+        final Account toAccount = selectAccount(toAccountId);
+
+        // this pre-check allows us to avoid extra database transaction: begin -> rollback in case of exceeded limit
+        if (!fromAccount.canWithdraw(amount)) {
+            throw new LimitExceededException(fromAccountId, amount, fromAccount.getAmount());
+        }
+
+        final AccountShard fromShard = shards.shardOf(fromAccountId);
+        final AccountShard toShard = shards.shardOf(toAccountId);
+        if (fromShard == toShard) {
+            fromShard.getTransactions().executeWithoutResult(status -> {
+                if (idempotencyKey != null) {
+                    fromShard.getAccountManager().recordIdempotencyKey(idempotencyKey);
+                }
+                fromShard.getAccountManager().transfer(fromAccount, toAccount, amount);
+            });
+            return;
+        }
+
+        final TransferIntent intent = new TransferIntent()
+                .setId(UUID.randomUUID().toString())
+                .setFromAccountId(fromAccountId)
+                .setToAccountId(toAccountId)
+                .setAmount(amount)
+                .setState(TransferIntent.State.PREPARED);
+        fromShard.getTransactions().executeWithoutResult(status -> {
+            // once prepared the transfer is guaranteed to complete, so the key is recorded with the withdrawal
+            if (idempotencyKey != null) {
+                fromShard.getAccountManager().recordIdempotencyKey(idempotencyKey);
+            }
+            fromShard.getAccountManager().withdraw(fromAccount, amount);
+            fromShard.getTransferIntentDao().insert(intent);
+        });
+
+        try {
+            complete(fromShard, intent);
+        } catch (RuntimeException e) {
+            // money is already withdrawn, so the transfer is successful from the caller's point of view
+            log.error("Failed to complete transfer, it will be completed by recovery [intent: {}, error message: {}]",
+                    intent, e.getMessage());
+        }
+    }
+
+    @GuardedBy("orderedLocksProvider")
+    private void complete(AccountShard fromShard, TransferIntent intent) {
+        final AccountShard toShard = shards.shardOf(intent.getToAccountId());
+        toShard.getTransactions().executeWithoutResult(status -> {
+            // the marker makes the deposit idempotent: it may have been applied before the crash or failed commit
+            if (toShard.getTransferIntentDao().select(intent.getId()) != null) {
+                return;
+            }
+            final Account toAccount = Optional.ofNullable(toShard.getAccountDao().select(intent.getToAccountId()))
+                    .orElseThrow(() -> new NoSuchAccountException(intent.getToAccountId()));
+            toShard.getAccountManager().deposit(toAccount, intent.getAmount());
+            toShard.getTransferIntentDao().insert(new TransferIntent()
+                    .setId(intent.getId())
+                    .setFromAccountId(intent.getFromAccountId())
+                    .setToAccountId(intent.getToAccountId())
+                    .setAmount(intent.getAmount())
+                    .setState(TransferIntent.State.APPLIED));
+        });
+        fromShard.getTransactions().executeWithoutResult(status ->
+                fromShard.getTransferIntentDao().updateState(intent.getId(), TransferIntent.State.COMMITTED));
+    }
+
+    /**
+     * Complete all cross-shard transfers which have been prepared but not committed.
+     *
+     * @return number of completed transfers
+     */
+    public int recover() {
+        int recovered = 0;
+        for (AccountShard shard : shards.getShards()) {
+            try {
+                recovered += recover(shard);
+            } catch (RuntimeException e) {
+                log.error("Failed to recover transfers [shard: {}, error message: {}]", shard.getIndex(),
+                        e.getMessage());
+            }
+        }
+        if (recovered > 0) {
+            log.info("Transfers have been recovered [count: {}]", recovered);
+        }
+        return recovered;
+    }
+
+    private int recover(AccountShard shard) {
+        int recovered = 0;
+        String afterId = "";
+        List<TransferIntent> intents;
+        do {
+            intents = shard.getTransferIntentDao()
+                    .selectPageByState(TransferIntent.State.PREPARED, afterId, RECOVERY_BATCH_SIZE);
+            for (TransferIntent intent : intents) {
+                try {
+                    if (recover(shard, intent)) {
+                        ++recovered;
+                    }
+                } catch (RuntimeException e) {
+                    // the intent is paged past, so it never holds up the other intents of the shard
+                    log.error("Failed to recover transfer [shard: {}, intent: {}, error message: {}]",
+                            shard.getIndex(), intent, e.getMessage());
+                }
+                afterId = intent.getId();
+            }
+        } while (intents.size() == RECOVERY_BATCH_SIZE);
+        return recovered;
+    }
+
+    private boolean recover(AccountShard shard, TransferIntent intent) {
+        final Lock firstLock = orderedLocksProvider.getFirstLock(intent.getFromAccountId(), intent.getToAccountId());
+        final Lock secondLock = orderedLocksProvider.getSecondLock(intent.getFromAccountId(), intent.getToAccountId());
+        lock(firstLock, secondLock, intent.getFromAccountId(), intent.getToAccountId());
+        try {
+            // the transfer might have been completed by its own thread while we were waiting for the locks
+            final TransferIntent actual = shard.getTransferIntentDao().select(intent.getId());
+            if (actual == null || actual.getState() != TransferIntent.State.PREPARED) {
+                return false;
+            }
+            complete(shard, actual);
+            return true;
+        } finally {
+            unlock(firstLock, secondLock);
+        }
+    }
+
+    private static void lock(Lock firstLock, Lock secondLock, long fromAccountId, long toAccountId) {
+        final LockWaitEvent event = JfrEvents.beginLockWait();
+        // locks are ordered to avoid deadlocks
+        firstLock.lock();
+        try {
+            secondLock.lock();
+            JfrEvents.endLockWait(event, fromAccountId, toAccountId);
+        } catch (RuntimeException e) {
+            firstLock.unlock();
+            throw e;
+        }
+    }
+
+    private static void unlock(Lock firstLock, Lock secondLock) {
+        try {
+            secondLock.unlock();
+        } finally {
+            firstLock.unlock();
+        }
+    }
+
+    /**
+     * Stop periodic recovery. Prepared transfers are completed on the next start.
+     */
+    @Override
+    public void close() {
+        if (recoveryScheduler != null) {
+            recoveryScheduler.shutdownNow();
+        }
+    }
+}
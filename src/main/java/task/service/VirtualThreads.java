@@ -0,0 +1,72 @@
+package task.service;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads of JDK 21+ while the code base stays compatible with Java 8: the API is looked up by
+ * reflection and {@code null} is returned on JDKs without virtual threads, so callers can fall back to platform ones.
+ * <p>
+ * A virtual thread waiting on {@link java.util.concurrent.locks.Lock} or blocking I/O releases its carrier, while
+ * waiting inside {@code synchronized} pins it (before JDK 24). That is why account locks must stay
+ * {@code java.util.concurrent} locks.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Check whether the running JDK supports virtual threads.
+     *
+     * @return {@code true} if virtual threads are supported
+     */
+    public static boolean isSupported() {
+        return newThreadFactory("probe") != null;
+    }
+
+    /**
+     * Create factory of virtual threads named {@code <namePrefix>-<N>}.
+     *
+     * @param namePrefix thread name prefix
+     * @return thread factory or {@code null} if virtual threads are not supported
+     */
+    @Nullable
+    public static ThreadFactory newThreadFactory(String namePrefix) {
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Object namedBuilder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, namePrefix + "-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(namedBuilder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // no such API or it is a preview feature which is not enabled
+            return null;
+        }
+    }
+
+    /**
+     * Create executor which starts new virtual thread for each task. The number of concurrently running tasks is not
+     * bounded by the executor, so it must be bounded by the caller or by the resources the tasks wait for.
+     *
+     * @param namePrefix thread name prefix
+     * @return executor or {@code null} if virtual threads are not supported
+     */
+    @Nullable
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        final ThreadFactory threadFactory = newThreadFactory(namePrefix);
+        if (threadFactory == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
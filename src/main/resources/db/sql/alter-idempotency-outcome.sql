@@ -0,0 +1,12 @@
+SET DATABASE SQL SYNTAX ORA TRUE
+/
+
+-- keys recorded before outcomes were kept belong to completed transfers
+ALTER TABLE IDEMPOTENCY_KEY ADD COLUMN STATE VARCHAR(16) DEFAULT 'TRANSFERRED' NOT NULL
+/
+
+ALTER TABLE IDEMPOTENCY_KEY ADD COLUMN REJECTED_ACCOUNT_ID NUMBER(19)
+/
+
+ALTER TABLE IDEMPOTENCY_KEY ADD COLUMN BALANCE NUMBER(38, 8)
+/
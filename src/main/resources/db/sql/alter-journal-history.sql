@@ -0,0 +1,27 @@
+SET DATABASE SQL SYNTAX ORA TRUE
+/
+
+-- history pages and balance as of time are index range scans, balance recomputation walks it in account id order
+DROP INDEX JOURNAL_ENTRY_ACCOUNT_ID_IDX
+/
+
+CREATE INDEX JOURNAL_ENTRY_ACCOUNT_ID_IDX ON JOURNAL_ENTRY (ACCOUNT_ID, CREATED_AT, ID)
+/
+
+-- counterparties of older transfers are unknown
+ALTER TABLE JOURNAL_ENTRY ADD COLUMN COUNTERPARTY_ID NUMBER(19) BEFORE AMOUNT
+/
+
+ALTER TABLE JOURNAL_ENTRY ADD COLUMN BALANCE NUMBER(38, 8) BEFORE CREATED_AT
+/
+
+-- balance after every older entry is the running sum of the entries of its account
+UPDATE JOURNAL_ENTRY E SET BALANCE = (
+    SELECT SUM(P.AMOUNT) FROM JOURNAL_ENTRY P
+    WHERE P.ACCOUNT_ID = E.ACCOUNT_ID
+      AND (P.CREATED_AT < E.CREATED_AT OR (P.CREATED_AT = E.CREATED_AT AND P.ID <= E.ID))
+)
+/
+
+ALTER TABLE JOURNAL_ENTRY ALTER COLUMN BALANCE SET NOT NULL
+/
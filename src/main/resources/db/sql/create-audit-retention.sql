@@ -0,0 +1,2 @@
+CREATE INDEX AUDIT_EVENT_CREATED_AT_IDX ON AUDIT_EVENT (CREATED_AT)
+/
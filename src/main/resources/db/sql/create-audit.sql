@@ -0,0 +1,14 @@
+SET DATABASE SQL SYNTAX ORA TRUE
+/
+
+CREATE TABLE AUDIT_EVENT (
+    ID BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    TYPE VARCHAR(16) NOT NULL,
+    FROM_ACCOUNT_ID NUMBER(19) NOT NULL,
+    TO_ACCOUNT_ID NUMBER(19) NOT NULL,
+    AMOUNT NUMBER(38, 8),
+    REASON VARCHAR(256),
+    CREATED_AT NUMBER(19) NOT NULL,
+    CONSTRAINT AUDIT_EVENT_PK PRIMARY KEY (ID)
+)
+/
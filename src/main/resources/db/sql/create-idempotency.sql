@@ -0,0 +1,15 @@
+SET DATABASE SQL SYNTAX ORA TRUE
+/
+
+CREATE TABLE IDEMPOTENCY_KEY (
+    ID VARCHAR(100) NOT NULL,
+    FROM_ACCOUNT_ID NUMBER(19) NOT NULL,
+    TO_ACCOUNT_ID NUMBER(19) NOT NULL,
+    AMOUNT NUMBER(38, 8) NOT NULL,
+    CREATED_AT NUMBER(19) NOT NULL,
+    CONSTRAINT IDEMPOTENCY_KEY_PK PRIMARY KEY (ID)
+)
+/
+
+CREATE INDEX IDEMPOTENCY_KEY_CREATED_AT_IDX ON IDEMPOTENCY_KEY (CREATED_AT)
+/
@@ -0,0 +1,15 @@
+SET DATABASE SQL SYNTAX ORA TRUE
+/
+
+CREATE TABLE TRANSFER_INTENT (
+    ID VARCHAR(36) NOT NULL,
+    FROM_ACCOUNT_ID NUMBER(19) NOT NULL,
+    TO_ACCOUNT_ID NUMBER(19) NOT NULL,
+    AMOUNT NUMBER(38, 8) NOT NULL,
+    STATE VARCHAR(16) NOT NULL,
+    CONSTRAINT TRANSFER_INTENT_PK PRIMARY KEY (ID)
+)
+/
+
+CREATE INDEX TRANSFER_INTENT_STATE_IDX ON TRANSFER_INTENT (STATE)
+/
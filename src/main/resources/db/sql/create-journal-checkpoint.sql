@@ -0,0 +1,27 @@
+SET DATABASE SQL SYNTAX ORA TRUE
+/
+
+-- balance of an account is the checkpoint balance plus the entries following ENTRY_ID
+CREATE TABLE JOURNAL_CHECKPOINT (
+    ACCOUNT_ID NUMBER(19) NOT NULL,
+    ENTRY_ID BIGINT NOT NULL,
+    BALANCE NUMBER(38, 8) NOT NULL,
+    CREATED_AT NUMBER(19) NOT NULL,
+    CONSTRAINT JOURNAL_CHECKPOINT_PK PRIMARY KEY (ACCOUNT_ID)
+)
+/
+
+-- entries covered by checkpoints are moved here once they are older than the retention period
+CREATE TABLE JOURNAL_ENTRY_ARCHIVE (
+    ID BIGINT NOT NULL,
+    ACCOUNT_ID NUMBER(19) NOT NULL,
+    COUNTERPARTY_ID NUMBER(19),
+    AMOUNT NUMBER(38, 8) NOT NULL,
+    BALANCE NUMBER(38, 8) NOT NULL,
+    CREATED_AT NUMBER(19) NOT NULL,
+    CONSTRAINT JOURNAL_ENTRY_ARCHIVE_PK PRIMARY KEY (ID)
+)
+/
+
+CREATE INDEX JOURNAL_ENTRY_ARCHIVE_ACCOUNT_ID_IDX ON JOURNAL_ENTRY_ARCHIVE (ACCOUNT_ID, CREATED_AT, ID)
+/
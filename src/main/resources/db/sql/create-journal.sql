@@ -0,0 +1,19 @@
+SET DATABASE SQL SYNTAX ORA TRUE
+/
+
+CREATE TABLE JOURNAL_ENTRY (
+    ID BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    ACCOUNT_ID NUMBER(19) NOT NULL,
+    AMOUNT NUMBER(38, 8) NOT NULL,
+    CREATED_AT NUMBER(19) NOT NULL,
+    CONSTRAINT JOURNAL_ENTRY_PK PRIMARY KEY (ID)
+)
+/
+
+-- covers balance recomputation: entries of an id range are summed without touching the table
+CREATE INDEX JOURNAL_ENTRY_ACCOUNT_ID_IDX ON JOURNAL_ENTRY (ACCOUNT_ID, AMOUNT)
+/
+
+-- accounts created before the journal get their current balances as opening entries
+INSERT INTO JOURNAL_ENTRY (ACCOUNT_ID, AMOUNT, CREATED_AT) SELECT ID, AMOUNT, 0 FROM ACCOUNT
+/
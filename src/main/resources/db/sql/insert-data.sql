@@ -3,3 +3,5 @@ SET DATABASE SQL SYNTAX ORA TRUE
 
 insert into account(id, amount) values (account_id_seq.nextval, 123.45)/
 insert into account(id, amount) values (account_id_seq.nextval, 678.90)/
+
+insert into journal_entry(account_id, amount, balance, created_at) select id, amount, amount, 0 from account/
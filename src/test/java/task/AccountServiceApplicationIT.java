@@ -3,6 +3,7 @@ package task;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.web.server.LocalManagementPort;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.web.server.LocalServerPort;
@@ -16,7 +17,12 @@ import org.springframework.test.context.junit4.SpringRunner;
 import task.api.CreateAccountRequest;
 import task.api.CreateAccountResponse;
 import task.api.GetAccountResponse;
+import task.api.GetAccountsResponse;
+import task.api.GetBalanceResponse;
+import task.api.GetTransfersResponse;
 import task.api.TransferRequest;
+import task.dao.AuditDao;
+import task.model.AuditEvent;
 
 import java.math.BigDecimal;
 import java.util.Collections;
@@ -27,14 +33,19 @@ import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
  * @author Anton Kotov (kotov-anton@yandex.ru)
  */
 @RunWith(SpringRunner.class)
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "account.metrics.requestUsage.samplingRate=1")
 public class AccountServiceApplicationIT {
 
     @LocalServerPort
     private int port;
+    @LocalManagementPort
+    private int managementPort;
 
     @Autowired
     private TestRestTemplate restTemplate;
+    @Autowired
+    private AuditDao auditDao;
 
     @Test
     public void test_getAccount_it_must_return_GetAccountResponse_when_account_exists() throws Exception {
@@ -199,4 +210,250 @@ public class AccountServiceApplicationIT {
         assertThat(from2.getAmount()).isEqualByComparingTo(new BigDecimal("0.5"));
         assertThat(to2.getAmount()).isEqualByComparingTo(new BigDecimal("100000100"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void test_transfer_it_must_transfer_once_when_request_is_retried_with_same_idempotency_key() throws Exception {
+        // Given
+        final CreateAccountResponse from = createResponseEntity(new BigDecimal("100.500"));
+        final CreateAccountResponse to = createResponseEntity(new BigDecimal("100000000"));
+        final String key = "retry-" + from.getAccountId();
+
+        // When
+        final ResponseEntity<String> first = idempotentTransferResponse(from.getAccountId(), to.getAccountId(),
+                new BigDecimal("100"), key);
+        final ResponseEntity<String> retry = idempotentTransferResponse(from.getAccountId(), to.getAccountId(),
+                new BigDecimal("100"), key);
+        final ResponseEntity<String> conflict = idempotentTransferResponse(from.getAccountId(), to.getAccountId(),
+                new BigDecimal("0.5"), key);
+
+        // Then
+        assertThat(first.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(first.getHeaders().containsKey("Idempotent-Replayed")).isFalse();
+        assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(retry.getHeaders().getFirst("Idempotent-Replayed")).isEqualTo("true");
+        assertThat(conflict.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+
+        assertThat(getAccount(from.getAccountId()).getAmount()).isEqualByComparingTo(new BigDecimal("0.5"));
+        assertThat(getAccount(to.getAccountId()).getAmount()).isEqualByComparingTo(new BigDecimal("100000100"));
+    }
+
+    private ResponseEntity<String> idempotentTransferResponse(long fromAccountId, long toAccountId, BigDecimal amount,
+                                                              String idempotencyKey) {
+        final String url = "http://localhost:" + port + "/accounts/transfer";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+        headers.set("Idempotency-Key", idempotencyKey);
+        HttpEntity<?> entity = new HttpEntity<>(new TransferRequest(fromAccountId, toAccountId, amount), headers);
+
+        return restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
+    }
+
+    @Test
+    public void test_transfer_async_it_must_transfer_when_request_is_correct() throws Exception {
+        // Given
+        final CreateAccountResponse from = createResponseEntity(new BigDecimal("100.500"));
+        final CreateAccountResponse to = createResponseEntity(new BigDecimal("100000000"));
+        final String url = "http://localhost:" + port + "/accounts/transfer/async";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+        HttpEntity<?> entity = new HttpEntity<>(new TransferRequest(from.getAccountId(), to.getAccountId(), new BigDecimal("100")), headers);
+
+        // When
+        final ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
+
+        // Then
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).isEqualTo("OK");
+        assertThat(getAccount(from.getAccountId()).getAmount()).isEqualByComparingTo(new BigDecimal("0.5"));
+        assertThat(getAccount(to.getAccountId()).getAmount()).isEqualByComparingTo(new BigDecimal("100000100"));
+    }
+
+    @Test
+    public void test_transfer_stream_it_must_transfer_every_item() throws Exception {
+        // Given
+        final CreateAccountResponse from = createResponseEntity(new BigDecimal("100"));
+        final CreateAccountResponse to = createResponseEntity(new BigDecimal("0"));
+        final String url = "http://localhost:" + port + "/accounts/transfer/stream";
+        final StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+            body.append("{\"from\":").append(from.getAccountId())
+                    .append(",\"to\":").append(to.getAccountId())
+                    .append(",\"amount\":0.1}\n");
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.valueOf("application/x-ndjson"));
+        HttpEntity<?> entity = new HttpEntity<>(body.toString(), headers);
+
+        // When
+        final ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
+
+        // Then
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        final String[] results = response.getBody().split("\n");
+        assertThat(results.length).isEqualTo(1000);
+        assertThat(results[999]).isEqualTo("{\"index\":999,\"status\":\"OK\"}");
+        assertThat(getAccount(from.getAccountId()).getAmount()).isEqualByComparingTo(new BigDecimal("0"));
+        assertThat(getAccount(to.getAccountId()).getAmount()).isEqualByComparingTo(new BigDecimal("100"));
+    }
+
+    @Test
+    public void test_get_accounts_and_export_it_must_return_all_accounts_in_id_order() throws Exception {
+        // Given
+        final CreateAccountResponse created = createResponseEntity(new BigDecimal("42.5"));
+
+        // When
+        final ResponseEntity<GetAccountsResponse> firstPage = restTemplate.getForEntity(
+                "http://localhost:" + port + "/accounts?limit=1", GetAccountsResponse.class);
+        final ResponseEntity<GetAccountsResponse> lastPage = restTemplate.getForEntity(
+                "http://localhost:" + port + "/accounts?after=" + (created.getAccountId() - 1) + "&limit=1000",
+                GetAccountsResponse.class);
+        final ResponseEntity<String> invalidPage = restTemplate.getForEntity(
+                "http://localhost:" + port + "/accounts?limit=0", String.class);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(Collections.singletonList(MediaType.valueOf("text/csv")));
+        final ResponseEntity<String> csv = restTemplate.exchange("http://localhost:" + port + "/accounts/export",
+                HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+        // Then
+        assertThat(firstPage.getBody().getAccounts().size()).isEqualTo(1);
+        assertThat(firstPage.getBody().getAccounts().get(0).getAccountId()).isEqualTo(1);
+        assertThat(firstPage.getBody().getAccounts().get(0).getAmount()).isEqualByComparingTo(new BigDecimal("123.45"));
+        assertThat(firstPage.getBody().getNext()).isEqualTo(1L);
+        assertThat(lastPage.getBody().getAccounts().get(0).getAccountId()).isEqualTo(created.getAccountId());
+        assertThat(lastPage.getBody().getAccounts().get(0).getAmount()).isEqualByComparingTo(new BigDecimal("42.5"));
+        assertThat(lastPage.getBody().getNext()).isNull();
+        assertThat(invalidPage.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+
+        assertThat(csv.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(csv.getBody()).startsWith("account_id,amount\n1,").contains("\n" + created.getAccountId() + ",");
+    }
+
+    @Test
+    public void test_prometheus_it_must_expose_request_histograms_transfer_stages_and_request_usage() throws Exception {
+        // Given
+        final long from = createResponseEntity(new BigDecimal("10")).getAccountId();
+        final long to = createResponseEntity(new BigDecimal("0")).getAccountId();
+        assertThat(transferResponse(from, to, new BigDecimal("1")).getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        // When
+        final ResponseEntity<String> response = restTemplate.getForEntity(
+                "http://localhost:" + managementPort + "/prometheus", String.class);
+
+        // Then
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody())
+                .contains("http_request_seconds_bucket{")
+                .contains("le=\"0.001\"")
+                .contains("account_transfer_stage_seconds_bucket{")
+                .contains("stage=\"lock\"")
+                .contains("stage=\"transaction\"")
+                .contains("stage=\"update\"")
+                .contains("http_request_allocated_bytes_count{uri=\"/accounts/transfer\",}")
+                .contains("http_request_cpu_seconds_count{uri=\"/accounts/transfer\",}");
+    }
+
+    @Test
+    public void test_aggregates_it_must_be_consistent_with_full_scan_after_create_and_transfer() throws Exception {
+        // Given
+        final long from = createResponseEntity(new BigDecimal("10")).getAccountId();
+        final long to = createResponseEntity(new BigDecimal("0")).getAccountId();
+        assertThat(transferResponse(from, to, new BigDecimal("2.5")).getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        // When
+        final ResponseEntity<String> aggregates = restTemplate.getForEntity(
+                "http://localhost:" + managementPort + "/aggregates", String.class);
+        final ResponseEntity<String> reconciliation = restTemplate.postForEntity(
+                "http://localhost:" + managementPort + "/aggregates", null, String.class);
+        final ResponseEntity<String> repair = restTemplate.postForEntity(
+                "http://localhost:" + managementPort + "/aggregates/repair", null, String.class);
+
+        // Then
+        assertThat(aggregates.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(aggregates.getBody()).contains("\"count\":").contains("\"total\":").contains("\"buckets\":");
+        assertThat(reconciliation.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(reconciliation.getBody()).contains("\"consistent\":true").contains("\"repaired\":false");
+        assertThat(repair.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(repair.getBody()).contains("\"consistent\":true").contains("\"repaired\":false");
+    }
+
+    @Test
+    public void test_reconciliation_it_must_find_no_discrepancies_after_create_and_transfer() throws Exception {
+        // Given
+        final long from = createResponseEntity(new BigDecimal("10")).getAccountId();
+        final long to = createResponseEntity(new BigDecimal("0")).getAccountId();
+        assertThat(transferResponse(from, to, new BigDecimal("2.5")).getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        // When
+        final ResponseEntity<String> reconciliation = restTemplate.postForEntity(
+                "http://localhost:" + managementPort + "/reconciliation", null, String.class);
+        final ResponseEntity<String> lastReport = restTemplate.getForEntity(
+                "http://localhost:" + managementPort + "/reconciliation", String.class);
+
+        // Then
+        assertThat(reconciliation.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(reconciliation.getBody()).contains("\"consistent\":true").contains("\"confirmed\":0");
+        assertThat(lastReport.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(lastReport.getBody()).contains("\"checked\":");
+    }
+
+    @Test
+    public void test_audit_it_must_write_create_transfer_and_reject_events_asynchronously() throws Exception {
+        // Given
+        final long creates = auditDao.count(AuditEvent.Type.CREATE);
+        final long transfers = auditDao.count(AuditEvent.Type.TRANSFER);
+        final long rejects = auditDao.count(AuditEvent.Type.REJECT);
+        final long from = createResponseEntity(new BigDecimal("10")).getAccountId();
+        final long to = createResponseEntity(new BigDecimal("0")).getAccountId();
+
+        // When
+        assertThat(transferResponse(from, to, new BigDecimal("1")).getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(transferResponse(from, to, new BigDecimal("100")).getStatusCode()).isNotEqualTo(HttpStatus.OK);
+
+        // Then
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (auditDao.count(AuditEvent.Type.REJECT) == rejects && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // other tests may run requests concurrently, so only lower bounds are checked
+        assertThat(auditDao.count(AuditEvent.Type.CREATE)).isGreaterThanOrEqualTo(creates + 2);
+        assertThat(auditDao.count(AuditEvent.Type.TRANSFER)).isGreaterThanOrEqualTo(transfers + 1);
+        assertThat(auditDao.count(AuditEvent.Type.REJECT)).isGreaterThanOrEqualTo(rejects + 1);
+    }
+
+    @Test
+    public void test_transfers_it_must_return_history_page_by_page_and_balance_as_of_time() throws Exception {
+        // Given
+        final long from = createResponseEntity(new BigDecimal("10")).getAccountId();
+        final long to = createResponseEntity(new BigDecimal("0")).getAccountId();
+        assertThat(transferResponse(from, to, new BigDecimal("2.5")).getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(transferResponse(from, to, new BigDecimal("1")).getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        // When
+        final ResponseEntity<GetTransfersResponse> firstPage = restTemplate.getForEntity(
+                "http://localhost:" + port + "/accounts/" + from + "/transfers?limit=2", GetTransfersResponse.class);
+        final ResponseEntity<GetTransfersResponse> lastPage = restTemplate.getForEntity(
+                "http://localhost:" + port + "/accounts/" + from + "/transfers?limit=2&cursor="
+                        + firstPage.getBody().getNext(), GetTransfersResponse.class);
+        final ResponseEntity<GetBalanceResponse> balance = restTemplate.getForEntity(
+                "http://localhost:" + port + "/accounts/" + from + "/balance", GetBalanceResponse.class);
+        final ResponseEntity<GetBalanceResponse> balanceBeforeCreation = restTemplate.getForEntity(
+                "http://localhost:" + port + "/accounts/" + from + "/balance?at=0", GetBalanceResponse.class);
+
+        // Then
+        assertThat(firstPage.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(firstPage.getBody().getTransfers().size()).isEqualTo(2);
+        assertThat(firstPage.getBody().getTransfers().get(0).getCounterpartyId()).isNull();
+        assertThat(firstPage.getBody().getTransfers().get(1).getCounterpartyId()).isEqualTo(to);
+        assertThat(firstPage.getBody().getNext()).isNotNull();
+        assertThat(lastPage.getBody().getTransfers().size()).isEqualTo(1);
+        assertThat(lastPage.getBody().getTransfers().get(0).getAmount()).isEqualByComparingTo("-1");
+        assertThat(lastPage.getBody().getTransfers().get(0).getBalance()).isEqualByComparingTo("6.5");
+        assertThat(lastPage.getBody().getNext()).isNull();
+        assertThat(balance.getBody().getAmount()).isEqualByComparingTo("6.5");
+        assertThat(balanceBeforeCreation.getBody().getAmount()).isEqualByComparingTo("0");
+    }
+}
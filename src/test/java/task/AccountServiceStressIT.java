@@ -0,0 +1,259 @@
+package task;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import task.config.AccountManagerConfig;
+import task.config.AccountServiceConfig;
+import task.config.DataSourceConfig;
+import task.config.IdempotencyConfig;
+import task.config.ShardingConfig;
+import task.config.TieredStorageConfig;
+import task.model.TransferResult;
+import task.service.AccountService;
+import task.service.GuavaCacheOrderedLocksProvider;
+import task.service.LocksArrayOrderedLocksProvider;
+import task.service.OrderedLocksProvider;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongUnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Hammers every {@link OrderedLocksProvider} and {@link AccountService} implementation with random concurrent
+ * transfers over a small hot set of accounts. Workers are paused every {@code stress.checkIntervalMillis}, then the
+ * total balance must be conserved and no balance may be negative, so a lost update is caught close to the moment it
+ * happens rather than at the end of the run. Throughput of every implementation is logged.
+ * <p>
+ * The run is short by default, a longer one is just a matter of system properties, e.g.
+ * {@code mvn -P integration-test verify -Dit.test=AccountServiceStressIT -Dstress.durationSeconds=60}.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class AccountServiceStressIT {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountServiceStressIT.class);
+
+    private static final int DURATION_SECONDS = Integer.getInteger("stress.durationSeconds", 2);
+    private static final int THREADS = Integer.getInteger("stress.threads", 8);
+    private static final int ACCOUNTS = Integer.getInteger("stress.accounts", 8);
+    private static final long CHECK_INTERVAL_MILLIS = Long.getLong("stress.checkIntervalMillis", 100);
+    private static final long INITIAL_AMOUNT = 100;
+    private static final int MAX_TRANSFER_AMOUNT = 10;
+
+    @Test
+    public void test_locks_it_must_conserve_balance_when_provider_is_locks_array() throws Exception {
+        stressLocks("LocksArrayOrderedLocksProvider", new LocksArrayOrderedLocksProvider());
+    }
+
+    @Test
+    public void test_locks_it_must_conserve_balance_when_provider_is_guava_cache() throws Exception {
+        stressLocks("GuavaCacheOrderedLocksProvider", new GuavaCacheOrderedLocksProvider());
+    }
+
+    @Test
+    public void test_transfer_it_must_conserve_balance_when_locks_array_is_used() throws Exception {
+        stressService("LOCKING/JVM/LocksArray", properties());
+    }
+
+    @Test
+    public void test_transfer_it_must_conserve_balance_when_guava_cache_locks_are_used() throws Exception {
+        final Map<String, Object> properties = properties();
+        properties.put("account.service.useGuavaCacheOrderedLocksProvider", "true");
+        stressService("LOCKING/JVM/GuavaCache", properties);
+    }
+
+    @Test
+    public void test_transfer_it_must_conserve_balance_when_database_row_locks_are_used() throws Exception {
+        final Map<String, Object> properties = properties();
+        properties.put("account.service.lockingMode", "DATABASE");
+        stressService("LOCKING/DATABASE", properties);
+    }
+
+    @Test
+    public void test_transfer_it_must_conserve_balance_when_storage_is_tiered() throws Exception {
+        final Map<String, Object> properties = properties();
+        properties.put("account.storage.tiered.enabled", "true");
+        // a hot tier smaller than the hot set keeps promoting and demoting accounts under the load
+        properties.put("account.storage.tiered.hotTierSize", String.valueOf(Math.max(1, ACCOUNTS / 2)));
+        stressService("LOCKING/JVM/TIERED", properties);
+    }
+
+    @Test
+    public void test_transfer_it_must_conserve_balance_when_engine_is_partitioned() throws Exception {
+        final Map<String, Object> properties = properties();
+        properties.put("account.service.engine", "PARTITIONED");
+        properties.put("account.service.partitioned.partitions", "4");
+        stressService("PARTITIONED", properties);
+    }
+
+    @Test
+    public void test_transfer_it_must_conserve_balance_when_accounts_are_sharded() throws Exception {
+        final Map<String, Object> properties = properties();
+        properties.put("account.sharding.enabled", "true");
+        properties.put("account.sharding.shards", "3");
+        properties.put("account.sharding.recoveryIntervalSeconds", "0");
+        stressService("SHARDED", properties);
+    }
+
+    private static void stressLocks(String name, OrderedLocksProvider locksProvider) throws Exception {
+        // Given
+        final long[] balances = new long[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; ++i) {
+            balances[i] = INITIAL_AMOUNT;
+        }
+
+        // When, then
+        stress(name, (from, to, amount) -> {
+            final Lock firstLock = locksProvider.getFirstLock(from, to);
+            final Lock secondLock = locksProvider.getSecondLock(from, to);
+            firstLock.lock();
+            try {
+                secondLock.lock();
+                try {
+                    if (balances[from] < amount) {
+                        return false;
+                    }
+                    // deliberately non-atomic read-modify-write: only the locks protect it
+                    balances[from] -= amount;
+                    balances[to] += amount;
+                    return true;
+                } finally {
+                    secondLock.unlock();
+                }
+            } finally {
+                firstLock.unlock();
+            }
+        }, i -> balances[(int) i]);
+    }
+
+    private static void stressService(String name, Map<String, Object> properties) throws Exception {
+        try (AnnotationConfigApplicationContext context = startContext(properties)) {
+            // Given
+            final AccountService accountService = context.getBean(AccountService.class);
+            final long[] accountIds = new long[ACCOUNTS];
+            for (int i = 0; i < ACCOUNTS; ++i) {
+                accountIds[i] = accountService.create(BigDecimal.valueOf(INITIAL_AMOUNT)).getId();
+            }
+
+            // When, then
+            stress(name, (from, to, amount) -> {
+                final TransferResult result =
+                        accountService.tryTransfer(accountIds[from], accountIds[to], BigDecimal.valueOf(amount));
+                return result.isTransferred();
+            }, i -> accountService.getAccount(accountIds[(int) i]).getAmount().longValueExact());
+        }
+    }
+
+    private static void stress(String name, Transfer transfer, LongUnaryOperator balance) throws Exception {
+        // workers hold the read lock during a transfer, the checker takes the write lock to see a quiescent state
+        final ReadWriteLock gate = new ReentrantReadWriteLock();
+        final AtomicLong transferred = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DURATION_SECONDS);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; ++t) {
+                futures.add(executor.submit(() -> {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        final int from = random.nextInt(ACCOUNTS);
+                        final int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                        final int amount = 1 + random.nextInt(MAX_TRANSFER_AMOUNT);
+                        gate.readLock().lock();
+                        try {
+                            if (transfer.transfer(from, to, amount)) {
+                                transferred.incrementAndGet();
+                            } else {
+                                rejected.incrementAndGet();
+                            }
+                        } finally {
+                            gate.readLock().unlock();
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            int checks = 0;
+            while (System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(CHECK_INTERVAL_MILLIS);
+                gate.writeLock().lock();
+                try {
+                    assertConserved(name, balance);
+                    ++checks;
+                } finally {
+                    gate.writeLock().unlock();
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            assertConserved(name, balance);
+
+            final long total = transferred.get() + rejected.get();
+            log.info("{}: {} transfers/s ({} transferred, {} rejected, {} checks, {} threads, {} accounts)",
+                    name, total / DURATION_SECONDS, transferred.get(), rejected.get(), checks + 1, THREADS, ACCOUNTS);
+            assertThat(transferred.get()).as(name).isPositive();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertConserved(String name, LongUnaryOperator balance) {
+        long total = 0;
+        for (int i = 0; i < ACCOUNTS; ++i) {
+            final long amount = balance.applyAsLong(i);
+            assertThat(amount).as("%s: balance of account %s", name, i).isNotNegative();
+            total += amount;
+        }
+        assertThat(total).as("%s: total balance", name).isEqualTo(INITIAL_AMOUNT * ACCOUNTS);
+    }
+
+    private static Map<String, Object> properties() {
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("account.datasource.pool.enabled", "true");
+        properties.put("account.datasource.pool.maximumPoolSize", String.valueOf(THREADS));
+        properties.put("account.datasource.pool.minimumIdle", "1");
+        return properties;
+    }
+
+    private static AnnotationConfigApplicationContext startContext(Map<String, Object> properties) {
+        final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("stress", properties));
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.register(DataSourceConfig.class, AccountManagerConfig.class, AccountServiceConfig.class,
+                IdempotencyConfig.class, ShardingConfig.class, TieredStorageConfig.class);
+        context.refresh();
+        return context;
+    }
+
+    @FunctionalInterface
+    private interface Transfer {
+
+        /**
+         * @return {@code true} if the money has been transferred, {@code false} if the transfer has been rejected
+         */
+        boolean transfer(int from, int to, long amount);
+    }
+}
@@ -0,0 +1,95 @@
+package task;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+import task.api.TransferRequest;
+import task.exception.NoSuchAccountException;
+import task.model.TransferResult;
+import task.service.AccountService;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that {@code @Timed} of the asynchronous transfer endpoint measures the whole request up to the resumed
+ * response rather than only handing the transfer over to the executor, and that of the streaming transfer endpoint
+ * measures writing of the streamed results rather than only returning the {@code StreamingOutput}.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class AsyncTransferTimingIT {
+
+    private static final long TRANSFER_MILLIS = 300;
+
+    @MockBean
+    private AccountService accountService;
+    @Autowired
+    private TestRestTemplate restTemplate;
+    @Autowired
+    private MeterRegistry registry;
+
+    @Test
+    public void test_transferAsync_it_must_be_timed_until_transfer_is_completed() throws Exception {
+        // Given
+        when(accountService.tryTransfer(1, 2, BigDecimal.ONE)).thenAnswer(invocation -> {
+            Thread.sleep(TRANSFER_MILLIS);
+            return TransferResult.transferred();
+        });
+
+        // When
+        final ResponseEntity<String> response = restTemplate.postForEntity("/accounts/transfer/async",
+                new TransferRequest(1, 2, BigDecimal.ONE), String.class);
+
+        // Then
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        final Timer timer = registry.get("http.request").tag("uri", "/accounts/transfer/async").timer();
+        assertThat(timer.count()).isEqualTo(1);
+        assertThat(timer.totalTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(TRANSFER_MILLIS);
+    }
+
+    @Test
+    public void test_transferStream_it_must_be_timed_until_results_are_written() throws Exception {
+        // Given
+        when(accountService.tryTransfer(1, 2, BigDecimal.ONE)).thenAnswer(invocation -> {
+            Thread.sleep(TRANSFER_MILLIS);
+            return TransferResult.transferred();
+        });
+        when(accountService.tryTransfer(1, 3, BigDecimal.ONE))
+                .thenReturn(TransferResult.rejected(new NoSuchAccountException(3)));
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("application/x-ndjson"));
+        headers.setAccept(Collections.singletonList(MediaType.parseMediaType("application/x-ndjson")));
+        final String body = "{\"from\":1,\"to\":2,\"amount\":1}\n{\"from\":1,\"to\":3,\"amount\":1}\n";
+
+        // When
+        final ResponseEntity<String> response = restTemplate.postForEntity("/accounts/transfer/stream",
+                new HttpEntity<>(body, headers), String.class);
+
+        // Then
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        // the item is mapped by the registered exception mapper
+        assertThat(response.getBody()).isEqualTo("{\"index\":0,\"status\":\"OK\"}\n" +
+                "{\"index\":1,\"status\":\"NOT_FOUND\",\"message\":\"No such account: 3\"}\n");
+        final Timer timer = registry.get("http.request").tag("uri", "/accounts/transfer/stream").timer();
+        assertThat(timer.count()).isEqualTo(1);
+        assertThat(timer.totalTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(TRANSFER_MILLIS);
+    }
+}
@@ -0,0 +1,130 @@
+package task;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import task.config.AccountManagerConfig;
+import task.config.AccountServiceConfig;
+import task.config.DataSourceConfig;
+import task.exception.LimitExceededException;
+import task.model.Account;
+import task.service.AccountService;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two service instances (application contexts) share one file database and transfer money between the same accounts
+ * concurrently. With database row locks no update may be lost. Both contexts run in this JVM: the in-process file
+ * database is locked by the JVM which has opened it, so the test covers the database locks, not two processes.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class MultiInstanceLockingIT {
+
+    private static final int ACCOUNTS = 4;
+    private static final int THREADS_PER_INSTANCE = 4;
+    private static final int TRANSFERS_PER_THREAD = 250;
+    private static final BigDecimal INITIAL_AMOUNT = new BigDecimal("1000");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<AnnotationConfigApplicationContext> contexts = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        final String path = new File(folder.getRoot(), "accounts").getPath();
+        // instances are started one by one: the first one creates the schema
+        contexts.add(startInstance(path));
+        contexts.add(startInstance(path));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (AnnotationConfigApplicationContext context : contexts) {
+            context.close();
+        }
+    }
+
+    @Test
+    public void test_transfer_it_must_not_lose_updates_when_instances_share_database() throws Exception {
+        // Given
+        final AccountService firstInstance = contexts.get(0).getBean(AccountService.class);
+        final AccountService secondInstance = contexts.get(1).getBean(AccountService.class);
+        final long[] accountIds = new long[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; ++i) {
+            accountIds[i] = firstInstance.create(INITIAL_AMOUNT).getId();
+        }
+        final AtomicLongArray balanceChanges = new AtomicLongArray(ACCOUNTS);
+
+        // When
+        final ExecutorService executor = Executors.newFixedThreadPool(2 * THREADS_PER_INSTANCE);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 2 * THREADS_PER_INSTANCE; ++t) {
+                final AccountService accountService = t % 2 == 0 ? firstInstance : secondInstance;
+                futures.add(executor.submit(() -> {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < TRANSFERS_PER_THREAD; ++i) {
+                        final int from = random.nextInt(ACCOUNTS);
+                        final int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                        try {
+                            accountService.transfer(accountIds[from], accountIds[to], BigDecimal.ONE);
+                            balanceChanges.decrementAndGet(from);
+                            balanceChanges.incrementAndGet(to);
+                        } catch (LimitExceededException e) {
+                            // possible but harmless
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Then
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < ACCOUNTS; ++i) {
+            final Account account = secondInstance.getAccount(accountIds[i]);
+            assertThat(account.getAmount())
+                    .isEqualByComparingTo(INITIAL_AMOUNT.add(BigDecimal.valueOf(balanceChanges.get(i))));
+            total = total.add(account.getAmount());
+        }
+        assertThat(total).isEqualByComparingTo(INITIAL_AMOUNT.multiply(BigDecimal.valueOf(ACCOUNTS)));
+    }
+
+    private static AnnotationConfigApplicationContext startInstance(String path) {
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("account.datasource.mode", "FILE");
+        properties.put("account.datasource.file.path", path);
+        properties.put("account.datasource.file.checkpointIntervalSeconds", "0");
+        properties.put("account.datasource.pool.enabled", "true");
+        properties.put("account.datasource.pool.maximumPoolSize", String.valueOf(THREADS_PER_INSTANCE));
+        properties.put("account.service.lockingMode", "DATABASE");
+
+        final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("instance", properties));
+        context.register(DataSourceConfig.class, AccountManagerConfig.class, AccountServiceConfig.class);
+        context.refresh();
+        return context;
+    }
+}
@@ -0,0 +1,48 @@
+package task.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.Map;
+
+/**
+ * Helpers shared by JMH benchmarks. Benchmarks are run with {@code mvn -P benchmark verify}, a subset can be selected
+ * with {@code -Djmh.args="<regexp> <jmh options>"}.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Raise root log level to WARN: per-operation INFO logging would otherwise dominate the measurements.
+     */
+    static void quietLogging() {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+
+    /**
+     * Start plain (non-web) application context with given configuration classes and properties.
+     *
+     * @param properties     properties overriding defaults of {@code @Value} fields
+     * @param configurations configuration classes
+     * @return started context
+     */
+    static AnnotationConfigApplicationContext startContext(Map<String, Object> properties,
+                                                           Class<?>... configurations) {
+        quietLogging();
+        final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+        // the same conversions as in the application, e.g. of comma-separated lists into arrays
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.register(configurations);
+        context.refresh();
+        return context;
+    }
+}
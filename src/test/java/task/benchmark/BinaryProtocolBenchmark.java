@@ -0,0 +1,117 @@
+package task.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import task.AccountServiceApplication;
+import task.binary.BinaryClient;
+import task.binary.BinaryServer;
+import task.service.AccountService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares transfer throughput over the REST API (JSON over HTTP/1.1 keep-alive connections) and over the binary
+ * protocol (one pipelined connection shared by all benchmark threads). Both paths end up in the same
+ * {@link AccountService}, so the difference is the cost of the transport and serialization.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class BinaryProtocolBenchmark {
+
+    private static final int ACCOUNTS = 100;
+
+    private ConfigurableApplicationContext context;
+    private BinaryClient binaryClient;
+    private URL transferUrl;
+    private long firstAccountId;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkSupport.quietLogging();
+        context = new SpringApplicationBuilder(AccountServiceApplication.class)
+                .properties("server.port=0", "management.server.port=0", "logging.level.root=WARN",
+                        "account.binary.enabled=true", "account.binary.port=0")
+                .run();
+        final AccountService accountService = context.getBean(AccountService.class);
+        firstAccountId = accountService.create(new BigDecimal("1000000000")).getId();
+        for (int i = 1; i < ACCOUNTS; ++i) {
+            accountService.create(new BigDecimal("1000000000"));
+        }
+
+        final int restPort = ((WebServerApplicationContext) context).getWebServer().getPort();
+        transferUrl = new URL("http://localhost:" + restPort + "/accounts/transfer");
+        binaryClient = BinaryClient.connect("localhost", context.getBean(BinaryServer.class).getPort());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        binaryClient.close();
+        context.close();
+    }
+
+    @Benchmark
+    public void restTransfer() throws IOException {
+        final long fromAccountId = randomAccountId();
+        final byte[] body = ("{\"from\":" + fromAccountId + ",\"to\":" + nextAccountId(fromAccountId) +
+                ",\"amount\":1}").getBytes(StandardCharsets.UTF_8);
+        final HttpURLConnection connection = (HttpURLConnection) transferUrl.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            throw new IllegalStateException("Unexpected response code: " + connection.getResponseCode());
+        }
+        // the response must be consumed, otherwise the connection isn't returned to the keep-alive cache
+        try (InputStream in = connection.getInputStream()) {
+            while (in.read() >= 0) {
+                // skip
+            }
+        }
+    }
+
+    @Benchmark
+    public void binaryTransfer() {
+        final long fromAccountId = randomAccountId();
+        binaryClient.transfer(fromAccountId, nextAccountId(fromAccountId), BigDecimal.ONE).join();
+    }
+
+    private long randomAccountId() {
+        return firstAccountId + ThreadLocalRandom.current().nextInt(ACCOUNTS);
+    }
+
+    private long nextAccountId(long accountId) {
+        return firstAccountId + (accountId - firstAccountId + 1) % ACCOUNTS;
+    }
+}
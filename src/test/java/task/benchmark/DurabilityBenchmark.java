@@ -0,0 +1,95 @@
+package task.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import task.config.AccountManagerConfig;
+import task.config.AccountServiceConfig;
+import task.config.DataSourceConfig;
+import task.service.AccountService;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures transfer throughput for the in-memory database and for the file database with different durability
+ * settings: {@code file-sync} syncs the log on every commit, {@code file-delay-N} syncs it at most every N ms.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class DurabilityBenchmark {
+
+    private static final int ACCOUNTS = 1000;
+
+    @Param({"memory", "file-sync", "file-delay-10", "file-delay-100", "file-delay-1000"})
+    public String setting;
+
+    private Path directory;
+    private AnnotationConfigApplicationContext context;
+    private AccountService accountService;
+    private long firstAccountId;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("durability-benchmark");
+
+        final Map<String, Object> properties = new HashMap<>();
+        if (setting.startsWith("file")) {
+            properties.put("account.datasource.mode", "FILE");
+            properties.put("account.datasource.file.path", directory.resolve("accounts").toString());
+            if (setting.startsWith("file-delay-")) {
+                properties.put("account.datasource.file.durability", "BOUNDED_DELAY");
+                properties.put("account.datasource.file.writeDelayMillis", setting.substring("file-delay-".length()));
+            } else {
+                properties.put("account.datasource.file.durability", "SYNC");
+            }
+        }
+        context = BenchmarkSupport.startContext(properties,
+                DataSourceConfig.class, AccountManagerConfig.class, AccountServiceConfig.class);
+        accountService = context.getBean(AccountService.class);
+
+        firstAccountId = accountService.create(new BigDecimal("1000000000")).getId();
+        for (int i = 1; i < ACCOUNTS; ++i) {
+            accountService.create(new BigDecimal("1000000000"));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public void transfer() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final long fromAccountId = firstAccountId + random.nextInt(ACCOUNTS);
+        final long toAccountId = firstAccountId + (fromAccountId - firstAccountId + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+        accountService.transfer(fromAccountId, toAccountId, BigDecimal.ONE);
+    }
+}
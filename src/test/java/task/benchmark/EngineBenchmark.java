@@ -0,0 +1,80 @@
+package task.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import task.config.AccountManagerConfig;
+import task.config.AccountServiceConfig;
+import task.config.DataSourceConfig;
+import task.service.AccountService;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares transfer throughput of the lock-based engine and of the partitioned single-writer engine, with transfers
+ * spread over many accounts ({@code accounts=1000}) and concentrated on a few hot ones ({@code accounts=8}).
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class EngineBenchmark {
+
+    @Param({"LOCKING", "PARTITIONED"})
+    public String engine;
+
+    @Param({"8", "1000"})
+    public int accounts;
+
+    private AnnotationConfigApplicationContext context;
+    private AccountService accountService;
+    private long firstAccountId;
+
+    @Setup
+    public void setUp() {
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("account.service.engine", engine);
+        properties.put("account.datasource.pool.enabled", "true");
+        context = BenchmarkSupport.startContext(properties,
+                DataSourceConfig.class, AccountManagerConfig.class, AccountServiceConfig.class);
+        accountService = context.getBean(AccountService.class);
+
+        firstAccountId = accountService.create(new BigDecimal("1000000000")).getId();
+        for (int i = 1; i < accounts; ++i) {
+            accountService.create(new BigDecimal("1000000000"));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void transfer() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final long fromAccountId = firstAccountId + random.nextInt(accounts);
+        final long toAccountId = firstAccountId + (fromAccountId - firstAccountId + 1 + random.nextInt(accounts - 1)) % accounts;
+        accountService.transfer(fromAccountId, toAccountId, BigDecimal.ONE);
+    }
+}
@@ -0,0 +1,112 @@
+package task.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import task.config.AccountManagerConfig;
+import task.config.AccountServiceConfig;
+import task.config.AggregatesConfig;
+import task.config.DataSourceConfig;
+import task.service.AccountService;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what the journal of balance changes (both legs of a transfer with counterparties and balances, and the
+ * {@code (account_id, created_at, id)} index) costs in transfer throughput: the throughput with {@code journal=true}
+ * is expected to stay within 10% of the one with {@code journal=false} for the same {@code setting}. The same holds for
+ * the incrementally maintained aggregates ({@code aggregates=true}): every balance change announces itself in their
+ * striped counters and updates their adders after the commit.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class JournalBenchmark {
+
+    private static final int ACCOUNTS = 1000;
+
+    @Param({"memory", "file-delay-10"})
+    public String setting;
+
+    @Param({"false", "true"})
+    public boolean journal;
+
+    @Param({"false", "true"})
+    public boolean aggregates;
+
+    private Path directory;
+    private AnnotationConfigApplicationContext context;
+    private AccountService accountService;
+    private long firstAccountId;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal-benchmark");
+
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("account.journal.enabled", String.valueOf(journal));
+        if (setting.startsWith("file-delay-")) {
+            properties.put("account.datasource.mode", "FILE");
+            properties.put("account.datasource.file.path", directory.resolve("accounts").toString());
+            properties.put("account.datasource.file.durability", "BOUNDED_DELAY");
+            properties.put("account.datasource.file.writeDelayMillis", setting.substring("file-delay-".length()));
+        }
+        final List<Class<?>> configurations = new ArrayList<>(Arrays.asList(
+                DataSourceConfig.class, AccountManagerConfig.class, AccountServiceConfig.class));
+        if (aggregates) {
+            configurations.add(SimpleMeterRegistry.class);
+            configurations.add(AggregatesConfig.class);
+        }
+        context = BenchmarkSupport.startContext(properties, configurations.toArray(new Class<?>[0]));
+        accountService = context.getBean(AccountService.class);
+
+        firstAccountId = accountService.create(new BigDecimal("1000000000")).getId();
+        for (int i = 1; i < ACCOUNTS; ++i) {
+            accountService.create(new BigDecimal("1000000000"));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public void transfer() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final long fromAccountId = firstAccountId + random.nextInt(ACCOUNTS);
+        final long toAccountId =
+                firstAccountId + (fromAccountId - firstAccountId + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+        accountService.transfer(fromAccountId, toAccountId, BigDecimal.ONE);
+    }
+}
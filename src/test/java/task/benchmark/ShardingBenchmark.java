@@ -0,0 +1,83 @@
+package task.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import task.config.AccountManagerConfig;
+import task.config.AccountServiceConfig;
+import task.config.DataSourceConfig;
+import task.config.IdempotencyConfig;
+import task.config.ShardingConfig;
+import task.service.AccountService;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures transfer throughput over 1, 2 and 4 shards. With N shards a random transfer crosses shards with probability
+ * (N - 1) / N and costs two transactions instead of one, which is offset by spreading the load over N databases.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class ShardingBenchmark {
+
+    private static final int ACCOUNTS = 1000;
+
+    @Param({"1", "2", "4"})
+    public int shards;
+
+    private AnnotationConfigApplicationContext context;
+    private AccountService accountService;
+    private long[] accountIds;
+
+    @Setup
+    public void setUp() {
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("account.sharding.enabled", "true");
+        properties.put("account.sharding.shards", String.valueOf(shards));
+        properties.put("account.datasource.pool.maximumPoolSize", "8");
+        context = BenchmarkSupport.startContext(properties,
+                DataSourceConfig.class, AccountManagerConfig.class, AccountServiceConfig.class, IdempotencyConfig.class,
+                ShardingConfig.class);
+        accountService = context.getBean(AccountService.class);
+
+        accountIds = new long[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; ++i) {
+            accountIds[i] = accountService.create(new BigDecimal("1000000000")).getId();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void transfer() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int from = random.nextInt(ACCOUNTS);
+        final int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+        accountService.transfer(accountIds[from], accountIds[to], BigDecimal.ONE);
+    }
+}
@@ -0,0 +1,76 @@
+package task.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import task.config.AccountManagerConfig;
+import task.config.AccountServiceConfig;
+import task.config.DataSourceConfig;
+import task.service.AccountService;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures allocations of a single successful transfer through the whole stack: service, locks, manager, transaction
+ * and MyBatis. Run it with the GC profiler and look at {@code gc.alloc.rate.norm} (bytes per operation):
+ * <pre>
+ * mvn -P benchmark verify -Djmh.args="TransferAllocationBenchmark -prof gc"
+ * </pre>
+ * The service part of the path is asserted to be allocation-free by {@code AccountServiceImplTest}, so what remains
+ * here is the cost of the DAO boundary (JDBC, MyBatis result mapping, Spring transaction) and of new amounts.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TransferAllocationBenchmark {
+
+    @Param({"SIMPLE", "REUSE"})
+    public String executorType;
+
+    private AnnotationConfigApplicationContext context;
+    private AccountService accountService;
+    private long fromAccountId;
+    private long toAccountId;
+
+    @Setup
+    public void setUp() {
+        // the same data source settings as application.properties
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("account.datasource.pool.enabled", "true");
+        properties.put("account.datasource.mybatis.executorType", executorType);
+        context = BenchmarkSupport.startContext(properties,
+                DataSourceConfig.class, AccountManagerConfig.class, AccountServiceConfig.class);
+        accountService = context.getBean(AccountService.class);
+
+        fromAccountId = accountService.create(new BigDecimal("1000000000")).getId();
+        toAccountId = accountService.create(BigDecimal.ZERO).getId();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void transfer() {
+        accountService.transfer(fromAccountId, toAccountId, BigDecimal.ONE);
+    }
+}
@@ -0,0 +1,114 @@
+package task.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import task.config.AccountManagerConfig;
+import task.config.AccountServiceConfig;
+import task.config.DataSourceConfig;
+import task.service.AccountService;
+import task.service.VirtualThreads;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures time to serve 10k concurrent transfer requests by the pool of 200 platform threads (Tomcat default) and by
+ * a virtual thread per request. Every request also waits {@code latencyMillis} for a simulated downstream call,
+ * which is where virtual threads pay off. The {@code virtual} setting requires JDK 21+ and fails on older JDKs.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VirtualThreadsBenchmark {
+
+    private static final int ACCOUNTS = 1000;
+    private static final int CLIENTS = 10_000;
+    private static final int PLATFORM_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"0", "10"})
+    public long latencyMillis;
+
+    private AnnotationConfigApplicationContext context;
+    private AccountService accountService;
+    private ExecutorService executor;
+    private long firstAccountId;
+
+    @Setup
+    public void setUp() {
+        if ("virtual".equals(threads)) {
+            executor = VirtualThreads.newThreadPerTaskExecutor("client");
+            if (executor == null) {
+                throw new IllegalStateException("Virtual threads are not supported by this JDK: "
+                        + System.getProperty("java.version"));
+            }
+        } else {
+            executor = Executors.newFixedThreadPool(PLATFORM_THREADS);
+        }
+
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("account.datasource.pool.enabled", "true");
+        context = BenchmarkSupport.startContext(properties,
+                DataSourceConfig.class, AccountManagerConfig.class, AccountServiceConfig.class);
+        accountService = context.getBean(AccountService.class);
+
+        firstAccountId = accountService.create(new BigDecimal("1000000000")).getId();
+        for (int i = 1; i < ACCOUNTS; ++i) {
+            accountService.create(new BigDecimal("1000000000"));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        context.close();
+    }
+
+    @Benchmark
+    public void transfer10kClients() throws InterruptedException {
+        final CountDownLatch completed = new CountDownLatch(CLIENTS);
+        for (int i = 0; i < CLIENTS; ++i) {
+            executor.execute(() -> {
+                try {
+                    if (latencyMillis > 0) {
+                        Thread.sleep(latencyMillis);
+                    }
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    final long fromAccountId = firstAccountId + random.nextInt(ACCOUNTS);
+                    final long toAccountId = firstAccountId
+                            + (fromAccountId - firstAccountId + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                    accountService.transfer(fromAccountId, toAccountId, BigDecimal.ONE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    completed.countDown();
+                }
+            });
+        }
+        completed.await();
+    }
+}
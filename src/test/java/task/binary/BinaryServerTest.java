@@ -0,0 +1,211 @@
+package task.binary;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import task.exception.BinaryProtocolException;
+import task.exception.LimitExceededException;
+import task.exception.NoSuchAccountException;
+import task.model.Account;
+import task.model.TransferResult;
+import task.service.AccountService;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class BinaryServerTest {
+
+    private BinaryServer server;
+    private BinaryClient client;
+    private ExecutorService executor;
+    @Mock
+    private AccountService accountService;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(2);
+        server = new BinaryServer(accountService, executor, 0);
+        client = BinaryClient.connect("localhost", server.getPort());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void test_create_it_must_return_id_of_created_account() throws Exception {
+        // Given
+        when(accountService.create(new BigDecimal("10.50")))
+                .thenReturn(new Account().setId(42).setAmount(new BigDecimal("10.50")));
+
+        // When
+        final long accountId = client.create(new BigDecimal("10.50")).get(10, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(accountId).isEqualTo(42);
+    }
+
+    @Test
+    public void test_getAccount_it_must_return_account() throws Exception {
+        // Given
+        when(accountService.getAccount(1)).thenReturn(new Account().setId(1).setAmount(new BigDecimal("3.14")));
+
+        // When
+        final Account account = client.getAccount(1).get(10, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(account).isEqualTo(new Account().setId(1).setAmount(new BigDecimal("3.14")));
+    }
+
+    @Test
+    public void test_transfer_it_must_call_account_service() throws Exception {
+        // Given
+        when(accountService.tryTransfer(1, 2, BigDecimal.TEN)).thenReturn(TransferResult.transferred());
+
+        // When
+        client.transfer(1, 2, BigDecimal.TEN).get(10, TimeUnit.SECONDS);
+
+        // Then
+        verify(accountService).tryTransfer(1, 2, BigDecimal.TEN);
+    }
+
+    @Test
+    public void test_it_must_map_service_exceptions_to_statuses() throws Exception {
+        // Given
+        when(accountService.getAccount(1)).thenThrow(new NoSuchAccountException(1));
+        when(accountService.tryTransfer(1, 2, BigDecimal.TEN))
+                .thenReturn(TransferResult.rejected(new LimitExceededException(1, BigDecimal.TEN, BigDecimal.ONE)));
+        when(accountService.tryTransfer(1, 3, BigDecimal.TEN))
+                .thenReturn(TransferResult.rejected(new NoSuchAccountException(3)));
+        doThrow(new IllegalArgumentException("amount must be positive"))
+                .when(accountService).tryTransfer(1, 2, BigDecimal.ONE);
+        doThrow(new IllegalStateException("boom")).when(accountService).tryTransfer(1, 2, BigDecimal.ZERO);
+
+        // When, then
+        assertThat(statusOf(client.getAccount(1))).isEqualTo(BinaryProtocol.STATUS_NOT_FOUND);
+        assertThat(statusOf(client.transfer(1, 2, BigDecimal.TEN))).isEqualTo(BinaryProtocol.STATUS_LIMIT_EXCEEDED);
+        assertThat(statusOf(client.transfer(1, 3, BigDecimal.TEN))).isEqualTo(BinaryProtocol.STATUS_NOT_FOUND);
+        assertThat(statusOf(client.transfer(1, 2, BigDecimal.ONE))).isEqualTo(BinaryProtocol.STATUS_BAD_REQUEST);
+        assertThat(statusOf(client.transfer(1, 2, BigDecimal.ZERO))).isEqualTo(BinaryProtocol.STATUS_INTERNAL_ERROR);
+    }
+
+    @Test
+    public void test_it_must_respond_out_of_order_to_pipelined_requests() throws Exception {
+        // Given
+        final CountDownLatch slowRequestStarted = new CountDownLatch(1);
+        final CountDownLatch fastRequestDone = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            slowRequestStarted.countDown();
+            assertThat(fastRequestDone.await(10, TimeUnit.SECONDS)).isTrue();
+            return TransferResult.transferred();
+        }).when(accountService).tryTransfer(1, 2, BigDecimal.TEN);
+        when(accountService.getAccount(3)).thenReturn(new Account().setId(3).setAmount(BigDecimal.ONE));
+
+        // When
+        final CompletableFuture<Void> slow = client.transfer(1, 2, BigDecimal.TEN);
+        assertThat(slowRequestStarted.await(10, TimeUnit.SECONDS)).isTrue();
+        final CompletableFuture<Account> fast = client.getAccount(3);
+
+        // Then
+        assertThat(fast.get(10, TimeUnit.SECONDS).getId()).isEqualTo(3);
+        assertThat(slow).isNotDone();
+        fastRequestDone.countDown();
+        slow.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void test_it_must_respond_overloaded_when_executor_rejects_request() throws Exception {
+        // Given
+        try (BinaryServer rejectingServer = new BinaryServer(accountService, task -> {
+            throw new RejectedExecutionException("queue is full");
+        }, 0); BinaryClient rejectedClient = BinaryClient.connect("localhost", rejectingServer.getPort())) {
+
+            // When
+            final CompletableFuture<Account> future = rejectedClient.getAccount(1);
+
+            // Then
+            assertThat(statusOf(future)).isEqualTo(BinaryProtocol.STATUS_OVERLOADED);
+        }
+    }
+
+    @Test
+    public void test_it_must_truncate_error_message_on_character_boundary() throws Exception {
+        // Given
+        final StringBuilder message = new StringBuilder("x");
+        while (message.length() < BinaryProtocol.MAX_STRING_LENGTH) {
+            message.append('\u00e9');
+        }
+        doThrow(new IllegalStateException(message.toString())).when(accountService).getAccount(1);
+
+        // When
+        final Throwable throwable = catchThrowable(() -> client.getAccount(1).get(10, TimeUnit.SECONDS));
+
+        // Then
+        assertThat(throwable).hasCauseInstanceOf(BinaryProtocolException.class);
+        // "x" and 511 two-byte characters fit, the next character would be split
+        assertThat(throwable.getCause().getMessage())
+                .isEqualTo(message.substring(0, BinaryProtocol.MAX_STRING_LENGTH / 2));
+    }
+
+    @Test
+    public void test_it_must_pause_reading_when_too_many_responses_are_pending() throws Exception {
+        // Given
+        final CountDownLatch release = new CountDownLatch(1);
+        when(accountService.getAccount(1)).thenAnswer(invocation -> {
+            assertThat(release.await(10, TimeUnit.SECONDS)).isTrue();
+            return new Account().setId(1).setAmount(BigDecimal.ONE);
+        });
+        final ExecutorService pool = Executors.newCachedThreadPool();
+        try (BinaryServer pausingServer = new BinaryServer(accountService, pool, 0, 2);
+             BinaryClient pipeliningClient = BinaryClient.connect("localhost", pausingServer.getPort())) {
+
+            // When
+            final List<CompletableFuture<Account>> futures = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                futures.add(pipeliningClient.getAccount(1));
+            }
+
+            // Then
+            verify(accountService, after(500).times(2)).getAccount(1);
+            release.countDown();
+            for (CompletableFuture<Account> future : futures) {
+                assertThat(future.get(10, TimeUnit.SECONDS).getId()).isEqualTo(1);
+            }
+            verify(accountService, times(5)).getAccount(1);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static byte statusOf(CompletableFuture<?> future) {
+        final Throwable throwable = catchThrowable(() -> future.get(10, TimeUnit.SECONDS));
+        assertThat(throwable).hasCauseInstanceOf(BinaryProtocolException.class);
+        return ((BinaryProtocolException) throwable.getCause()).getStatus();
+    }
+}
@@ -0,0 +1,102 @@
+package task.concurrent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class BatchingWriterTest {
+
+    @Test
+    public void test_constructor_it_must_throw_IllegalArgumentException_when_batch_size_is_not_positive() throws Exception {
+        // Given, when
+        final Throwable throwable = catchThrowable(() -> new BatchingWriter<Integer>("test", 4, 0, batch -> {
+        }));
+
+        // Then
+        assertThat(throwable).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void test_put_it_must_wake_up_idle_writer_and_pass_elements_in_order() throws Exception {
+        // Given
+        final List<Integer> written = new CopyOnWriteArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(3);
+        final BatchingWriter<Integer> writer = new BatchingWriter<>("test", 4, 2, batch -> {
+            written.addAll(batch);
+            batch.forEach(element -> latch.countDown());
+        });
+        // let the writer park
+        Thread.sleep(100);
+
+        // When
+        for (int i = 0; i < 3; ++i) {
+            assertThat(writer.put(i)).isTrue();
+        }
+
+        // Then
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(written).containsExactly(0, 1, 2);
+        writer.close();
+    }
+
+    @Test
+    public void test_offer_it_must_refuse_element_when_writer_is_closed() throws Exception {
+        // Given
+        final List<Integer> written = new CopyOnWriteArrayList<>();
+        final BatchingWriter<Integer> writer = new BatchingWriter<>("test", 4, 2, written::addAll);
+        writer.close();
+
+        // When
+        final boolean offered = writer.offer(1);
+        final boolean put = writer.put(2);
+
+        // Then
+        assertThat(offered).isFalse();
+        assertThat(put).isFalse();
+        assertThat(written).isEmpty();
+    }
+
+    @Test
+    public void test_close_it_must_write_every_element_which_has_not_been_refused() throws Exception {
+        for (int run = 0; run < 20; ++run) {
+            // Given
+            final AtomicInteger written = new AtomicInteger();
+            final AtomicInteger accepted = new AtomicInteger();
+            final BatchingWriter<Integer> writer = new BatchingWriter<>("test", 8, 4,
+                    batch -> written.addAndGet(batch.size()));
+            final CountDownLatch started = new CountDownLatch(4);
+            final List<Thread> producers = new ArrayList<>();
+            for (int i = 0; i < 4; ++i) {
+                final Thread producer = new Thread(() -> {
+                    started.countDown();
+                    while (writer.put(1)) {
+                        accepted.incrementAndGet();
+                    }
+                });
+                producer.start();
+                producers.add(producer);
+            }
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+            // When
+            writer.close();
+            for (Thread producer : producers) {
+                producer.join(TimeUnit.SECONDS.toMillis(10));
+            }
+
+            // Then
+            assertThat(written.get()).isEqualTo(accepted.get());
+        }
+    }
+}
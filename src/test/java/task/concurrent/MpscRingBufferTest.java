@@ -0,0 +1,97 @@
+package task.concurrent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class MpscRingBufferTest {
+
+    @Test
+    public void test_constructor_it_must_throw_IllegalArgumentException_when_capacity_is_not_power_of_two() throws Exception {
+        // Given, when
+        final Throwable throwable = catchThrowable(() -> new MpscRingBuffer<>(3));
+
+        // Then
+        assertThat(throwable).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void test_offer_it_must_reject_element_when_buffer_is_full_and_accept_it_after_poll() throws Exception {
+        // Given
+        final MpscRingBuffer<Integer> ringBuffer = new MpscRingBuffer<>(2);
+        assertThat(ringBuffer.isEmpty()).isTrue();
+        assertThat(ringBuffer.offer(1)).isTrue();
+        assertThat(ringBuffer.offer(2)).isTrue();
+
+        // When, then
+        assertThat(ringBuffer.offer(3)).isFalse();
+        assertThat(ringBuffer.poll()).isEqualTo(1);
+        assertThat(ringBuffer.offer(3)).isTrue();
+        assertThat(ringBuffer.poll()).isEqualTo(2);
+        assertThat(ringBuffer.poll()).isEqualTo(3);
+        assertThat(ringBuffer.poll()).isNull();
+        assertThat(ringBuffer.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void test_poll_it_must_return_all_elements_of_concurrent_producers_in_per_producer_order() throws Exception {
+        // Given
+        final int producers = 4;
+        final int elementsPerProducer = 20_000;
+        final MpscRingBuffer<long[]> ringBuffer = new MpscRingBuffer<>(64);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; ++p) {
+            final int producer = p;
+            final Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < elementsPerProducer; ++i) {
+                    final long[] element = {producer, i};
+                    while (!ringBuffer.offer(element)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        // When
+        start.countDown();
+        final long[] nextExpected = new long[producers];
+        long received = 0;
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (received < (long) producers * elementsPerProducer && System.nanoTime() < deadline) {
+            final long[] element = ringBuffer.poll();
+            if (element == null) {
+                Thread.yield();
+                continue;
+            }
+            // Then
+            if (element[1] != nextExpected[(int) element[0]]) {
+                fail("Unexpected element " + element[1] + " of producer " + element[0]);
+            }
+            ++nextExpected[(int) element[0]];
+            ++received;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(received).isEqualTo((long) producers * elementsPerProducer);
+        assertThat(ringBuffer.poll()).isNull();
+    }
+}
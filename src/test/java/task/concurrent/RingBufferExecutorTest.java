@@ -0,0 +1,71 @@
+package task.concurrent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class RingBufferExecutorTest {
+
+    @Test
+    public void test_execute_it_must_throw_RejectedExecutionException_without_executing_task_when_executor_is_closed() throws Exception {
+        // Given
+        final RingBufferExecutor executor = new RingBufferExecutor("test", 4);
+        final AtomicInteger executed = new AtomicInteger();
+        executor.close();
+
+        // When
+        final Throwable throwable = catchThrowable(() -> executor.execute(executed::incrementAndGet));
+
+        // Then
+        assertThat(throwable).isInstanceOf(RejectedExecutionException.class);
+        assertThat(executed.get()).isZero();
+    }
+
+    @Test
+    public void test_close_it_must_execute_every_task_which_has_not_been_rejected() throws Exception {
+        for (int run = 0; run < 20; ++run) {
+            // Given
+            final RingBufferExecutor executor = new RingBufferExecutor("test", 8);
+            final AtomicInteger executed = new AtomicInteger();
+            final AtomicInteger accepted = new AtomicInteger();
+            final CountDownLatch started = new CountDownLatch(4);
+            final List<Thread> producers = new ArrayList<>();
+            for (int i = 0; i < 4; ++i) {
+                final Thread producer = new Thread(() -> {
+                    started.countDown();
+                    try {
+                        while (true) {
+                            executor.execute(executed::incrementAndGet);
+                            accepted.incrementAndGet();
+                        }
+                    } catch (RejectedExecutionException e) {
+                        // closed
+                    }
+                });
+                producer.start();
+                producers.add(producer);
+            }
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+            // When
+            executor.close();
+            for (Thread producer : producers) {
+                producer.join(TimeUnit.SECONDS.toMillis(10));
+            }
+
+            // Then
+            assertThat(executed.get()).isEqualTo(accepted.get());
+        }
+    }
+}
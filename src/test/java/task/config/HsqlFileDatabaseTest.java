@@ -0,0 +1,66 @@
+package task.config;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.File;
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class HsqlFileDatabaseTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test_it_must_keep_committed_data_after_restart() throws Exception {
+        // Given
+        final String path = new File(folder.getRoot(), "accounts").getPath();
+        try (HsqlFileDatabase database = open(path, HsqlFileDatabase.Durability.SYNC)) {
+            new JdbcTemplate(database.getDataSource()).update("update account set amount = 1000 where id = 1");
+        }
+
+        // When
+        try (HsqlFileDatabase database = open(path, HsqlFileDatabase.Durability.SYNC)) {
+            final JdbcTemplate jdbcTemplate = new JdbcTemplate(database.getDataSource());
+
+            // Then
+            assertThat(jdbcTemplate.queryForObject("select amount from account where id = 1", BigDecimal.class))
+                    .isEqualByComparingTo("1000");
+            // initial data must not be inserted twice
+            assertThat(jdbcTemplate.queryForObject("select count(*) from account", Integer.class)).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void test_it_must_create_cached_tables_and_apply_write_delay() throws Exception {
+        // Given
+        final String path = new File(folder.getRoot(), "accounts").getPath();
+
+        // When
+        try (HsqlFileDatabase database = open(path, HsqlFileDatabase.Durability.BOUNDED_DELAY)) {
+            final JdbcTemplate jdbcTemplate = new JdbcTemplate(database.getDataSource());
+
+            // Then
+            assertThat(database.getUrl()).isEqualTo("jdbc:hsqldb:file:" + path);
+            assertThat(jdbcTemplate.queryForObject("select hsqldb_type from information_schema.system_tables " +
+                    "where table_schem = 'PUBLIC' and table_name = 'ACCOUNT'", String.class)).isEqualTo("CACHED");
+            assertThat(jdbcTemplate.queryForObject("select property_value from information_schema.system_properties " +
+                    "where property_name = 'hsqldb.write_delay_millis'", String.class)).isEqualTo("20");
+            assertThat(jdbcTemplate.queryForObject("select property_value from information_schema.system_properties " +
+                    "where property_name = 'hsqldb.tx'", String.class)).isEqualToIgnoringCase("LOCKS");
+
+            database.checkpoint();
+        }
+    }
+
+    private HsqlFileDatabase open(String path, HsqlFileDatabase.Durability durability) {
+        return new HsqlFileDatabase(path, durability, 20, 1, 0, SchemaMigrations.ACCOUNTS);
+    }
+}
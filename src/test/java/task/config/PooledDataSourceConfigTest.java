@@ -0,0 +1,109 @@
+package task.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import task.dao.AccountDao;
+import task.model.Account;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {DataSourceConfig.class, PooledDataSourceConfigTest.MetricsTestConfig.class})
+@TestPropertySource(properties = {
+        "account.datasource.pool.enabled=true",
+        "account.datasource.pool.maximumPoolSize=4",
+        "account.datasource.pool.minimumIdle=1",
+        "account.datasource.pool.leakDetectionThresholdMillis=10000",
+        "account.datasource.mybatis.executorType=REUSE",
+})
+public class PooledDataSourceConfigTest {
+
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+    @Autowired
+    private AccountDao accountDao;
+    @Autowired
+    private MeterRegistry registry;
+
+    @Test
+    public void test_data_source_it_must_be_pooled_and_configured() throws Exception {
+        assertThat(dataSource).isInstanceOf(HikariDataSource.class);
+        final HikariDataSource hikariDataSource = (HikariDataSource) dataSource;
+        assertThat(hikariDataSource.getMaximumPoolSize()).isEqualTo(4);
+        assertThat(hikariDataSource.getMinimumIdle()).isEqualTo(1);
+        assertThat(hikariDataSource.getLeakDetectionThreshold()).isEqualTo(10000);
+        assertThat(hikariDataSource.getJdbcUrl()).startsWith("jdbc:hsqldb:mem:");
+    }
+
+    @Test
+    public void test_sql_session_factory_it_must_use_configured_executor_type() throws Exception {
+        assertThat(sqlSessionFactory.getConfiguration().getDefaultExecutorType()).isEqualTo(ExecutorType.REUSE);
+    }
+
+    @Test
+    public void test_dao_it_must_work_through_pool_and_export_pool_metrics() throws Exception {
+        // Given, when
+        final Account account = accountDao.select(1);
+
+        // Then
+        assertThat(account).isEqualTo(new Account().setId(1).setAmount(new BigDecimal("123.45")));
+        assertThat(registry.get("hikaricp.connections.acquire").tag("pool", "account-pool").timer().count())
+                .isPositive();
+        assertThat(registry.get("hikaricp.connections.max").tag("pool", "account-pool").gauge().value())
+                .isEqualTo(4);
+    }
+
+    @Test
+    public void test_data_source_it_must_keep_memory_database_when_all_connections_are_closed() throws Exception {
+        // Given
+        final HikariDataSource hikariDataSource = (HikariDataSource) dataSource;
+
+        // When
+        hikariDataSource.getHikariPoolMXBean().softEvictConnections();
+        // connections are closed asynchronously
+        Thread.sleep(200);
+        final Account account = accountDao.select(1);
+
+        // Then
+        assertThat(account).isEqualTo(new Account().setId(1).setAmount(new BigDecimal("123.45")));
+    }
+
+    @Test
+    public void test_data_source_it_must_spill_large_results_of_memory_database() throws Exception {
+        // Given, when
+        final String resultMemoryRows = new JdbcTemplate(dataSource).queryForObject(
+                "SELECT PROPERTY_VALUE FROM INFORMATION_SCHEMA.SYSTEM_PROPERTIES " +
+                        "WHERE PROPERTY_NAME = 'hsqldb.result_max_memory_rows'", String.class);
+
+        // Then
+        assertThat(resultMemoryRows).isEqualTo("10000");
+    }
+
+    @Configuration
+    static class MetricsTestConfig {
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}
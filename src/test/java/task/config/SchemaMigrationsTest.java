@@ -0,0 +1,98 @@
+package task.config;
+
+import org.hsqldb.jdbc.JDBCDriver;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class SchemaMigrationsTest {
+
+    private final DataSource dataSource =
+            new SimpleDriverDataSource(new JDBCDriver(), "jdbc:hsqldb:mem:" + UUID.randomUUID(), "SA", "");
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+    @After
+    public void tearDown() throws Exception {
+        jdbcTemplate.execute("SHUTDOWN");
+    }
+
+    @Test
+    public void test_apply_it_must_create_schema_and_insert_data_when_database_is_new() throws Exception {
+        // When
+        SchemaMigrations.ACCOUNTS.apply(dataSource);
+
+        // Then
+        assertThat(jdbcTemplate.queryForList("select version from schema_version where executed order by version",
+                Integer.class)).containsExactly(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from account", Integer.class)).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from journal_entry", Integer.class)).isEqualTo(2);
+    }
+
+    @Test
+    public void test_apply_it_must_apply_only_missing_migrations_when_database_has_been_created_without_versions() throws Exception {
+        // Given
+        execute("db/sql/create-db.sql");
+        jdbcTemplate.update("insert into account (id, amount) values (1, 10), (2, 5)");
+        execute("db/sql/create-journal.sql");
+        jdbcTemplate.update("update account set amount = 13 where id = 1");
+        jdbcTemplate.update("insert into journal_entry (account_id, amount, created_at) values (1, 3, 1)");
+        execute("db/sql/create-idempotency.sql");
+        jdbcTemplate.update("insert into idempotency_key (id, from_account_id, to_account_id, amount, created_at) " +
+                "values ('key', 1, 2, 1, 1)");
+
+        // When
+        SchemaMigrations.ACCOUNTS.apply(dataSource);
+        SchemaMigrations.ACCOUNTS.apply(dataSource);
+
+        // Then
+        assertThat(jdbcTemplate.queryForList("select version from schema_version where executed order by version",
+                Integer.class)).containsExactly(2, 5, 6, 7, 8, 10);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from schema_version", Integer.class)).isEqualTo(10);
+        // initial data must not be inserted into the existing database
+        assertThat(jdbcTemplate.queryForObject("select count(*) from account", Integer.class)).isEqualTo(2);
+        final List<BigDecimal> balances = jdbcTemplate.queryForList(
+                "select balance from journal_entry where account_id = 1 order by created_at, id", BigDecimal.class);
+        assertThat(balances).usingElementComparator(BigDecimal::compareTo)
+                .containsExactly(new BigDecimal("10"), new BigDecimal("13"));
+        assertThat(jdbcTemplate.queryForObject("select state from idempotency_key where id = 'key'", String.class))
+                .isEqualTo("TRANSFERRED");
+        assertThat(jdbcTemplate.queryForObject("select count(*) from transfer_intent", Integer.class)).isZero();
+        assertThat(jdbcTemplate.queryForObject("select count(*) from audit_event", Integer.class)).isZero();
+        assertThat(jdbcTemplate.queryForObject("select count(*) from journal_checkpoint", Integer.class)).isZero();
+    }
+
+    @Test
+    public void test_apply_it_must_journal_opening_balances_when_database_has_been_created_before_journal() throws Exception {
+        // Given
+        execute("db/sql/create-db.sql");
+        jdbcTemplate.update("insert into account (id, amount) values (1, 10), (2, 5)");
+
+        // When
+        SchemaMigrations.SHARD.apply(dataSource);
+
+        // Then
+        assertThat(jdbcTemplate.queryForObject("select count(*) from account a where a.amount = " +
+                "(select sum(e.amount) from journal_entry e where e.account_id = a.id)", Integer.class)).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from information_schema.tables " +
+                "where table_name = 'AUDIT_EVENT'", Integer.class)).isZero();
+    }
+
+    private void execute(String script) {
+        final ResourceDatabasePopulator populator = new ResourceDatabasePopulator(new ClassPathResource(script));
+        populator.setSeparator("/");
+        populator.execute(dataSource);
+    }
+}
@@ -5,10 +5,17 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import task.config.DataSourceConfig;
 import task.model.Account;
 
 import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -21,6 +28,8 @@ public class AccountDaoTest {
 
     @Autowired
     private AccountDao dao;
+    @Autowired
+    private PlatformTransactionManager txManager;
 
     @Test
     public void test_select() throws Exception {
@@ -54,4 +63,61 @@ public class AccountDaoTest {
         assertThat(dao.select(account.getId())).isEqualTo(new Account().setId(account.getId()).setAmount(BigDecimal.ZERO));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void test_selectPage() throws Exception {
+        final Account account = new Account().setAmount(new BigDecimal("1.5"));
+        dao.insert(account);
+
+        final List<Account> firstPage = dao.selectPage(0, 2);
+        final List<Account> nextPage = dao.selectPage(firstPage.get(1).getId(), 1000);
+
+        assertThat(firstPage).containsExactly(
+                new Account().setId(1).setAmount(new BigDecimal("123.45")),
+                new Account().setId(2).setAmount(new BigDecimal("678.90")));
+        assertThat(nextPage).isSortedAccordingTo(Comparator.comparingLong(Account::getId))
+                .contains(new Account().setId(account.getId()).setAmount(new BigDecimal("1.5")));
+        assertThat(dao.selectPage(account.getId(), 1000)).allMatch(next -> next.getId() > account.getId());
+    }
+
+    @Test
+    public void test_selectForUpdate_it_must_lock_whole_table_till_end_of_transaction() throws Exception {
+        // Given
+        final Account first = new Account().setAmount(BigDecimal.ONE);
+        final Account second = new Account().setAmount(BigDecimal.ONE);
+        dao.insert(first);
+        dao.insert(second);
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(txManager);
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompletableFuture<Void> holder = CompletableFuture.runAsync(() ->
+                transactionTemplate.execute(status -> {
+                    dao.selectForUpdate(first.getId());
+                    locked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                }));
+        assertThat(locked.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // When: another transaction locks and updates another row while the first row is locked
+        final CompletableFuture<Void> other = CompletableFuture.runAsync(() ->
+                transactionTemplate.execute(status -> {
+                    dao.update(dao.selectForUpdate(second.getId()).setAmount(BigDecimal.TEN));
+                    return null;
+                }));
+
+        // Then: the two-phase locking mode locks the table, so it waits for the first transaction
+        try {
+            Thread.sleep(200);
+            assertThat(other).isNotDone();
+        } finally {
+            release.countDown();
+            holder.get(10, TimeUnit.SECONDS);
+        }
+        other.get(10, TimeUnit.SECONDS);
+        assertThat(dao.select(second.getId()).getAmount()).isEqualByComparingTo(BigDecimal.TEN);
+    }
+}
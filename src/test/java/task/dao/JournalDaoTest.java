@@ -0,0 +1,45 @@
+package task.dao;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import task.config.DataSourceConfig;
+import task.model.JournalEntry;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = DataSourceConfig.class)
+public class JournalDaoTest {
+
+    @Autowired
+    private JournalDao dao;
+
+    @Test
+    public void test_selectHistory_it_must_return_entries_following_cursor_by_time_and_then_by_id() throws Exception {
+        // Given
+        final long accountId = 1000;
+        dao.insert(accountId, BigDecimal.ONE, BigDecimal.ONE, 5);
+        dao.insert(accountId, BigDecimal.ONE, new BigDecimal("2"), 5);
+        // a later id with an earlier time precedes the cursor
+        dao.insert(accountId, BigDecimal.ONE, new BigDecimal("3"), 3);
+        final List<JournalEntry> all = dao.selectHistory(accountId, 0, Long.MAX_VALUE, Long.MIN_VALUE, 0, 10);
+        final JournalEntry cursor = all.get(1);
+
+        // When
+        final List<JournalEntry> page = dao.selectHistory(accountId, 0, Long.MAX_VALUE, cursor.getCreatedAt(),
+                cursor.getId(), 10);
+
+        // Then
+        assertThat(all).extracting(JournalEntry::getCreatedAt).containsExactly(3L, 5L, 5L);
+        assertThat(page).extracting(JournalEntry::getId).containsExactly(all.get(2).getId());
+    }
+}
@@ -0,0 +1,148 @@
+package task.dao;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import task.model.Account;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TieredAccountDaoTest {
+
+    private TieredAccountDao dao;
+    private SimpleMeterRegistry registry;
+    @Mock
+    private AccountDao coldTier;
+
+    @Before
+    public void setUp() throws Exception {
+        registry = new SimpleMeterRegistry();
+        dao = new TieredAccountDao(coldTier, 2, registry);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void test_select_it_must_fault_in_account_from_cold_tier_only_once() throws Exception {
+        // Given
+        when(coldTier.select(1)).thenReturn(new Account().setId(1).setAmount(BigDecimal.TEN));
+
+        // When
+        final Account first = dao.select(1);
+        final Account second = dao.select(1);
+
+        // Then
+        assertThat(first).isEqualTo(new Account().setId(1).setAmount(BigDecimal.TEN));
+        assertThat(second).isEqualTo(first).isNotSameAs(first);
+        verify(coldTier, times(1)).select(1);
+
+        assertThat(dao.getHitRatio()).isEqualTo(0.5);
+        assertThat(registry.get("account.storage.promotions").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_select_it_must_return_null_and_not_cache_when_account_does_not_exist() throws Exception {
+        // Given, when
+        final Account account = dao.select(1);
+
+        // Then
+        assertThat(account).isNull();
+        assertThat(dao.getHotTierSize()).isZero();
+        assertThat(registry.get("account.storage.promotions").counter().count()).isZero();
+    }
+
+    @Test
+    public void test_select_it_must_keep_hot_tier_bounded_and_count_demotions() throws Exception {
+        // Given
+        for (long id = 1; id <= 10; ++id) {
+            when(coldTier.select(id)).thenReturn(new Account().setId(id).setAmount(BigDecimal.ONE));
+        }
+
+        // When
+        for (long id = 1; id <= 10; ++id) {
+            dao.select(id);
+        }
+        dao.cleanUp();
+
+        // Then
+        assertThat(dao.getHotTierSize()).isLessThanOrEqualTo(2);
+        assertThat(registry.get("account.storage.demotions").counter().count()).isGreaterThanOrEqualTo(8);
+    }
+
+    @Test
+    public void test_update_it_must_refresh_hot_account_when_there_is_no_transaction() throws Exception {
+        // Given
+        when(coldTier.select(1)).thenReturn(new Account().setId(1).setAmount(BigDecimal.TEN));
+        final Account account = dao.select(1);
+        when(coldTier.update(account.setAmount(BigDecimal.ONE))).thenReturn(1);
+
+        // When
+        dao.update(account);
+
+        // Then
+        assertThat(dao.select(1)).isEqualTo(new Account().setId(1).setAmount(BigDecimal.ONE));
+        verify(coldTier, times(1)).select(1);
+    }
+
+    @Test
+    public void test_update_it_must_refresh_hot_account_only_after_commit() throws Exception {
+        // Given
+        when(coldTier.select(1)).thenReturn(new Account().setId(1).setAmount(BigDecimal.TEN));
+        final Account account = dao.select(1);
+        when(coldTier.update(account.setAmount(BigDecimal.ONE))).thenReturn(1);
+        TransactionSynchronizationManager.initSynchronization();
+
+        // When
+        dao.update(account);
+
+        // Then
+        assertThat(dao.select(1).getAmount()).isEqualByComparingTo(BigDecimal.TEN);
+
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(dao.select(1).getAmount()).isEqualByComparingTo(BigDecimal.ONE);
+    }
+
+    @Test
+    public void test_update_it_must_drop_hot_account_on_rollback() throws Exception {
+        // Given
+        when(coldTier.select(1)).thenReturn(new Account().setId(1).setAmount(BigDecimal.TEN));
+        final Account account = dao.select(1);
+        when(coldTier.update(account.setAmount(BigDecimal.ONE))).thenReturn(1);
+        TransactionSynchronizationManager.initSynchronization();
+
+        // When
+        dao.update(account);
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        // Then
+        assertThat(dao.select(1).getAmount()).isEqualByComparingTo(BigDecimal.TEN);
+        verify(coldTier, times(2)).select(1);
+    }
+
+    private void completeTransaction(int status) {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(status);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+}
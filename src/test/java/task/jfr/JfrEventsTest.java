@@ -0,0 +1,114 @@
+package task.jfr;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Invocation;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import task.dao.AccountDao;
+import task.manager.AccountManager;
+import task.model.Account;
+import task.service.AccountService;
+import task.service.AccountServiceImpl;
+import task.service.LocksArrayOrderedLocksProvider;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class JfrEventsTest {
+
+    @Mock
+    private AccountDao accountDao;
+    @Mock
+    private AccountManager accountManager;
+    @Mock
+    private Executor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(JfrEvents.isAvailable());
+    }
+
+    @Test
+    public void test_beginTransfer_it_must_return_null_when_no_recording_enables_the_event() throws Exception {
+        // Given, when, then
+        assertThat(JfrEvents.beginTransfer()).isNull();
+        assertThat(JfrEvents.beginLockWait()).isNull();
+        assertThat(JfrEvents.beginStatement()).isNull();
+    }
+
+    @Test
+    public void test_events_it_must_be_recorded_when_enabled_by_account_settings() throws Throwable {
+        // Given
+        when(accountDao.select(1)).thenReturn(new Account().setId(1).setAmount(new BigDecimal("500")));
+        when(accountDao.select(2)).thenReturn(new Account().setId(2).setAmount(BigDecimal.ZERO));
+        final AccountService accountService =
+                new AccountServiceImpl(accountManager, accountDao, new LocksArrayOrderedLocksProvider());
+        final MappedStatement statement = new MappedStatement.Builder(new org.apache.ibatis.session.Configuration(),
+                "task.dao.AccountDao.update", new StaticSqlSource(null, "UPDATE"), SqlCommandType.UPDATE).build();
+        final Invocation invocation = new Invocation(executor,
+                Executor.class.getMethod("update", MappedStatement.class, Object.class),
+                new Object[]{statement, new Account()});
+        final Path file = Files.createTempFile("account", ".jfr");
+
+        // When
+        try (Recording recording = new Recording(Configuration.create(Paths.get("jfr/account.jfc")))) {
+            // settings thresholds would filter out fast in-memory calls
+            recording.enable("task.Transfer").withoutThreshold();
+            recording.enable("task.LockWait").withoutThreshold();
+            recording.enable("task.Statement").withoutThreshold();
+            recording.start();
+            accountService.transfer(1, 2, new BigDecimal("12.5"));
+            accountService.tryTransfer(1, 2, new BigDecimal("1000"));
+            new StatementEventInterceptor().intercept(invocation);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        // Then
+        final List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+        final List<RecordedEvent> transfers = eventsOf(events, "task.Transfer");
+        assertThat(transfers).hasSize(2);
+        assertThat(transfers.get(0).getLong("fromAccountId")).isEqualTo(1);
+        assertThat(transfers.get(0).getLong("toAccountId")).isEqualTo(2);
+        assertThat(transfers.get(0).getInt("amountMagnitude")).isEqualTo(2);
+        assertThat(transfers.get(0).getString("outcome")).isEqualTo("TRANSFERRED");
+        assertThat(transfers.get(1).getInt("amountMagnitude")).isEqualTo(4);
+        assertThat(transfers.get(1).getString("outcome")).isEqualTo("LIMIT_EXCEEDED");
+        assertThat(eventsOf(events, "task.LockWait")).hasSize(2);
+        final List<RecordedEvent> statements = eventsOf(events, "task.Statement");
+        assertThat(statements).hasSize(1);
+        assertThat(statements.get(0).getString("statementId")).isEqualTo("task.dao.AccountDao.update");
+        assertThat(statements.get(0).getString("command")).isEqualTo("UPDATE");
+        assertThat(statements.get(0).getBoolean("succeeded")).isTrue();
+    }
+
+    private static List<RecordedEvent> eventsOf(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .sorted((a, b) -> a.getStartTime().compareTo(b.getStartTime()))
+                .collect(Collectors.toList());
+    }
+}
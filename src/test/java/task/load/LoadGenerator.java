@@ -0,0 +1,271 @@
+package task.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+import task.api.CreateAccountRequest;
+import task.api.CreateAccountResponse;
+import task.api.TransferRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Open-model load generator for the REST API: requests arrive at a constant rate whether or not the previous ones
+ * have completed, as real clients do. The latency of a request is measured from its intended arrival time, so time
+ * spent waiting for a free generator thread counts too and coordinated omission doesn't hide stalls of the service.
+ * <p>
+ * The generator creates {@code accounts} accounts, then sends a mix of transfers, account reads and account creations
+ * to them. Requests are skewed: {@code hotTrafficShare} of them goes to the first {@code hotAccountShare} of the
+ * accounts. Interval histograms of every operation are written once a second to an HdrHistogram log, which can be
+ * plotted with HistogramLogAnalyzer.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class LoadGenerator {
+
+    static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    static final int SIGNIFICANT_DIGITS = 3;
+
+    private static final BigDecimal INITIAL_AMOUNT = new BigDecimal("1000000000");
+    private static final long INTERVAL_MILLIS = 1000;
+
+    /**
+     * Operation of the workload.
+     */
+    public enum Operation {
+        TRANSFER,
+        GET,
+        CREATE
+    }
+
+    private final LoadSettings settings;
+    private final LongSupplier heapUsed;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+    private final AtomicLong errors = new AtomicLong();
+    private long[] accountIds;
+
+    /**
+     * Create generator which samples heap of this JVM, i.e. the service must run in the same JVM.
+     *
+     * @param settings settings
+     */
+    public LoadGenerator(LoadSettings settings) {
+        this(settings, () -> ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+    }
+
+    /**
+     * @param settings settings
+     * @param heapUsed heap used by the service
+     */
+    public LoadGenerator(LoadSettings settings, LongSupplier heapUsed) {
+        this.settings = settings;
+        this.heapUsed = heapUsed;
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS));
+        }
+    }
+
+    /**
+     * Create accounts, warm the service up, then apply the measured load.
+     *
+     * @return result of the measured load
+     * @throws Exception if accounts can't be created or the generator is interrupted
+     */
+    public LoadResult run() throws Exception {
+        createAccounts();
+        apply(settings.getWarmupSeconds(), null);
+        Files.createDirectories(settings.getHistogramLog().toAbsolutePath().getParent());
+        try (PrintStream log = new PrintStream(Files.newOutputStream(settings.getHistogramLog()))) {
+            return apply(settings.getDurationSeconds(), new HistogramLogWriter(log));
+        }
+    }
+
+    private void createAccounts() throws IOException {
+        accountIds = new long[settings.getAccounts()];
+        for (int i = 0; i < accountIds.length; ++i) {
+            accountIds[i] = createAccount();
+        }
+    }
+
+    private LoadResult apply(int seconds, HistogramLogWriter logWriter) throws InterruptedException {
+        errors.set(0);
+        final Map<Operation, Histogram> totals = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            recorders.get(operation).reset();
+            totals.put(operation, new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS));
+        }
+        final List<Long> completionsPerInterval = new ArrayList<>();
+        final List<Long> heapUsedPerInterval = new ArrayList<>();
+        if (logWriter != null) {
+            logWriter.outputLogFormatVersion();
+            logWriter.outputStartTime(System.currentTimeMillis());
+            logWriter.outputLegend();
+        }
+
+        final ExecutorService workers = Executors.newFixedThreadPool(settings.getThreads());
+        final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> sample(logWriter, totals, completionsPerInterval, heapUsedPerInterval),
+                INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        try {
+            final long periodNanos = TimeUnit.SECONDS.toNanos(1) / settings.getRatePerSecond();
+            final long durationNanos = TimeUnit.SECONDS.toNanos(seconds);
+            final long start = System.nanoTime();
+            for (long i = 0; i * periodNanos < durationNanos; ++i) {
+                final long intendedStart = start + i * periodNanos;
+                long delay;
+                while ((delay = intendedStart - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(delay);
+                }
+                // the queue is unbounded: a saturated service shows up as growing latency, not as a slower generator
+                workers.execute(() -> execute(nextOperation(), intendedStart));
+            }
+            workers.shutdown();
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        } finally {
+            workers.shutdownNow();
+            sampler.shutdownNow();
+            sampler.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        // the tail of the last interval
+        sample(logWriter, totals, new ArrayList<>(), new ArrayList<>());
+        return new LoadResult(totals, errors.get(), seconds, completionsPerInterval, heapUsedPerInterval);
+    }
+
+    private synchronized void sample(HistogramLogWriter logWriter, Map<Operation, Histogram> totals,
+                                     List<Long> completionsPerInterval, List<Long> heapUsedPerInterval) {
+        long completions = 0;
+        for (Operation operation : Operation.values()) {
+            final Histogram interval = recorders.get(operation).getIntervalHistogram();
+            completions += interval.getTotalCount();
+            totals.get(operation).add(interval);
+            if (logWriter != null) {
+                interval.setTag(operation.name());
+                logWriter.outputIntervalHistogram(interval);
+            }
+        }
+        completionsPerInterval.add(completions);
+        heapUsedPerInterval.add(heapUsed.getAsLong());
+    }
+
+    private Operation nextOperation() {
+        final int total = settings.getTransferWeight() + settings.getGetWeight() + settings.getCreateWeight();
+        final int value = ThreadLocalRandom.current().nextInt(total);
+        if (value < settings.getTransferWeight()) {
+            return Operation.TRANSFER;
+        }
+        return value < settings.getTransferWeight() + settings.getGetWeight() ? Operation.GET : Operation.CREATE;
+    }
+
+    private void execute(Operation operation, long intendedStart) {
+        boolean succeeded;
+        try {
+            switch (operation) {
+                case TRANSFER:
+                    final long from = nextAccountId();
+                    long to;
+                    do {
+                        to = nextAccountId();
+                    } while (to == from);
+                    succeeded = post("/accounts/transfer", new TransferRequest(from, to, BigDecimal.ONE)) == 200;
+                    break;
+                case GET:
+                    succeeded = get("/accounts/" + nextAccountId()) == 200;
+                    break;
+                case CREATE:
+                    succeeded = post("/accounts/create", new CreateAccountRequest(BigDecimal.ZERO)) == 200;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown operation: " + operation);
+            }
+        } catch (IOException | RuntimeException e) {
+            succeeded = false;
+        }
+        recorders.get(operation).recordValue(Math.min(System.nanoTime() - intendedStart, HIGHEST_TRACKABLE_NANOS));
+        if (!succeeded) {
+            errors.incrementAndGet();
+        }
+    }
+
+    private long nextAccountId() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int hotAccounts = Math.max(1, (int) (accountIds.length * settings.getHotAccountShare()));
+        if (hotAccounts >= accountIds.length || random.nextDouble() < settings.getHotTrafficShare()) {
+            return accountIds[random.nextInt(hotAccounts)];
+        }
+        return accountIds[hotAccounts + random.nextInt(accountIds.length - hotAccounts)];
+    }
+
+    private long createAccount() throws IOException {
+        final HttpURLConnection connection = open("/accounts/create", "POST");
+        writeJson(connection, new CreateAccountRequest(INITIAL_AMOUNT));
+        if (connection.getResponseCode() != 200) {
+            throw new IOException("Failed to create account: " + connection.getResponseCode());
+        }
+        try (InputStream in = connection.getInputStream()) {
+            return objectMapper.readValue(in, CreateAccountResponse.class).getAccountId();
+        }
+    }
+
+    private int post(String path, Object request) throws IOException {
+        final HttpURLConnection connection = open(path, "POST");
+        writeJson(connection, request);
+        return consume(connection);
+    }
+
+    private int get(String path) throws IOException {
+        return consume(open(path, "GET"));
+    }
+
+    private HttpURLConnection open(String path, String method) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(settings.getBaseUrl() + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Accept", "application/json");
+        connection.setConnectTimeout((int) TimeUnit.SECONDS.toMillis(10));
+        connection.setReadTimeout((int) TimeUnit.SECONDS.toMillis(30));
+        return connection;
+    }
+
+    private void writeJson(HttpURLConnection connection, Object request) throws IOException {
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream out = connection.getOutputStream()) {
+            objectMapper.writeValue(out, request);
+        }
+    }
+
+    private static int consume(HttpURLConnection connection) throws IOException {
+        final int status = connection.getResponseCode();
+        // the body must be read to the end, otherwise the connection is not kept alive
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if (in != null) {
+                final byte[] buffer = new byte[1024];
+                while (in.read(buffer) >= 0) {
+                    // skip
+                }
+            }
+        }
+        return status;
+    }
+}
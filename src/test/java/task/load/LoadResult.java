@@ -0,0 +1,147 @@
+package task.load;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of a measured {@link LoadGenerator} run. Latencies are measured from the intended start of a request (its
+ * arrival time) rather than from its actual send time, so a stalled service is not hidden by a stalled generator.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class LoadResult {
+
+    private final Map<LoadGenerator.Operation, Histogram> histograms;
+    private final long errors;
+    private final int durationSeconds;
+    private final List<Long> completionsPerInterval;
+    private final List<Long> heapUsedPerInterval;
+
+    LoadResult(Map<LoadGenerator.Operation, Histogram> histograms, long errors, int durationSeconds,
+               List<Long> completionsPerInterval, List<Long> heapUsedPerInterval) {
+        this.histograms = new EnumMap<>(histograms);
+        this.errors = errors;
+        this.durationSeconds = durationSeconds;
+        this.completionsPerInterval = completionsPerInterval;
+        this.heapUsedPerInterval = heapUsedPerInterval;
+    }
+
+    /**
+     * Return latency histogram of the operation in nanoseconds.
+     *
+     * @param operation operation
+     * @return histogram
+     */
+    public Histogram getHistogram(LoadGenerator.Operation operation) {
+        return histograms.get(operation);
+    }
+
+    /**
+     * Return latency histogram of all the operations in nanoseconds.
+     *
+     * @return histogram
+     */
+    public Histogram getTotalHistogram() {
+        final Histogram total = new Histogram(LoadGenerator.HIGHEST_TRACKABLE_NANOS, LoadGenerator.SIGNIFICANT_DIGITS);
+        histograms.values().forEach(total::add);
+        return total;
+    }
+
+    /**
+     * Return number of failed requests: unexpected status or I/O error.
+     *
+     * @return number of errors
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Return number of completed requests, both successful and failed.
+     *
+     * @return number of requests
+     */
+    public long getCompleted() {
+        return getTotalHistogram().getTotalCount();
+    }
+
+    public double getErrorRate() {
+        final long completed = getCompleted();
+        return completed == 0 ? 0 : (double) errors / completed;
+    }
+
+    public double getAchievedRate() {
+        return (double) getCompleted() / durationSeconds;
+    }
+
+    /**
+     * Return relative drop of throughput between the first and the last third of the run: a positive value means the
+     * service couldn't keep up with the constant arrival rate by the end.
+     *
+     * @return throughput decay, e.g. {@code 0.1} for 10% drop, or NaN if the run is too short
+     */
+    public double getThroughputDecay() {
+        final double first = average(firstThird(completionsPerInterval));
+        final double last = average(lastThird(completionsPerInterval));
+        return first == 0 ? Double.NaN : 1 - last / first;
+    }
+
+    /**
+     * Return relative growth of the heap floor (min heap used) between the first and the last third of the run.
+     * Min over several intervals filters out garbage which hasn't been collected yet, so it approximates the live
+     * set. It is meaningful for soak runs only, which last long enough for several old generation collections.
+     *
+     * @return heap growth, e.g. {@code 0.5} for 50% growth, or NaN if the run is too short
+     */
+    public double getHeapGrowth() {
+        final long first = min(firstThird(heapUsedPerInterval));
+        final long last = min(lastThird(heapUsedPerInterval));
+        return first <= 0 ? Double.NaN : (double) last / first - 1;
+    }
+
+    private static List<Long> firstThird(List<Long> values) {
+        return values.size() < 3 ? Collections.emptyList() : values.subList(0, values.size() / 3);
+    }
+
+    private static List<Long> lastThird(List<Long> values) {
+        return values.size() < 3 ? Collections.emptyList() : values.subList(values.size() - values.size() / 3,
+                values.size());
+    }
+
+    private static double average(List<Long> values) {
+        return values.stream().mapToLong(Long::longValue).average().orElse(0);
+    }
+
+    private static long min(List<Long> values) {
+        return values.stream().mapToLong(Long::longValue).min().orElse(0);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder report = new StringBuilder();
+        report.append(String.format("completed: %d, errors: %d, rate: %.1f/s, throughput decay: %.3f, " +
+                        "heap growth: %.3f%n", getCompleted(), errors, getAchievedRate(), getThroughputDecay(),
+                getHeapGrowth()));
+        for (Map.Entry<LoadGenerator.Operation, Histogram> entry : histograms.entrySet()) {
+            appendLatencies(report, entry.getKey().name(), entry.getValue());
+        }
+        appendLatencies(report, "ALL", getTotalHistogram());
+        return report.toString();
+    }
+
+    private static void appendLatencies(StringBuilder report, String name, Histogram histogram) {
+        report.append(String.format("%-8s count: %8d, p50: %8.3f ms, p99: %8.3f ms, p99.9: %8.3f ms, max: %8.3f ms%n",
+                name, histogram.getTotalCount(), millis(histogram.getValueAtPercentile(50)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue())));
+    }
+
+    static double millis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
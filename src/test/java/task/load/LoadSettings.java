@@ -0,0 +1,208 @@
+package task.load;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Settings of {@link LoadGenerator}. Defaults describe a short run, every setting can be overridden by a
+ * {@code load.*} system property, see {@link #fromSystemProperties(String)}.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class LoadSettings {
+
+    private String baseUrl;
+    private int ratePerSecond = 50;
+    private int warmupSeconds = 3;
+    private int durationSeconds = 10;
+    private int threads = 16;
+    private int accounts = 100;
+    private double hotAccountShare = 0.2;
+    private double hotTrafficShare = 0.8;
+    private int transferWeight = 80;
+    private int getWeight = 15;
+    private int createWeight = 5;
+    private Path histogramLog = Paths.get("target", "load", "load.hlog");
+
+    /**
+     * Return settings with defaults overridden by system properties, e.g. {@code -Dload.durationSeconds=1800}.
+     *
+     * @param baseUrl url of the service unless {@code load.baseUrl} property is set
+     * @return settings
+     */
+    public static LoadSettings fromSystemProperties(String baseUrl) {
+        final LoadSettings settings = new LoadSettings();
+        return settings
+                .setBaseUrl(System.getProperty("load.baseUrl", baseUrl))
+                .setRatePerSecond(Integer.getInteger("load.ratePerSecond", settings.ratePerSecond))
+                .setWarmupSeconds(Integer.getInteger("load.warmupSeconds", settings.warmupSeconds))
+                .setDurationSeconds(Integer.getInteger("load.durationSeconds", settings.durationSeconds))
+                .setThreads(Integer.getInteger("load.threads", settings.threads))
+                .setAccounts(Integer.getInteger("load.accounts", settings.accounts))
+                .setHotAccountShare(doubleProperty("load.hotAccountShare", settings.hotAccountShare))
+                .setHotTrafficShare(doubleProperty("load.hotTrafficShare", settings.hotTrafficShare))
+                .setTransferWeight(Integer.getInteger("load.transferWeight", settings.transferWeight))
+                .setGetWeight(Integer.getInteger("load.getWeight", settings.getWeight))
+                .setCreateWeight(Integer.getInteger("load.createWeight", settings.createWeight))
+                .setHistogramLog(Paths.get(System.getProperty("load.histogramLog", settings.histogramLog.toString())));
+    }
+
+    static double doubleProperty(String name, double defaultValue) {
+        final String value = System.getProperty(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * @param baseUrl url of the service, e.g. {@code http://localhost:8080}
+     */
+    public LoadSettings setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+        return this;
+    }
+
+    public int getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    /**
+     * @param ratePerSecond constant arrival rate of requests regardless of response times
+     */
+    public LoadSettings setRatePerSecond(int ratePerSecond) {
+        this.ratePerSecond = ratePerSecond;
+        return this;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    /**
+     * @param warmupSeconds duration of the load which is not measured
+     */
+    public LoadSettings setWarmupSeconds(int warmupSeconds) {
+        this.warmupSeconds = warmupSeconds;
+        return this;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    /**
+     * @param durationSeconds duration of the measured load
+     */
+    public LoadSettings setDurationSeconds(int durationSeconds) {
+        this.durationSeconds = durationSeconds;
+        return this;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param threads max number of requests in flight, the others wait for a thread and the wait is measured
+     */
+    public LoadSettings setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public int getAccounts() {
+        return accounts;
+    }
+
+    /**
+     * @param accounts number of accounts created before the load
+     */
+    public LoadSettings setAccounts(int accounts) {
+        this.accounts = accounts;
+        return this;
+    }
+
+    public double getHotAccountShare() {
+        return hotAccountShare;
+    }
+
+    /**
+     * @param hotAccountShare share of hot accounts in range (0, 1]
+     */
+    public LoadSettings setHotAccountShare(double hotAccountShare) {
+        this.hotAccountShare = hotAccountShare;
+        return this;
+    }
+
+    public double getHotTrafficShare() {
+        return hotTrafficShare;
+    }
+
+    /**
+     * @param hotTrafficShare share of requests to hot accounts in range [0, 1], equal to {@code hotAccountShare}
+     *                        means no skew
+     */
+    public LoadSettings setHotTrafficShare(double hotTrafficShare) {
+        this.hotTrafficShare = hotTrafficShare;
+        return this;
+    }
+
+    public int getTransferWeight() {
+        return transferWeight;
+    }
+
+    public LoadSettings setTransferWeight(int transferWeight) {
+        this.transferWeight = transferWeight;
+        return this;
+    }
+
+    public int getGetWeight() {
+        return getWeight;
+    }
+
+    public LoadSettings setGetWeight(int getWeight) {
+        this.getWeight = getWeight;
+        return this;
+    }
+
+    public int getCreateWeight() {
+        return createWeight;
+    }
+
+    public LoadSettings setCreateWeight(int createWeight) {
+        this.createWeight = createWeight;
+        return this;
+    }
+
+    public Path getHistogramLog() {
+        return histogramLog;
+    }
+
+    /**
+     * @param histogramLog file the interval histograms of every operation are logged to in HdrHistogram log format
+     */
+    public LoadSettings setHistogramLog(Path histogramLog) {
+        this.histogramLog = histogramLog;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadSettings{" +
+                "baseUrl='" + baseUrl + '\'' +
+                ", ratePerSecond=" + ratePerSecond +
+                ", warmupSeconds=" + warmupSeconds +
+                ", durationSeconds=" + durationSeconds +
+                ", threads=" + threads +
+                ", accounts=" + accounts +
+                ", hotAccountShare=" + hotAccountShare +
+                ", hotTrafficShare=" + hotTrafficShare +
+                ", transferWeight=" + transferWeight +
+                ", getWeight=" + getWeight +
+                ", createWeight=" + createWeight +
+                ", histogramLog=" + histogramLog +
+                '}';
+    }
+}
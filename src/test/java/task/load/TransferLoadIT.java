@@ -0,0 +1,60 @@
+package task.load;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Applies {@link LoadGenerator} load to the service started in the same JVM and fails the build if the service
+ * breaches its SLOs. By default it is a short smoke run, a soak run is just a longer one, e.g.
+ * {@code mvn -P integration-test verify -Dload.durationSeconds=1800}; throughput decay and heap growth are checked
+ * for runs of at least {@code load.soak.minSeconds}.
+ *
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "account.events.sampling.transfer=0")
+public class TransferLoadIT {
+
+    private static final Logger log = LoggerFactory.getLogger(TransferLoadIT.class);
+
+    private static final long SLO_P99_MILLIS = Long.getLong("load.slo.p99Millis", 250);
+    private static final double SLO_ERROR_RATE = LoadSettings.doubleProperty("load.slo.errorRate", 0);
+    private static final double SLO_THROUGHPUT_DECAY = LoadSettings.doubleProperty("load.slo.throughputDecay", 0.1);
+    private static final double SLO_HEAP_GROWTH = LoadSettings.doubleProperty("load.slo.heapGrowth", 0.5);
+    private static final int SOAK_MIN_SECONDS = Integer.getInteger("load.soak.minSeconds", 300);
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    public void test_run_it_must_meet_slo_when_load_is_applied_at_constant_rate() throws Exception {
+        // Given
+        final LoadSettings settings = LoadSettings.fromSystemProperties("http://localhost:" + port);
+        log.info("Applying load: {}", settings);
+
+        // When
+        final LoadResult result = new LoadGenerator(settings).run();
+
+        // Then
+        log.info("Load result:\n{}", result);
+        assertThat(result.getCompleted())
+                .isEqualTo((long) settings.getRatePerSecond() * settings.getDurationSeconds());
+        assertThat(result.getErrorRate()).isLessThanOrEqualTo(SLO_ERROR_RATE);
+        assertThat(result.getTotalHistogram().getValueAtPercentile(99))
+                .isLessThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(SLO_P99_MILLIS));
+        if (settings.getDurationSeconds() >= SOAK_MIN_SECONDS) {
+            assertThat(result.getThroughputDecay()).isLessThanOrEqualTo(SLO_THROUGHPUT_DECAY);
+            assertThat(result.getHeapGrowth()).isLessThanOrEqualTo(SLO_HEAP_GROWTH);
+        }
+    }
+}
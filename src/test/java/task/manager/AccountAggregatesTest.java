@@ -0,0 +1,189 @@
+package task.manager;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import task.manager.AccountAggregates.Snapshot;
+import task.model.Account;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class AccountAggregatesTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AccountAggregates aggregates =
+            new AccountAggregates(Arrays.asList(new BigDecimal("10"), new BigDecimal("100")), registry);
+
+    @Test
+    public void test_created_it_must_count_account_in_total_and_bucket() throws Exception {
+        // When
+        aggregates.created(new BigDecimal("0.5"));
+        aggregates.created(new BigDecimal("10"));
+        aggregates.created(new BigDecimal("123.45678901"));
+
+        // Then
+        final Snapshot snapshot = aggregates.snapshot();
+        assertThat(snapshot.getCount()).isEqualTo(3);
+        assertThat(snapshot.getTotal()).isEqualByComparingTo("133.95678901");
+        assertThat(snapshot.getBuckets()).extracting(AccountAggregates.Bucket::getCount).containsExactly(1L, 1L, 1L);
+        assertThat(snapshot.getBuckets()).extracting(AccountAggregates.Bucket::getUpperBound)
+                .containsExactly(new BigDecimal("10"), new BigDecimal("100"), null);
+        assertThat(registry.get("account.aggregates.total").gauge().value()).isEqualTo(133.95678901);
+        assertThat(registry.get("account.aggregates.bucket").tag("below", "+Inf").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_transferred_it_must_move_accounts_between_buckets_and_keep_total() throws Exception {
+        // Given
+        aggregates.created(new BigDecimal("50"));
+        aggregates.created(new BigDecimal("5"));
+
+        // When
+        aggregates.transferred(new BigDecimal("50"), new BigDecimal("1.5"), new BigDecimal("5"), new BigDecimal("53.5"));
+
+        // Then
+        final Snapshot snapshot = aggregates.snapshot();
+        assertThat(snapshot.getCount()).isEqualTo(2);
+        assertThat(snapshot.getTotal()).isEqualByComparingTo("55");
+        assertThat(snapshot.getBuckets()).extracting(AccountAggregates.Bucket::getCount).containsExactly(1L, 1L, 0L);
+    }
+
+    @Test
+    public void test_changed_it_must_change_total_by_difference() throws Exception {
+        // Given
+        aggregates.created(new BigDecimal("200.25"));
+
+        // When
+        aggregates.changed(new BigDecimal("200.25"), new BigDecimal("0.00000001"));
+
+        // Then
+        final Snapshot snapshot = aggregates.snapshot();
+        assertThat(snapshot.getTotal()).isEqualByComparingTo("0.00000001");
+        assertThat(snapshot.getBuckets()).extracting(AccountAggregates.Bucket::getCount).containsExactly(1L, 0L, 0L);
+    }
+
+    @Test
+    public void test_scan_it_must_be_consistent_with_maintained_aggregates_and_reset_them() throws Exception {
+        // Given
+        aggregates.created(new BigDecimal("7"));
+        aggregates.created(new BigDecimal("700"));
+        final AccountAggregates.Scan scan = aggregates.newScan();
+        scan.accept(new Account().setId(1).setAmount(new BigDecimal("7.00000000")));
+        scan.accept(new Account().setId(2).setAmount(new BigDecimal("700")));
+        final AccountAggregates.Scan otherScan = aggregates.newScan();
+        otherScan.accept(new Account().setId(3).setAmount(new BigDecimal("70")));
+
+        // When, then
+        assertThat(aggregates.snapshot().isConsistentWith(scan.toSnapshot())).isTrue();
+        assertThat(aggregates.snapshot().isConsistentWith(otherScan.toSnapshot())).isFalse();
+
+        aggregates.reset(otherScan.toSnapshot());
+        assertThat(aggregates.snapshot().isConsistentWith(otherScan.toSnapshot())).isTrue();
+    }
+
+    @Test
+    public void test_whilePaused_it_must_wait_for_announced_change_to_be_counted() throws Exception {
+        // Given
+        aggregates.beginChange();
+        final CompletableFuture<Long> paused = CompletableFuture.supplyAsync(() ->
+                aggregates.whilePaused(() -> aggregates.snapshot().getCount()));
+        Thread.sleep(100);
+        final boolean finishedBeforeChange = paused.isDone();
+
+        // When
+        aggregates.created(BigDecimal.TEN);
+        aggregates.endChange();
+
+        // Then
+        assertThat(finishedBeforeChange).isFalse();
+        assertThat(paused.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+    }
+
+    @Test
+    public void test_beginChange_it_must_wait_for_pause_to_finish() throws Exception {
+        // Given
+        final CountDownLatch pausing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompletableFuture<Long> paused = CompletableFuture.supplyAsync(() -> aggregates.whilePaused(() -> {
+            pausing.countDown();
+            await(release);
+            return aggregates.snapshot().getCount();
+        }));
+        assertThat(pausing.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // When
+        final CompletableFuture<Void> change = CompletableFuture.runAsync(() -> {
+            aggregates.beginChange();
+            aggregates.created(BigDecimal.TEN);
+            aggregates.endChange();
+        });
+        Thread.sleep(100);
+        final boolean changedWhilePaused = change.isDone();
+        release.countDown();
+
+        // Then
+        assertThat(changedWhilePaused).isFalse();
+        assertThat(paused.get(10, TimeUnit.SECONDS)).isZero();
+        change.get(10, TimeUnit.SECONDS);
+        assertThat(aggregates.snapshot().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_beginChange_it_must_not_wait_for_pause_when_thread_has_announced_change() throws Exception {
+        // Given
+        aggregates.beginChange();
+        final CompletableFuture<Long> paused = CompletableFuture.supplyAsync(() ->
+                aggregates.whilePaused(() -> aggregates.snapshot().getCount()));
+        Thread.sleep(100);
+
+        // When: the second change of the same transaction
+        aggregates.beginChange();
+        aggregates.created(BigDecimal.TEN);
+        aggregates.endChange();
+        aggregates.endChange();
+
+        // Then
+        assertThat(paused.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void test_disabled_it_must_ignore_updates() throws Exception {
+        // Given
+        final AccountAggregates disabled = AccountAggregates.disabled();
+
+        // When
+        disabled.created(BigDecimal.TEN);
+        disabled.changed(BigDecimal.TEN, BigDecimal.ONE);
+
+        // Then
+        assertThat(disabled.isEnabled()).isFalse();
+        assertThat(disabled.snapshot().getCount()).isZero();
+    }
+
+    @Test
+    public void test_constructor_it_must_throw_IllegalArgumentException_when_bounds_are_not_ascending() throws Exception {
+        // When
+        final Throwable exception = catchThrowable(() -> new AccountAggregates(
+                Arrays.asList(BigDecimal.TEN, BigDecimal.ONE), registry));
+
+        // Then
+        assertThat(exception).isInstanceOf(IllegalArgumentException.class);
+    }
+}
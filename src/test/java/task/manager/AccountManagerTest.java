@@ -11,8 +11,15 @@ import task.dao.AccountDao;
 import task.exception.LimitExceededException;
 import task.exception.NoSuchAccountException;
 import task.model.Account;
+import task.model.BalanceDiscrepancy;
+import task.model.HistoryCursor;
+import task.model.IdempotencyKey;
+import task.model.JournalEntry;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
@@ -111,4 +118,252 @@ public class AccountManagerTest {
         assertThat(accountDao.select(account1.getId())).isEqualTo(new Account().setId(account1.getId()).setAmount(new BigDecimal("113.45")));
         assertThat(accountDao.select(account2.getId())).isEqualTo(new Account().setId(account2.getId()).setAmount(new BigDecimal("688.90")));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void test_transferWithRowLocks_it_must_transfer_when_accounts_exist_and_money_is_enough() throws Exception {
+        // Given
+        final Account fromAccount = new Account().setAmount(BigDecimal.TEN);
+        accountDao.insert(fromAccount);
+        final Account toAccount = new Account().setAmount(BigDecimal.ONE);
+        accountDao.insert(toAccount);
+
+        // When: the destination account has lower id, so it is locked first
+        accountManager.transferWithRowLocks(toAccount.getId(), fromAccount.getId(), BigDecimal.ONE);
+        accountManager.transferWithRowLocks(fromAccount.getId(), toAccount.getId(), new BigDecimal("4"));
+
+        // Then
+        assertThat(accountDao.select(fromAccount.getId()).getAmount()).isEqualByComparingTo("7");
+        assertThat(accountDao.select(toAccount.getId()).getAmount()).isEqualByComparingTo("4");
+    }
+
+    @Test
+    public void test_transferWithRowLocks_it_must_not_change_accounts_when_limit_exceeded() throws Exception {
+        // Given
+        final Account fromAccount = new Account().setAmount(BigDecimal.ONE);
+        accountDao.insert(fromAccount);
+        final Account toAccount = new Account().setAmount(BigDecimal.ONE);
+        accountDao.insert(toAccount);
+
+        // When
+        final Throwable exception = catchThrowable(() ->
+                accountManager.transferWithRowLocks(fromAccount.getId(), toAccount.getId(), BigDecimal.TEN));
+
+        // Then
+        assertThat(exception)
+                .isInstanceOf(LimitExceededException.class)
+                .hasMessageStartingWith("Failed to withdraw from account: " + fromAccount.getId());
+        assertThat(accountDao.select(fromAccount.getId()).getAmount()).isEqualByComparingTo("1");
+        assertThat(accountDao.select(toAccount.getId()).getAmount()).isEqualByComparingTo("1");
+    }
+
+    @Test
+    public void test_transferWithRowLocks_it_must_throw_NoSuchAccountException_when_account_does_not_exist() throws Exception {
+        // Given, when
+        final Throwable exception = catchThrowable(() -> accountManager.transferWithRowLocks(1, 400, BigDecimal.ONE));
+
+        // Then
+        assertThat(exception)
+                .isInstanceOf(NoSuchAccountException.class)
+                .hasMessage("No such account: 400");
+        assertThat(accountDao.select(1).getAmount()).isEqualByComparingTo("123.45");
+    }
+
+    @Test
+    public void test_forEachAccount_it_must_pass_all_accounts_ordered_by_id() throws Exception {
+        // Given
+        final List<Account> accounts = new ArrayList<>();
+
+        // When
+        final long count = accountManager.forEachAccount(accounts::add);
+
+        // Then
+        assertThat(count).isEqualTo(accounts.size());
+        assertThat(accounts).isSortedAccordingTo(Comparator.comparingLong(Account::getId));
+        assertThat(accounts).containsAll(accountDao.selectPage(0, 1000));
+    }
+
+    @Test
+    public void test_transfer_it_must_rollback_transaction_when_idempotency_key_has_been_already_recorded() throws Exception {
+        // Given
+        final Account fromAccount = accountDao.select(1);
+        final Account toAccount = accountDao.select(2);
+        final BigDecimal fromAmount = fromAccount.getAmount();
+        accountManager.recordIdempotencyKey(newKey("duplicate", 0));
+
+        // When
+        final Throwable exception = catchThrowable(() -> accountManager.transfer(fromAccount, toAccount,
+                BigDecimal.ONE, newKey("duplicate", 0)));
+
+        // Then
+        assertThat(exception).isNotNull();
+        assertThat(accountDao.select(1).getAmount()).isEqualByComparingTo(fromAmount);
+        accountManager.forgetIdempotencyKey("duplicate");
+    }
+
+    @Test
+    public void test_purgeIdempotencyKeys_it_must_delete_expired_and_oldest_keys_beyond_limit() throws Exception {
+        // Given
+        for (int i = 1; i <= 5; ++i) {
+            accountManager.recordIdempotencyKey(newKey("purge-" + i, i));
+        }
+
+        // When
+        final int deleted = accountManager.purgeIdempotencyKeys(2, 2);
+
+        // Then
+        assertThat(deleted).isEqualTo(3);
+        assertThat(accountManager.findIdempotencyKey("purge-1")).isNull();
+        assertThat(accountManager.findIdempotencyKey("purge-3")).isNull();
+        assertThat(accountManager.findIdempotencyKey("purge-4")).isNotNull();
+        assertThat(accountManager.findIdempotencyKey("purge-5")).isNotNull();
+        accountManager.purgeIdempotencyKeys(Long.MAX_VALUE, 0);
+    }
+
+    @Test
+    public void test_reconcileRange_it_must_not_report_discrepancies_when_all_changes_are_journaled() throws Exception {
+        // Given
+        final Account first = new Account().setAmount(new BigDecimal("10"));
+        final Account second = new Account().setAmount(new BigDecimal("0.5"));
+        accountManager.create(first);
+        accountManager.create(second);
+        accountManager.transfer(accountDao.select(first.getId()), accountDao.select(second.getId()), BigDecimal.ONE);
+        accountManager.deposit(accountDao.select(first.getId()), new BigDecimal("0.25"));
+        final List<BalanceDiscrepancy> discrepancies = new ArrayList<>();
+
+        // When
+        final long count = accountManager.reconcileRange(first.getId(), second.getId() + 1, discrepancies::add);
+
+        // Then
+        assertThat(count).isEqualTo(2);
+        assertThat(discrepancies).isEmpty();
+        assertThat(accountManager.recheck(first.getId())).isNull();
+    }
+
+    @Test
+    public void test_reconcileRange_it_must_report_discrepancy_when_balance_is_changed_bypassing_journal() throws Exception {
+        // Given
+        final Account account = new Account().setAmount(new BigDecimal("3"));
+        accountManager.create(account);
+        accountDao.update(new Account().setId(account.getId()).setAmount(new BigDecimal("5")));
+        final List<BalanceDiscrepancy> discrepancies = new ArrayList<>();
+
+        // When
+        accountManager.reconcileRange(account.getId(), account.getId() + 1, discrepancies::add);
+        final BalanceDiscrepancy recheck = accountManager.recheck(account.getId());
+
+        // Then
+        assertThat(discrepancies).hasSize(1);
+        assertThat(discrepancies.get(0).getAccountId()).isEqualTo(account.getId());
+        assertThat(discrepancies.get(0).getActual()).isEqualByComparingTo("5");
+        assertThat(discrepancies.get(0).getExpected()).isEqualByComparingTo("3");
+        assertThat(recheck).isNotNull();
+        assertThat(recheck.getActual()).isEqualByComparingTo("5");
+        accountDao.update(account);
+    }
+
+    @Test
+    public void test_checkpointRange_it_must_keep_balances_recomputed_from_checkpoint_and_following_entries() throws Exception {
+        // Given
+        final Account account = new Account().setAmount(new BigDecimal("4"));
+        accountManager.create(account);
+        accountManager.deposit(accountDao.select(account.getId()), new BigDecimal("1.5"));
+
+        // When
+        final int archived = accountManager.checkpointRange(account.getId(), account.getId() + 1, 0);
+        accountManager.deposit(accountDao.select(account.getId()), new BigDecimal("2"));
+        accountManager.checkpointRange(account.getId(), account.getId() + 1, 0);
+        accountManager.deposit(accountDao.select(account.getId()), new BigDecimal("0.5"));
+        final List<BalanceDiscrepancy> discrepancies = new ArrayList<>();
+        accountManager.reconcileRange(account.getId(), account.getId() + 1, discrepancies::add);
+
+        // Then
+        assertThat(archived).isZero();
+        assertThat(discrepancies).isEmpty();
+        assertThat(accountManager.recheck(account.getId())).isNull();
+        assertThat(accountManager.getHistory(account.getId(), 0, Long.MAX_VALUE, null, 10)).hasSize(4);
+        // the opening entry of the initial data has id 0
+        assertThat(accountManager.recheck(1)).isNull();
+    }
+
+    @Test
+    public void test_checkpointRange_it_must_archive_covered_entries_except_last_one() throws Exception {
+        // Given
+        final Account account = new Account().setAmount(new BigDecimal("1"));
+        accountManager.create(account);
+        final long created = accountManager.getHistory(account.getId(), 0, Long.MAX_VALUE, null, 1).get(0)
+                .getCreatedAt();
+        Thread.sleep(2);
+        accountManager.deposit(accountDao.select(account.getId()), new BigDecimal("2"));
+        accountManager.deposit(accountDao.select(account.getId()), new BigDecimal("3"));
+
+        // When
+        final int archived = accountManager.checkpointRange(account.getId(), account.getId() + 1, Long.MAX_VALUE);
+        final List<BalanceDiscrepancy> discrepancies = new ArrayList<>();
+        accountManager.reconcileRange(account.getId(), account.getId() + 1, discrepancies::add);
+
+        // Then
+        assertThat(archived).isEqualTo(2);
+        assertThat(discrepancies).isEmpty();
+        assertThat(accountManager.getHistory(account.getId(), 0, Long.MAX_VALUE, null, 10)).hasSize(1);
+        assertThat(accountManager.getBalanceAt(account.getId(), created)).isEqualByComparingTo("1");
+        assertThat(accountManager.getBalanceAt(account.getId(), Long.MAX_VALUE)).isEqualByComparingTo("6");
+    }
+
+    @Test
+    public void test_getHistory_it_must_return_changes_page_by_page_with_counterparty_and_balance() throws Exception {
+        // Given
+        final Account account = new Account().setAmount(new BigDecimal("10"));
+        final Account counterparty = new Account().setAmount(BigDecimal.ZERO);
+        accountManager.create(account);
+        accountManager.create(counterparty);
+        for (int i = 0; i < 3; ++i) {
+            accountManager.transfer(accountDao.select(account.getId()), accountDao.select(counterparty.getId()),
+                    BigDecimal.ONE);
+        }
+
+        // When
+        final List<JournalEntry> firstPage = accountManager.getHistory(account.getId(), 0, Long.MAX_VALUE, null, 3);
+        final List<JournalEntry> secondPage = accountManager.getHistory(account.getId(), 0, Long.MAX_VALUE,
+                HistoryCursor.after(firstPage.get(2)), 3);
+
+        // Then
+        assertThat(firstPage).extracting(JournalEntry::getCounterpartyId).containsExactly(null, counterparty.getId(), counterparty.getId());
+        assertThat(firstPage).extracting(JournalEntry::getAccountId).containsOnly(account.getId());
+        assertThat(firstPage.get(0).getAmount()).isEqualByComparingTo("10");
+        assertThat(firstPage.get(1).getAmount()).isEqualByComparingTo("-1");
+        assertThat(firstPage.get(2).getBalance()).isEqualByComparingTo("8");
+        assertThat(secondPage).hasSize(1);
+        assertThat(secondPage.get(0).getBalance()).isEqualByComparingTo("7");
+        assertThat(secondPage.get(0).getId()).isGreaterThan(firstPage.get(2).getId());
+    }
+
+    @Test
+    public void test_getHistory_it_must_throw_NoSuchAccountException_when_account_does_not_exist() throws Exception {
+        // When
+        final Throwable exception = catchThrowable(() -> accountManager.getHistory(500, 0, Long.MAX_VALUE, null, 10));
+
+        // Then
+        assertThat(exception).isInstanceOf(NoSuchAccountException.class).hasMessage("No such account: 500");
+    }
+
+    @Test
+    public void test_getBalanceAt_it_must_return_balance_after_last_change_made_by_time() throws Exception {
+        // Given
+        final Account account = new Account().setAmount(new BigDecimal("5"));
+        accountManager.create(account);
+        final long created = accountManager.getHistory(account.getId(), 0, Long.MAX_VALUE, null, 1).get(0)
+                .getCreatedAt();
+        Thread.sleep(2);
+        accountManager.deposit(accountDao.select(account.getId()), new BigDecimal("2.5"));
+
+        // When, then
+        assertThat(accountManager.getBalanceAt(account.getId(), created - 1)).isEqualByComparingTo("0");
+        assertThat(accountManager.getBalanceAt(account.getId(), created)).isEqualByComparingTo("5");
+        assertThat(accountManager.getBalanceAt(account.getId(), Long.MAX_VALUE)).isEqualByComparingTo("7.5");
+    }
+
+    private static IdempotencyKey newKey(String id, long createdAt) {
+        return new IdempotencyKey().setId(id).setFromAccountId(1).setToAccountId(2).setAmount(BigDecimal.ONE)
+                .setCreatedAt(createdAt);
+    }
+}
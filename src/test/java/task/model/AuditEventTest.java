@@ -0,0 +1,55 @@
+package task.model;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class AuditEventTest {
+
+    @Test
+    public void test_constructor_it_must_keep_reason_when_it_fits() throws Exception {
+        // Given
+        final String reason = StringUtils.repeat('a', AuditEvent.MAX_REASON_BYTES);
+
+        // When
+        final AuditEvent event = event(reason);
+
+        // Then
+        assertThat(event.getReason()).isEqualTo(reason);
+    }
+
+    @Test
+    public void test_constructor_it_must_truncate_reason_to_max_bytes_when_it_is_too_long() throws Exception {
+        // When
+        final AuditEvent event = event(StringUtils.repeat('a', AuditEvent.MAX_REASON_BYTES + 1));
+
+        // Then
+        assertThat(event.getReason()).hasSize(AuditEvent.MAX_REASON_BYTES);
+    }
+
+    @Test
+    public void test_constructor_it_must_truncate_multibyte_reason_between_code_points() throws Exception {
+        // Given: a 3-byte character and then 4-byte characters, each of them is a surrogate pair
+        final String reason = "\u20ac" + StringUtils.repeat("\ud83d\ude00", AuditEvent.MAX_REASON_BYTES / 4);
+
+        // When
+        final AuditEvent event = event(reason);
+
+        // Then
+        final byte[] bytes = event.getReason().getBytes(StandardCharsets.UTF_8);
+        assertThat(bytes.length).isEqualTo(AuditEvent.MAX_REASON_BYTES - 1);
+        assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo(event.getReason());
+        assertThat(Character.isHighSurrogate(event.getReason().charAt(event.getReason().length() - 1))).isFalse();
+    }
+
+    private static AuditEvent event(String reason) {
+        return new AuditEvent(AuditEvent.Type.REJECT, 1, 2, BigDecimal.ONE, reason, 0);
+    }
+}
@@ -0,0 +1,69 @@
+package task.rest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import task.manager.AccountAggregates;
+import task.manager.AccountManager;
+import task.model.Account;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class AccountAggregatesEndpointTest {
+
+    private final AccountAggregates aggregates =
+            new AccountAggregates(Collections.singletonList(BigDecimal.TEN), new SimpleMeterRegistry());
+    @Mock
+    private AccountManager accountManager;
+    private AccountAggregatesEndpoint endpoint;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        when(accountManager.inReadOnlyTransaction(any())).thenAnswer(inv -> ((Supplier<?>) inv.getArgument(0)).get());
+        when(accountManager.forEachAccount(any())).thenAnswer(inv -> {
+            ((Consumer<Account>) inv.getArgument(0)).accept(new Account().setId(1).setAmount(new BigDecimal("20")));
+            return 1L;
+        });
+        endpoint = new AccountAggregatesEndpoint(aggregates, Collections.singletonList(accountManager));
+        aggregates.created(new BigDecimal("5"));
+    }
+
+    @Test
+    public void test_reconcile_it_must_report_inconsistency_and_keep_maintained_values_by_default() throws Exception {
+        // When
+        final AccountAggregatesEndpoint.Reconciliation reconciliation = endpoint.reconcile();
+
+        // Then
+        assertThat(reconciliation.isConsistent(), is(false));
+        assertThat(reconciliation.isRepaired(), is(false));
+        assertThat(aggregates.snapshot().getTotal().compareTo(new BigDecimal("5")), is(0));
+    }
+
+    @Test
+    public void test_reconcile_it_must_replace_inconsistent_values_by_scanned_ones_when_repair_is_requested() throws Exception {
+        // When
+        final AccountAggregatesEndpoint.Reconciliation reconciliation = endpoint.reconcile("repair");
+
+        // Then
+        assertThat(reconciliation.isConsistent(), is(false));
+        assertThat(reconciliation.isRepaired(), is(true));
+        assertThat(aggregates.snapshot().isConsistentWith(reconciliation.getScanned()), is(true));
+        assertThat(endpoint.reconcile("repair").isRepaired(), is(false));
+    }
+}
@@ -75,4 +75,16 @@ public class AccountExceptionMapperTest {
         assertThat(response.getStatusInfo(), is(Response.Status.INTERNAL_SERVER_ERROR));
         assertThat(response.getEntity(), is("test message"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void test_response_it_must_map_subclass_of_IllegalArgumentException_to_BAD_REQUEST() throws Exception {
+        // Given
+        final Exception exception = new NumberFormatException("test message");
+
+        // When
+        final Response response = exceptionMapper.toResponse(exception);
+
+        // Then
+        assertThat(response.getStatusInfo(), is(Response.Status.BAD_REQUEST));
+    }
+}
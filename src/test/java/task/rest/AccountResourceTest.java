@@ -3,23 +3,51 @@ package task.rest;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import task.api.CreateAccountRequest;
 import task.api.CreateAccountResponse;
 import task.api.GetAccountResponse;
+import task.api.GetAccountsResponse;
+import task.api.GetBalanceResponse;
+import task.api.GetTransferResponse;
+import task.api.GetTransfersResponse;
 import task.api.TransferRequest;
 import task.exception.LimitExceededException;
 import task.exception.NoSuchAccountException;
 import task.model.Account;
+import task.model.HistoryCursor;
+import task.model.JournalEntry;
+import task.model.TransferResult;
 import task.service.AccountService;
+import task.service.BoundedExecutor;
 
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.Providers;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 /**
@@ -31,11 +59,18 @@ public class AccountResourceTest {
     private AccountResource accountResource;
     @Mock
     private AccountService accountService;
+    @Mock
+    private BoundedExecutor transferExecutor;
+    @Mock
+    private AsyncResponse asyncResponse;
+    @Mock
+    private Providers providers;
     private Account account;
 
     @Before
     public void setUp() throws Exception {
-        accountResource = new AccountResource(accountService);
+        lenient().when(providers.getExceptionMapper(any())).thenAnswer(invocation -> new AccountExceptionMapper());
+        accountResource = new AccountResource(accountService, transferExecutor, providers);
         account = new Account().setId(1).setAmount(BigDecimal.TEN);
     }
 
@@ -88,22 +123,290 @@ public class AccountResourceTest {
     public void test_transfer_it_must_return_ok_response_when_service_transfers() throws Exception {
         // Given
         final TransferRequest request = new TransferRequest(1, 2, BigDecimal.TEN);
+        when(accountService.tryTransfer(1, 2, BigDecimal.TEN)).thenReturn(TransferResult.transferred());
 
         // When
-        final Response response = accountResource.transfer(request);
+        final Response response = accountResource.transfer(request, null);
 
         // Then
         assertThat(response.getStatusInfo(), is(Response.Status.OK));
         assertThat(response.getEntity(), is("OK"));
     }
 
-    @Test(expected = LimitExceededException.class) // Then
+    @Test
+    public void test_transfer_it_must_return_replayed_header_when_service_replays_idempotent_transfer() throws Exception {
+        // Given
+        final TransferRequest request = new TransferRequest(1, 2, BigDecimal.TEN);
+        when(accountService.transfer(1, 2, BigDecimal.TEN, "key")).thenReturn(false);
+
+        // When
+        final Response response = accountResource.transfer(request, "key");
+
+        // Then
+        assertThat(response.getStatusInfo(), is(Response.Status.OK));
+        assertThat(response.getHeaderString(AccountResource.IDEMPOTENT_REPLAYED), is("true"));
+    }
+
+    @Test
+    public void test_transfer_it_must_return_bad_request_response_when_service_rejects_transfer() throws Exception {
+        // Given
+        final TransferRequest request = new TransferRequest(1, 2, BigDecimal.TEN);
+        when(accountService.tryTransfer(1, 2, BigDecimal.TEN))
+                .thenReturn(TransferResult.rejected(new LimitExceededException(1, BigDecimal.TEN, BigDecimal.ONE)));
+
+        // When
+        final Response response = accountResource.transfer(request, null);
+
+        // Then
+        assertThat(response.getStatusInfo(), is(Response.Status.BAD_REQUEST));
+        assertThat(response.getEntity(), is("Failed to withdraw from account: 1: delta: 10 is greater than amount: 1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class) // Then
     public void test_transfer_it_must_throw_exception_when_service_throws_exception() throws Exception {
         // Given
         final TransferRequest request = new TransferRequest(1, 2, BigDecimal.TEN);
-        doThrow(LimitExceededException.class).when(accountService).transfer(request.getFrom(), request.getTo(), request.getAmount());
+        doThrow(IllegalArgumentException.class).when(accountService).tryTransfer(request.getFrom(), request.getTo(), request.getAmount());
+
+        // When
+        accountResource.transfer(request, null);
+    }
+
+    @Test
+    public void test_transferAsync_it_must_resume_with_ok_response_when_service_transfers() throws Exception {
+        // Given
+        final TransferRequest request = new TransferRequest(1, 2, BigDecimal.TEN);
+        when(accountService.tryTransfer(1, 2, BigDecimal.TEN)).thenReturn(TransferResult.transferred());
+        runTasksInPlace();
+
+        // When
+        accountResource.transferAsync(request, null, asyncResponse);
+
+        // Then
+        final ArgumentCaptor<Response> response = ArgumentCaptor.forClass(Response.class);
+        verify(accountService).tryTransfer(1, 2, BigDecimal.TEN);
+        verify(asyncResponse).resume(response.capture());
+        assertThat(response.getValue().getStatusInfo(), is(Response.Status.OK));
+        assertThat(response.getValue().getEntity(), is("OK"));
+    }
+
+    @Test
+    public void test_transferAsync_it_must_resume_with_exception_when_service_throws_exception() throws Exception {
+        // Given
+        final TransferRequest request = new TransferRequest(1, 2, BigDecimal.TEN);
+        final IllegalStateException exception = new IllegalStateException("database is unavailable");
+        doThrow(exception).when(accountService).tryTransfer(request.getFrom(), request.getTo(), request.getAmount());
+        runTasksInPlace();
+
+        // When
+        accountResource.transferAsync(request, null, asyncResponse);
+
+        // Then
+        verify(asyncResponse).resume(exception);
+    }
+
+    @Test
+    public void test_transferAsync_it_must_resume_with_service_unavailable_response_when_executor_rejects() throws Exception {
+        // Given
+        final TransferRequest request = new TransferRequest(1, 2, BigDecimal.TEN);
+        doThrow(RejectedExecutionException.class).when(transferExecutor).execute(any(Runnable.class));
+
+        // When
+        accountResource.transferAsync(request, null, asyncResponse);
+
+        // Then
+        final ArgumentCaptor<Response> response = ArgumentCaptor.forClass(Response.class);
+        verify(asyncResponse).resume(response.capture());
+        assertThat(response.getValue().getStatusInfo(), is(Response.Status.SERVICE_UNAVAILABLE));
+        assertThat(response.getValue().getHeaderString(HttpHeaders.RETRY_AFTER), is(AccountResource.RETRY_AFTER_SECONDS));
+        verifyZeroInteractions(accountService);
+    }
+
+    private void runTasksInPlace() {
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(transferExecutor).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void test_transferStream_it_must_transfer_every_item_and_stream_result_per_item() throws Exception {
+        // Given
+        when(accountService.tryTransfer(anyLong(), anyLong(), any())).thenReturn(TransferResult.transferred());
+        when(accountService.tryTransfer(1, 2, new BigDecimal("100"))).thenReturn(
+                TransferResult.rejected(new LimitExceededException(1, new BigDecimal("100"), BigDecimal.TEN)));
+        final String body = "{\"from\":1,\"to\":2,\"amount\":10}\n" +
+                "{\"from\":1,\"to\":2,\"amount\":100}\n" +
+                "{\"from\":1,\"to\":2}\n" +
+                "{\"to\":2,\"amount\":10}\n" +
+                "{\"to\":3,\"from\":2,\"amount\":\"0.5\",\"comment\":{\"text\":\"ignored\"}}\n";
+
+        // When
+        final String results = transferStream(body);
+
+        // Then
+        assertThat(results, is("{\"index\":0,\"status\":\"OK\"}\n" +
+                "{\"index\":1,\"status\":\"BAD_REQUEST\",\"message\":\"Failed to withdraw from account: 1: " +
+                "delta: 100 is greater than amount: 10\"}\n" +
+                "{\"index\":2,\"status\":\"BAD_REQUEST\",\"message\":\"amount is null\"}\n" +
+                "{\"index\":3,\"status\":\"BAD_REQUEST\",\"message\":\"from is null\"}\n" +
+                "{\"index\":4,\"status\":\"OK\"}\n"));
+        verify(accountService, never()).tryTransfer(0, 2, BigDecimal.TEN);
+        verify(accountService).tryTransfer(1, 2, new BigDecimal("10"));
+        verify(accountService).tryTransfer(2, 3, new BigDecimal("0.5"));
+    }
+
+    @Test
+    public void test_transferStream_it_must_flush_results_before_waiting_for_more_input() throws Exception {
+        // Given
+        when(accountService.tryTransfer(1, 2, BigDecimal.TEN)).thenReturn(TransferResult.transferred());
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final String[] outputBeforeSecondChunk = new String[1];
+        final InputStream input = new InputStream() {
+            private final byte[][] chunks = {
+                    "{\"from\":1,\"to\":2,\"amount\":10}\n".getBytes(StandardCharsets.UTF_8),
+                    "{\"from\":1,\"to\":2,\"amount\":10}\n".getBytes(StandardCharsets.UTF_8)};
+            private int chunk;
+            private boolean read;
+
+            @Override
+            public int available() {
+                return read ? 0 : chunk < chunks.length ? chunks[chunk].length : 0;
+            }
+
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) {
+                if (read) {
+                    // the next chunk "arrives" only after the client has got the results of the previous one
+                    chunk++;
+                    read = false;
+                    if (chunk == 1) {
+                        outputBeforeSecondChunk[0] = new String(output.toByteArray(), StandardCharsets.UTF_8);
+                    }
+                }
+                if (chunk >= chunks.length) {
+                    return -1;
+                }
+                read = true;
+                System.arraycopy(chunks[chunk], 0, buffer, offset, chunks[chunk].length);
+                return chunks[chunk].length;
+            }
+        };
+
+        // When
+        ((StreamingOutput) accountResource.transferStream(input, null).getEntity()).write(output);
+
+        // Then
+        assertThat(outputBeforeSecondChunk[0], is("{\"index\":0,\"status\":\"OK\"}\n"));
+        assertThat(new String(output.toByteArray(), StandardCharsets.UTF_8),
+                is("{\"index\":0,\"status\":\"OK\"}\n{\"index\":1,\"status\":\"OK\"}\n"));
+    }
+
+    @Test
+    public void test_transferStream_it_must_stop_at_malformed_item() throws Exception {
+        // Given
+        final String body = "{\"from\":1,\"to\":2,\"amount\":10}\n[1, 2]\n{\"from\":1,\"to\":2,\"amount\":10}\n";
+        when(accountService.tryTransfer(1, 2, BigDecimal.TEN)).thenReturn(TransferResult.transferred());
+
+        // When
+        final String results = transferStream(body);
+
+        // Then
+        assertThat(results.split("\n").length, is(2));
+        assertThat(results.split("\n")[1].startsWith("{\"index\":1,\"status\":\"BAD_REQUEST\""), is(true));
+        verify(accountService).tryTransfer(1, 2, new BigDecimal("10"));
+    }
+
+    @Test
+    public void test_getAccounts_it_must_return_page_with_next_key_when_page_is_full() throws Exception {
+        // Given
+        when(accountService.getAccounts(0, 2)).thenReturn(Arrays.asList(
+                new Account().setId(1).setAmount(BigDecimal.ONE), new Account().setId(5).setAmount(BigDecimal.TEN)));
+        when(accountService.getAccounts(5, 2)).thenReturn(Collections.singletonList(
+                new Account().setId(7).setAmount(BigDecimal.ONE)));
+
+        // When
+        final Response firstPage = accountResource.getAccounts(0, 2);
+        final Response lastPage = accountResource.getAccounts(5, 2);
+
+        // Then
+        assertThat(firstPage.getEntity(), is(new GetAccountsResponse(Arrays.asList(
+                new GetAccountResponse(1, BigDecimal.ONE), new GetAccountResponse(5, BigDecimal.TEN)), 5L)));
+        assertThat(lastPage.getEntity(), is(new GetAccountsResponse(Collections.singletonList(
+                new GetAccountResponse(7, BigDecimal.ONE)), null)));
+    }
+
+    @Test
+    public void test_getTransfers_it_must_return_page_with_next_cursor_when_page_is_full() throws Exception {
+        // Given
+        final JournalEntry opening = new JournalEntry().setId(3).setAccountId(1).setAmount(BigDecimal.TEN)
+                .setBalance(BigDecimal.TEN).setCreatedAt(100);
+        final JournalEntry transfer = new JournalEntry().setId(8).setAccountId(1).setCounterpartyId(2L)
+                .setAmount(BigDecimal.ONE.negate()).setBalance(new BigDecimal("9")).setCreatedAt(200);
+        when(accountService.getHistory(1, 0, 1000, null, 2)).thenReturn(Arrays.asList(opening, transfer));
+        when(accountService.getHistory(1, 0, 1000, new HistoryCursor(200, 8), 2)).thenReturn(Collections.emptyList());
+
+        // When
+        final Response firstPage = accountResource.getTransfers(1, 0, 1000, null, 2);
+        final Response lastPage = accountResource.getTransfers(1, 0, 1000, "200_8", 2);
+
+        // Then
+        assertThat(firstPage.getEntity(), is(new GetTransfersResponse(Arrays.asList(
+                new GetTransferResponse(null, BigDecimal.TEN, BigDecimal.TEN, 100),
+                new GetTransferResponse(2L, BigDecimal.ONE.negate(), new BigDecimal("9"), 200)), "200_8")));
+        assertThat(lastPage.getEntity(), is(new GetTransfersResponse(Collections.emptyList(), null)));
+    }
+
+    @Test(expected = IllegalArgumentException.class) // Then
+    public void test_getTransfers_it_must_throw_IllegalArgumentException_when_cursor_is_invalid() throws Exception {
+        // When
+        accountResource.getTransfers(1, 0, 1000, "200-8", 2);
+    }
+
+    @Test
+    public void test_getBalance_it_must_return_balance_as_of_given_time() throws Exception {
+        // Given
+        when(accountService.getBalanceAt(1, 12345)).thenReturn(new BigDecimal("7.5"));
 
         // When
-        accountResource.transfer(request);
+        final Response response = accountResource.getBalance(1, 12345L);
+
+        // Then
+        assertThat(response.getEntity(), is(new GetBalanceResponse(1, 12345, new BigDecimal("7.5"))));
+    }
+
+    @Test
+    public void test_export_it_must_stream_accounts_as_json_and_csv() throws Exception {
+        // Given
+        doAnswer(invocation -> {
+            final Consumer<Account> action = invocation.getArgument(0);
+            action.accept(new Account().setId(1).setAmount(new BigDecimal("123.45")));
+            action.accept(new Account().setId(2).setAmount(new BigDecimal("0.5")));
+            return 2L;
+        }).when(accountService).exportAccounts(any());
+
+        // When
+        final String json = write(accountResource.exportJson());
+        final String csv = write(accountResource.exportCsv());
+
+        // Then
+        assertThat(json, is("[{\"accountId\":1,\"amount\":123.45},{\"accountId\":2,\"amount\":0.5}]"));
+        assertThat(csv, is("account_id,amount\n1,123.45\n2,0.5\n"));
+    }
+
+    private String transferStream(String body) throws Exception {
+        return write(accountResource.transferStream(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), null));
+    }
+
+    private static String write(Response response) throws Exception {
+        assertThat(response.getStatusInfo(), is(Response.Status.OK));
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(output);
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
     }
 }
@@ -0,0 +1,157 @@
+package task.rest;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.server.model.Resource;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import task.api.CreateAccountRequest;
+import task.api.TransferRequest;
+
+import javax.ws.rs.container.AsyncResponse;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ResourceUsageListenerTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    @Mock
+    private RequestEvent startEvent;
+    @Mock
+    private RequestEvent methodFinishedEvent;
+    @Mock
+    private RequestEvent finishedEvent;
+    @Mock
+    private ExtendedUriInfo uriInfo;
+
+    @Before
+    public void setUp() throws Exception {
+        when(finishedEvent.getType()).thenReturn(RequestEvent.Type.FINISHED);
+        when(finishedEvent.getUriInfo()).thenReturn(uriInfo);
+    }
+
+    @Test
+    public void test_onRequest_it_must_record_allocated_bytes_and_cpu_time_by_uri_of_Timed_annotation() throws Exception {
+        // Given
+        when(uriInfo.getMatchedResourceMethod()).thenReturn(resourceMethod("POST", "create", CreateAccountRequest.class));
+        final ResourceUsageListener listener = new ResourceUsageListener(registry, 1);
+
+        // When
+        final RequestEventListener requestListener = listener.onRequest(startEvent);
+        final byte[] garbage = new byte[100_000];
+        requestListener.onEvent(finishedEvent);
+
+        // Then
+        assertThat(garbage.length, is(100_000));
+        assertThat(registry.get("http.request.allocated").tag("uri", "/accounts/create").summary().count(), is(1L));
+        assertThat(registry.get("http.request.allocated").tag("uri", "/accounts/create").summary().totalAmount(),
+                greaterThan(100_000.0));
+        assertThat(registry.get("http.request.cpu").tag("uri", "/accounts/create").timer().count(), is(1L));
+    }
+
+    @Test
+    public void test_onRequest_it_must_record_request_thread_part_when_request_finishes_on_another_thread() throws Exception {
+        // Given
+        when(methodFinishedEvent.getType()).thenReturn(RequestEvent.Type.RESOURCE_METHOD_FINISHED);
+        when(uriInfo.getMatchedResourceMethod()).thenReturn(
+                resourceMethod("POST", "transferAsync", TransferRequest.class, String.class, AsyncResponse.class));
+        final ResourceUsageListener listener = new ResourceUsageListener(registry, 1);
+
+        // When
+        final RequestEventListener requestListener = listener.onRequest(startEvent);
+        requestListener.onEvent(methodFinishedEvent);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread thread = new Thread(() -> {
+            try {
+                requestListener.onEvent(finishedEvent);
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        thread.start();
+        thread.join();
+
+        // Then
+        assertThat(error.get(), nullValue());
+        assertThat(registry.get("http.request.allocated").tag("uri", "/accounts/transfer/async").summary().count(),
+                is(1L));
+        assertThat(registry.get("http.request.allocated").tag("uri", "/accounts/transfer/async").summary()
+                .totalAmount(), greaterThanOrEqualTo(0.0));
+    }
+
+    @Test
+    public void test_onRequest_it_must_register_meters_of_uri_only_once() throws Exception {
+        // Given
+        when(uriInfo.getMatchedResourceMethod()).thenReturn(resourceMethod("POST", "create", CreateAccountRequest.class));
+        final AtomicInteger registrations = new AtomicInteger();
+        registry.config().meterFilter(new MeterFilter() {
+            @Override
+            public Meter.Id map(Meter.Id id) {
+                registrations.incrementAndGet();
+                return id;
+            }
+        });
+        final ResourceUsageListener listener = new ResourceUsageListener(registry, 1);
+        listener.onRequest(startEvent).onEvent(finishedEvent);
+        final int firstRegistrations = registrations.get();
+
+        // When
+        listener.onRequest(startEvent).onEvent(finishedEvent);
+
+        // Then
+        assertThat(registrations.get(), is(firstRegistrations));
+        assertThat(registry.get("http.request.cpu").tag("uri", "/accounts/create").timer().count(), is(2L));
+    }
+
+    @Test
+    public void test_onRequest_it_must_record_unknown_uri_when_no_resource_method_is_matched() throws Exception {
+        // Given
+        final ResourceUsageListener listener = new ResourceUsageListener(registry, 1);
+
+        // When
+        listener.onRequest(startEvent).onEvent(finishedEvent);
+
+        // Then
+        assertThat(registry.get("http.request.cpu").tag("uri", ResourceUsageListener.UNKNOWN_URI).timer().count(),
+                is(1L));
+    }
+
+    @Test
+    public void test_onRequest_it_must_not_measure_request_when_sampling_rate_is_zero() throws Exception {
+        // Given
+        final ResourceUsageListener listener = new ResourceUsageListener(registry, 0);
+
+        // When, then
+        assertThat(listener.onRequest(startEvent), nullValue());
+        assertThat(new ResourceUsageListener(registry, 1).onRequest(startEvent), notNullValue());
+    }
+
+    private static ResourceMethod resourceMethod(String httpMethod, String name, Class<?>... parameterTypes)
+            throws NoSuchMethodException {
+        final Resource.Builder builder = Resource.builder("/accounts");
+        builder.addMethod(httpMethod).handledBy(AccountResource.class,
+                AccountResource.class.getMethod(name, parameterTypes));
+        return builder.build().getResourceMethods().get(0);
+    }
+}
@@ -1,26 +1,40 @@
 package task.service;
 
-import org.apache.commons.lang3.tuple.Pair;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.cursor.Cursor;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import task.dao.AccountDao;
+import task.exception.IdempotencyKeyConflictException;
 import task.exception.LimitExceededException;
 import task.exception.NoSuchAccountException;
 import task.manager.AccountManager;
+import task.manager.TransferStageTimers;
 import task.model.Account;
+import task.model.AuditEvent;
+import task.model.IdempotencyKey;
+import task.model.TransferResult;
 
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
-import java.util.concurrent.locks.Lock;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -43,46 +57,43 @@ public class AccountServiceImplTest {
 
     @Before
     public void setUp() throws Exception {
-        final Pair<Lock, Lock> pair = Pair.of(new ReentrantLock(), new ReentrantLock());
-        when(orderedLocksProvider.getOrderedLocks(anyLong(), anyLong())).thenReturn(pair);
+        when(orderedLocksProvider.getFirstLock(anyLong(), anyLong())).thenReturn(new ReentrantLock());
+        when(orderedLocksProvider.getSecondLock(anyLong(), anyLong())).thenReturn(new ReentrantLock());
         accountService = new AccountServiceImpl(accountManager, accountDao, orderedLocksProvider);
     }
 
     @Test
-    public void test_create_it_must_create_and_insert_to_dao_account_with_zero_amount_when_amount_is_null() throws Exception {
+    public void test_create_it_must_create_account_with_zero_amount_when_amount_is_null() throws Exception {
         // Given, when
         final Account account = accountService.create(null);
 
         // Then
         assertThat(account.getAmount()).isEqualByComparingTo(BigDecimal.ZERO);
-        verify(accountDao).insert(account);
-
-        verifyZeroInteractions(accountManager);
+        verify(accountManager).create(account);
+        verifyNoMoreInteractions(accountManager);
     }
 
     @Test
-    public void test_create_it_must_create_and_insert_to_dao_account_with_zero_amount_when_amount_is_zero() throws Exception {
+    public void test_create_it_must_create_account_with_zero_amount_when_amount_is_zero() throws Exception {
         // Given, when
         final Account account = accountService.create(BigDecimal.ZERO);
 
         // Then
         assertThat(account.getAmount()).isEqualByComparingTo(BigDecimal.ZERO);
-        verify(accountDao).insert(account);
-
-        verifyZeroInteractions(accountManager);
+        verify(accountManager).create(account);
+        verifyNoMoreInteractions(accountManager);
     }
 
 
     @Test
-    public void test_create_it_must_create_and_insert_to_dao_account_with_given_amount_when_amount_is_not_null() throws Exception {
+    public void test_create_it_must_create_account_with_given_amount_when_amount_is_not_null() throws Exception {
         // Given, when
         final Account account = accountService.create(BigDecimal.TEN);
 
         // Then
         assertThat(account.getAmount()).isEqualByComparingTo(BigDecimal.TEN);
-        verify(accountDao).insert(account);
-
-        verifyZeroInteractions(accountManager);
+        verify(accountManager).create(account);
+        verifyNoMoreInteractions(accountManager);
     }
 
     @Test
@@ -237,6 +248,105 @@ public class AccountServiceImplTest {
         verifyZeroInteractions(accountManager);
     }
 
+    @Test
+    public void test_tryTransfer_it_must_return_stackless_rejection_when_transfer_amount_is_greater_than_source_amount() throws Exception {
+        // Given
+        when(accountDao.select(1)).thenReturn(new Account().setId(1).setAmount(BigDecimal.ONE));
+        when(accountDao.select(2)).thenReturn(new Account().setId(2).setAmount(BigDecimal.ZERO));
+
+        // When
+        final TransferResult result = accountService.tryTransfer(1, 2, BigDecimal.TEN);
+
+        // Then
+        assertThat(result.getStatus()).isEqualTo(TransferResult.Status.LIMIT_EXCEEDED);
+        assertThat(result.getRejection())
+                .isInstanceOf(LimitExceededException.class)
+                .hasMessage("Failed to withdraw from account: 1: delta: 10 is greater than amount: 1");
+        assertThat(result.getRejection().getStackTrace()).isEmpty();
+
+        verifyZeroInteractions(accountManager);
+    }
+
+    @Test
+    public void test_transfer_it_must_time_validation_lock_read_and_transaction_stages_when_timers_are_enabled() throws Exception {
+        // Given
+        final MeterRegistry registry = new SimpleMeterRegistry();
+        accountService = new AccountServiceImpl(accountManager, accountDao, orderedLocksProvider,
+                AccountServiceImpl.LockingMode.JVM, ServiceEventLog.failuresOnly(), new TransferStageTimers(registry));
+        when(accountDao.select(1)).thenReturn(new Account().setId(1).setAmount(BigDecimal.TEN));
+        when(accountDao.select(2)).thenReturn(new Account().setId(2).setAmount(BigDecimal.ZERO));
+
+        // When
+        accountService.transfer(1, 2, BigDecimal.ONE);
+
+        // Then
+        for (String stage : new String[]{"validate", "lock", "read", "transaction"}) {
+            assertThat(registry.get(TransferStageTimers.METRIC_NAME).tag("stage", stage).timer().count())
+                    .as(stage).isEqualTo(1);
+        }
+        // updates are timed by the manager which is mocked here
+        assertThat(registry.get(TransferStageTimers.METRIC_NAME).tag("stage", "update").timer().count()).isZero();
+    }
+
+    @Test
+    public void test_transfer_it_must_publish_audit_events_after_locks_are_released() throws Exception {
+        // Given
+        final ReentrantLock firstLock = new ReentrantLock();
+        final ReentrantLock secondLock = new ReentrantLock();
+        when(orderedLocksProvider.getFirstLock(1, 2)).thenReturn(firstLock);
+        when(orderedLocksProvider.getSecondLock(1, 2)).thenReturn(secondLock);
+        final AuditPipeline audit = mock(AuditPipeline.class);
+        final List<Boolean> locked = new ArrayList<>();
+        doAnswer(invocation -> locked.add(firstLock.isLocked() || secondLock.isLocked()))
+                .when(audit).publish(any(), anyLong(), anyLong(), any(), any());
+        accountService = new AccountServiceImpl(accountManager, accountDao, orderedLocksProvider,
+                AccountServiceImpl.LockingMode.JVM, ServiceEventLog.failuresOnly(), TransferStageTimers.disabled(),
+                audit);
+        when(accountDao.select(1)).thenReturn(new Account().setId(1).setAmount(BigDecimal.TEN));
+        when(accountDao.select(2)).thenReturn(new Account().setId(2).setAmount(BigDecimal.ZERO));
+
+        // When
+        accountService.transfer(1, 2, BigDecimal.ONE);
+        accountService.tryTransfer(1, 2, new BigDecimal("100"));
+
+        // Then
+        verify(audit).publish(AuditEvent.Type.TRANSFER, 1, 2, BigDecimal.ONE, null);
+        verify(audit).publish(AuditEvent.Type.REJECT, 1, 2, new BigDecimal("100"),
+                "Failed to withdraw from account: 1: delta: 100 is greater than amount: 10");
+        assertThat(locked).containsExactly(false, false);
+    }
+
+    @Test
+    public void test_tryTransfer_it_must_return_rejection_when_account_does_not_exist() throws Exception {
+        // Given
+        when(accountDao.select(1)).thenReturn(new Account().setId(1).setAmount(BigDecimal.TEN));
+
+        // When
+        final TransferResult result = accountService.tryTransfer(1, 2, BigDecimal.ONE);
+
+        // Then
+        assertThat(result.getStatus()).isEqualTo(TransferResult.Status.NO_SUCH_ACCOUNT);
+        assertThat(result.getRejection()).hasMessage("No such account: 2");
+
+        verifyZeroInteractions(accountManager);
+    }
+
+    @Test
+    public void test_tryTransfer_it_must_return_rejection_thrown_by_account_manager_when_locking_mode_is_database() throws Exception {
+        // Given
+        accountService = new AccountServiceImpl(accountManager, accountDao, orderedLocksProvider,
+                AccountServiceImpl.LockingMode.DATABASE);
+        final LimitExceededException exception = new LimitExceededException(1, BigDecimal.TEN, BigDecimal.ONE);
+        doThrow(exception).when(accountManager).transferWithRowLocks(1, 2, BigDecimal.TEN);
+
+        // When
+        final TransferResult result = accountService.tryTransfer(1, 2, BigDecimal.TEN);
+
+        // Then
+        assertThat(result.isTransferred()).isFalse();
+        assertThat(result.getRejection()).isSameAs(exception);
+    }
+
     @Test
     public void test_transfer_it_must_call_account_manager_transfer_when_amount_is_positive_accounts_exist_and_money_is_enough_without_stock() throws Exception {
         // Given
@@ -266,4 +376,227 @@ public class AccountServiceImplTest {
         // Then
         verify(accountManager).transfer(eq(fromAccount), eq(toAccount), eq(BigDecimal.ONE));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void test_transfer_it_must_use_row_locks_and_skip_jvm_locks_when_locking_mode_is_database() throws Exception {
+        // Given
+        accountService = new AccountServiceImpl(accountManager, accountDao, orderedLocksProvider,
+                AccountServiceImpl.LockingMode.DATABASE);
+
+        // When
+        accountService.transfer(1, 2, BigDecimal.TEN);
+
+        // Then
+        verify(accountManager).transferWithRowLocks(1, 2, BigDecimal.TEN);
+        verifyNoMoreInteractions(accountManager);
+        verifyZeroInteractions(accountDao);
+    }
+
+    @Test
+    public void test_transfer_it_must_record_idempotency_key_in_transfer_transaction_when_key_is_new() throws Exception {
+        // Given
+        final Account fromAccount = new Account().setId(1).setAmount(BigDecimal.TEN);
+        final Account toAccount = new Account().setId(2).setAmount(BigDecimal.ONE);
+        when(accountDao.select(1)).thenReturn(fromAccount);
+        when(accountDao.select(2)).thenReturn(toAccount);
+
+        // When
+        final boolean transferred = accountService.transfer(1, 2, BigDecimal.ONE, "key");
+
+        // Then
+        assertThat(transferred).isTrue();
+        verify(accountManager).transfer(eq(fromAccount), eq(toAccount), eq(BigDecimal.ONE),
+                any(IdempotencyKey.class));
+    }
+
+    @Test
+    public void test_transfer_it_must_replay_without_transfer_when_same_idempotency_key_has_been_committed() throws Exception {
+        // Given
+        when(accountManager.findIdempotencyKey("key")).thenReturn(new IdempotencyKey()
+                .setId("key").setFromAccountId(1).setToAccountId(2).setAmount(new BigDecimal("1.00")));
+
+        // When
+        final boolean transferred = accountService.transfer(1, 2, BigDecimal.ONE, "key");
+
+        // Then
+        assertThat(transferred).isFalse();
+        verify(accountManager).findIdempotencyKey("key");
+        verifyNoMoreInteractions(accountManager);
+        verifyZeroInteractions(accountDao);
+    }
+
+    @Test
+    public void test_transfer_it_must_replay_when_concurrent_request_with_same_idempotency_key_commits_first() throws Exception {
+        // Given
+        final Account fromAccount = new Account().setId(1).setAmount(BigDecimal.TEN);
+        final Account toAccount = new Account().setId(2).setAmount(BigDecimal.ONE);
+        when(accountDao.select(1)).thenReturn(fromAccount);
+        when(accountDao.select(2)).thenReturn(toAccount);
+        when(accountManager.findIdempotencyKey("key")).thenReturn(null, new IdempotencyKey()
+                .setId("key").setFromAccountId(1).setToAccountId(2).setAmount(BigDecimal.ONE));
+        doThrow(new IllegalStateException("duplicate key")).when(accountManager)
+                .transfer(eq(fromAccount), eq(toAccount), eq(BigDecimal.ONE), any(IdempotencyKey.class));
+
+        // When
+        final boolean transferred = accountService.transfer(1, 2, BigDecimal.ONE, "key");
+
+        // Then
+        assertThat(transferred).isFalse();
+    }
+
+    @Test
+    public void test_transfer_it_must_record_rejection_with_idempotency_key() throws Exception {
+        // Given
+        when(accountDao.select(1)).thenReturn(new Account().setId(1).setAmount(BigDecimal.ONE));
+        when(accountDao.select(2)).thenReturn(new Account().setId(2).setAmount(BigDecimal.ONE));
+
+        // When
+        final Throwable exception = catchThrowable(() -> accountService.transfer(1, 2, BigDecimal.TEN, "key"));
+
+        // Then
+        assertThat(exception).isInstanceOf(LimitExceededException.class);
+        final ArgumentCaptor<IdempotencyKey> key = ArgumentCaptor.forClass(IdempotencyKey.class);
+        verify(accountManager).recordIdempotencyKey(key.capture());
+        assertThat(key.getValue().getState()).isEqualTo(IdempotencyKey.State.LIMIT_EXCEEDED);
+        assertThat(key.getValue().getRejection()).hasMessage(exception.getMessage());
+    }
+
+    @Test
+    public void test_transfer_it_must_replay_rejection_when_same_idempotency_key_has_been_rejected() throws Exception {
+        // Given
+        when(accountManager.findIdempotencyKey("key")).thenReturn(new IdempotencyKey()
+                .setId("key").setFromAccountId(1).setToAccountId(2).setAmount(BigDecimal.TEN)
+                .setState(IdempotencyKey.State.LIMIT_EXCEEDED).setRejectedAccountId(1L).setBalance(BigDecimal.ONE));
+
+        // When
+        final Throwable exception = catchThrowable(() -> accountService.transfer(1, 2, BigDecimal.TEN, "key"));
+
+        // Then
+        assertThat(exception).isInstanceOf(LimitExceededException.class)
+                .hasMessage("Failed to withdraw from account: 1: delta: 10 is greater than amount: 1");
+        verifyZeroInteractions(accountDao);
+    }
+
+    @Test
+    public void test_transfer_it_must_throw_IdempotencyKeyConflictException_when_key_has_been_used_for_other_transfer() throws Exception {
+        // Given
+        when(accountManager.findIdempotencyKey("key")).thenReturn(new IdempotencyKey()
+                .setId("key").setFromAccountId(1).setToAccountId(2).setAmount(BigDecimal.TEN));
+
+        // When
+        final Throwable exception = catchThrowable(() -> accountService.transfer(1, 2, BigDecimal.ONE, "key"));
+
+        // Then
+        assertThat(exception).isInstanceOf(IdempotencyKeyConflictException.class);
+        verifyZeroInteractions(accountDao);
+    }
+
+    @Test
+    public void test_transfer_it_must_not_allocate_beyond_dao_and_manager_when_transfer_succeeds() throws Exception {
+        // Given
+        final com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        final Account fromAccount = new Account().setId(1).setAmount(BigDecimal.TEN);
+        final Account toAccount = new Account().setId(2).setAmount(BigDecimal.TEN);
+        final AccountDao accountDao = new PreloadedAccountDao(fromAccount, toAccount);
+        final AccountManager accountManager = new AccountManager(accountDao, null) {
+            @Override
+            public void transfer(Account fromAccount, Account toAccount, BigDecimal amount) {
+                // database transaction is beyond the measured path
+            }
+        };
+        // events which are not sampled must not allocate either
+        final ServiceEventLog eventLog = new ServiceEventLog(8, ServiceEventLog.samplingRates(0),
+                new SimpleMeterRegistry());
+        final AccountService accountService = new AccountServiceImpl(accountManager, accountDao,
+                new LocksArrayOrderedLocksProvider(), AccountServiceImpl.LockingMode.JVM, eventLog,
+                TransferStageTimers.disabled());
+        try {
+            final int operations = 100_000;
+            for (int i = 0; i < operations; ++i) { // warm up
+                accountService.transfer(1, 2, BigDecimal.ONE);
+            }
+
+            // When
+            final long threadId = Thread.currentThread().getId();
+            final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < operations; ++i) {
+                accountService.transfer(1, 2, BigDecimal.ONE);
+            }
+            final long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+            // Then
+            assertThat(allocated / operations).isZero();
+        } finally {
+            eventLog.close();
+        }
+    }
+
+    /**
+     * Returns the same account instances without allocating, unlike a mock which records every invocation.
+     */
+    private static class PreloadedAccountDao implements AccountDao {
+
+        private final Account[] accounts;
+
+        PreloadedAccountDao(Account... accounts) {
+            this.accounts = accounts;
+        }
+
+        @Override
+        public Account select(long accountId) {
+            for (Account account : accounts) {
+                if (account.getId() == accountId) {
+                    return account;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Account selectForUpdate(long accountId) {
+            return select(accountId);
+        }
+
+        @Override
+        public List<Account> selectPage(long afterAccountId, int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Cursor<Account> selectAll() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Cursor<Account> selectRange(long fromAccountId, long toAccountId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Long selectMaxId() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void insert(Account account) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long nextId() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void insertWithId(Account account) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int update(Account account) {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package task.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import task.exception.LimitExceededException;
+import task.model.Account;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncAccountServiceImplTest {
+
+    private static final Executor REJECTING_EXECUTOR = task -> {
+        throw new RejectedExecutionException("queue is full");
+    };
+
+    private AsyncAccountServiceImpl asyncAccountService;
+    @Mock
+    private AccountService accountService;
+
+    @Before
+    public void setUp() throws Exception {
+        asyncAccountService = new AsyncAccountServiceImpl(accountService, Runnable::run, Runnable::run);
+    }
+
+    @Test
+    public void test_create_it_must_complete_with_created_account() throws Exception {
+        // Given
+        final Account account = new Account().setId(1).setAmount(BigDecimal.TEN);
+        when(accountService.create(BigDecimal.TEN)).thenReturn(account);
+
+        // When
+        final CompletableFuture<Account> future = asyncAccountService.create(BigDecimal.TEN);
+
+        // Then
+        assertThat(future).isCompletedWithValue(account);
+    }
+
+    @Test
+    public void test_getAccount_it_must_complete_with_account() throws Exception {
+        // Given
+        final Account account = new Account().setId(1).setAmount(BigDecimal.TEN);
+        when(accountService.getAccount(1)).thenReturn(account);
+
+        // When
+        final CompletableFuture<Account> future = asyncAccountService.getAccount(1);
+
+        // Then
+        assertThat(future).isCompletedWithValue(account);
+    }
+
+    @Test
+    public void test_transfer_it_must_complete_exceptionally_when_service_throws_exception() throws Exception {
+        // Given
+        final LimitExceededException exception = new LimitExceededException(1, BigDecimal.TEN, BigDecimal.ONE);
+        doThrow(exception).when(accountService).transfer(1, 2, BigDecimal.TEN);
+
+        // When
+        final CompletableFuture<Void> future = asyncAccountService.transfer(1, 2, BigDecimal.TEN);
+
+        // Then
+        assertThat(future).hasFailedWithThrowableThat().isSameAs(exception);
+    }
+
+    @Test
+    public void test_transfer_it_must_complete_exceptionally_when_executor_rejects() throws Exception {
+        // Given
+        asyncAccountService = new AsyncAccountServiceImpl(accountService, Runnable::run, REJECTING_EXECUTOR);
+
+        // When
+        final CompletableFuture<Void> future = asyncAccountService.transfer(1, 2, BigDecimal.TEN);
+
+        // Then
+        assertThat(future).hasFailedWithThrowableThat().isInstanceOf(RejectedExecutionException.class);
+        verifyZeroInteractions(accountService);
+    }
+
+    @Test
+    public void test_transfer_it_must_run_on_write_executor() throws Exception {
+        // Given
+        asyncAccountService = new AsyncAccountServiceImpl(accountService, REJECTING_EXECUTOR, Runnable::run);
+
+        // When
+        final CompletableFuture<Void> future = asyncAccountService.transfer(1, 2, BigDecimal.TEN);
+
+        // Then
+        assertThat(future).isCompleted();
+        verify(accountService).transfer(1, 2, BigDecimal.TEN);
+        assertThat(asyncAccountService.getAccount(1)).isCompletedExceptionally();
+    }
+}
@@ -0,0 +1,65 @@
+package task.service;
+
+import org.junit.Test;
+import task.dao.AuditDao;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class AuditEventPurgerTest {
+
+    private final AuditDao auditDao = mock(AuditDao.class);
+
+    @Test
+    public void test_purge_it_must_delete_expired_events_by_chunks_until_chunk_is_not_full() throws Exception {
+        // Given
+        when(auditDao.deleteCreatedBefore(anyLong(), eq(AuditEventPurger.CHUNK_SIZE)))
+                .thenReturn(AuditEventPurger.CHUNK_SIZE, AuditEventPurger.CHUNK_SIZE, 5);
+        final long startedAt = System.currentTimeMillis();
+
+        // When
+        final int purged;
+        try (AuditEventPurger purger = new AuditEventPurger(auditDao, 1, 0)) {
+            purged = purger.purge();
+        }
+
+        // Then
+        assertThat(purged).isEqualTo(2 * AuditEventPurger.CHUNK_SIZE + 5);
+        verify(auditDao, times(3)).deleteCreatedBefore(
+                longThat(createdBefore -> createdBefore >= startedAt - TimeUnit.DAYS.toMillis(1)
+                        && createdBefore <= System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)),
+                eq(AuditEventPurger.CHUNK_SIZE));
+    }
+
+    @Test
+    public void test_purge_it_must_keep_events_when_retention_is_zero() throws Exception {
+        // When
+        final int purged;
+        try (AuditEventPurger purger = new AuditEventPurger(auditDao, 0, 0)) {
+            purged = purger.purge();
+        }
+
+        // Then
+        assertThat(purged).isZero();
+        verify(auditDao, never()).deleteCreatedBefore(anyLong(), anyInt());
+    }
+
+    @Test(expected = IllegalArgumentException.class) // Then
+    public void test_constructor_it_must_throw_IllegalArgumentException_when_retention_is_negative() throws Exception {
+        // Given, then
+        new AuditEventPurger(auditDao, -1, 0);
+    }
+}
@@ -0,0 +1,192 @@
+package task.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import task.dao.AuditDao;
+import task.model.AuditEvent;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class AuditPipelineTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final AuditDao auditDao = mock(AuditDao.class);
+
+    @Test
+    public void test_publish_it_must_write_events_by_batches_of_batch_size() throws Exception {
+        // Given
+        final List<List<AuditEvent>> batches = new ArrayList<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            batches.add(new ArrayList<>(invocation.getArgument(0)));
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return 0;
+        }).when(auditDao).insert(anyList());
+        final AuditPipeline audit = new AuditPipeline(auditDao, 16, 2, false, registry);
+
+        // When
+        audit.publish(AuditEvent.Type.CREATE, 1, 0, BigDecimal.TEN, null);
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        // the writer is busy, so the next events are accumulated and written by full batches
+        audit.publish(AuditEvent.Type.TRANSFER, 1, 2, BigDecimal.ONE, null);
+        audit.publish(AuditEvent.Type.TRANSFER, 2, 1, BigDecimal.ONE, null);
+        audit.publish(AuditEvent.Type.REJECT, 2, 3, BigDecimal.TEN, "Account 3 not found");
+        release.countDown();
+        audit.close();
+
+        // Then
+        assertThat(batches).extracting(List::size).containsExactly(1, 2, 1);
+        final AuditEvent rejection = batches.get(2).get(0);
+        assertThat(rejection.getType()).isEqualTo(AuditEvent.Type.REJECT);
+        assertThat(rejection.getReason()).isEqualTo("Account 3 not found");
+        assertThat(registry.get("account.audit.published").counter().count()).isEqualTo(4);
+        assertThat(registry.get("account.audit.written").counter().count()).isEqualTo(4);
+        assertThat(registry.get("account.audit.pending").gauge().value()).isZero();
+        assertThat(registry.get("account.audit.lag").timer().count()).isEqualTo(3);
+    }
+
+    @Test
+    public void test_publish_it_must_drop_events_when_buffer_is_full() throws Exception {
+        // Given
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return 0;
+        }).when(auditDao).insert(anyList());
+        final AuditPipeline audit = new AuditPipeline(auditDao, 2, 16, false, registry);
+        audit.publish(AuditEvent.Type.CREATE, 1, 0, BigDecimal.TEN, null);
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            audit.publish(AuditEvent.Type.TRANSFER, 1, 2, BigDecimal.ONE, null);
+        }
+        release.countDown();
+        audit.close();
+
+        // Then
+        assertThat(registry.get("account.audit.published").counter().count()).isEqualTo(3);
+        assertThat(registry.get("account.audit.dropped").counter().count()).isEqualTo(1);
+        assertThat(registry.get("account.audit.written").counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    public void test_publish_it_must_wait_for_event_to_be_written_in_durable_mode() throws Exception {
+        // Given
+        final AuditPipeline audit = new AuditPipeline(auditDao, 16, 16, true, registry);
+
+        // When
+        audit.publish(AuditEvent.Type.CREATE, 1, 0, BigDecimal.TEN, null);
+
+        // Then
+        verify(auditDao).insert(anyList());
+        assertThat(registry.get("account.audit.written").counter().count()).isEqualTo(1);
+        audit.close();
+    }
+
+    @Test
+    public void test_publish_it_must_not_throw_and_must_retry_event_when_it_is_not_written_in_durable_mode() throws Exception {
+        // Given
+        when(auditDao.insert(anyList())).thenThrow(new IllegalStateException("boom")).thenReturn(1);
+        final AuditPipeline audit = new AuditPipeline(auditDao, 16, 16, true, registry);
+
+        // When
+        audit.publish(AuditEvent.Type.TRANSFER, 1, 2, BigDecimal.ONE, null);
+        audit.close();
+
+        // Then
+        verify(auditDao, times(2)).insert(anyList());
+        assertThat(registry.get("account.audit.retried").counter().count()).isEqualTo(1);
+        assertThat(registry.get("account.audit.written").counter().count()).isEqualTo(1);
+        assertThat(registry.get("account.audit.failed").counter().count()).isZero();
+        assertThat(registry.get("account.audit.pending").gauge().value()).isZero();
+    }
+
+    @Test
+    public void test_close_it_must_give_up_event_when_its_last_attempt_fails() throws Exception {
+        // Given
+        doThrow(new IllegalStateException("boom")).when(auditDao).insert(anyList());
+        final AuditPipeline audit = new AuditPipeline(auditDao, 16, 16, false, registry);
+        audit.publish(AuditEvent.Type.TRANSFER, 1, 2, BigDecimal.ONE, null);
+
+        // When
+        audit.close();
+
+        // Then
+        assertThat(registry.get("account.audit.retried").counter().count()).isGreaterThanOrEqualTo(1);
+        assertThat(registry.get("account.audit.written").counter().count()).isZero();
+        assertThat(registry.get("account.audit.failed").counter().count()).isEqualTo(1);
+        assertThat(registry.get("account.audit.pending").gauge().value()).isZero();
+    }
+
+    @Test
+    public void test_publish_it_must_write_events_one_by_one_when_batch_fails() throws Exception {
+        // Given
+        final List<AuditEvent> events = new CopyOnWriteArrayList<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            final List<AuditEvent> batch = invocation.getArgument(0);
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            if (batch.stream().anyMatch(event -> "bad".equals(event.getReason()))) {
+                throw new IllegalStateException("boom");
+            }
+            events.addAll(batch);
+            return batch.size();
+        }).when(auditDao).insert(anyList());
+        final AuditPipeline audit = new AuditPipeline(auditDao, 16, 16, false, registry);
+        audit.publish(AuditEvent.Type.CREATE, 1, 0, BigDecimal.TEN, null);
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // When
+        audit.publish(AuditEvent.Type.TRANSFER, 1, 2, BigDecimal.ONE, null);
+        audit.publish(AuditEvent.Type.REJECT, 2, 3, BigDecimal.TEN, "bad");
+        audit.publish(AuditEvent.Type.TRANSFER, 2, 1, BigDecimal.ONE, null);
+        release.countDown();
+        audit.close();
+
+        // Then
+        assertThat(events).extracting(AuditEvent::getType)
+                .containsExactly(AuditEvent.Type.CREATE, AuditEvent.Type.TRANSFER, AuditEvent.Type.TRANSFER);
+        assertThat(registry.get("account.audit.written").counter().count()).isEqualTo(3);
+        assertThat(registry.get("account.audit.failed").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_disabled_it_must_ignore_events() throws Exception {
+        // Given
+        final AuditPipeline audit = AuditPipeline.disabled();
+
+        // When
+        audit.publish(AuditEvent.Type.CREATE, 1, 0, BigDecimal.TEN, null);
+        audit.close();
+
+        // Then
+        verify(auditDao, never()).insert(anyList());
+        assertThat(audit.isDurable()).isFalse();
+    }
+}
@@ -0,0 +1,131 @@
+package task.service;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import task.manager.AccountManager;
+import task.model.BalanceDiscrepancy;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class BalanceReconcilerTest {
+
+    @Mock
+    private AccountManager accountManager;
+
+    private BalanceReconciler reconciler;
+
+    @After
+    public void tearDown() throws Exception {
+        reconciler.close();
+    }
+
+    @Test
+    public void test_reconcile_it_must_split_accounts_into_chunks_and_report_only_confirmed_discrepancies() throws Exception {
+        // Given
+        reconciler = new BalanceReconciler(Collections.singletonList(accountManager), 2, 10, 0, 100, 0);
+        when(accountManager.getMaxAccountId()).thenReturn(25L);
+        when(accountManager.reconcileRange(anyLong(), anyLong(), any())).thenAnswer(invocation -> {
+            final long from = invocation.getArgument(0);
+            final long to = invocation.getArgument(1);
+            final Consumer<BalanceDiscrepancy> discrepancies = invocation.getArgument(2);
+            for (long id = from; id < to; ++id) {
+                if (id == 7 || id == 20) {
+                    discrepancies.accept(new BalanceDiscrepancy(id, BigDecimal.ONE, BigDecimal.TEN));
+                }
+            }
+            return to - from;
+        });
+        final BalanceDiscrepancy confirmed = new BalanceDiscrepancy(7, BigDecimal.ONE, BigDecimal.TEN);
+        when(accountManager.recheck(7)).thenReturn(confirmed);
+        when(accountManager.recheck(20)).thenReturn(null);
+
+        // When
+        final BalanceReconciler.Report report = reconciler.reconcile();
+
+        // Then
+        assertThat(report.getChunks()).isEqualTo(4);
+        assertThat(report.getChecked()).isEqualTo(25);
+        assertThat(report.getSuspected()).isEqualTo(2);
+        assertThat(report.getConfirmed()).isEqualTo(1);
+        assertThat(report.getDiscrepancies()).containsExactly(confirmed);
+        assertThat(report.isConsistent()).isFalse();
+        assertThat(reconciler.getLastReport()).isSameAs(report);
+        verify(accountManager).reconcileRange(eq(1L), eq(7L), any());
+        verify(accountManager).reconcileRange(eq(19L), eq(26L), any());
+    }
+
+    @Test
+    public void test_reconcile_it_must_count_failed_chunk_and_go_on_when_chunk_fails() throws Exception {
+        // Given
+        reconciler = new BalanceReconciler(Collections.singletonList(accountManager), 1, 10, 0, 100, 0);
+        when(accountManager.getMaxAccountId()).thenReturn(20L);
+        when(accountManager.reconcileRange(eq(1L), eq(11L), any())).thenThrow(new IllegalStateException("failed"));
+        when(accountManager.reconcileRange(eq(11L), eq(21L), any())).thenReturn(10L);
+
+        // When
+        final BalanceReconciler.Report report = reconciler.reconcile();
+
+        // Then
+        assertThat(report.getChunks()).isEqualTo(2);
+        assertThat(report.getFailedChunks()).isEqualTo(1);
+        assertThat(report.getChecked()).isEqualTo(10);
+        assertThat(report.isConsistent()).isFalse();
+        verify(accountManager, never()).recheck(anyLong());
+    }
+
+    @Test
+    public void test_reconcile_it_must_checkpoint_every_chunk_and_count_archived_entries_when_checkpoints_are_enabled() throws Exception {
+        // Given
+        reconciler = new BalanceReconciler(Collections.singletonList(accountManager), 1, 10, 0, 100, 0, true,
+                TimeUnit.DAYS.toMillis(1));
+        when(accountManager.getMaxAccountId()).thenReturn(20L);
+        when(accountManager.reconcileRange(anyLong(), anyLong(), any())).thenReturn(10L);
+        when(accountManager.checkpointRange(anyLong(), anyLong(), anyLong())).thenReturn(3);
+        final long now = System.currentTimeMillis();
+
+        // When
+        final BalanceReconciler.Report report = reconciler.reconcile();
+
+        // Then
+        assertThat(report.getArchived()).isEqualTo(6);
+        assertThat(report.isConsistent()).isTrue();
+        final ArgumentCaptor<Long> archiveBefore = ArgumentCaptor.forClass(Long.class);
+        verify(accountManager).checkpointRange(eq(1L), eq(11L), archiveBefore.capture());
+        verify(accountManager).checkpointRange(eq(11L), eq(21L), anyLong());
+        assertThat(archiveBefore.getValue()).isLessThanOrEqualTo(now - TimeUnit.DAYS.toMillis(1) + 1000);
+    }
+
+    @Test
+    public void test_reconcile_it_must_not_read_accounts_when_there_are_no_accounts() throws Exception {
+        // Given
+        reconciler = new BalanceReconciler(Collections.singletonList(accountManager), 1, 10, 0, 100, 0);
+        when(accountManager.getMaxAccountId()).thenReturn(0L);
+
+        // When
+        final BalanceReconciler.Report report = reconciler.reconcile();
+
+        // Then
+        assertThat(report.getChecked()).isZero();
+        assertThat(report.isConsistent()).isTrue();
+        verify(accountManager, never()).reconcileRange(anyLong(), anyLong(), any());
+    }
+}
@@ -0,0 +1,118 @@
+package task.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class BoundedExecutorTest {
+
+    private SimpleMeterRegistry registry;
+    private BoundedExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        registry = new SimpleMeterRegistry();
+        executor = new BoundedExecutor("test", 1, 1, registry);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.close();
+    }
+
+    @Test
+    public void test_execute_it_must_reject_task_immediately_when_queue_is_full() throws Exception {
+        // Given
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(2);
+        executor.execute(() -> {
+            started.countDown();
+            await(release);
+            completed.countDown();
+        });
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        executor.execute(completed::countDown);
+
+        // When
+        final Throwable throwable = catchThrowable(() -> executor.execute(completed::countDown));
+
+        // Then
+        assertThat(throwable).isInstanceOf(RejectedExecutionException.class);
+        assertThat(executor.getQueueDepth()).isEqualTo(1);
+        assertThat(registry.get("account.executor.queue.depth").tag("name", "test").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("account.executor.rejected").tag("name", "test").counter().count()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(completed.await(10, TimeUnit.SECONDS)).isTrue();
+        executor.close();
+        assertThat(registry.get("account.executor.queue.time").tag("name", "test").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void test_close_it_must_complete_accepted_tasks_and_reject_new_ones() throws Exception {
+        // Given
+        final CountDownLatch completed = new CountDownLatch(2);
+        executor.execute(completed::countDown);
+        executor.execute(completed::countDown);
+
+        // When
+        executor.close();
+
+        // Then
+        assertThat(completed.getCount()).isZero();
+        assertThat(catchThrowable(() -> executor.execute(() -> {
+        }))).isInstanceOf(RejectedExecutionException.class);
+    }
+
+    @Test
+    public void test_execute_it_must_reject_task_immediately_when_thread_per_task_executor_runs_max_tasks() throws Exception {
+        // Given
+        final BoundedExecutor threadPerTask = new BoundedExecutor("thread-per-task", Executors.newCachedThreadPool(),
+                2, registry);
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++) {
+            threadPerTask.execute(() -> {
+                started.countDown();
+                await(release);
+            });
+        }
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // When
+        final Throwable throwable = catchThrowable(() -> threadPerTask.execute(() -> {
+        }));
+
+        // Then
+        assertThat(throwable).isInstanceOf(RejectedExecutionException.class);
+        assertThat(threadPerTask.getTasks()).isEqualTo(2);
+        assertThat(registry.get("account.executor.tasks").tag("name", "thread-per-task").gauge().value()).isEqualTo(2);
+        assertThat(registry.get("account.executor.rejected").tag("name", "thread-per-task").counter().count())
+                .isEqualTo(1);
+
+        release.countDown();
+        threadPerTask.close();
+        assertThat(threadPerTask.getTasks()).isZero();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
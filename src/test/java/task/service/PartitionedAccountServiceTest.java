@@ -0,0 +1,378 @@
+package task.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import task.config.AccountManagerConfig;
+import task.config.DataSourceConfig;
+import task.dao.AccountDao;
+import task.dao.IdempotencyKeyDao;
+import task.dao.TransferIntentDao;
+import task.exception.LimitExceededException;
+import task.manager.AccountManager;
+import task.model.Account;
+import task.model.AuditEvent;
+import task.model.TransferIntent;
+import task.model.TransferResult;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {DataSourceConfig.class, AccountManagerConfig.class})
+public class PartitionedAccountServiceTest {
+
+    private static final int PARTITIONS = 2;
+
+    @Autowired
+    private AccountManager accountManager;
+    @Autowired
+    private AccountDao accountDao;
+    @Autowired
+    private TransferIntentDao transferIntentDao;
+    @Autowired
+    private IdempotencyKeyDao idempotencyKeyDao;
+    @Autowired
+    private PlatformTransactionManager txManager;
+
+    private PartitionedAccountService accountService;
+
+    @Before
+    public void setUp() throws Exception {
+        accountService = newService(accountManager);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        accountService.close();
+    }
+
+    private PartitionedAccountService newService(AccountManager accountManager) {
+        return new PartitionedAccountService(accountManager, accountDao, transferIntentDao,
+                new TransactionTemplate(txManager), PARTITIONS, 16);
+    }
+
+    @Test
+    public void test_transfer_it_must_publish_audit_events() throws Exception {
+        // Given
+        final AuditPipeline audit = mock(AuditPipeline.class);
+        accountService.close();
+        accountService = new PartitionedAccountService(accountManager, accountDao, transferIntentDao,
+                new TransactionTemplate(txManager), PARTITIONS, 16, ServiceEventLog.failuresOnly(), audit);
+        final Account from = accountService.create(BigDecimal.TEN);
+        final Account to = accountService.create(BigDecimal.ONE);
+
+        // When
+        accountService.transfer(from.getId(), to.getId(), BigDecimal.ONE);
+        final TransferResult result = accountService.tryTransfer(from.getId(), to.getId(), new BigDecimal("100"));
+
+        // Then
+        verify(audit).publish(AuditEvent.Type.CREATE, from.getId(), 0, BigDecimal.TEN, null);
+        verify(audit).publish(AuditEvent.Type.CREATE, to.getId(), 0, BigDecimal.ONE, null);
+        verify(audit).publish(AuditEvent.Type.TRANSFER, from.getId(), to.getId(), BigDecimal.ONE, null);
+        verify(audit).publish(AuditEvent.Type.REJECT, from.getId(), to.getId(), new BigDecimal("100"),
+                result.getRejection().getMessage());
+    }
+
+    @Test
+    public void test_transfer_it_must_move_money_within_the_same_partition() throws Exception {
+        // Given
+        final Account from = accountService.create(BigDecimal.TEN);
+        accountService.create(null);
+        final Account to = accountService.create(BigDecimal.ONE);
+
+        // When
+        accountService.transfer(from.getId(), to.getId(), new BigDecimal("3"));
+
+        // Then
+        assertThat(accountService.getAccount(from.getId()).getAmount()).isEqualByComparingTo("7");
+        assertThat(accountService.getAccount(to.getId()).getAmount()).isEqualByComparingTo("4");
+    }
+
+    @Test
+    public void test_transfer_it_must_move_money_across_partitions_and_commit_intent() throws Exception {
+        // Given
+        final Account from = accountService.create(BigDecimal.TEN);
+        final Account to = accountService.create(BigDecimal.ONE);
+
+        // When
+        accountService.transfer(from.getId(), to.getId(), new BigDecimal("3"));
+
+        // Then
+        assertThat(accountService.getAccount(from.getId()).getAmount()).isEqualByComparingTo("7");
+        assertThat(accountService.getAccount(to.getId()).getAmount()).isEqualByComparingTo("4");
+        assertThat(transferIntentDao.selectByState(TransferIntent.State.PREPARED, 10)).isEmpty();
+    }
+
+    @Test
+    public void test_transfer_it_must_not_change_accounts_when_limit_is_exceeded() throws Exception {
+        // Given
+        final Account from = accountService.create(BigDecimal.ONE);
+        final Account to = accountService.create(BigDecimal.ONE);
+
+        // When
+        final Throwable throwable = catchThrowable(() -> accountService.transfer(from.getId(), to.getId(), BigDecimal.TEN));
+
+        // Then
+        assertThat(throwable).isInstanceOf(LimitExceededException.class);
+        assertThat(accountService.getAccount(from.getId()).getAmount()).isEqualByComparingTo("1");
+        assertThat(accountService.getAccount(to.getId()).getAmount()).isEqualByComparingTo("1");
+    }
+
+    @Test
+    public void test_tryTransfer_it_must_return_rejection_when_limit_is_exceeded_across_partitions() throws Exception {
+        // Given
+        final Account from = accountService.create(BigDecimal.ONE);
+        final Account to = accountService.create(BigDecimal.ONE);
+
+        // When
+        final TransferResult result = accountService.tryTransfer(from.getId(), to.getId(), BigDecimal.TEN);
+
+        // Then
+        assertThat(result.getStatus()).isEqualTo(TransferResult.Status.LIMIT_EXCEEDED);
+        assertThat(accountService.getAccount(from.getId()).getAmount()).isEqualByComparingTo("1");
+        assertThat(accountService.getAccount(to.getId()).getAmount()).isEqualByComparingTo("1");
+    }
+
+    @Test
+    public void test_transfer_it_must_refund_source_account_when_credit_fails() throws Exception {
+        // Given
+        final Account from = accountService.create(BigDecimal.TEN);
+        final Account to = accountService.create(BigDecimal.ONE);
+        final AccountManager failingAccountManager = spy(new AccountManager(accountDao, idempotencyKeyDao));
+        doThrow(new IllegalStateException("credit failed"))
+                .when(failingAccountManager).deposit(argThat(account -> account.getId() == to.getId()), any());
+        accountService.close();
+        accountService = newService(failingAccountManager);
+
+        // When
+        final Throwable throwable = catchThrowable(() -> accountService.transfer(from.getId(), to.getId(), BigDecimal.ONE));
+
+        // Then
+        assertThat(throwable).isInstanceOf(IllegalStateException.class).hasMessage("credit failed");
+        assertThat(accountService.getAccount(from.getId()).getAmount()).isEqualByComparingTo("10");
+        assertThat(accountService.getAccount(to.getId()).getAmount()).isEqualByComparingTo("1");
+        assertThat(transferIntentDao.selectByState(TransferIntent.State.PREPARED, 10)).isEmpty();
+        assertThat(transferIntentDao.selectByState(TransferIntent.State.CANCELLED, 10)).isNotEmpty();
+    }
+
+    @Test
+    public void test_transfer_it_must_move_money_across_partitions_once_when_idempotency_key_is_repeated() throws Exception {
+        // Given
+        final Account from = accountService.create(BigDecimal.TEN);
+        final Account to = accountService.create(BigDecimal.ONE);
+        final String key = "partitioned-" + from.getId();
+
+        // When
+        final boolean first = accountService.transfer(from.getId(), to.getId(), new BigDecimal("3"), key);
+        final boolean retry = accountService.transfer(from.getId(), to.getId(), new BigDecimal("3"), key);
+
+        // Then
+        assertThat(first).isTrue();
+        assertThat(retry).isFalse();
+        assertThat(accountService.getAccount(from.getId()).getAmount()).isEqualByComparingTo("7");
+        assertThat(accountService.getAccount(to.getId()).getAmount()).isEqualByComparingTo("4");
+    }
+
+    @Test
+    public void test_transfer_it_must_check_and_record_rejected_idempotency_key_by_source_partition() throws Exception {
+        // Given
+        final Account from = accountService.create(BigDecimal.ONE);
+        final Account to = accountService.create(BigDecimal.ONE);
+        final String key = "rejected-" + from.getId();
+        final AccountManager spyAccountManager = spy(new AccountManager(accountDao, idempotencyKeyDao));
+        final List<String> threads = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            return invocation.callRealMethod();
+        }).when(spyAccountManager).findIdempotencyKey(key);
+        doAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            return invocation.callRealMethod();
+        }).when(spyAccountManager).recordIdempotencyKey(argThat(recorded -> recorded.getId().equals(key)));
+        accountService.close();
+        accountService = newService(spyAccountManager);
+
+        // When
+        final Throwable throwable = catchThrowable(() ->
+                accountService.transfer(from.getId(), to.getId(), BigDecimal.TEN, key));
+
+        // Then
+        assertThat(throwable).isInstanceOf(LimitExceededException.class);
+        assertThat(idempotencyKeyDao.select(key).getRejection()).isInstanceOf(LimitExceededException.class);
+        assertThat(threads).isNotEmpty()
+                .containsOnly("account-partition-" + Math.floorMod(from.getId(), (long) PARTITIONS));
+    }
+
+    @Test
+    public void test_transfer_it_must_forget_idempotency_key_when_transfer_is_refunded() throws Exception {
+        // Given
+        final Account from = accountService.create(BigDecimal.TEN);
+        final Account to = accountService.create(BigDecimal.ONE);
+        final String key = "refunded-" + from.getId();
+        final AccountManager failingAccountManager = spy(new AccountManager(accountDao, idempotencyKeyDao));
+        doThrow(new IllegalStateException("credit failed"))
+                .when(failingAccountManager).deposit(argThat(account -> account.getId() == to.getId()), any());
+        accountService.close();
+        accountService = newService(failingAccountManager);
+
+        // When
+        final Throwable throwable = catchThrowable(() ->
+                accountService.transfer(from.getId(), to.getId(), BigDecimal.ONE, key));
+
+        // Then
+        assertThat(throwable).isInstanceOf(IllegalStateException.class);
+        assertThat(idempotencyKeyDao.select(key)).isNull();
+        assertThat(accountService.getAccount(from.getId()).getAmount()).isEqualByComparingTo("10");
+    }
+
+    @Test
+    public void test_constructor_it_must_credit_transfers_left_prepared_by_crash() throws Exception {
+        // Given
+        final Account from = accountService.create(BigDecimal.TEN);
+        final Account to = accountService.create(BigDecimal.ONE);
+        final String intentId = UUID.randomUUID().toString();
+        accountManager.withdraw(from, new BigDecimal("3"));
+        transferIntentDao.insert(new TransferIntent()
+                .setId(intentId)
+                .setFromAccountId(from.getId())
+                .setToAccountId(to.getId())
+                .setAmount(new BigDecimal("3"))
+                .setState(TransferIntent.State.PREPARED));
+        accountService.close();
+
+        // When
+        accountService = newService(accountManager);
+
+        // Then
+        assertThat(accountService.getAccount(from.getId()).getAmount()).isEqualByComparingTo("7");
+        assertThat(accountService.getAccount(to.getId()).getAmount()).isEqualByComparingTo("4");
+        assertThat(transferIntentDao.select(intentId).getState()).isEqualTo(TransferIntent.State.COMMITTED);
+    }
+
+    @Test
+    public void test_constructor_it_must_skip_intent_which_fails_to_be_credited_and_credit_the_others() throws Exception {
+        // Given
+        final Account from = accountService.create(BigDecimal.TEN);
+        final Account to = accountService.create(BigDecimal.ONE);
+        accountManager.withdraw(from, new BigDecimal("3"));
+        final String badIntentId = insertPreparedIntent(from.getId(), Long.MAX_VALUE, new BigDecimal("1"));
+        final String intentId = insertPreparedIntent(from.getId(), to.getId(), new BigDecimal("2"));
+        accountService.close();
+
+        try {
+            // When
+            accountService = newService(accountManager);
+
+            // Then
+            assertThat(accountService.getAccount(to.getId()).getAmount()).isEqualByComparingTo("3");
+            assertThat(transferIntentDao.select(intentId).getState()).isEqualTo(TransferIntent.State.COMMITTED);
+            assertThat(transferIntentDao.select(badIntentId).getState()).isEqualTo(TransferIntent.State.PREPARED);
+        } finally {
+            transferIntentDao.updateState(badIntentId, TransferIntent.State.CANCELLED);
+        }
+    }
+
+    @Test
+    public void test_recovery_it_must_periodically_credit_transfer_left_prepared_by_failed_refund() throws Exception {
+        // Given
+        accountService.close();
+        accountService = new PartitionedAccountService(accountManager, accountDao, transferIntentDao,
+                new TransactionTemplate(txManager), PARTITIONS, 16, ServiceEventLog.failuresOnly(),
+                AuditPipeline.disabled(), 1);
+        final Account from = accountService.create(BigDecimal.TEN);
+        final Account to = accountService.create(BigDecimal.ONE);
+        accountManager.withdraw(from, new BigDecimal("3"));
+
+        // When
+        final String intentId = insertPreparedIntent(from.getId(), to.getId(), new BigDecimal("3"));
+
+        // Then
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (transferIntentDao.select(intentId).getState() == TransferIntent.State.PREPARED
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(transferIntentDao.select(intentId).getState()).isEqualTo(TransferIntent.State.COMMITTED);
+        assertThat(accountService.getAccount(to.getId()).getAmount()).isEqualByComparingTo("4");
+    }
+
+    @Test
+    public void test_transfer_it_must_not_lose_updates_when_called_concurrently() throws Exception {
+        // Given
+        final int accounts = 6;
+        final long[] accountIds = new long[accounts];
+        for (int i = 0; i < accounts; ++i) {
+            accountIds[i] = accountService.create(new BigDecimal("1000")).getId();
+        }
+        final AtomicLongArray balanceChanges = new AtomicLongArray(accounts);
+
+        // When
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; ++t) {
+                futures.add(executor.submit(() -> {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 100; ++i) {
+                        final int from = random.nextInt(accounts);
+                        final int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+                        accountService.transfer(accountIds[from], accountIds[to], BigDecimal.ONE);
+                        balanceChanges.decrementAndGet(from);
+                        balanceChanges.incrementAndGet(to);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Then
+        for (int i = 0; i < accounts; ++i) {
+            assertThat(accountService.getAccount(accountIds[i]).getAmount())
+                    .isEqualByComparingTo(new BigDecimal(1000 + balanceChanges.get(i)));
+        }
+    }
+
+    private String insertPreparedIntent(long fromAccountId, long toAccountId, BigDecimal amount) {
+        final String intentId = UUID.randomUUID().toString();
+        transferIntentDao.insert(new TransferIntent()
+                .setId(intentId)
+                .setFromAccountId(fromAccountId)
+                .setToAccountId(toAccountId)
+                .setAmount(amount)
+                .setState(TransferIntent.State.PREPARED));
+        return intentId;
+    }
+}
@@ -0,0 +1,127 @@
+package task.service;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import task.exception.LimitExceededException;
+import task.service.ServiceEventLog.Event;
+import task.service.ServiceEventLog.Operation;
+import task.service.ServiceEventLog.Outcome;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class ServiceEventLogTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+    @Before
+    public void setUp() throws Exception {
+        appender.start();
+        ((Logger) LoggerFactory.getLogger(ServiceEventLog.LOGGER_NAME)).addAppender(appender);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ((Logger) LoggerFactory.getLogger(ServiceEventLog.LOGGER_NAME)).detachAppender(appender);
+    }
+
+    @Test
+    public void test_encode_it_must_write_key_value_pairs_and_quote_key_and_reason() throws Exception {
+        // Given
+        final Event event = new Event(Operation.TRANSFER, Outcome.REJECTED, 153_000, 1, 2, new BigDecimal("1E+2"),
+                "k\"1", new LimitExceededException(1, new BigDecimal("-100"), BigDecimal.TEN));
+
+        // When
+        final String line = ServiceEventLog.encode(event, new StringBuilder()).toString();
+
+        // Then
+        assertThat(line).isEqualTo("op=TRANSFER outcome=REJECTED us=153 from=1 to=2 amount=100 key=\"k\\\"1\" " +
+                "reason=\"" + event.error.getMessage() + "\"");
+    }
+
+    @Test
+    public void test_constructor_it_must_throw_IllegalArgumentException_when_sampling_rate_is_out_of_range() throws Exception {
+        // Given, when
+        final Throwable throwable = catchThrowable(() ->
+                new ServiceEventLog(8, ServiceEventLog.samplingRates(1.5), registry));
+
+        // Then
+        assertThat(throwable).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void test_record_it_must_write_sampled_events_and_failures_and_skip_the_others() throws Exception {
+        // Given
+        final ServiceEventLog eventLog = new ServiceEventLog(8, ServiceEventLog.samplingRates(0), registry);
+
+        // When
+        eventLog.record(Operation.GET, Outcome.OK, System.nanoTime(), 1, 0, BigDecimal.TEN, null, null);
+        eventLog.record(Operation.GET, Outcome.FAILED, System.nanoTime(), 2, 0, null, null,
+                new IllegalStateException("boom"));
+        eventLog.close();
+
+        // Then
+        assertThat(messages()).containsExactly("op=GET outcome=FAILED account=2 reason=\"boom\"");
+        assertThat(registry.counter("account.events.written").count()).isEqualTo(1);
+        assertThat(registry.counter("account.events.dropped").count()).isZero();
+    }
+
+    @Test
+    public void test_record_it_must_drop_and_count_sampled_event_but_write_failure_when_log_is_closed() throws Exception {
+        // Given
+        final ServiceEventLog eventLog = new ServiceEventLog(8, ServiceEventLog.samplingRates(1), registry);
+        eventLog.close();
+
+        // When
+        eventLog.record(Operation.CREATE, Outcome.OK, System.nanoTime(), 1, 0, BigDecimal.TEN, null, null);
+        eventLog.record(Operation.CREATE, Outcome.FAILED, System.nanoTime(), 0, 0, BigDecimal.TEN, null,
+                new IllegalStateException("boom"));
+
+        // Then
+        assertThat(messages()).containsExactly("op=CREATE outcome=FAILED account=0 amount=10 reason=\"boom\"");
+        assertThat(registry.counter("account.events.written").count()).isZero();
+        assertThat(registry.counter("account.events.dropped").count()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_record_it_must_never_block_when_writer_falls_behind() throws Exception {
+        // Given
+        final int events = 10_000;
+        final ServiceEventLog eventLog = new ServiceEventLog(2, ServiceEventLog.samplingRates(1), registry);
+
+        // When
+        for (int i = 0; i < events; ++i) {
+            eventLog.record(Operation.TRANSFER, Outcome.OK, System.nanoTime(), 1, 2, BigDecimal.ONE, null, null);
+        }
+        eventLog.close();
+
+        // Then
+        final double written = registry.counter("account.events.written").count();
+        final double dropped = registry.counter("account.events.dropped").count();
+        assertThat(written + dropped).isEqualTo(events);
+        assertThat(dropped).isPositive();
+        assertThat(messages()).hasSize((int) written);
+    }
+
+    private List<String> messages() {
+        // duration depends on timing, the rest of the line doesn't
+        return appender.list.stream()
+                .map(event -> event.getFormattedMessage().replaceFirst(" us=\\d+", ""))
+                .collect(Collectors.toList());
+    }
+}
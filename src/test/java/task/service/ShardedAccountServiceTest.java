@@ -0,0 +1,384 @@
+package task.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import task.config.AccountManagerConfig;
+import task.config.AccountServiceConfig;
+import task.config.DataSourceConfig;
+import task.config.IdempotencyConfig;
+import task.config.ShardingConfig;
+import task.exception.IdempotencyKeyConflictException;
+import task.exception.LimitExceededException;
+import task.manager.AccountManager;
+import task.model.Account;
+import task.model.AuditEvent;
+import task.model.IdempotencyKey;
+import task.model.TransferIntent;
+import task.model.TransferResult;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {DataSourceConfig.class, AccountManagerConfig.class, AccountServiceConfig.class,
+        IdempotencyConfig.class, ShardingConfig.class})
+@TestPropertySource(properties = {
+        "account.sharding.enabled=true",
+        "account.sharding.shards=3",
+        "account.sharding.recoveryIntervalSeconds=0",
+        "account.datasource.pool.maximumPoolSize=2",
+        "account.datasource.pool.minimumIdle=1",
+})
+public class ShardedAccountServiceTest {
+
+    @Autowired
+    private AccountShards shards;
+
+    private ShardedAccountService accountService;
+
+    @Before
+    public void setUp() throws Exception {
+        accountService = new ShardedAccountService(shards, new LocksArrayOrderedLocksProvider(), 0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        accountService.close();
+    }
+
+    @Test
+    public void test_create_it_must_spread_accounts_over_shards_and_route_by_id() throws Exception {
+        // Given, when
+        final Set<Integer> usedShards = new HashSet<>();
+        for (int i = 0; i < 3; ++i) {
+            final Account account = accountService.create(BigDecimal.valueOf(i));
+            final AccountShard shard = shards.shardOf(account.getId());
+            usedShards.add(shard.getIndex());
+
+            // Then
+            assertThat(shard.getAccountDao().select(account.getId())).isEqualTo(account);
+            assertThat(accountService.getAccount(account.getId())).isEqualTo(account);
+        }
+        assertThat(usedShards).containsExactlyInAnyOrder(0, 1, 2);
+    }
+
+    @Test
+    public void test_transfer_it_must_publish_audit_events_across_shards() throws Exception {
+        // Given
+        final AuditPipeline audit = mock(AuditPipeline.class);
+        accountService.close();
+        accountService = new ShardedAccountService(shards, new LocksArrayOrderedLocksProvider(), 0,
+                ServiceEventLog.failuresOnly(), audit);
+        final Account from = accountService.create(BigDecimal.TEN);
+        final Account to = accountService.create(BigDecimal.ONE);
+        assertThat(shards.shardOf(from.getId())).isNotSameAs(shards.shardOf(to.getId()));
+
+        // When
+        accountService.transfer(from.getId(), to.getId(), BigDecimal.ONE);
+        final TransferResult result = accountService.tryTransfer(from.getId(), to.getId(), new BigDecimal("100"));
+
+        // Then
+        verify(audit).publish(AuditEvent.Type.CREATE, from.getId(), 0, BigDecimal.TEN, null);
+        verify(audit).publish(AuditEvent.Type.CREATE, to.getId(), 0, BigDecimal.ONE, null);
+        verify(audit).publish(AuditEvent.Type.TRANSFER, from.getId(), to.getId(), BigDecimal.ONE, null);
+        verify(audit).publish(AuditEvent.Type.REJECT, from.getId(), to.getId(), new BigDecimal("100"),
+                result.getRejection().getMessage());
+    }
+
+    @Test
+    public void test_transfer_it_must_move_money_within_the_same_shard() throws Exception {
+        // Given
+        final Account from = accountService.create(BigDecimal.TEN);
+        accountService.create(null);
+        accountService.create(null);
+        final Account to = accountService.create(BigDecimal.ONE);
+        assertThat(shards.shardOf(from.getId())).isSameAs(shards.shardOf(to.getId()));
+
+        // When
+        accountService.transfer(from.getId(), to.getId(), new BigDecimal("3"));
+
+        // Then
+        assertThat(accountService.getAccount(from.getId()).getAmount()).isEqualByComparingTo("7");
+        assertThat(accountService.getAccount(to.getId()).getAmount()).isEqualByComparingTo("4");
+    }
+
+    @Test
+    public void test_transfer_it_must_move_money_across_shards_and_commit_intent() throws Exception {
+        // Given
+        final Account from = accountService.create(BigDecimal.TEN);
+        final Account to = accountService.create(BigDecimal.ONE);
+        final AccountShard fromShard = shards.shardOf(from.getId());
+        assertThat(fromShard).isNotSameAs(shards.shardOf(to.getId()));
+
+        // When
+        accountService.transfer(from.getId(), to.getId(), new BigDecimal("3"));
+
+        // Then
+        assertThat(accountService.getAccount(from.getId()).getAmount()).isEqualByComparingTo("7");
+        assertThat(accountService.getAccount(to.getId()).getAmount()).isEqualByComparingTo("4");
+        assertThat(fromShard.getTransferIntentDao().selectByState(TransferIntent.State.PREPARED, 10)).isEmpty();
+        assertThat(accountService.recover()).isZero();
+    }
+
+    @Test
+    public void test_transfer_it_must_move_money_across_shards_once_when_idempotency_key_is_repeated() throws Exception {
+        // Given
+        final Account from = accountService.create(BigDecimal.TEN);
+        final Account to = accountService.create(BigDecimal.ONE);
+        final String key = "sharded-" + from.getId();
+
+        // When
+        final boolean first = accountService.transfer(from.getId(), to.getId(), new BigDecimal("3"), key);
+        final boolean retry = accountService.transfer(from.getId(), to.getId(), new BigDecimal("3"), key);
+
+        // Then
+        assertThat(first).isTrue();
+        assertThat(retry).isFalse();
+        assertThat(accountService.getAccount(from.getId()).getAmount()).isEqualByComparingTo("7");
+        assertThat(accountService.getAccount(to.getId()).getAmount()).isEqualByComparingTo("4");
+        assertThat(shards.shardOf(from.getId()).getAccountManager().findIdempotencyKey(key)).isNotNull();
+    }
+
+    @Test
+    public void test_transfer_it_must_not_change_accounts_when_limit_is_exceeded() throws Exception {
+        // Given
+        final Account from = accountService.create(BigDecimal.ONE);
+        final Account to = accountService.create(BigDecimal.ONE);
+
+        // When
+        final Throwable throwable = catchThrowable(() -> accountService.transfer(from.getId(), to.getId(), BigDecimal.TEN));
+
+        // Then
+        assertThat(throwable).isInstanceOf(LimitExceededException.class);
+        assertThat(accountService.getAccount(from.getId()).getAmount()).isEqualByComparingTo("1");
+        assertThat(accountService.getAccount(to.getId()).getAmount()).isEqualByComparingTo("1");
+    }
+
+    @Test
+    public void test_recover_it_must_complete_prepared_transfer_exactly_once() throws Exception {
+        // Given: money is withdrawn but the process died before the deposit
+        final Account from = accountService.create(BigDecimal.TEN);
+        final Account to = accountService.create(BigDecimal.ONE);
+        final TransferIntent intent = prepare(from, to, new BigDecimal("3"));
+
+        // When
+        final int recovered = accountService.recover();
+
+        // Then
+        assertThat(recovered).isEqualTo(1);
+        assertThat(accountService.recover()).isZero();
+        assertThat(accountService.getAccount(from.getId()).getAmount()).isEqualByComparingTo("7");
+        assertThat(accountService.getAccount(to.getId()).getAmount()).isEqualByComparingTo("4");
+        assertThat(shards.shardOf(from.getId()).getTransferIntentDao().select(intent.getId()).getState())
+                .isEqualTo(TransferIntent.State.COMMITTED);
+        assertThat(shards.shardOf(to.getId()).getTransferIntentDao().select(intent.getId()).getState())
+                .isEqualTo(TransferIntent.State.APPLIED);
+    }
+
+    @Test
+    public void test_recover_it_must_skip_intent_which_fails_to_complete_and_complete_the_others() throws Exception {
+        // Given: the failing intent precedes the other one in id order
+        final Account from = accountService.create(BigDecimal.TEN);
+        final Account to = accountService.create(BigDecimal.ONE);
+        final AccountShard fromShard = shards.shardOf(from.getId());
+        final TransferIntent badIntent = new TransferIntent()
+                .setId("00000000-0000-0000-0000-000000000000")
+                .setFromAccountId(from.getId())
+                .setToAccountId(to.getId() + 1_000_000L * shards.getShards().size())
+                .setAmount(BigDecimal.ONE)
+                .setState(TransferIntent.State.PREPARED);
+        fromShard.getTransferIntentDao().insert(badIntent);
+        final TransferIntent intent = prepare(from, to, new BigDecimal("3"));
+
+        try {
+            // When
+            final int recovered = accountService.recover();
+
+            // Then
+            assertThat(recovered).isEqualTo(1);
+            assertThat(accountService.getAccount(to.getId()).getAmount()).isEqualByComparingTo("4");
+            assertThat(fromShard.getTransferIntentDao().select(intent.getId()).getState())
+                    .isEqualTo(TransferIntent.State.COMMITTED);
+            assertThat(fromShard.getTransferIntentDao().select(badIntent.getId()).getState())
+                    .isEqualTo(TransferIntent.State.PREPARED);
+        } finally {
+            fromShard.getTransferIntentDao().updateState(badIntent.getId(), TransferIntent.State.CANCELLED);
+        }
+    }
+
+    @Test
+    public void test_recover_it_must_not_deposit_twice_when_deposit_has_been_applied() throws Exception {
+        // Given: the deposit is applied but the process died before the intent was committed
+        final Account from = accountService.create(BigDecimal.TEN);
+        final Account to = accountService.create(BigDecimal.ONE);
+        final TransferIntent intent = prepare(from, to, new BigDecimal("3"));
+        final AccountShard toShard = shards.shardOf(to.getId());
+        toShard.getAccountManager().deposit(to, intent.getAmount());
+        toShard.getTransferIntentDao().insert(new TransferIntent()
+                .setId(intent.getId())
+                .setFromAccountId(from.getId())
+                .setToAccountId(to.getId())
+                .setAmount(intent.getAmount())
+                .setState(TransferIntent.State.APPLIED));
+
+        // When
+        final int recovered = accountService.recover();
+
+        // Then
+        assertThat(recovered).isEqualTo(1);
+        assertThat(accountService.getAccount(to.getId()).getAmount()).isEqualByComparingTo("4");
+        assertThat(shards.shardOf(from.getId()).getTransferIntentDao().select(intent.getId()).getState())
+                .isEqualTo(TransferIntent.State.COMMITTED);
+    }
+
+    @Test
+    public void test_transfer_it_must_detect_reuse_of_idempotency_key_with_source_account_of_other_shard() throws Exception {
+        // Given
+        final Account from = accountService.create(BigDecimal.TEN);
+        final Account otherFrom = accountService.create(BigDecimal.TEN);
+        final Account to = accountService.create(BigDecimal.ONE);
+        assertThat(shards.shardOf(from.getId())).isNotSameAs(shards.shardOf(otherFrom.getId()));
+        final String key = "reused-" + UUID.randomUUID();
+        accountService.transfer(from.getId(), to.getId(), new BigDecimal("3"), key);
+
+        // When
+        final Throwable throwable = catchThrowable(() ->
+                accountService.transfer(otherFrom.getId(), to.getId(), new BigDecimal("3"), key));
+
+        // Then
+        assertThat(throwable).isInstanceOf(IdempotencyKeyConflictException.class);
+        assertThat(accountService.getAccount(otherFrom.getId()).getAmount()).isEqualByComparingTo("10");
+        assertThat(accountService.getAccount(to.getId()).getAmount()).isEqualByComparingTo("4");
+    }
+
+    @Test
+    public void test_transfer_it_must_replay_original_rejection_when_idempotency_key_is_repeated() throws Exception {
+        // Given
+        final Account from = accountService.create(BigDecimal.ONE);
+        final Account to = accountService.create(BigDecimal.ONE);
+        final Account topUp = accountService.create(BigDecimal.TEN);
+        final String key = keyOfOtherShard(from);
+        final Throwable rejection = catchThrowable(() ->
+                accountService.transfer(from.getId(), to.getId(), new BigDecimal("5"), key));
+        accountService.transfer(topUp.getId(), from.getId(), BigDecimal.TEN);
+
+        // When
+        final Throwable retry = catchThrowable(() ->
+                accountService.transfer(from.getId(), to.getId(), new BigDecimal("5"), key));
+
+        // Then
+        assertThat(rejection).isInstanceOf(LimitExceededException.class);
+        assertThat(retry).isInstanceOf(LimitExceededException.class).hasMessage(rejection.getMessage());
+        assertThat(accountService.getAccount(from.getId()).getAmount()).isEqualByComparingTo("11");
+        assertThat(shards.shardOfKey(key).getAccountManager().findIdempotencyKey(key).getState())
+                .isEqualTo(IdempotencyKey.State.LIMIT_EXCEEDED);
+    }
+
+    @Test
+    public void test_transfer_it_must_resolve_pending_idempotency_key_by_its_copy_in_source_shard() throws Exception {
+        // Given
+        final Account from = accountService.create(BigDecimal.TEN);
+        final Account to = accountService.create(BigDecimal.ONE);
+        final String committedKey = keyOfOtherShard(from);
+        final String lostKey = keyOfOtherShard(from);
+        final AccountManager keyManager = shards.shardOfKey(committedKey).getAccountManager();
+        accountService.transfer(from.getId(), to.getId(), BigDecimal.ONE, committedKey);
+        // crash after the transfer has committed, but before its outcome has been recorded
+        keyManager.updateIdempotencyKey(keyManager.findIdempotencyKey(committedKey)
+                .setState(IdempotencyKey.State.PENDING));
+        // crash after the key has been claimed, but before the transfer has committed
+        shards.shardOfKey(lostKey).getAccountManager().recordIdempotencyKey(new IdempotencyKey().setId(lostKey)
+                .setFromAccountId(from.getId()).setToAccountId(to.getId()).setAmount(BigDecimal.ONE)
+                .setState(IdempotencyKey.State.PENDING));
+
+        // When
+        final boolean committedRetry = accountService.transfer(from.getId(), to.getId(), BigDecimal.ONE, committedKey);
+        final boolean lostRetry = accountService.transfer(from.getId(), to.getId(), BigDecimal.ONE, lostKey);
+
+        // Then
+        assertThat(committedRetry).isFalse();
+        assertThat(lostRetry).isTrue();
+        assertThat(accountService.getAccount(from.getId()).getAmount()).isEqualByComparingTo("8");
+        assertThat(keyManager.findIdempotencyKey(committedKey).getState()).isEqualTo(IdempotencyKey.State.TRANSFERRED);
+        assertThat(shards.shardOfKey(lostKey).getAccountManager().findIdempotencyKey(lostKey).getState())
+                .isEqualTo(IdempotencyKey.State.TRANSFERRED);
+    }
+
+    private String keyOfOtherShard(Account from) {
+        String key;
+        do {
+            key = UUID.randomUUID().toString();
+        } while (shards.shardOfKey(key) == shards.shardOf(from.getId()));
+        return key;
+    }
+
+    private TransferIntent prepare(Account from, Account to, BigDecimal amount) {
+        final AccountShard fromShard = shards.shardOf(from.getId());
+        assertThat(fromShard).isNotSameAs(shards.shardOf(to.getId()));
+        final TransferIntent intent = new TransferIntent()
+                .setId(UUID.randomUUID().toString())
+                .setFromAccountId(from.getId())
+                .setToAccountId(to.getId())
+                .setAmount(amount)
+                .setState(TransferIntent.State.PREPARED);
+        fromShard.getAccountManager().withdraw(from, amount);
+        fromShard.getTransferIntentDao().insert(intent);
+        return intent;
+    }
+
+    @Test
+    public void test_getAccounts_it_must_merge_pages_of_all_shards_in_id_order() throws Exception {
+        // Given
+        final List<Long> created = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            created.add(accountService.create(BigDecimal.ONE).getId());
+        }
+
+        // When
+        final List<Long> paged = new ArrayList<>();
+        long after = created.get(0) - 1;
+        List<Account> page;
+        while (!(page = accountService.getAccounts(after, 2)).isEmpty()) {
+            assertThat(page.size()).isLessThanOrEqualTo(2);
+            for (Account account : page) {
+                paged.add(account.getId());
+            }
+            after = page.get(page.size() - 1).getId();
+        }
+
+        // Then
+        assertThat(paged).isSorted().containsAll(created);
+    }
+
+    @Test
+    public void test_exportAccounts_it_must_export_accounts_of_all_shards() throws Exception {
+        // Given
+        final Account account = accountService.create(BigDecimal.ONE);
+        final List<Account> exported = new ArrayList<>();
+
+        // When
+        final long count = accountService.exportAccounts(exported::add);
+
+        // Then
+        assertThat(count).isEqualTo(exported.size());
+        assertThat(exported).contains(account);
+    }
+}
@@ -0,0 +1,51 @@
+package task.service;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Anton Kotov (kotov-anton@yandex.ru)
+ */
+public class VirtualThreadsTest {
+
+    @Test
+    public void test_newThreadFactory_it_must_create_virtual_threads_only_when_jdk_supports_them() throws Exception {
+        // Given, when
+        final ThreadFactory threadFactory = VirtualThreads.newThreadFactory("test");
+
+        // Then
+        if (threadFactory == null) {
+            assertThat(VirtualThreads.isSupported()).isFalse();
+            assertThat(VirtualThreads.newThreadPerTaskExecutor("test")).isNull();
+            return;
+        }
+        final Thread thread = threadFactory.newThread(() -> {
+        });
+        assertThat(thread.getName()).isEqualTo("test-0");
+        assertThat(Thread.class.getMethod("isVirtual").invoke(thread)).isEqualTo(true);
+    }
+
+    @Test
+    public void test_newThreadPerTaskExecutor_it_must_run_tasks_when_jdk_supports_virtual_threads() throws Exception {
+        // Given
+        final ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("test");
+        if (executor == null) {
+            return;
+        }
+        final AtomicReference<String> threadName = new AtomicReference<>();
+
+        // When
+        executor.execute(() -> threadName.set(Thread.currentThread().getName()));
+        executor.shutdown();
+
+        // Then
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(threadName.get()).startsWith("test-");
+    }
+}